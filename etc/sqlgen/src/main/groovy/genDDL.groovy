@@ -14,8 +14,8 @@
  * limitations under the License.
  */
 /**
- Groovy script runs the createdb.vm Velocity template to generate database-specific table
- creation scripts for TightBlog, placing the generated files in its resources/dbscripts folder.
+ Groovy script runs the createdb.vm and migrate-*.vm Velocity templates to generate database-specific
+ table creation and upgrade scripts for TightBlog, placing the generated files in its resources/dbscripts folder.
 
  See this subproject's build.gradle for run instructions.
  */
@@ -37,13 +37,15 @@ def genScript = { String dbName, String foreignKeyIndex, String textType,
     context.put("TIMESTAMP_SQL_TYPE_DEFNOW", timestampNow)
     context.put("DB_NAME", dbName)
 
-    try {
-        Template template = Velocity.getTemplate("src/main/resources/createdb.vm")
-        PrintWriter pw = new PrintWriter("../../src/main/resources/dbscripts/$dbName-createdb.sql")
-        template.merge(context, pw)
-        pw.flush()
-    } catch(Exception e) {
-        System.out.println("Exception generating DDL: " + e.getMessage())
+    ["createdb", "migrate-200-to-201"].each { String scriptName ->
+        try {
+            Template template = Velocity.getTemplate("src/main/resources/${scriptName}.vm")
+            PrintWriter pw = new PrintWriter("../../src/main/resources/dbscripts/$dbName-${scriptName}.sql")
+            template.merge(context, pw)
+            pw.flush()
+        } catch(Exception e) {
+            System.out.println("Exception generating $scriptName DDL: " + e.getMessage())
+        }
     }
 }
 
@@ -29,13 +29,20 @@ import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.ResponseStatus;
+import org.tightblog.rendering.cache.CacheWarmer;
+import org.tightblog.rendering.cache.EntryFragmentCache;
+import org.tightblog.rendering.cache.WeblogWidgetCache;
 import org.tightblog.rendering.service.CommentSpamChecker;
 import org.tightblog.service.LuceneIndexer;
+import org.tightblog.service.WeblogEntryManager;
+import org.tightblog.service.indexer.IndexUpdateQueue;
+import org.tightblog.service.indexer.RebuildIndexTask;
 import org.tightblog.domain.Weblog;
 import org.tightblog.domain.WebloggerProperties;
 import org.tightblog.rendering.cache.LazyExpiringCache;
 import org.tightblog.dao.WeblogDao;
 import org.tightblog.dao.WebloggerPropertiesDao;
+import org.tightblog.util.HTMLSanitizer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -64,18 +71,32 @@ public class AdminController {
     private final CommentSpamChecker commentValidator;
     private final WeblogDao weblogDao;
     private final WebloggerPropertiesDao webloggerPropertiesDao;
+    private final CacheWarmer cacheWarmer;
+    private final WeblogEntryManager weblogEntryManager;
+    private final EntryFragmentCache entryFragmentCache;
+    private final WeblogWidgetCache weblogWidgetCache;
 
     private record WeblogData(String id, String name, String handle, boolean visible) { }
 
+    private record CacheWarmerData(boolean enabled, long keysWarmed, int queueSize) { }
+
+    private record WidgetCacheData(long size, List<WeblogWidgetCache.WidgetStats> widgets) { }
+
     @Autowired
     public AdminController(Set<LazyExpiringCache> cacheSet, LuceneIndexer luceneIndexer,
                            CommentSpamChecker commentValidator, WeblogDao weblogDao,
-                           WebloggerPropertiesDao webloggerPropertiesDao) {
+                           WebloggerPropertiesDao webloggerPropertiesDao, CacheWarmer cacheWarmer,
+                           WeblogEntryManager weblogEntryManager, EntryFragmentCache entryFragmentCache,
+                           WeblogWidgetCache weblogWidgetCache) {
         this.cacheSet = cacheSet;
         this.luceneIndexer = luceneIndexer;
         this.commentValidator = commentValidator;
         this.weblogDao = weblogDao;
         this.webloggerPropertiesDao = webloggerPropertiesDao;
+        this.cacheWarmer = cacheWarmer;
+        this.weblogEntryManager = weblogEntryManager;
+        this.entryFragmentCache = entryFragmentCache;
+        this.weblogWidgetCache = weblogWidgetCache;
     }
 
     @GetMapping(value = "/caches")
@@ -91,6 +112,29 @@ public class AdminController {
         maybeCache.ifPresent(LazyExpiringCache::invalidateAll);
     }
 
+    @GetMapping(value = "/cachewarmer")
+    public CacheWarmerData getCacheWarmerData() {
+        return new CacheWarmerData(cacheWarmer.isEnabled(), cacheWarmer.getKeysWarmed(), cacheWarmer.getQueueSize());
+    }
+
+    @PostMapping(value = "/cachewarmer/{enabled}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void setCacheWarmerEnabled(@PathVariable boolean enabled) {
+        cacheWarmer.setEnabled(enabled);
+        LOG.info("cache warming {} by administrator", enabled ? "enabled" : "disabled");
+    }
+
+    @GetMapping(value = "/widgetcache")
+    public WidgetCacheData getWidgetCacheData() {
+        return new WidgetCacheData(weblogWidgetCache.getEstimatedSize(), weblogWidgetCache.getStats());
+    }
+
+    @PostMapping(value = "/widgetcache/clear")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void emptyWidgetCache() {
+        weblogWidgetCache.invalidateAll();
+    }
+
     @PostMapping(value = "/resethitcount")
     @ResponseStatus(HttpStatus.NO_CONTENT)
     public void resetHitCount() {
@@ -106,6 +150,31 @@ public class AdminController {
         return list;
     }
 
+    @GetMapping(value = "/indexqueue")
+    public IndexUpdateQueue.Stats getIndexQueueData() {
+        return luceneIndexer.getUpdateQueueStats();
+    }
+
+    @GetMapping(value = "/searchindex/rebuild")
+    public ResponseEntity<RebuildIndexTask.Progress> getIndexRebuildProgress() {
+        RebuildIndexTask.Progress progress = luceneIndexer.getRebuildProgress();
+        return progress == null ? ResponseEntity.noContent().build() : ResponseEntity.ok(progress);
+    }
+
+    @PostMapping(value = "/searchindex/rebuild")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void rebuildAllIndexes() {
+        luceneIndexer.rebuildWeblogIndex();
+        LOG.info("search index rebuild started by administrator");
+    }
+
+    @PostMapping(value = "/searchindex/rebuild/cancel")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void cancelIndexRebuild() {
+        luceneIndexer.cancelRebuild();
+        LOG.info("search index rebuild cancelled by administrator");
+    }
+
     @PostMapping(value = "/weblog/{handle}/rebuildindex")
     public ResponseEntity<?> rebuildIndex(@PathVariable String handle) {
         Weblog weblog = weblogDao.findByHandle(handle);
@@ -121,7 +190,12 @@ public class AdminController {
     public void updateProperties(@Valid @RequestBody WebloggerProperties properties) {
         Weblog mainBlog = Optional.ofNullable(properties.getMainBlogId()).map(weblogDao::findByIdOrNull).orElse(null);
         properties.setMainBlog(mainBlog);
+        HTMLSanitizer.Level oldBlogHtmlPolicy = webloggerPropertiesDao.findOrNull().getBlogHtmlPolicy();
         webloggerPropertiesDao.saveAndFlush(properties);
         commentValidator.refreshGlobalBlacklist();
+        if (properties.getBlogHtmlPolicy() != oldBlogHtmlPolicy) {
+            entryFragmentCache.invalidateAll();
+            weblogEntryManager.updateStoredRenderingsInBackground();
+        }
     }
 }
@@ -172,6 +172,7 @@ public class CommentController {
         wec.setContent(Jsoup.clean(content, commentHTMLSafelist));
 
         weblogEntryManager.saveComment(wec, true);
+        luceneIndexer.updateIndex(wec.getWeblogEntry(), false);
         return wec;
     }
 }
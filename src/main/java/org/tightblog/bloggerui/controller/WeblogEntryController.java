@@ -155,6 +155,7 @@ public class WeblogEntryController {
         criteria.setOffset(page * ITEMS_PER_PAGE);
         criteria.setMaxResults(ITEMS_PER_PAGE + 1);
         criteria.setCalculatePermalinks(true);
+        criteria.setFetchProfile(WeblogEntrySearchCriteria.FetchProfile.ADMIN_LIST);
         List<WeblogEntry> rawEntries = weblogEntryManager.getWeblogEntries(criteria);
 
         List<WeblogEntry> entries = rawEntries.stream()
@@ -15,14 +15,19 @@
  */
 package org.tightblog.config;
 
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.caffeine.CaffeineCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.tightblog.rendering.cache.DiskCacheTier;
+import org.tightblog.rendering.cache.EntryFragmentCache;
 import org.tightblog.rendering.cache.LazyExpiringCache;
 
+import java.nio.file.Path;
+
 @Configuration
 public class AppConfig {
 
@@ -41,15 +46,39 @@ public class AppConfig {
     @Bean
     public LazyExpiringCache weblogPageCache(
             @Value("${weblogPageCache.maxEntries:400}") int maxEntries,
-            @Value("${weblogPageCache.timeoutHours:48}") int timeoutHours) {
-        return new LazyExpiringCache("cache.weblogpage", maxEntries, timeoutHours);
+            @Value("${weblogPageCache.maxBytes:0}") long maxBytes,
+            @Value("${weblogPageCache.timeoutHours:48}") int timeoutHours,
+            @Value("${weblogPageCache.staleWhileRevalidateSeconds:0}") long staleWhileRevalidateSeconds,
+            @Value("${weblogPageCache.diskDir:}") String diskDir,
+            @Value("${weblogPageCache.diskMaxBytes:268435456}") long diskMaxBytes,
+            @Value("${weblogger.version:Unknown}") String version,
+            @Value("${weblogger.revision:Unknown}") String revision) {
+        LazyExpiringCache cache = new LazyExpiringCache("cache.weblogpage", maxEntries, maxBytes, timeoutHours);
+        cache.setStaleWhileRevalidateSeconds(staleWhileRevalidateSeconds);
+        cache.setRevalidationExecutor(blogTaskScheduler());
+        if (!StringUtils.isBlank(diskDir)) {
+            cache.setDiskTier(new DiskCacheTier(Path.of(diskDir), diskMaxBytes, version + "-" + revision));
+        }
+        return cache;
     }
 
     @Bean
     public LazyExpiringCache weblogFeedCache(
         @Value("${weblogFeedCache.maxEntries:200}") int maxEntries,
-        @Value("${weblogFeedCache.timeoutHours:48}") int timeoutHours) {
-        return new LazyExpiringCache("cache.weblogfeed", maxEntries, timeoutHours);
+        @Value("${weblogFeedCache.maxBytes:0}") long maxBytes,
+        @Value("${weblogFeedCache.timeoutHours:48}") int timeoutHours,
+        @Value("${weblogFeedCache.staleWhileRevalidateSeconds:0}") long staleWhileRevalidateSeconds) {
+        LazyExpiringCache cache = new LazyExpiringCache("cache.weblogfeed", maxEntries, maxBytes, timeoutHours);
+        cache.setStaleWhileRevalidateSeconds(staleWhileRevalidateSeconds);
+        cache.setRevalidationExecutor(blogTaskScheduler());
+        return cache;
+    }
+
+    @Bean
+    public EntryFragmentCache entryFragmentCache(
+            @Value("${entryFragmentCache.maxEntries:2000}") int maxEntries,
+            @Value("${entryFragmentCache.timeoutHours:48}") int timeoutHours) {
+        return new EntryFragmentCache(maxEntries, timeoutHours);
     }
 
     @Bean
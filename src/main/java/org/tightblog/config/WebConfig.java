@@ -29,9 +29,11 @@ import org.thymeleaf.spring5.templateresolver.SpringResourceTemplateResolver;
 import org.thymeleaf.spring5.SpringTemplateEngine;
 import org.thymeleaf.templatemode.TemplateMode;
 import org.thymeleaf.templateresolver.ITemplateResolver;
+import org.tightblog.rendering.cache.EntryFragmentCache;
 import org.tightblog.rendering.model.Model;
 import org.tightblog.rendering.model.URLModel;
 import org.tightblog.rendering.model.UtilitiesModel;
+import org.tightblog.rendering.service.EntryFragmentDialect;
 import org.tightblog.rendering.service.ThemeTemplateResolver;
 import org.tightblog.rendering.service.ThymeleafRenderer;
 
@@ -88,19 +90,23 @@ public class WebConfig implements WebMvcConfigurer {
 
     @Bean
     public SpringTemplateEngine blogTemplateEngine(ThemeTemplateResolver themeTemplateResolver,
-                                                   SpringResourceTemplateResolver standardTemplateResolver) {
+                                                   SpringResourceTemplateResolver standardTemplateResolver,
+                                                   EntryFragmentCache entryFragmentCache) {
         SpringTemplateEngine engine = new SpringTemplateEngine();
         Set<ITemplateResolver> templateResolvers = new HashSet<>();
         templateResolvers.add(themeTemplateResolver);
         templateResolvers.add(standardTemplateResolver);
         engine.setTemplateResolvers(templateResolvers);
+        engine.addDialect(new EntryFragmentDialect(entryFragmentCache));
         return engine;
     }
 
     @Bean
-    public SpringTemplateEngine standardTemplateEngine(SpringResourceTemplateResolver standardTemplateResolver) {
+    public SpringTemplateEngine standardTemplateEngine(SpringResourceTemplateResolver standardTemplateResolver,
+                                                       EntryFragmentCache entryFragmentCache) {
         SpringTemplateEngine engine = new SpringTemplateEngine();
         engine.setTemplateResolver(standardTemplateResolver);
+        engine.addDialect(new EntryFragmentDialect(entryFragmentCache));
         return engine;
     }
 
@@ -109,9 +115,11 @@ public class WebConfig implements WebMvcConfigurer {
      * Examples: Atom feeds and the ExternalSourceController (embedded GitHub code).
      */
     @Bean
-    public ThymeleafRenderer standardRenderer(SpringTemplateEngine standardTemplateEngine) {
+    public ThymeleafRenderer standardRenderer(SpringTemplateEngine standardTemplateEngine,
+                                              EntryFragmentCache entryFragmentCache) {
         ThymeleafRenderer tr = new ThymeleafRenderer();
         tr.setTemplateEngine(standardTemplateEngine);
+        tr.setFragmentCache(entryFragmentCache);
         return tr;
     }
 
@@ -120,9 +128,11 @@ public class WebConfig implements WebMvcConfigurer {
      * strategy for determining the proper templates to use (default or blogger-overridden),
      */
     @Bean
-    public ThymeleafRenderer blogRenderer(SpringTemplateEngine blogTemplateEngine) {
+    public ThymeleafRenderer blogRenderer(SpringTemplateEngine blogTemplateEngine,
+                                          EntryFragmentCache entryFragmentCache) {
         ThymeleafRenderer tr = new ThymeleafRenderer();
         tr.setTemplateEngine(blogTemplateEngine);
+        tr.setFragmentCache(entryFragmentCache);
         return tr;
     }
 
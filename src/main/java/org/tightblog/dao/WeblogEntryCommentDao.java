@@ -18,6 +18,7 @@ package org.tightblog.dao;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 import org.tightblog.domain.Weblog;
@@ -25,12 +26,15 @@ import org.tightblog.domain.WeblogEntry;
 import org.tightblog.domain.WeblogEntryComment;
 import org.tightblog.domain.WeblogEntryComment.ApprovalStatus;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
 @Repository
 public interface WeblogEntryCommentDao extends JpaRepository<WeblogEntryComment, String> {
 
+    String APPROVED_COMMENT_COUNTS = "ApprovedCommentCounts";
+
     // method should be used with care as it returns all comments regardless of approval status
     List<WeblogEntryComment> findByWeblogEntry(WeblogEntry e);
 
@@ -44,18 +48,42 @@ public interface WeblogEntryCommentDao extends JpaRepository<WeblogEntryComment,
 
     int countByWeblogEntry(WeblogEntry e);
 
-    @Cacheable(value = "ApprovedCommentCounts", key = "#entry.id")
+    // loaded atomically with the eviction of the count, so a count from before one isn't cached
+    @Cacheable(value = APPROVED_COMMENT_COUNTS, key = "#entry.id", sync = true)
     default int countByWeblogEntryAndStatusApproved(WeblogEntry entry) {
         return countByWeblogEntryAndStatusIn(entry, Collections.unmodifiableList(List.of(ApprovalStatus.APPROVED)));
     }
 
-    @CacheEvict(cacheNames = {"ApprovedCommentCounts"}, key = "#entry.id")
+    @CacheEvict(cacheNames = {APPROVED_COMMENT_COUNTS}, key = "#entry.id")
     default void evictWeblogEntryCommentCounts(WeblogEntry entry) {
         // no-op
     }
 
     int countByWeblogEntryAndStatusIn(WeblogEntry entry, List<ApprovalStatus> statuses);
 
+    /**
+     * Approved comment counts of several entries at once, as rows of entry id and count,
+     * entries without approved comments omitted.
+     */
+    default List<Object[]> countApprovedGroupedByWeblogEntry(Collection<String> entryIds) {
+        return countGroupedByWeblogEntry(entryIds, ApprovalStatus.APPROVED);
+    }
+
+    @Query("SELECT c.weblogEntry.id, COUNT(c) FROM WeblogEntryComment c WHERE c.weblogEntry.id IN ?1 " +
+            "AND c.status = ?2 GROUP BY c.weblogEntry.id")
+    List<Object[]> countGroupedByWeblogEntry(Collection<String> entryIds, ApprovalStatus status);
+
+    /**
+     * Approved comments of several entries at once, each entry's in order of posting.
+     */
+    default List<WeblogEntryComment> findApprovedByWeblogEntryIds(Collection<String> entryIds) {
+        return findByWeblogEntryIdsAndStatus(entryIds, ApprovalStatus.APPROVED);
+    }
+
+    @Query("SELECT c FROM WeblogEntryComment c WHERE c.weblogEntry.id IN ?1 AND c.status = ?2 " +
+            "ORDER BY c.postTime ASC")
+    List<WeblogEntryComment> findByWeblogEntryIdsAndStatus(Collection<String> entryIds, ApprovalStatus status);
+
     @Cacheable(value = "UnapprovedCommentCounts", key = "#weblog.id")
     default int countByWeblogAndStatusUnapproved(Weblog weblog) {
         return countByWeblogAndStatusIn(weblog, Collections.unmodifiableList(
@@ -15,6 +15,7 @@
  */
 package org.tightblog.dao;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
@@ -23,6 +24,8 @@ import org.springframework.transaction.annotation.Transactional;
 import org.tightblog.domain.Weblog;
 import org.tightblog.domain.WeblogEntry;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -35,6 +38,23 @@ public interface WeblogEntryDao extends JpaRepository<WeblogEntry, String> {
 
     int countByWeblog(Weblog weblog);
 
+    long countByStatus(WeblogEntry.PubStatus status);
+
+    /**
+     * Ids of entries saved, or whose approved comments changed, since the given time.
+     */
+    @Query("SELECT e.id FROM WeblogEntry e WHERE e.updateTime >= ?1 OR e.commentUpdateTime >= ?1")
+    List<String> findIdsUpdatedSince(Instant since);
+
+    // recorded apart from the entry's update time, comment changes not being edits of the entry
+    @Transactional("transactionManager")
+    @Modifying
+    @Query("UPDATE WeblogEntry e SET e.commentUpdateTime = ?2 WHERE e.id = ?1")
+    void updateCommentUpdateTime(String id, Instant commentUpdateTime);
+
+    @Query("SELECT e.id FROM WeblogEntry e WHERE e.id IN ?1 AND e.status = ?2")
+    List<String> findIdsByIdInAndStatus(Collection<String> ids, WeblogEntry.PubStatus status);
+
     @Transactional("transactionManager")
     @Modifying
     @Query("UPDATE WeblogEntry e SET e.commentDays = ?2 WHERE e.weblog = ?1")
@@ -42,6 +62,16 @@ public interface WeblogEntryDao extends JpaRepository<WeblogEntry, String> {
 
     WeblogEntry findByWeblogAndAnchor(Weblog weblog, String anchor);
 
+    List<WeblogEntry> findByRenderingStampIsNullOrRenderingStampNot(String renderingStamp, Pageable pageable);
+
+    // leaves entries changed since being read alone, as they were rendered anew on save
+    @Transactional("transactionManager")
+    @Modifying
+    @Query("UPDATE WeblogEntry e SET e.renderedText = ?3, e.renderedSummary = ?4, e.renderingStamp = ?5 " +
+            "WHERE e.id = ?1 AND e.updateTime = ?2")
+    int updateRendering(String id, Instant updateTime, String renderedText, String renderedSummary,
+                        String renderingStamp);
+
     default WeblogEntry findByIdOrNull(String id) {
         return findById(id).orElse(null);
     }
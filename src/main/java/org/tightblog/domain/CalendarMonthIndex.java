@@ -0,0 +1,143 @@
+/*
+   Copyright 2026 the original author or authors.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.tightblog.domain;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Published entries of a weblog (or one of its categories) by month and day, as needed for
+ * blog calendars: which days have entries, the entries' titles and anchors for linking to
+ * them, and the nearest months before and after a given one having entries.  Immutable once
+ * built, so it can be shared by all renderings of the weblog, entries being published,
+ * unpublished or removed by creating an updated copy sharing the unaffected months.
+ */
+public final class CalendarMonthIndex {
+
+    public record EntrySummary(String id, String anchor, String title, Instant pubTime) { }
+
+    public static final CalendarMonthIndex EMPTY = new CalendarMonthIndex(new TreeMap<>());
+
+    // a day's entries in order of publish time and then id
+    private static final Comparator<EntrySummary> ORDER =
+            Comparator.comparing(EntrySummary::pubTime).thenComparing(EntrySummary::id);
+
+    private final NavigableMap<YearMonth, Map<LocalDate, List<EntrySummary>>> months;
+
+    private CalendarMonthIndex(NavigableMap<YearMonth, Map<LocalDate, List<EntrySummary>>> months) {
+        this.months = months;
+    }
+
+    /**
+     * Builder of an index, to be given entries in ascending order of publish time.
+     */
+    public static class Builder {
+        private final NavigableMap<YearMonth, Map<LocalDate, List<EntrySummary>>> months = new TreeMap<>();
+
+        public Builder add(Instant pubTime, String id, String anchor, String title) {
+            LocalDate day = dayOf(pubTime);
+            months.computeIfAbsent(YearMonth.from(day), m -> new TreeMap<>())
+                    .computeIfAbsent(day, d -> new ArrayList<>())
+                    .add(new EntrySummary(id, anchor, title, pubTime));
+            return this;
+        }
+
+        public CalendarMonthIndex build() {
+            return months.isEmpty() ? EMPTY : new CalendarMonthIndex(months);
+        }
+    }
+
+    // days as determined for entry searches, see WeblogEntryManager.getDateToWeblogEntryMap()
+    private static LocalDate dayOf(Instant pubTime) {
+        return pubTime.atZone(ZoneId.systemDefault()).toLocalDate();
+    }
+
+    /**
+     * Entries of a month by day, empty if it has none.
+     */
+    public Map<LocalDate, List<EntrySummary>> getDays(YearMonth month) {
+        return Collections.unmodifiableMap(months.getOrDefault(month, Collections.emptyMap()));
+    }
+
+    /**
+     * Nearest month before the given one having entries, null if none.
+     */
+    public YearMonth getPreviousMonth(YearMonth month) {
+        return months.lowerKey(month);
+    }
+
+    /**
+     * Nearest month after the given one having entries, null if none.
+     */
+    public YearMonth getNextMonth(YearMonth month) {
+        return months.higherKey(month);
+    }
+
+    /**
+     * Copy of this index with the given entry added, replacing any earlier version of it.
+     */
+    public CalendarMonthIndex with(Instant pubTime, String id, String anchor, String title) {
+        NavigableMap<YearMonth, Map<LocalDate, List<EntrySummary>>> copy = without(id).months;
+        if (copy == months) {
+            copy = new TreeMap<>(months);
+        }
+        LocalDate day = dayOf(pubTime);
+        Map<LocalDate, List<EntrySummary>> days = new TreeMap<>(copy.getOrDefault(YearMonth.from(day), Map.of()));
+        List<EntrySummary> entries = new ArrayList<>(days.getOrDefault(day, List.of()));
+        EntrySummary added = new EntrySummary(id, anchor, title, pubTime);
+        int pos = Collections.binarySearch(entries, added, ORDER);
+        entries.add(pos < 0 ? -pos - 1 : pos, added);
+        days.put(day, entries);
+        copy.put(YearMonth.from(day), days);
+        return new CalendarMonthIndex(copy);
+    }
+
+    /**
+     * Copy of this index without the given entry, or this index if it doesn't hold it.
+     */
+    public CalendarMonthIndex without(String id) {
+        for (Map.Entry<YearMonth, Map<LocalDate, List<EntrySummary>>> month : months.entrySet()) {
+            for (Map.Entry<LocalDate, List<EntrySummary>> day : month.getValue().entrySet()) {
+                if (day.getValue().stream().anyMatch(e -> e.id().equals(id))) {
+                    NavigableMap<YearMonth, Map<LocalDate, List<EntrySummary>>> copy = new TreeMap<>(months);
+                    Map<LocalDate, List<EntrySummary>> days = new TreeMap<>(month.getValue());
+                    List<EntrySummary> entries = day.getValue().stream().filter(e -> !e.id().equals(id)).toList();
+                    if (entries.isEmpty()) {
+                        days.remove(day.getKey());
+                    } else {
+                        days.put(day.getKey(), entries);
+                    }
+                    if (days.isEmpty()) {
+                        copy.remove(month.getKey());
+                    } else {
+                        copy.put(month.getKey(), days);
+                    }
+                    return new CalendarMonthIndex(copy);
+                }
+            }
+        }
+        return this;
+    }
+}
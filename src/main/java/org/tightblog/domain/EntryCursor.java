@@ -0,0 +1,82 @@
+/*
+   Copyright 2026 the original author or authors.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.tightblog.domain;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Position in a chronological listing of entries, for seeking to the entries published
+ * before (older) or after (newer) a given entry rather than skipping a number of them,
+ * which databases do by reading all of the skipped rows.  Positions are by publish time
+ * and then id, so entries sharing a publish time are neither repeated nor skipped.
+ * <p>
+ * Cursors appear in URLs as tokens of the form <code>seconds_nanos_id</code>, which stay
+ * valid as entries are added or removed.
+ */
+public record EntryCursor(Instant pubTime, String entryId, boolean newer) {
+
+    private static final Pattern TOKEN = Pattern.compile("(-?\\d{1,12})_(\\d{1,9})_([A-Za-z0-9-]{1,48})");
+
+    /**
+     * Cursor for entries older than the given one.
+     */
+    public static EntryCursor before(WeblogEntry entry) {
+        return new EntryCursor(storedPubTime(entry), entry.getId(), false);
+    }
+
+    /**
+     * Cursor for entries newer than the given one.
+     */
+    public static EntryCursor after(WeblogEntry entry) {
+        return new EntryCursor(storedPubTime(entry), entry.getId(), true);
+    }
+
+    // publish time at the millisecond precision of the database, as an entry held in memory
+    // may have it finer, which would otherwise place the cursor just past its own entry
+    private static Instant storedPubTime(WeblogEntry entry) {
+        return entry.getPubTime().truncatedTo(ChronoUnit.MILLIS);
+    }
+
+    /**
+     * Parse a token as given by getToken().
+     * @return cursor, or null if the token is null or invalid
+     */
+    public static EntryCursor parse(String token, boolean newer) {
+        if (token == null) {
+            return null;
+        }
+        Matcher matcher = TOKEN.matcher(token);
+        if (!matcher.matches()) {
+            return null;
+        }
+        Instant pubTime = Instant.ofEpochSecond(Long.parseLong(matcher.group(1)), Long.parseLong(matcher.group(2)));
+        return new EntryCursor(pubTime, matcher.group(3), newer);
+    }
+
+    public String getToken() {
+        return pubTime.getEpochSecond() + "_" + pubTime.getNano() + "_" + entryId;
+    }
+
+    /**
+     * Name of the URL parameter carrying the token.
+     */
+    public String getParamName() {
+        return newer ? "after" : "before";
+    }
+}
@@ -0,0 +1,78 @@
+/*
+   Copyright 2026 the original author or authors.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.tightblog.domain;
+
+import java.time.Instant;
+
+/**
+ * Fields of an approved comment shown in lists of recent comments, copied from the comment
+ * (with those of its entry) for the list to be held and shared as with {@link RecentWeblogEntry}.
+ */
+public final class RecentComment {
+
+    private final String id;
+    private final String name;
+    private final String url;
+    private final String content;
+    private final Instant postTime;
+    private final RecentWeblogEntry weblogEntry;
+
+    public RecentComment(String id, String name, String url, String content, Instant postTime,
+                         RecentWeblogEntry weblogEntry) {
+        this.id = id;
+        this.name = name;
+        this.url = url;
+        this.content = content;
+        this.postTime = postTime;
+        this.weblogEntry = weblogEntry;
+    }
+
+    public static RecentComment of(WeblogEntryComment comment) {
+        return new RecentComment(comment.getId(), comment.getName(), comment.getUrl(), comment.getContent(),
+                comment.getPostTime(), RecentWeblogEntry.of(comment.getWeblogEntry()));
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public Instant getPostTime() {
+        return postTime;
+    }
+
+    /**
+     * Post time in epoch milliseconds, as used in comment URLs, see WeblogEntryComment.getTimestamp().
+     */
+    public String getTimestamp() {
+        return postTime == null ? null : Long.toString(postTime.toEpochMilli());
+    }
+
+    public RecentWeblogEntry getWeblogEntry() {
+        return weblogEntry;
+    }
+}
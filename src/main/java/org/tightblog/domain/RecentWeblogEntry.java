@@ -0,0 +1,65 @@
+/*
+   Copyright 2026 the original author or authors.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.tightblog.domain;
+
+import java.time.Instant;
+
+/**
+ * Fields of a published entry shown in lists of recent entries (and recent comments), copied
+ * from the entry so the list can be held and shared by concurrent renderings of a weblog
+ * without holding on to persistence-managed objects.
+ */
+public final class RecentWeblogEntry {
+
+    private final String id;
+    private final String anchor;
+    private final String title;
+    private final Instant pubTime;
+    private final String permalink;
+
+    public RecentWeblogEntry(String id, String anchor, String title, Instant pubTime, String permalink) {
+        this.id = id;
+        this.anchor = anchor;
+        this.title = title;
+        this.pubTime = pubTime;
+        this.permalink = permalink;
+    }
+
+    public static RecentWeblogEntry of(WeblogEntry entry) {
+        return new RecentWeblogEntry(entry.getId(), entry.getAnchor(), entry.getTitle(), entry.getPubTime(),
+                entry.getPermalink());
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getAnchor() {
+        return anchor;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public Instant getPubTime() {
+        return pubTime;
+    }
+
+    public String getPermalink() {
+        return permalink;
+    }
+}
@@ -120,6 +120,12 @@ public class WeblogEntry implements WeblogOwned {
     private User creator;
     private String searchDescription;
 
+    // text and summary processed per edit format and blog HTML policy, see WeblogEntryManager
+    private String renderedText;
+    private String renderedSummary;
+    private String renderingStamp;
+    private Instant commentUpdateTime;
+
     // Associated objects
     private Weblog weblog;
     private WeblogCategory category;
@@ -128,6 +134,8 @@ public class WeblogEntry implements WeblogOwned {
 
     // temporary non-persisted fields used for form entry & retrieving associated data
     private WeblogEntryCommentDao weblogEntryCommentDao;
+    // approved comments loaded along with the entry, null if not loaded
+    private List<WeblogEntryComment> comments;
     private int hours;
     private int minutes;
     private String dateString;
@@ -244,6 +252,57 @@ public class WeblogEntry implements WeblogOwned {
         this.editFormat = editFormat;
     }
 
+    /**
+     * Text as displayed, i.e. converted from its edit format and sanitized, if up to date per
+     * the rendering stamp.
+     */
+    @Column(name = "rendered_text")
+    @JsonIgnore
+    public String getRenderedText() {
+        return renderedText;
+    }
+
+    public void setRenderedText(String renderedText) {
+        this.renderedText = renderedText;
+    }
+
+    @Column(name = "rendered_summary")
+    @JsonIgnore
+    public String getRenderedSummary() {
+        return renderedSummary;
+    }
+
+    public void setRenderedSummary(String renderedSummary) {
+        this.renderedSummary = renderedSummary;
+    }
+
+    /**
+     * Blog HTML policy and processing version the rendered text and summary were made with.
+     */
+    @Column(name = "rendering_stamp")
+    @JsonIgnore
+    public String getRenderingStamp() {
+        return renderingStamp;
+    }
+
+    public void setRenderingStamp(String renderingStamp) {
+        this.renderingStamp = renderingStamp;
+    }
+
+    /**
+     * Last time a comment of the entry was approved, edited or removed once approved, null if
+     * none; see WeblogEntryDao.findIdsUpdatedSince().
+     */
+    @Column(name = "comment_updatetime")
+    @JsonIgnore
+    public Instant getCommentUpdateTime() {
+        return commentUpdateTime;
+    }
+
+    public void setCommentUpdateTime(Instant commentUpdateTime) {
+        this.commentUpdateTime = commentUpdateTime;
+    }
+
     @Column(name = "enclosure_url")
     public String getEnclosureUrl() {
         return enclosureUrl;
@@ -406,10 +465,21 @@ public class WeblogEntry implements WeblogOwned {
     @Transient
     @JsonIgnore
     public List<WeblogEntryComment> getComments() {
+        if (comments != null) {
+            return comments;
+        }
         return weblogEntryCommentDao != null ? weblogEntryCommentDao.findByWeblogEntryAndStatusApproved(this)
                 : new ArrayList<>();
     }
 
+    /**
+     * Approved comments of the entry, as loaded for several entries at once, to be returned by
+     * getComments() in place of querying for them.
+     */
+    public void setComments(List<WeblogEntryComment> comments) {
+        this.comments = comments;
+    }
+
     @Transient
     public int getCommentCount() {
         return weblogEntryCommentDao != null ? weblogEntryCommentDao.countByWeblogEntryAndStatusApproved(this) : 0;
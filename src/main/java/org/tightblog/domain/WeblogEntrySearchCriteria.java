@@ -36,6 +36,21 @@ public class WeblogEntrySearchCriteria {
         }
     }
 
+    /**
+     * Objects related to the entries to be loaded along with them, for those the caller will
+     * read of every entry, each kind then taking one join or query rather than one query per entry.
+     */
+    public enum FetchProfile {
+        // entries only, for callers needing little else
+        NONE,
+        // weblog, creator, category and tags, for entries rendered on blog pages and feeds
+        LIST_RENDER,
+        // creator, category and tags, for the blogger UI's listing of a weblog's entries
+        ADMIN_LIST,
+        // weblog, creator, category and approved comments, for entries added to the search index
+        SEARCH_INDEX
+    }
+
     // Weblog or null to get for all weblogs.
     private Weblog weblog;
     // User or null to get for all users.
@@ -63,8 +78,13 @@ public class WeblogEntrySearchCriteria {
     // Offset into results for paging
     private int offset;
 
+    // Alternatively, position in the results to seek to, or null for none
+    private EntryCursor cursor;
+
     private int maxResults = -1;
 
+    private FetchProfile fetchProfile = FetchProfile.NONE;
+
     public Weblog getWeblog() {
         return weblog;
     }
@@ -153,6 +173,22 @@ public class WeblogEntrySearchCriteria {
         this.offset = offset;
     }
 
+    public FetchProfile getFetchProfile() {
+        return fetchProfile;
+    }
+
+    public void setFetchProfile(FetchProfile fetchProfile) {
+        this.fetchProfile = fetchProfile;
+    }
+
+    public EntryCursor getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(EntryCursor cursor) {
+        this.cursor = cursor;
+    }
+
     public int getMaxResults() {
         return maxResults;
     }
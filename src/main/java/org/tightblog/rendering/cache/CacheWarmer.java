@@ -0,0 +1,177 @@
+/*
+   Copyright 2026 the original author or authors.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.tightblog.rendering.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.tightblog.dao.WeblogDao;
+import org.tightblog.domain.Weblog;
+
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Re-renders a weblog's most requested pages and feeds right after it changes, and the
+ * home pages and feeds of the most popular weblogs on startup, so that readers (especially
+ * feed readers polling all at once) don't have to wait on the rendering.  Warming is done
+ * on the task scheduler, at most a configured number of keys at a time.
+ */
+@Component
+public class CacheWarmer {
+
+    private static Logger log = LoggerFactory.getLogger(CacheWarmer.class);
+
+    private final LazyExpiringCache weblogPageCache;
+    private final LazyExpiringCache weblogFeedCache;
+    private final WeblogDao weblogDao;
+    private final Executor executor;
+
+    private final int keysPerWeblog;
+    private final int maxConcurrent;
+    private final int startupWeblogs;
+    private volatile boolean enabled;
+
+    private record WarmupTask(LazyExpiringCache cache, String key) { }
+
+    private final ConcurrentLinkedQueue<WarmupTask> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger activeWorkers = new AtomicInteger();
+    private final AtomicLong keysWarmed = new AtomicLong();
+
+    CacheWarmer(LazyExpiringCache weblogPageCache, LazyExpiringCache weblogFeedCache, WeblogDao weblogDao,
+                @Qualifier("blogTaskScheduler") Executor executor,
+                @Value("${cacheWarmer.enabled:true}") boolean enabled,
+                @Value("${cacheWarmer.keysPerWeblog:10}") int keysPerWeblog,
+                @Value("${cacheWarmer.maxConcurrent:2}") int maxConcurrent,
+                @Value("${cacheWarmer.startupWeblogs:20}") int startupWeblogs) {
+        this.weblogPageCache = weblogPageCache;
+        this.weblogFeedCache = weblogFeedCache;
+        this.weblogDao = weblogDao;
+        this.executor = executor;
+        this.enabled = enabled;
+        this.keysPerWeblog = keysPerWeblog;
+        this.maxConcurrent = maxConcurrent;
+        this.startupWeblogs = startupWeblogs;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            queue.clear();
+        }
+    }
+
+    public long getKeysWarmed() {
+        return keysWarmed.get();
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmPopularWeblogs() {
+        if (enabled && startupWeblogs > 0) {
+            try {
+                List<Weblog> weblogs = weblogDao.findByVisibleTrueAndHitsTodayGreaterThanOrderByHitsTodayDesc(0,
+                        PageRequest.of(0, startupWeblogs));
+                for (Weblog weblog : weblogs) {
+                    enqueue(weblogPageCache, weblog.getHandle());
+                    enqueue(weblogFeedCache, weblog.getHandle());
+                }
+                log.info("Warming caches for {} weblogs", weblogs.size());
+            } catch (RuntimeException e) {
+                // e.g., database not yet set up on initial install
+                log.warn("Unable to determine weblogs for cache warming: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Queue the most requested of a weblog's keys in a cache for re-rendering.  The weblog's
+     * default key (its home page or main feed) is always included.
+     * @param formerKeys keys cached for the weblog before its change
+     */
+    public void warmWeblog(LazyExpiringCache cache, String weblogHandle, Set<String> formerKeys) {
+        if (!enabled || keysPerWeblog <= 0) {
+            return;
+        }
+        Set<String> candidates = new LinkedHashSet<>(formerKeys);
+        candidates.add(weblogHandle);
+        candidates.stream()
+                .filter(key -> key.equals(weblogHandle) || cache.getRequestFrequency(key) > 0)
+                .sorted(Comparator.comparingInt((String key) ->
+                        key.equals(weblogHandle) ? Integer.MAX_VALUE : cache.getRequestFrequency(key)).reversed())
+                .limit(keysPerWeblog)
+                .forEach(key -> enqueue(cache, key));
+    }
+
+    private void enqueue(LazyExpiringCache cache, String key) {
+        queue.add(new WarmupTask(cache, key));
+        int workers = activeWorkers.get();
+        while (workers < maxConcurrent) {
+            if (activeWorkers.compareAndSet(workers, workers + 1)) {
+                try {
+                    executor.execute(this::drainQueue);
+                } catch (RejectedExecutionException e) {
+                    activeWorkers.decrementAndGet();
+                    log.warn("Cache warming task rejected, {} keys left queued", queue.size());
+                }
+                return;
+            }
+            workers = activeWorkers.get();
+        }
+    }
+
+    private void drainQueue() {
+        try {
+            WarmupTask task;
+            while (enabled && (task = queue.poll()) != null) {
+                try {
+                    task.cache().warm(task.key());
+                    keysWarmed.incrementAndGet();
+                } catch (RuntimeException e) {
+                    log.warn("Unable to warm {} in {}", task.key(), task.cache().getCacheHandlerId(), e);
+                }
+            }
+        } finally {
+            activeWorkers.decrementAndGet();
+        }
+        // pick up anything queued while this worker was finishing
+        if (enabled && !queue.isEmpty() && activeWorkers.get() < maxConcurrent) {
+            WarmupTask task = queue.poll();
+            if (task != null) {
+                enqueue(task.cache(), task.key());
+            }
+        }
+    }
+}
@@ -22,6 +22,18 @@ package org.tightblog.rendering.cache;
 
 import org.tightblog.domain.Template.Role;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.zip.GZIPOutputStream;
+
 /**
  * A utility class for storing content that can be cached for subsequent retrieval
  */
@@ -33,6 +45,19 @@ public class CachedContent {
     // the byte array we use to maintain the cached content
     private byte[] content = new byte[0];
 
+    // gzip-compressed copy of the content, created on first need and kept for
+    // the life of this object so cache hits need not compress again
+    private volatile byte[] gzippedContent;
+
+    // hash of the content, created on first need, for use as an HTTP entity tag
+    private volatile String digest;
+
+    // versions of the content tailored to different kinds of readers, see UserSections
+    private final Map<String, CachedContent> views = new ConcurrentHashMap<>(4);
+
+    // rendered for anonymous readers only, as the template read user state directly
+    private boolean anonymousOnly;
+
     public CachedContent(Role role) {
         this.role = role;
     }
@@ -55,5 +80,82 @@ public class CachedContent {
 
     public void setContent(byte[] content) {
         this.content = content;
+        this.gzippedContent = null;
+        this.digest = null;
+        this.views.clear();
+    }
+
+    public boolean isAnonymousOnly() {
+        return anonymousOnly;
+    }
+
+    public void setAnonymousOnly(boolean anonymousOnly) {
+        this.anonymousOnly = anonymousOnly;
+    }
+
+    /**
+     * Get a named version of this content, creating it on the first call.
+     */
+    public CachedContent getView(String name, Function<CachedContent, CachedContent> creator) {
+        return views.computeIfAbsent(name, n -> creator.apply(this));
+    }
+
+    /**
+     * Approximate bytes of heap held by this object: its content, any compressed copy
+     * made of it, and those of any views of it created so far.
+     */
+    public long getHeapBytes() {
+        byte[] gzipped = gzippedContent;
+        long bytes = content.length + (gzipped == null ? 0 : gzipped.length);
+        for (CachedContent view : views.values()) {
+            bytes += view.getHeapBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Get a digest of the content, calculating it on the first call.  Identical content
+     * always produces the same digest, making it suitable as a strong entity tag.
+     */
+    public String getDigest() {
+        String result = digest;
+        if (result == null) {
+            try {
+                byte[] hash = MessageDigest.getInstance("SHA-256").digest(content);
+                // first 128 bits are plenty for telling versions of a page apart
+                result = Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(hash, 16));
+            } catch (NoSuchAlgorithmException e) {
+                // SHA-256 support is required of all Java platforms
+                throw new IllegalStateException(e);
+            }
+            digest = result;
+        }
+        return result;
+    }
+
+    /**
+     * Get the content gzip-compressed, compressing it on the first call.
+     *
+     * @return compressed content, or null if compression would not make it any smaller
+     * (as with very short content) in which case the uncompressed content should be used.
+     */
+    public byte[] getGzippedContent() {
+        byte[] gzipped = gzippedContent;
+        if (gzipped == null) {
+            gzipped = gzip(content);
+            gzippedContent = gzipped;
+        }
+        return gzipped.length < content.length ? gzipped : null;
+    }
+
+    private static byte[] gzip(byte[] data) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length / 4 + 32);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(data);
+        } catch (IOException e) {
+            // not expected with in-memory streams
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
     }
 }
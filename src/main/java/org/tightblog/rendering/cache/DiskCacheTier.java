@@ -0,0 +1,545 @@
+/*
+   Copyright 2026 the original author or authors.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.tightblog.rendering.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tightblog.domain.Template.Role;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Second cache tier keeping rendered content in append-only segment files, so a
+ * {@link LazyExpiringCache} can be repopulated from disk rather than re-rendering
+ * after a restart.
+ * <p>
+ * Each record holds the cache key, the time the content was cached (compared against
+ * the object's last modified time on retrieval just as for in-memory entries), the
+ * template role and the content.  Only an index of record locations is held in memory,
+ * built in the background on startup by scanning the existing segments; until done,
+ * lookups of earlier stored content miss.  Once the segment files exceed their byte
+ * budget the oldest segment is compacted in the background, its still-current records
+ * copied forward (or dropped, if current content alone would fill most of the budget)
+ * and the file deleted.
+ * <p>
+ * Segment files begin with the build version of the application that wrote them.  As
+ * stored content may have been rendered from templates since changed by an upgrade,
+ * segments from other builds are deleted on startup rather than indexed.
+ * <p>
+ * Segment files are read and written by all threads through one FileChannel each.  As
+ * interrupting a thread doing channel I/O closes the channel for every thread, a channel
+ * found closed while its segment is still in use is reopened.
+ */
+public class DiskCacheTier {
+
+    private static Logger log = LoggerFactory.getLogger(DiskCacheTier.class);
+
+    private static final int RECORD_MAGIC = 0x54424331;
+    private static final int SEGMENT_MAGIC = 0x54424353;
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final long MIN_SEGMENT_BYTES = 1024 * 1024;
+
+    private final Path directory;
+    private final long maxBytes;
+    private final long segmentBytes;
+    private final byte[] segmentHeader;
+
+    // segments by sequence number, oldest first
+    private final ConcurrentSkipListMap<Integer, Segment> segments = new ConcurrentSkipListMap<>();
+    private final Map<String, Location> index = new ConcurrentHashMap<>();
+    private final AtomicLong liveBytes = new AtomicLong();
+    private volatile boolean loaded;
+    private volatile Segment activeSegment;
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+    private ExecutorService compactor;
+
+    private static final class Segment {
+        private final int id;
+        private final Path path;
+        // replaced if closed by an interrupted thread, guarded by the segment for replacing
+        private volatile FileChannel channel;
+        // set once deleted or closed, after which the channel is not reopened
+        private boolean retired;
+        private volatile long size;
+
+        private Segment(int id, Path path, FileChannel channel, long size) {
+            this.id = id;
+            this.path = path;
+            this.channel = channel;
+            this.size = size;
+        }
+    }
+
+    private interface ChannelOperation<T> {
+        T apply(FileChannel channel) throws IOException;
+    }
+
+    private record Location(Segment segment, long contentPosition, int length, long crc,
+                            Instant timeCached, Role role) { }
+
+    /**
+     * @param directory folder for this tier's segment files, created if necessary
+     * @param maxBytes total size the segment files are kept within
+     * @param buildVersion identifies the application build, segments written by others being discarded
+     */
+    public DiskCacheTier(Path directory, long maxBytes, String buildVersion) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.segmentBytes = Math.max(MIN_SEGMENT_BYTES, maxBytes / 8);
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(header)) {
+            out.writeInt(SEGMENT_MAGIC);
+            out.writeUTF(buildVersion);
+        } catch (IOException e) {
+            // not expected with in-memory streams
+            throw new UncheckedIOException(e);
+        }
+        this.segmentHeader = header.toByteArray();
+    }
+
+    /**
+     * Open the tier, indexing existing segment files in the background.
+     */
+    public synchronized CompletableFuture<Void> open() throws IOException {
+        Files.createDirectories(directory);
+        List<Segment> existing = new ArrayList<>();
+        List<Path> segmentFiles;
+        try (Stream<Path> files = Files.list(directory)) {
+            segmentFiles = files.filter(p -> p.toString().endsWith(SEGMENT_SUFFIX)).sorted().toList();
+        }
+        int discarded = 0;
+        for (Path path : segmentFiles) {
+            int id;
+            try {
+                id = Integer.parseInt(path.getFileName().toString().replace(SEGMENT_SUFFIX, ""));
+            } catch (NumberFormatException e) {
+                log.warn("Disk cache {} ignoring unexpected file {}", directory, path.getFileName());
+                continue;
+            }
+            if (!isFromThisBuild(path)) {
+                Files.delete(path);
+                discarded++;
+                continue;
+            }
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            Segment segment = new Segment(id, path, channel, channel.size());
+            segments.put(id, segment);
+            existing.add(segment);
+        }
+        if (discarded > 0) {
+            log.info("Disk cache {} discarded {} segments written by another build", directory, discarded);
+        }
+        activeSegment = newSegment();
+        compactor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "disk-cache-compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        return CompletableFuture.runAsync(() -> {
+            existing.forEach(this::loadSegment);
+            loaded = true;
+            log.info("Disk cache {} indexed {} entries from {} segments", directory, index.size(), existing.size());
+        });
+    }
+
+    private boolean isFromThisBuild(Path path) throws IOException {
+        if (Files.size(path) == 0) {
+            return true;
+        }
+        try (InputStream in = Files.newInputStream(path)) {
+            return Arrays.equals(in.readNBytes(segmentHeader.length), segmentHeader);
+        }
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Bytes used by segment files, including superseded records awaiting compaction.
+     */
+    public long getBytesOnDisk() {
+        return segments.values().stream().mapToLong(s -> s.size).sum();
+    }
+
+    public long getLiveBytes() {
+        return liveBytes.get();
+    }
+
+    /**
+     * Retrieve the stored entry for a key, regardless of its freshness.
+     * @return entry or null if not stored or unreadable
+     */
+    LazyExpiringCacheEntry get(String key) {
+        Location location = index.get(key);
+        if (location == null) {
+            return null;
+        }
+        try {
+            CachedContent content = new CachedContent(location.role());
+            content.setContent(read(location));
+            return new LazyExpiringCacheEntry(content, location.timeCached());
+        } catch (ClosedByInterruptException e) {
+            // this thread interrupted, the record remaining readable by others
+            return null;
+        } catch (IOException e) {
+            // segment compacted away while reading, or damaged
+            log.debug("Could not read {} from disk cache: {}", key, e.getMessage());
+            unindex(key, location);
+            return null;
+        }
+    }
+
+    private byte[] read(Location location) throws IOException {
+        byte[] bytes = withChannel(location.segment(), channel -> {
+            ByteBuffer buffer = ByteBuffer.allocate(location.length());
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, location.contentPosition() + buffer.position()) < 0) {
+                    throw new EOFException();
+                }
+            }
+            return buffer.array();
+        });
+        if (crcOf(bytes) != location.crc()) {
+            throw new IOException("Checksum mismatch");
+        }
+        return bytes;
+    }
+
+    synchronized void put(String key, CachedContent content, Instant timeCached) {
+        try {
+            if (activeSegment.size >= segmentBytes) {
+                activeSegment = newSegment();
+            }
+            Location location = append(key, content.getRole(), content.getContent(), timeCached);
+            Location previous = index.put(key, location);
+            liveBytes.addAndGet(location.length() - (previous == null ? 0 : previous.length()));
+            if (getBytesOnDisk() > maxBytes && compactionScheduled.compareAndSet(false, true)) {
+                compactor.execute(this::compactInBackground);
+            }
+        } catch (IOException | RejectedExecutionException e) {
+            log.warn("Could not write {} to disk cache", key, e);
+        }
+    }
+
+    void invalidate(String key) {
+        Location location = index.get(key);
+        if (location != null) {
+            unindex(key, location);
+        }
+    }
+
+    synchronized void invalidateAll() {
+        index.clear();
+        liveBytes.set(0);
+        try {
+            for (Segment segment : new ArrayList<>(segments.values())) {
+                if (segment != activeSegment) {
+                    deleteSegment(segment);
+                }
+            }
+            withChannel(activeSegment, channel -> channel.truncate(0));
+            activeSegment.size = 0;
+        } catch (IOException e) {
+            log.warn("Could not clear disk cache {}", directory, e);
+        }
+    }
+
+    public void close() {
+        if (compactor != null) {
+            compactor.shutdownNow();
+            try {
+                compactor.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        closeSegments();
+    }
+
+    private synchronized void closeSegments() {
+        for (Segment segment : segments.values()) {
+            try {
+                retire(segment);
+            } catch (IOException e) {
+                log.warn("Could not close {}", segment.path, e);
+            }
+        }
+    }
+
+    /**
+     * Run an I/O operation on a segment's channel, reopening the channel if closed by the
+     * interruption of another thread using it and retrying once.  If closed by this thread's
+     * interruption, the channel is reopened for others and the exception rethrown.
+     */
+    private <T> T withChannel(Segment segment, ChannelOperation<T> operation) throws IOException {
+        FileChannel channel = segment.channel;
+        try {
+            return operation.apply(channel);
+        } catch (ClosedByInterruptException e) {
+            reopen(segment, channel);
+            throw e;
+        } catch (ClosedChannelException e) {
+            FileChannel reopened = reopen(segment, channel);
+            if (reopened == null) {
+                throw e;
+            }
+            return operation.apply(reopened);
+        }
+    }
+
+    // returns the segment's open channel, null if the segment was deleted or closed meanwhile
+    private static FileChannel reopen(Segment segment, FileChannel closed) throws IOException {
+        synchronized (segment) {
+            if (segment.retired) {
+                return null;
+            }
+            if (segment.channel == closed && !closed.isOpen()) {
+                log.debug("Reopening disk cache segment {} closed by an interrupted thread", segment.path);
+                segment.channel = FileChannel.open(segment.path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+            return segment.channel;
+        }
+    }
+
+    private static void retire(Segment segment) throws IOException {
+        synchronized (segment) {
+            segment.retired = true;
+            segment.channel.close();
+        }
+    }
+
+    private void unindex(String key, Location location) {
+        if (index.remove(key, location)) {
+            liveBytes.addAndGet(-location.length());
+        }
+    }
+
+    private Segment newSegment() throws IOException {
+        int id = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+        Path path = directory.resolve(String.format("%08d%s", id, SEGMENT_SUFFIX));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        Segment segment = new Segment(id, path, channel, 0);
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private void deleteSegment(Segment segment) throws IOException {
+        segments.remove(segment.id);
+        retire(segment);
+        Files.deleteIfExists(segment.path);
+    }
+
+    private Location append(String key, Role role, byte[] content, Instant timeCached) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] roleBytes = role.name().getBytes(StandardCharsets.UTF_8);
+        long crc = crcOf(content);
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream(64 + keyBytes.length);
+        try (DataOutputStream out = new DataOutputStream(header)) {
+            out.writeInt(RECORD_MAGIC);
+            out.writeInt(keyBytes.length);
+            out.write(keyBytes);
+            out.writeInt(roleBytes.length);
+            out.write(roleBytes);
+            out.writeLong(timeCached.toEpochMilli());
+            out.writeLong(crc);
+            out.writeInt(content.length);
+        }
+
+        Segment segment = activeSegment;
+        if (segment.size == 0) {
+            withChannel(segment, channel -> {
+                ByteBuffer segmentStart = ByteBuffer.wrap(segmentHeader);
+                while (segmentStart.hasRemaining()) {
+                    channel.write(segmentStart, segmentStart.position());
+                }
+                return null;
+            });
+            segment.size = segmentHeader.length;
+        }
+        long contentPosition = segment.size + header.size();
+        byte[] headerBytes = header.toByteArray();
+        withChannel(segment, channel -> {
+            // buffers anew on each attempt, a retry rewriting the whole record
+            ByteBuffer[] record = {ByteBuffer.wrap(headerBytes), ByteBuffer.wrap(content)};
+            channel.position(segment.size);
+            while (record[1].hasRemaining()) {
+                channel.write(record);
+            }
+            return null;
+        });
+        segment.size = contentPosition + content.length;
+        return new Location(segment, contentPosition, content.length, crc, timeCached, role);
+    }
+
+    /**
+     * Index the records of a segment existing at startup, stopping at any incompletely
+     * written record.  Later records for a key replace earlier ones.
+     */
+    private void loadSegment(Segment segment) {
+        if (segment.size == 0) {
+            return;
+        }
+        long position = segmentHeader.length;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment.path)))) {
+            in.skipNBytes(position);
+            while (position < segment.size) {
+                if (in.readInt() != RECORD_MAGIC) {
+                    break;
+                }
+                byte[] keyBytes = in.readNBytes(in.readInt());
+                byte[] roleBytes = in.readNBytes(in.readInt());
+                String key = new String(keyBytes, StandardCharsets.UTF_8);
+                Role role = Role.valueOf(new String(roleBytes, StandardCharsets.UTF_8));
+                Instant timeCached = Instant.ofEpochMilli(in.readLong());
+                long crc = in.readLong();
+                int length = in.readInt();
+                long contentPosition = position + 4 + 4 + keyBytes.length + 4 + roleBytes.length + 8 + 8 + 4;
+                if (contentPosition + length > segment.size) {
+                    break;
+                }
+                in.skipNBytes(length);
+                position = contentPosition + length;
+
+                Location location = new Location(segment, contentPosition, length, crc, timeCached, role);
+                index.compute(key, (k, current) -> {
+                    if (current == null || !location.timeCached().isBefore(current.timeCached())) {
+                        liveBytes.addAndGet(length - (current == null ? 0 : current.length()));
+                        return location;
+                    }
+                    return current;
+                });
+            }
+        } catch (EOFException | IllegalArgumentException e) {
+            log.warn("Disk cache segment {} truncated at {}", segment.path, position);
+        } catch (IOException e) {
+            log.warn("Could not load disk cache segment {}", segment.path, e);
+        }
+    }
+
+    private void compactInBackground() {
+        try {
+            compact();
+        } catch (IOException e) {
+            log.warn("Could not compact disk cache {}", directory, e);
+        } finally {
+            compactionScheduled.set(false);
+        }
+        // writes made as compaction finished may not have scheduled another
+        if (getBytesOnDisk() > maxBytes && segments.size() > 1 && !compactor.isShutdown() &&
+                compactionScheduled.compareAndSet(false, true)) {
+            compactor.execute(this::compactInBackground);
+        }
+    }
+
+    /**
+     * Remove the oldest segments until back within budget, copying their current
+     * records forward if there's room to spare.  Records are read without holding
+     * the tier's lock and copied one at a time under it, so writes of new content
+     * proceed while compacting.
+     */
+    private void compact() throws IOException {
+        while (getBytesOnDisk() > maxBytes && segments.size() > 1 && !Thread.currentThread().isInterrupted()) {
+            Segment oldest = segments.firstEntry().getValue();
+            if (oldest == activeSegment) {
+                break;
+            }
+            boolean keepRecords = liveBytes.get() < maxBytes / 2;
+            int copied = 0;
+            int dropped = 0;
+            for (Map.Entry<String, Location> entry : index.entrySet()) {
+                Location location = entry.getValue();
+                if (location.segment() != oldest) {
+                    continue;
+                }
+                byte[] content = keepRecords ? readOrNull(location) : null;
+                if (Thread.currentThread().isInterrupted()) {
+                    // shutting down, records not read left in place
+                    return;
+                }
+                if (content != null) {
+                    synchronized (this) {
+                        // skip if replaced or invalidated since read
+                        if (location.equals(index.get(entry.getKey()))) {
+                            if (activeSegment.size >= segmentBytes) {
+                                activeSegment = newSegment();
+                            }
+                            Location moved = append(entry.getKey(), location.role(), content,
+                                    location.timeCached());
+                            if (index.replace(entry.getKey(), location, moved)) {
+                                copied++;
+                            }
+                        }
+                    }
+                } else {
+                    unindex(entry.getKey(), location);
+                    dropped++;
+                }
+            }
+            synchronized (this) {
+                deleteSegment(oldest);
+            }
+            log.debug("Compacted disk cache segment {}: {} records copied, {} dropped", oldest.path, copied, dropped);
+        }
+    }
+
+    private byte[] readOrNull(Location location) {
+        try {
+            return read(location);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static long crcOf(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,196 @@
+/*
+   Copyright 2026 the original author or authors.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.tightblog.rendering.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tightblog.domain.WeblogEntry;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Cache of the rendered markup of individual weblog entries, as marked in templates with the
+ * <code>tb:entry-fragment</code> attribute, so an entry appearing on the weblog's home page, its
+ * category, tag and date listings, its permalink and its feeds needn't be rendered each time
+ * for each.  Keys combine the entry's id and update time, its rendering stamp, the template
+ * and position within it and any variant the template declares, so a changed entry or edited
+ * template simply gets new keys; weblog-wide changes to how entries display (e.g., settings,
+ * renamed categories) evict the weblog's fragments.
+ * <p>
+ * Fragments not yet cached are surrounded in the output by marker comments, which
+ * {@link #captureFragments(byte[], Marks)} removes after rendering, caching what they enclosed.
+ * Markers carry a token unique to the rendering, as entry content output unescaped could
+ * otherwise contain markers enclosing whatever it liked for caching under another entry's key.
+ */
+public class EntryFragmentCache {
+
+    private static Logger log = LoggerFactory.getLogger(EntryFragmentCache.class);
+
+    /**
+     * Name of the template variable holding the {@link Marks} of the rendering.
+     */
+    public static final String MARKS_VARIABLE = "tbEntryFragmentMarks";
+
+    private static final String START = "tb-fragment:";
+    private static final String END = "/tb-fragment:";
+
+    private static final Pattern MARKER = Pattern.compile("<!--(/?)tb-fragment:([0-9a-f]+):([^>]*?)-->");
+
+    private final Cache<String, String> fragments;
+
+    /**
+     * @param maxEntries maximum number of fragments held, zero or less to disable the cache
+     */
+    public EntryFragmentCache(int maxEntries, long timeoutInHours) {
+        if (maxEntries > 0) {
+            fragments = Caffeine.newBuilder()
+                    .maximumSize(maxEntries)
+                    .expireAfterWrite(timeoutInHours, TimeUnit.HOURS)
+                    .recordStats()
+                    .build();
+        } else {
+            fragments = null;
+            log.warn("Entry fragment cache has been DISABLED");
+        }
+    }
+
+    public boolean isEnabled() {
+        return fragments != null;
+    }
+
+    /**
+     * Key for an entry's fragment, null if the entry isn't saved (e.g., a preview of a new entry).
+     * @param templateName name the template was resolved by, changing as weblog templates are edited
+     * @param position     position of the fragment within the template
+     * @param variant      anything else the fragment's rendering depends on, may be null
+     */
+    public String keyOf(WeblogEntry entry, String templateName, String position, Object variant) {
+        if (entry.getId() == null || entry.getUpdateTime() == null || entry.getWeblog() == null) {
+            return null;
+        }
+        String key = entry.getWeblog().getHandle() + "/" + entry.getId() + "@" +
+                entry.getUpdateTime().toEpochMilli() + "/" + entry.getRenderingStamp() + "/" +
+                URLEncoder.encode(templateName, StandardCharsets.UTF_8) + ":" + position;
+        if (variant != null) {
+            key += "/" + URLEncoder.encode(variant.toString(), StandardCharsets.UTF_8);
+        }
+        // keys end up within HTML comments, which mustn't contain "--"
+        return key.replace("-", "%2D");
+    }
+
+    public String get(String key) {
+        return fragments == null ? null : fragments.getIfPresent(key);
+    }
+
+    /**
+     * Fragments marked for capture in one rendering of a template.
+     */
+    public static final class Marks {
+
+        // not to be guessed by entry content, which is stored before the rendering
+        private final String token = Long.toHexString(ThreadLocalRandom.current().nextLong());
+        private final Set<String> keys = new HashSet<>();
+
+        /**
+         * Content of the comment to precede a fragment not yet cached.
+         */
+        public String startMarker(String key) {
+            keys.add(key);
+            return START + token + ":" + key;
+        }
+
+        /**
+         * Content of the comment to follow a fragment not yet cached.
+         */
+        public String endMarker(String key) {
+            return END + token + ":" + key;
+        }
+    }
+
+    /**
+     * Cache the fragments marked as rendered in the output of a template, and remove the markers.
+     * Comments resembling markers but not made by the given marks are left as they are.
+     * @return output with the markers removed, or as given if it has none
+     */
+    public byte[] captureFragments(byte[] output, Marks marks) {
+        if (marks.keys.isEmpty()) {
+            return output;
+        }
+        String content = new String(output, StandardCharsets.UTF_8);
+        StringBuilder result = new StringBuilder(content.length());
+        // start of each open fragment within the result, by key
+        Map<String, Integer> openFragments = new HashMap<>();
+        Matcher marker = MARKER.matcher(content);
+        int pos = 0;
+        while (marker.find()) {
+            String key = marker.group(3);
+            if (!marker.group(2).equals(marks.token) || !marks.keys.contains(key)) {
+                continue;
+            }
+            result.append(content, pos, marker.start());
+            pos = marker.end();
+            if (marker.group(1).isEmpty()) {
+                openFragments.put(key, result.length());
+            } else {
+                Integer fragmentStart = openFragments.remove(key);
+                if (fragmentStart != null && fragments != null) {
+                    fragments.put(key, result.substring(fragmentStart));
+                }
+            }
+        }
+        result.append(content, pos, content.length());
+        return result.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Evict a weblog's fragments, after a change affecting how all of its entries display.
+     */
+    public void invalidateWeblog(String weblogHandle) {
+        if (fragments != null) {
+            String prefix = weblogHandle.replace("-", "%2D") + "/";
+            fragments.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+        }
+    }
+
+    public void invalidateAll() {
+        if (fragments != null) {
+            fragments.invalidateAll();
+        }
+    }
+
+    public long getHitCount() {
+        return fragments == null ? 0 : fragments.stats().hitCount();
+    }
+
+    public long getMissCount() {
+        return fragments == null ? 0 : fragments.stats().missCount();
+    }
+
+    public long getEstimatedSize() {
+        return fragments == null ? 0 : fragments.estimatedSize();
+    }
+}
@@ -0,0 +1,79 @@
+/*
+   Copyright 2026 the original author or authors.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.tightblog.rendering.cache;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Count-min sketch estimating how often each cache key is requested, in fixed memory
+ * regardless of the number of keys.  Estimates may be high (never low) due to hash
+ * collisions.  Counts are halved periodically so that recent popularity dominates.
+ */
+class FrequencySketch {
+
+    private static final int DEPTH = 4;
+    private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+    private final AtomicIntegerArray counters;
+    private final int width;
+    private final int sampleSize;
+    private final AtomicInteger additions = new AtomicInteger();
+
+    /**
+     * @param expectedKeys approximate number of distinct keys to track
+     */
+    FrequencySketch(int expectedKeys) {
+        width = Integer.highestOneBit(Math.max(expectedKeys, 64) * 4 - 1) << 1;
+        counters = new AtomicIntegerArray(DEPTH * width);
+        sampleSize = width * 10;
+    }
+
+    void increment(String key) {
+        int hash = key.hashCode();
+        for (int i = 0; i < DEPTH; i++) {
+            counters.incrementAndGet(i * width + indexOf(hash, i));
+        }
+        if (additions.incrementAndGet() >= sampleSize) {
+            halve();
+        }
+    }
+
+    int frequency(String key) {
+        int hash = key.hashCode();
+        int min = Integer.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) {
+            min = Math.min(min, counters.get(i * width + indexOf(hash, i)));
+        }
+        return min;
+    }
+
+    private synchronized void halve() {
+        // another thread may have just halved
+        if (additions.get() >= sampleSize) {
+            for (int i = 0; i < counters.length(); i++) {
+                counters.set(i, counters.get(i) >>> 1);
+            }
+            additions.set(sampleSize / 2);
+        }
+    }
+
+    private int indexOf(int hash, int row) {
+        int h = (hash ^ SEEDS[row]) * SEEDS[(row + 1) % DEPTH];
+        h ^= h >>> 16;
+        return h & (width - 1);
+    }
+}
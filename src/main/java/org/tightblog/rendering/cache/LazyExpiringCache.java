@@ -22,19 +22,49 @@ package org.tightblog.rendering.cache;
 
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.RemovalCause;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.tightblog.domain.Template.Role;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
 import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
+/**
+ * Cache of rendered content.  Keys are expected to begin with the handle of the weblog
+ * the content is for (followed by a slash if anything further), allowing for all of a
+ * weblog's content to be evicted at once.
+ */
 public class LazyExpiringCache {
 
     public LazyExpiringCache(String cacheHandlerId, int maxEntries, long timeoutInHours) {
+        this(cacheHandlerId, maxEntries, 0, timeoutInHours);
+    }
+
+    /**
+     * @param maxBytes if greater than zero, the cache is bounded by the total size of its
+     *                 cached content instead of by maxEntries (which then only needs to be
+     *                 positive to activate the cache).
+     */
+    public LazyExpiringCache(String cacheHandlerId, int maxEntries, long maxBytes, long timeoutInHours) {
         this.cacheHandlerId = cacheHandlerId;
         this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
         this.timeoutInHours = timeoutInHours;
     }
 
@@ -54,6 +84,25 @@ public class LazyExpiringCache {
         this.incomingRequests.incrementAndGet();
     }
 
+    private AtomicLong coalescedRequests = new AtomicLong();
+
+    /**
+     * Cache misses that waited on another request's rendering of the same key
+     * instead of rendering the content themselves.
+     */
+    public long getCoalescedRequests() {
+        return coalescedRequests.get();
+    }
+
+    private AtomicLong staleRequestsServed = new AtomicLong();
+
+    /**
+     * Requests given outdated content while it was being re-rendered in the background.
+     */
+    public long getStaleRequestsServed() {
+        return staleRequestsServed.get();
+    }
+
     public long getRequestsHandledBy304() {
         return requestsHandledBy304.get();
     }
@@ -76,8 +125,95 @@ public class LazyExpiringCache {
         return maxEntries;
     }
 
+    private long maxBytes;
+
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
     public void invalidateAll() {
         contentCache.invalidateAll();
+        keysByWeblog.clear();
+        if (diskTier != null) {
+            diskTier.invalidateAll();
+        }
+    }
+
+    /**
+     * Evict all content cached for a weblog, e.g., after it has changed.  When serving stale
+     * content while revalidating, the weblog's content is instead left for that purpose, to be
+     * replaced as requested or aged out.
+     * @return keys the weblog had cached content for
+     */
+    public Set<String> invalidateWeblog(String weblogHandle) {
+        if (contentCache == null) {
+            return Set.of();
+        }
+        if (staleWhileRevalidateSeconds > 0) {
+            return Set.copyOf(keysByWeblog.getOrDefault(weblogHandle, Set.of()));
+        }
+        Set<String> keys = keysByWeblog.remove(weblogHandle);
+        if (keys == null) {
+            return Set.of();
+        }
+        contentCache.invalidateAll(keys);
+        if (diskTier != null) {
+            keys.forEach(diskTier::invalidate);
+        }
+        log.debug("EVICT {} entries for weblog {}", keys.size(), weblogHandle);
+        return keys;
+    }
+
+    private Consumer<String> keyWarmer;
+
+    /**
+     * @param keyWarmer renders and caches the content for a key, if possible outside of a
+     *                  request for it (e.g., for keys of anonymous requests), else ignores it.
+     */
+    public void setKeyWarmer(Consumer<String> keyWarmer) {
+        this.keyWarmer = keyWarmer;
+    }
+
+    /**
+     * Render the content for a key ahead of requests for it, if the cache is active and
+     * has a means of doing so.
+     */
+    public void warm(String key) {
+        if (contentCache != null && keyWarmer != null) {
+            warming.set(Boolean.TRUE);
+            try {
+                keyWarmer.accept(key);
+            } finally {
+                warming.remove();
+            }
+        }
+    }
+
+    private Consumer<CachedContent> viewPreparer;
+
+    /**
+     * @param viewPreparer creates any reader-specific views of content (see CachedContent.getView)
+     *                     before it is cached, so they are counted toward maxBytes from the start
+     *                     rather than added uncounted on later requests.
+     */
+    public void setViewPreparer(Consumer<CachedContent> viewPreparer) {
+        this.viewPreparer = viewPreparer;
+    }
+
+    // so warming a key doesn't count as a request for it
+    private final ThreadLocal<Boolean> warming = new ThreadLocal<>();
+
+    private FrequencySketch requestFrequency;
+
+    /**
+     * Estimated number of recent requests for a key, zero if the cache is disabled.
+     */
+    public int getRequestFrequency(String key) {
+        return requestFrequency == null ? 0 : requestFrequency.frequency(key);
     }
 
     public long getCacheHitCount() {
@@ -100,30 +236,142 @@ public class LazyExpiringCache {
         return contentCache == null ? 0 : contentCache.estimatedSize();
     }
 
+    /**
+     * Total bytes held (content along with its compressed copy and reader views), only
+     * tracked if cache is bounded by maxBytes.
+     */
+    public long getWeightedSize() {
+        if (contentCache == null) {
+            return 0;
+        }
+        // apply pending evictions so the figure reflects the cache's current contents
+        contentCache.cleanUp();
+        return contentCache.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L);
+    }
+
+    public long getEvictionCount() {
+        return contentCache == null ? 0 : contentCache.stats().evictionCount();
+    }
+
+    /**
+     * Bytes currently held by template role, as weighed for maxBytes, calculated on request
+     * by walking the cache, so intended for admin monitoring only.
+     */
+    public Map<Role, Long> getBytesByRole() {
+        Map<Role, Long> bytesByRole = new TreeMap<>();
+        if (contentCache != null) {
+            contentCache.asMap().values().forEach(entry -> bytesByRole.merge(
+                    entry.getValue().getRole(), entry.getValue().getHeapBytes(), Long::sum));
+        }
+        return bytesByRole;
+    }
+
+    private long staleWhileRevalidateSeconds;
+
+    /**
+     * @param staleWhileRevalidateSeconds if greater than zero, for this many seconds after an object
+     *                                    changes, requests allowing stale content get the outdated cached
+     *                                    content while it is re-rendered in the background.  Requires
+     *                                    a revalidation executor to be set.
+     */
+    public void setStaleWhileRevalidateSeconds(long staleWhileRevalidateSeconds) {
+        this.staleWhileRevalidateSeconds = staleWhileRevalidateSeconds;
+    }
+
+    public long getStaleWhileRevalidateSeconds() {
+        return staleWhileRevalidateSeconds;
+    }
+
+    private Executor revalidationExecutor;
+
+    public void setRevalidationExecutor(Executor revalidationExecutor) {
+        this.revalidationExecutor = revalidationExecutor;
+    }
+
+    private DiskCacheTier diskTier;
+
+    /**
+     * @param diskTier if provided, content is also written to disk and cache misses checked
+     *                 against it, keeping content available across restarts.
+     */
+    public void setDiskTier(DiskCacheTier diskTier) {
+        this.diskTier = diskTier;
+    }
+
+    private AtomicLong diskHits = new AtomicLong();
+
+    public long getDiskHitCount() {
+        return diskHits.get();
+    }
+
+    public long getDiskBytes() {
+        return diskTier == null ? 0 : diskTier.getBytesOnDisk();
+    }
+
     private long timeoutInHours;
 
-    private Cache<String, Object> contentCache;
+    private Cache<String, LazyExpiringCacheEntry> contentCache;
+
+    // cached keys by weblog handle, for evicting a weblog's content without scanning the cache
+    private final Map<String, Set<String>> keysByWeblog = new ConcurrentHashMap<>();
+
+    // renders underway by cache key, so concurrent misses on a key can share one rendering
+    private final Map<String, InFlightRender> inFlightRenders = new ConcurrentHashMap<>();
+
+    private static final class InFlightRender {
+        private final Instant started = Instant.now();
+        private final CompletableFuture<CachedContent> result = new CompletableFuture<>();
+    }
 
     @PostConstruct
     void init() {
         if (maxEntries > 0) {
-            contentCache = Caffeine.newBuilder()
+            requestFrequency = new FrequencySketch(maxEntries);
+            Caffeine<String, LazyExpiringCacheEntry> builder = Caffeine.newBuilder()
                     .expireAfterWrite(timeoutInHours, TimeUnit.HOURS)
-                    .maximumSize(maxEntries)
-                    .recordStats()
-                    .build();
+                    .evictionListener((String key, LazyExpiringCacheEntry entry, RemovalCause cause) ->
+                            unindex(key))
+                    .recordStats();
+
+            if (maxBytes > 0) {
+                contentCache = builder.maximumWeight(maxBytes)
+                        .weigher((String key, LazyExpiringCacheEntry entry) ->
+                                (int) Math.min(Integer.MAX_VALUE, entry.getValue().getHeapBytes()))
+                        .build();
+            } else {
+                contentCache = builder.maximumSize(maxEntries).build();
+            }
+            if (diskTier != null) {
+                try {
+                    diskTier.open();
+                } catch (IOException e) {
+                    log.error("Cache {} unable to open disk tier, continuing without it", cacheHandlerId, e);
+                    diskTier = null;
+                }
+            }
         } else {
             contentCache = null;
+            requestFrequency = null;
             log.warn("Cache {} has been DISABLED", cacheHandlerId);
         }
     }
 
+    @PreDestroy
+    void shutdown() {
+        if (diskTier != null) {
+            diskTier.close();
+        }
+    }
+
     public CachedContent get(String key, Instant objectLastChanged) {
         if (maxEntries > 0) {
             CachedContent content = null;
-            LazyExpiringCacheEntry entry = (LazyExpiringCacheEntry) this.contentCache.getIfPresent(key);
+            LazyExpiringCacheEntry entry = this.contentCache.getIfPresent(key);
             if (entry != null) {
                 content = entry.getValueIfFresh(objectLastChanged);
+            } else if (diskTier != null) {
+                content = getFromDisk(key, objectLastChanged);
             }
             return content;
         } else {
@@ -132,9 +380,175 @@ public class LazyExpiringCache {
     }
 
     public void put(String key, CachedContent value) {
+        put(key, value, Instant.now());
+    }
+
+    private CachedContent getFromDisk(String key, Instant objectLastChanged) {
+        LazyExpiringCacheEntry stored = diskTier.get(key);
+        // held no longer than in memory, as promoting it starts a new in-memory lease
+        boolean expired = stored != null &&
+                stored.getTimeCached().isBefore(Instant.now().minus(timeoutInHours, ChronoUnit.HOURS));
+        CachedContent content = stored == null || expired ? null : stored.getValueIfFresh(objectLastChanged);
+        if (content != null) {
+            diskHits.incrementAndGet();
+            putInMemory(key, content, stored.getTimeCached());
+            log.debug("DISK HIT {}", key);
+        } else if (stored != null) {
+            diskTier.invalidate(key);
+        }
+        return content;
+    }
+
+    private void put(String key, CachedContent value, Instant timeCached) {
         if (maxEntries > 0) {
-            contentCache.put(key, new LazyExpiringCacheEntry(value));
-            log.debug("PUT {}", key);
+            putInMemory(key, value, timeCached);
+            // disk tier doesn't record the anonymous-only flag, so such content is kept in memory only
+            if (diskTier != null && !value.isAnonymousOnly()) {
+                diskTier.put(key, value, timeCached);
+            }
+        }
+    }
+
+    private void putInMemory(String key, CachedContent value, Instant timeCached) {
+        // compress and hash once here rather than on each cache hit
+        value.getGzippedContent();
+        value.getDigest();
+        if (viewPreparer != null) {
+            viewPreparer.accept(value);
+        }
+        contentCache.put(key, new LazyExpiringCacheEntry(value, timeCached));
+        // indexed after the put, as replacing an expired entry notifies its eviction
+        keysByWeblog.computeIfAbsent(weblogHandleOf(key), h -> ConcurrentHashMap.newKeySet()).add(key);
+        log.debug("PUT {}", key);
+    }
+
+    private void unindex(String key) {
+        keysByWeblog.computeIfPresent(weblogHandleOf(key), (handle, keys) -> {
+            keys.remove(key);
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+    private static String weblogHandleOf(String key) {
+        int slash = key.indexOf('/');
+        return slash == -1 ? key : key.substring(0, slash);
+    }
+
+    public CachedContent getOrRender(String key, Instant objectLastChanged, Supplier<CachedContent> renderer) {
+        return getOrRender(key, objectLastChanged, renderer, false);
+    }
+
+    /**
+     * Returns the cached content for the key if fresh, otherwise renders it with the provided
+     * renderer and caches the result.  Concurrent misses on the same key wait for a single
+     * rendering rather than each rendering the content, provided that rendering began after
+     * objectLastChanged (otherwise it could be returning outdated content.)
+     * @param renderer returns the rendered content, or null if it could not be rendered, in
+     *                 which case nothing is cached.
+     * @param allowStale if true and within the stale-while-revalidate window, any outdated content
+     *                   for the key is returned instead, with rendering moved to the background.
+     *                   Only for requests whose rendering doesn't depend on the calling thread's
+     *                   request state (e.g., anonymous requests.)
+     */
+    public CachedContent getOrRender(String key, Instant objectLastChanged, Supplier<CachedContent> renderer,
+                                     boolean allowStale) {
+        if (requestFrequency != null && warming.get() == null) {
+            requestFrequency.increment(key);
+        }
+        CachedContent content = get(key, objectLastChanged);
+        if (content != null || maxEntries <= 0) {
+            return content != null ? content : renderer.get();
+        }
+
+        if (allowStale && canServeStale(objectLastChanged)) {
+            LazyExpiringCacheEntry staleEntry = contentCache.asMap().get(key);
+            if (staleEntry != null) {
+                InFlightRender render = new InFlightRender();
+                InFlightRender existingRender = inFlightRenders.putIfAbsent(key, render);
+                if (existingRender == null && !revalidateInBackground(key, objectLastChanged, renderer, render)) {
+                    // no room for background rendering, so render here rather than leave it undone
+                    return completeRender(key, objectLastChanged, renderer, render);
+                }
+                staleRequestsServed.incrementAndGet();
+                log.debug("STALE {}", key);
+                return staleEntry.getValue();
+            }
+        }
+
+        InFlightRender ownRender = new InFlightRender();
+        InFlightRender existingRender = inFlightRenders.putIfAbsent(key, ownRender);
+        if (existingRender != null &&
+                (objectLastChanged == null || !existingRender.started.isBefore(objectLastChanged))) {
+            coalescedRequests.incrementAndGet();
+            log.debug("WAIT {}", key);
+            try {
+                return existingRender.result.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        } else if (existingRender != null) {
+            // render underway is from before the latest change, so can't reuse it
+            return renderAndPut(key, renderer, Instant.now());
+        }
+
+        return completeRender(key, objectLastChanged, renderer, ownRender);
+    }
+
+    private boolean canServeStale(Instant objectLastChanged) {
+        return staleWhileRevalidateSeconds > 0 && revalidationExecutor != null && objectLastChanged != null &&
+                Instant.now().isBefore(objectLastChanged.plusSeconds(staleWhileRevalidateSeconds));
+    }
+
+    /**
+     * Hand an in-flight render registered by the caller to the revalidation executor.
+     * @return false if the executor rejected it, the render then being left to the caller
+     */
+    private boolean revalidateInBackground(String key, Instant objectLastChanged, Supplier<CachedContent> renderer,
+                                           InFlightRender render) {
+        try {
+            revalidationExecutor.execute(() -> {
+                try {
+                    completeRender(key, objectLastChanged, renderer, render);
+                } catch (RuntimeException e) {
+                    log.error("Background rendering of {} failed", key, e);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            log.warn("Background rendering of {} rejected, rendering on the requesting thread", key);
+            return false;
+        }
+    }
+
+    /**
+     * Render and cache the content for an in-flight render registered by the caller,
+     * completing it for any waiters.
+     */
+    private CachedContent completeRender(String key, Instant objectLastChanged, Supplier<CachedContent> renderer,
+                                         InFlightRender render) {
+        try {
+            // another request may have finished rendering between the cache check and registering ours
+            LazyExpiringCacheEntry entry = contentCache.asMap().get(key);
+            CachedContent content = entry == null ? null : entry.getValueIfFresh(objectLastChanged);
+            if (content == null) {
+                content = renderAndPut(key, renderer, render.started);
+            }
+            render.result.complete(content);
+            return content;
+        } catch (RuntimeException e) {
+            render.result.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightRenders.remove(key, render);
+        }
+    }
+
+    private CachedContent renderAndPut(String key, Supplier<CachedContent> renderer, Instant renderStarted) {
+        CachedContent content = renderer.get();
+        if (content != null) {
+            // timestamped from the render's start, so changes made while rendering still mark it outdated
+            put(key, content, renderStarted);
         }
+        return content;
     }
 }
@@ -45,8 +45,26 @@ class LazyExpiringCacheEntry {
     private Instant timeCached;
 
     LazyExpiringCacheEntry(CachedContent item) {
+        this(item, Clock.systemDefaultZone().instant());
+    }
+
+    /**
+     * @param timeCached time the item's content was current as of, e.g., when its rendering began
+     */
+    LazyExpiringCacheEntry(CachedContent item, Instant timeCached) {
         this.value = item;
-        this.timeCached = Clock.systemDefaultZone().instant();
+        this.timeCached = timeCached;
+    }
+
+    /**
+     * Retrieve the value of this cache entry regardless of freshness.
+     */
+    CachedContent getValue() {
+        return value;
+    }
+
+    Instant getTimeCached() {
+        return timeCached;
     }
 
     /**
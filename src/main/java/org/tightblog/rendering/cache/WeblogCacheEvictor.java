@@ -0,0 +1,94 @@
+/*
+   Copyright 2026 the original author or authors.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.tightblog.rendering.cache;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.tightblog.rendering.service.ThymeleafRenderer;
+import org.tightblog.service.WeblogChangedEvent;
+import org.tightblog.service.WeblogCommentsChangedEvent;
+import org.tightblog.service.WeblogEntryChangedEvent;
+import org.tightblog.service.WeblogTemplatesChangedEvent;
+
+import java.util.Set;
+
+/**
+ * Evicts a changed weblog's rendered pages and feeds, so they don't occupy cache space
+ * until next requested, then has the most requested of them re-rendered, along with its
+ * cached entry fragments if the change affects them.  Likewise evicts the parsed forms of
+ * a weblog's templates once they have been edited, and the sidebar widget data affected
+ * by entry and comment changes.
+ */
+@Component
+public class WeblogCacheEvictor {
+
+    private final LazyExpiringCache weblogPageCache;
+    private final LazyExpiringCache weblogFeedCache;
+    private final CacheWarmer cacheWarmer;
+    private final ThymeleafRenderer blogRenderer;
+    private final EntryFragmentCache entryFragmentCache;
+    private final WeblogWidgetCache weblogWidgetCache;
+
+    WeblogCacheEvictor(LazyExpiringCache weblogPageCache, LazyExpiringCache weblogFeedCache,
+                       CacheWarmer cacheWarmer, @Qualifier("blogRenderer") ThymeleafRenderer blogRenderer,
+                       EntryFragmentCache entryFragmentCache, WeblogWidgetCache weblogWidgetCache) {
+        this.weblogPageCache = weblogPageCache;
+        this.weblogFeedCache = weblogFeedCache;
+        this.cacheWarmer = cacheWarmer;
+        this.blogRenderer = blogRenderer;
+        this.entryFragmentCache = entryFragmentCache;
+        this.weblogWidgetCache = weblogWidgetCache;
+    }
+
+    // published ahead of the WeblogChangedEvent for the same change, so handled before its re-rendering
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onWeblogEntryChanged(WeblogEntryChangedEvent event) {
+        weblogWidgetCache.updateForEntry(event);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onWeblogCommentsChanged(WeblogCommentsChangedEvent event) {
+        weblogWidgetCache.invalidateComments(event.weblogHandle());
+    }
+
+    // after any commit, so requests rendering in the meantime don't recache the old state
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onWeblogChanged(WeblogChangedEvent event) {
+        String handle = event.weblogHandle();
+        if (event.entryDisplayChanged()) {
+            // before the pages, so re-rendering them doesn't pick up outdated entries
+            entryFragmentCache.invalidateWeblog(handle);
+        }
+        if (event.removed() || event.entryDisplayChanged()) {
+            // e.g., categories or tags renamed
+            weblogWidgetCache.invalidateWeblog(handle);
+        }
+        Set<String> pageKeys = weblogPageCache.invalidateWeblog(handle);
+        Set<String> feedKeys = weblogFeedCache.invalidateWeblog(handle);
+        if (!event.removed()) {
+            cacheWarmer.warmWeblog(weblogPageCache, handle, pageKeys);
+            cacheWarmer.warmWeblog(weblogFeedCache, handle, feedKeys);
+        }
+    }
+
+    // edited templates are parsed anew regardless (see ThemeTemplateResolver), so needn't wait on commit
+    @EventListener
+    public void onWeblogTemplatesChanged(WeblogTemplatesChangedEvent event) {
+        blogRenderer.evictWeblogTemplates(event.weblogId());
+    }
+}
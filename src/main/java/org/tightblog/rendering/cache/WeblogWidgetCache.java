@@ -0,0 +1,208 @@
+/*
+   Copyright 2026 the original author or authors.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.tightblog.rendering.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.tightblog.domain.CalendarMonthIndex;
+import org.tightblog.domain.Weblog;
+import org.tightblog.service.WeblogEntryChangedEvent;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Memoizes per weblog the data behind sidebar widgets (recent entries and comments, tag
+ * cloud, calendar), which would otherwise be queried for on each page rendered, including
+ * for each variant (category, date, page number) of a page.  Each widget's data is evicted
+ * only by changes it depends on: recent comments by comment changes (and those of the
+ * entries they're shown with), recent entries by entry changes, and so on, see
+ * WeblogCacheEvictor.  Calendar indexes are instead updated with each entry change.
+ * Loads are cached only if no change to their widget's data came while loading, as they
+ * may have read the data from before it.  Data held is immutable (e.g., RecentWeblogEntry rather than WeblogEntry), as it is
+ * shared by concurrent renderings.
+ */
+@Component
+public class WeblogWidgetCache {
+
+    private static Logger log = LoggerFactory.getLogger(WeblogWidgetCache.class);
+
+    public enum Widget {
+        RECENT_ENTRIES,
+        RECENT_COMMENTS,
+        POPULAR_TAGS,
+        // CalendarMonthIndex of all or a category's entries
+        CALENDAR
+    }
+
+    private record Counts(AtomicLong hits, AtomicLong misses) {
+        Counts() {
+            this(new AtomicLong(), new AtomicLong());
+        }
+    }
+
+    public record WidgetStats(Widget widget, long hits, long misses) { }
+
+    private final Cache<String, Object> widgetData;
+    private final Map<Widget, Counts> counts = new EnumMap<>(Widget.class);
+    // count of changes by weblog and widget key prefix, for telling loads overlapping a change
+    private final Map<String, AtomicLong> versions = new ConcurrentHashMap<>();
+
+    public WeblogWidgetCache(@Value("${weblogWidgetCache.maxEntries:2000}") int maxEntries,
+                             @Value("${weblogWidgetCache.timeoutHours:24}") int timeoutHours) {
+        if (maxEntries > 0) {
+            widgetData = Caffeine.newBuilder()
+                    .maximumSize(maxEntries)
+                    .expireAfterWrite(timeoutHours, TimeUnit.HOURS)
+                    .build();
+        } else {
+            widgetData = null;
+            log.warn("Weblog widget cache has been DISABLED");
+        }
+        for (Widget widget : Widget.values()) {
+            counts.put(widget, new Counts());
+        }
+    }
+
+    /**
+     * Get a widget's data, loading it if not held.
+     * @param params whatever else besides the weblog the data varies by, e.g., number of items
+     * @param loader provides the data, may not return null
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(Widget widget, Weblog weblog, String params, Supplier<T> loader) {
+        if (widgetData == null) {
+            return loader.get();
+        }
+        String prefix = keyPrefix(weblog.getHandle(), widget);
+        String key = prefix + params;
+        Object data = widgetData.getIfPresent(key);
+        if (data != null) {
+            counts.get(widget).hits().incrementAndGet();
+            return (T) data;
+        }
+        counts.get(widget).misses().incrementAndGet();
+        // read before loading, so that a change evicting the data while loading is seen
+        AtomicLong version = versionOf(prefix);
+        long loadedAt = version.get();
+        T loaded = Objects.requireNonNull(loader.get());
+        // atomic with the eviction of the key, which follows its version's increment
+        widgetData.asMap().compute(key, (k, held) -> held != null ? held :
+                version.get() == loadedAt ? loaded : null);
+        return loaded;
+    }
+
+    /**
+     * Update or evict data affected by an entry being saved or removed.  Calendar indexes are
+     * updated in place, others evicted, unless the entry neither is nor was published (e.g.,
+     * a draft being saved), which leaves the data unaffected.
+     */
+    public void updateForEntry(WeblogEntryChangedEvent event) {
+        if (widgetData == null) {
+            return;
+        }
+        String handle = event.weblogHandle();
+        // whether the entry was published, assumed so if the weblog's full calendar isn't held
+        AtomicBoolean wasPublished = new AtomicBoolean(true);
+        String calendarPrefix = keyPrefix(handle, Widget.CALENDAR);
+        // indexes being loaded aren't yet held to be updated, so are left uncached instead
+        versionOf(calendarPrefix).incrementAndGet();
+        for (String key : List.copyOf(widgetData.asMap().keySet())) {
+            if (!key.startsWith(calendarPrefix)) {
+                continue;
+            }
+            String category = key.substring(calendarPrefix.length());
+            widgetData.asMap().computeIfPresent(key, (k, held) -> {
+                CalendarMonthIndex index = (CalendarMonthIndex) held;
+                CalendarMonthIndex updated = index.without(event.entryId());
+                if (category.isEmpty()) {
+                    wasPublished.set(updated != index);
+                }
+                if (event.published() && (category.isEmpty() || category.equals(event.categoryName()))) {
+                    updated = updated.with(event.pubTime(), event.entryId(), event.anchor(), event.title());
+                }
+                return updated;
+            });
+        }
+        if (!event.published() && !wasPublished.get()) {
+            return;
+        }
+        invalidate(handle, Widget.RECENT_ENTRIES);
+        invalidate(handle, Widget.POPULAR_TAGS);
+        // shown with their entry's title and link, and gone with the entry if removed
+        invalidate(handle, Widget.RECENT_COMMENTS);
+    }
+
+    public void invalidateComments(String weblogHandle) {
+        if (widgetData != null) {
+            invalidate(weblogHandle, Widget.RECENT_COMMENTS);
+        }
+    }
+
+    public void invalidateWeblog(String weblogHandle) {
+        if (widgetData != null) {
+            String prefix = weblogHandle + "/";
+            versions.forEach((versionPrefix, version) -> {
+                if (versionPrefix.startsWith(prefix)) {
+                    version.incrementAndGet();
+                }
+            });
+            widgetData.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+        }
+    }
+
+    public void invalidateAll() {
+        if (widgetData != null) {
+            versions.values().forEach(AtomicLong::incrementAndGet);
+            widgetData.invalidateAll();
+        }
+    }
+
+    public List<WidgetStats> getStats() {
+        return counts.entrySet().stream()
+                .map(e -> new WidgetStats(e.getKey(), e.getValue().hits().get(), e.getValue().misses().get()))
+                .toList();
+    }
+
+    public long getEstimatedSize() {
+        return widgetData == null ? 0 : widgetData.estimatedSize();
+    }
+
+    private void invalidate(String weblogHandle, Widget widget) {
+        String prefix = keyPrefix(weblogHandle, widget);
+        versionOf(prefix).incrementAndGet();
+        widgetData.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    private AtomicLong versionOf(String keyPrefix) {
+        return versions.computeIfAbsent(keyPrefix, p -> new AtomicLong());
+    }
+
+    private static String keyPrefix(String weblogHandle, Widget widget) {
+        return weblogHandle + "/" + widget + "/";
+    }
+}
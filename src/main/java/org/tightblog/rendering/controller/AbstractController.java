@@ -15,6 +15,13 @@
  */
 package org.tightblog.rendering.controller;
 
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.tightblog.rendering.cache.CachedContent;
 import org.tightblog.rendering.model.Model;
 import org.springframework.beans.BeansException;
 import org.springframework.context.ApplicationContext;
@@ -27,6 +34,9 @@ import java.util.Set;
 
 public abstract class AbstractController implements ApplicationContextAware {
 
+    // appended to the content digest to form the entity tag of the gzipped representation
+    private static final String GZIP_ETAG_SUFFIX = "-gz";
+
     private ApplicationContext appContext;
 
     @Override
@@ -54,4 +64,93 @@ public abstract class AbstractController implements ApplicationContextAware {
         }
         return sinceDate;
     }
+
+    /**
+     * Complete a response with the given content, sending its gzipped form if the
+     * client accepts it and compression makes it smaller.  Vary is set either way
+     * as intermediate caches must keep the two forms apart, and the entity tag
+     * (derived from the content digest) differs between them.
+     */
+    static ResponseEntity<Resource> withContent(ResponseEntity.BodyBuilder builder, CachedContent content,
+                                                HttpServletRequest request) {
+        byte[] body = content.getContent();
+        String eTag = content.getDigest();
+        if (acceptsGzip(request)) {
+            byte[] gzipped = content.getGzippedContent();
+            if (gzipped != null) {
+                body = gzipped;
+                eTag += GZIP_ETAG_SUFFIX;
+                builder.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+            }
+        }
+        return builder.varyBy(HttpHeaders.ACCEPT_ENCODING)
+                .eTag(eTag)
+                .contentLength(body.length)
+                .body(new ByteArrayResource(body));
+    }
+
+    /**
+     * Whether the client's If-None-Match header shows it already has the given content,
+     * in either its plain or gzipped form.  This can be so even after the weblog's last
+     * modified time has moved on, as long as the change did not affect this content.
+     */
+    static boolean matchesETag(HttpServletRequest request, CachedContent content) {
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (!StringUtils.isBlank(ifNoneMatch)) {
+            String digest = content.getDigest();
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = StringUtils.removeStart(tag.trim(), "W/");
+                if ("*".equals(tag)) {
+                    return true;
+                }
+                tag = StringUtils.strip(tag, "\"");
+                if (tag.equals(digest) || tag.equals(digest + GZIP_ETAG_SUFFIX)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    static ResponseEntity<Resource> notModified(CachedContent content, HttpServletRequest request) {
+        String eTag = content.getDigest();
+        if (acceptsGzip(request) && content.getGzippedContent() != null) {
+            eTag += GZIP_ETAG_SUFFIX;
+        }
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                .varyBy(HttpHeaders.ACCEPT_ENCODING)
+                .eTag(eTag)
+                .build();
+    }
+
+    /**
+     * Whether the Accept-Encoding header permits gzip, i.e., lists gzip (or else *)
+     * without a zero quality value.
+     */
+    static boolean acceptsGzip(HttpServletRequest request) {
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        boolean wildcardAccepted = false;
+        if (!StringUtils.isBlank(acceptEncoding)) {
+            for (String coding : acceptEncoding.split(",")) {
+                String[] parts = coding.split(";");
+                String name = parts[0].trim();
+                if ("gzip".equalsIgnoreCase(name)) {
+                    return !hasZeroQuality(parts);
+                } else if ("*".equals(name)) {
+                    wildcardAccepted = !hasZeroQuality(parts);
+                }
+            }
+        }
+        return wildcardAccepted;
+    }
+
+    private static boolean hasZeroQuality(String[] codingParts) {
+        for (int i = 1; i < codingParts.length; i++) {
+            String param = StringUtils.deleteWhitespace(codingParts[i]);
+            if (param.startsWith("q=") && param.substring(2).matches("0(\\.0*)?")) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
@@ -314,8 +314,14 @@ public class CommentController extends AbstractController {
 
         WeblogEntryComment comment = new WeblogEntryComment();
         comment.setNotify(request.getParameter("notify") != null);
-        comment.setName(Utilities.removeHTML(request.getParameter("name")));
-        comment.setEmail(Utilities.removeHTML(request.getParameter("email")));
+        if (pageRequest.getBlogger() != null) {
+            // logged-in users comment under their own name, the comment form having no such fields for them
+            comment.setName(pageRequest.getBlogger().getScreenName());
+            comment.setEmail(pageRequest.getBlogger().getEmailAddress());
+        } else {
+            comment.setName(Utilities.removeHTML(request.getParameter("name")));
+            comment.setEmail(Utilities.removeHTML(request.getParameter("email")));
+        }
         comment.setWeblogEntry(pageRequest.getWeblogEntry());
         comment.setRemoteHost(request.getRemoteHost());
         comment.setPostTime(Instant.now());
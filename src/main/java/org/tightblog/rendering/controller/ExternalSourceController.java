@@ -6,7 +6,6 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
-import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.Resource;
 import org.springframework.http.CacheControl;
 import org.springframework.http.MediaType;
@@ -200,11 +199,9 @@ public class ExternalSourceController {
             githubSourceCache.put(cacheKey, response);
         }
 
-        return ResponseEntity.ok()
+        return AbstractController.withContent(ResponseEntity.ok()
                 .contentType(APP_JAVASCRIPT)
-                .contentLength(response.getContent().length)
-                .cacheControl(CacheControl.noCache())
-                .body(new ByteArrayResource(response.getContent()));
+                .cacheControl(CacheControl.noCache()), response, request);
     }
 
     private String generateKey(String filePath, Integer startLine, Integer endLine, Integer height, boolean showLinenums) {
@@ -20,9 +20,9 @@
  */
 package org.tightblog.rendering.controller;
 
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
-import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.Resource;
 import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
@@ -85,6 +85,7 @@ public class FeedController extends AbstractController {
         this.themeManager = themeManager;
         this.feedModel = feedModel;
         this.dp = dp;
+        weblogFeedCache.setKeyWarmer(this::warmKey);
     }
 
     @GetMapping("/{weblogHandle}")
@@ -130,41 +131,72 @@ public class FeedController extends AbstractController {
 
         // check cache before manually generating
         String cacheKey = generateKey(feedRequest);
-        CachedContent rendererOutput = weblogFeedCache.get(cacheKey, objectLastChanged);
+        // feeds don't vary by user, so an outdated one may be returned while refreshing
+        CachedContent rendererOutput = weblogFeedCache.getOrRender(cacheKey, objectLastChanged,
+                () -> renderFeed(feedRequest), true);
 
-        boolean newContent = false;
-        try {
-            if (rendererOutput != null) {
-                log.trace("HIT {}", cacheKey);
-            } else {
-                log.trace("MISS {}", cacheKey);
-                newContent = true;
-
-                // not in cache so need to generate content
-                Map<String, Object> model = new HashMap<>();
-                model.put("model", feedRequest);
-                Template template = new SharedTemplate("entries-atom", Template.Role.ATOMFEED);
-                rendererOutput = thymeleafRenderer.render(template, model);
-            }
+        if (rendererOutput == null) {
+            return ResponseEntity.notFound().build();
+        }
 
-            if (newContent) {
-                log.debug("PUT {}", cacheKey);
-                weblogFeedCache.put(cacheKey, rendererOutput);
+        try {
+            // weblog may have changed since the client's copy, but not necessarily this feed
+            if (matchesETag(request, rendererOutput)) {
+                weblogFeedCache.incrementRequestsHandledBy304();
+                return notModified(rendererOutput, request);
             }
 
-            return ResponseEntity.ok()
+            return withContent(ResponseEntity.ok()
                     .contentType(MediaType.valueOf(rendererOutput.getRole().getContentType()))
-                    .contentLength(rendererOutput.getContent().length)
                     .lastModified(objectLastChanged.toEpochMilli())
-                    .cacheControl(CacheControl.noCache())
-                    .body(new ByteArrayResource(rendererOutput.getContent()));
+                    .cacheControl(CacheControl.noCache()), rendererOutput, request);
 
         } catch (Exception e) {
-            log.error("Error rendering Atom feed for {}", feedRequest.getWeblog().getHandle(), e);
+            log.error("Error returning Atom feed for {}", feedRequest.getWeblog().getHandle(), e);
             return ResponseEntity.notFound().build();
         }
     }
 
+    /**
+     * Render and cache the feed for a cache key created by generateKey().
+     */
+    void warmKey(String cacheKey) {
+        String[] parts = cacheKey.split("/");
+        Weblog weblog = weblogDao.findByHandleAndVisibleTrue(parts[0]);
+        if (weblog == null) {
+            return;
+        }
+        WeblogFeedRequest feedRequest = new WeblogFeedRequest(feedModel);
+        feedRequest.setWeblogHandle(parts[0]);
+        feedRequest.setWeblog(weblog);
+
+        for (int i = 1; i < parts.length; i++) {
+            if ("cat".equals(parts[i]) && i + 1 < parts.length) {
+                feedRequest.setCategoryName(Utilities.decode(parts[++i]));
+            } else if ("tag".equals(parts[i]) && i + 1 < parts.length) {
+                feedRequest.setTag(Utilities.decode(parts[++i]));
+            } else if (parts[i].startsWith("page=") && StringUtils.isNumeric(parts[i].substring(5))) {
+                feedRequest.setPageNum(Integer.parseInt(parts[i].substring(5)));
+            }
+        }
+
+        if (cacheKey.equals(generateKey(feedRequest))) {
+            weblogFeedCache.getOrRender(cacheKey, weblog.getLastModified(), () -> renderFeed(feedRequest));
+        }
+    }
+
+    private CachedContent renderFeed(WeblogFeedRequest feedRequest) {
+        try {
+            Map<String, Object> model = new HashMap<>();
+            model.put("model", feedRequest);
+            Template template = new SharedTemplate("entries-atom", Template.Role.ATOMFEED);
+            return thymeleafRenderer.render(template, model);
+        } catch (Exception e) {
+            log.error("Error rendering Atom feed for {}", feedRequest.getWeblog().getHandle(), e);
+            return null;
+        }
+    }
+
     /**
      * Generate a cache key from a parsed weblog feed request.
      * This generates a key of the form ...
@@ -23,7 +23,6 @@ package org.tightblog.rendering.controller;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
-import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.Resource;
 import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
@@ -40,11 +39,13 @@ import org.tightblog.service.WeblogManager;
 import org.tightblog.service.ThemeManager;
 import org.tightblog.domain.Template;
 import org.tightblog.domain.Template.Role;
+import org.tightblog.domain.EntryCursor;
 import org.tightblog.domain.Weblog;
 import org.tightblog.domain.WeblogEntry;
 import org.tightblog.domain.WeblogEntryComment;
 import org.tightblog.rendering.requests.WeblogPageRequest;
 import org.tightblog.rendering.service.ThymeleafRenderer;
+import org.tightblog.rendering.service.UserSections;
 import org.tightblog.dao.WeblogDao;
 import org.tightblog.util.Utilities;
 import org.tightblog.rendering.cache.CachedContent;
@@ -74,6 +75,7 @@ import java.util.Map;
  * <li>Determine last modified time, return not-modified (HTTP 304) if possible</li>
  * <li>If not, return content from cache if possible</li>
  * <li>If not, load model objects into a map suitable for renderer & call renderer to create content</li>
+ * <li>Return not-modified if the content matches the browser's entity tag, else the content</li>
  * </ul>
  */
 @RestController
@@ -108,6 +110,8 @@ public class PageController extends AbstractController {
         this.thymeleafRenderer = thymeleafRenderer;
         this.themeManager = themeManager;
         this.pageModel = pageModel;
+        weblogPageCache.setKeyWarmer(this::warmKey);
+        weblogPageCache.setViewPreparer(UserSections::prepareViews);
     }
 
     /**
@@ -253,6 +257,18 @@ public class PageController extends AbstractController {
             }
         }
 
+        // positions given by the links of entry listings, see WeblogEntryListGenerator.getChronoPager()
+        if (incomingRequest.getWeblogEntryAnchor() == null && incomingRequest.getCustomPageName() == null) {
+            EntryCursor cursor = EntryCursor.parse(request.getParameter("before"), false);
+            if (cursor == null) {
+                cursor = EntryCursor.parse(request.getParameter("after"), true);
+            }
+            if (cursor != null) {
+                incomingRequest.setCursor(cursor);
+                incomingRequest.setNoIndex(true);
+            }
+        }
+
         Instant objectLastChanged = incomingRequest.getWeblog().getLastModified();
 
         // Respond with 304 Not Modified if it is not modified.
@@ -269,75 +285,153 @@ public class PageController extends AbstractController {
             incomingRequest.setBlogger(userDao.findEnabledByUserName(incomingRequest.getAuthenticatedUser()));
         }
 
-        // cache key to retrieve earlier generated content
-        String cacheKey = null;
-
         // Check cache for content except during comment feedback/preview (i.e., commentForm present)
         WeblogEntryComment commentForm = (WeblogEntryComment) request.getAttribute("commentForm");
 
+        // determined before any rendering, as user state is hidden from shared renderings
+        UserSections.Reader reader = UserSections.readerOf(incomingRequest);
+
         // pages containing user-specific comment forms aren't cached
-        CachedContent rendererOutput = null;
-        boolean newContent = false;
+        CachedContent rendererOutput;
         if (commentForm == null) {
-            cacheKey = generateKey(incomingRequest);
-            rendererOutput = weblogPageCache.get(cacheKey, objectLastChanged);
+            String cacheKey = generateKey(incomingRequest);
+            // outdated pages may be given to anonymous readers while refreshing (any request
+            // parameters the rendering reads were copied into the page request, see setRequest)
+            boolean allowStale = !reader.loggedIn();
+            rendererOutput = weblogPageCache.getOrRender(cacheKey, objectLastChanged,
+                    () -> renderSharedPage(incomingRequest), allowStale);
+
+            if (rendererOutput != null && rendererOutput.isAnonymousOnly() && reader.loggedIn()) {
+                // template reads user state directly, so logged-in readers need their own copy
+                rendererOutput = weblogPageCache.getOrRender(
+                        cacheKey + "/user=" + incomingRequest.getAuthenticatedUser(),
+                        objectLastChanged, () -> renderPage(incomingRequest));
+            }
+        } else {
+            incomingRequest.setCommentForm(commentForm);
+            rendererOutput = renderPage(incomingRequest);
         }
 
-        if (rendererOutput == null) {
-            newContent = true;
+        if (rendererOutput != null) {
+            rendererOutput = UserSections.forReader(rendererOutput, reader);
 
-            // use built-in template if not yet earlier determined
-            if (incomingRequest.getTemplate() == null) {
-                incomingRequest.setTemplate(
-                        themeManager.getWeblogTheme(incomingRequest.getWeblog()).getTemplateByRole(Role.WEBLOG));
+            // weblog may have changed since the browser's copy, but not necessarily this page
+            if (commentForm == null && matchesETag(request, rendererOutput)) {
+                weblogPageCache.incrementRequestsHandledBy304();
+                return notModified(rendererOutput, request);
             }
 
-            if (incomingRequest.getTemplate() == null) {
-                LOGGER.warn("For weblog {}, no WEBLOG template defined, returning 404",
-                        incomingRequest.getWeblog());
-                return ResponseEntity.notFound().build();
+            if (commentForm == null && rendererOutput.getRole().isIncrementsHitCount()) {
+                weblogManager.incrementHitCount(incomingRequest.getWeblog());
             }
 
-            // populate the rendering model
-            Map<String, Object> initData = new HashMap<>();
-            initData.put("parsedRequest", incomingRequest);
+            return withContent(ResponseEntity.ok()
+                    .contentType(MediaType.valueOf(rendererOutput.getRole().getContentType()))
+                    .lastModified(objectLastChanged.toEpochMilli())
+                    // no-cache: browser may cache but must validate with server each time before using (check for 304 response)
+                    .cacheControl(CacheControl.noCache()), rendererOutput, request);
+        } else {
+            LOGGER.error("Unable to rendering anything for {}, returning 404", incomingRequest);
+            return ResponseEntity.notFound().build();
+        }
+    }
 
-            // if we're handling comments, add the comment form
-            if (commentForm != null) {
-                incomingRequest.setCommentForm(commentForm);
+    /**
+     * Render and cache the page for a cache key created by generateKey(), for keys of
+     * anonymous requests not needing a servlet request (i.e., other than custom pages.)
+     */
+    void warmKey(String cacheKey) {
+        if (cacheKey.contains("/user=") || cacheKey.contains("/page/") || cacheKey.contains("/query=")) {
+            return;
+        }
+        String[] parts = cacheKey.split("/");
+        WeblogPageRequest incomingRequest = new WeblogPageRequest(parts[0], null, pageModel);
+        Weblog weblog = weblogDao.findByHandleAndVisibleTrue(incomingRequest.getWeblogHandle());
+        if (weblog == null) {
+            return;
+        }
+        incomingRequest.setWeblog(weblog);
+
+        if (parts.length > 2 && "entry".equals(parts[1])) {
+            incomingRequest.setWeblogEntryAnchor(cacheKey.substring(parts[0].length() + "/entry/".length()));
+            WeblogEntry entry = weblogEntryManager.getWeblogEntryByAnchor(weblog,
+                    incomingRequest.getWeblogEntryAnchor());
+            if (entry == null || !entry.isPublished()) {
+                return;
+            }
+            incomingRequest.setWeblogEntry(entry);
+            incomingRequest.setTemplate(themeManager.getWeblogTheme(weblog).getTemplateByRole(Role.PERMALINK));
+        } else {
+            for (int i = 1; i < parts.length; i++) {
+                if ("date".equals(parts[i]) && i + 1 < parts.length) {
+                    incomingRequest.setNoIndex(true);
+                    incomingRequest.setWeblogDate(parts[++i]);
+                } else if ("cat".equals(parts[i]) && i + 1 < parts.length) {
+                    incomingRequest.setCategory(Utilities.decode(parts[++i]));
+                } else if ("tag".equals(parts[i]) && i + 1 < parts.length) {
+                    incomingRequest.setTag(Utilities.decode(parts[++i]));
+                } else if (parts[i].startsWith("page=") && StringUtils.isNumeric(parts[i].substring(5))) {
+                    incomingRequest.setPageNum(Integer.parseInt(parts[i].substring(5)));
+                    incomingRequest.setNoIndex(true);
+                } else if (parts[i].startsWith("before=") || parts[i].startsWith("after=")) {
+                    String[] cursorParts = parts[i].split("=", 2);
+                    incomingRequest.setCursor(EntryCursor.parse(cursorParts[1], "after".equals(cursorParts[0])));
+                    incomingRequest.setNoIndex(true);
+                }
             }
+        }
 
-            Map<String, Object> model = getModelMap("pageModelSet", initData);
-            model.put("model", incomingRequest);
+        // skip keys not round-tripping, rather than caching a page under the wrong key
+        if (cacheKey.equals(generateKey(incomingRequest))) {
+            weblogPageCache.getOrRender(cacheKey, weblog.getLastModified(), () -> renderSharedPage(incomingRequest));
+        } else {
+            LOGGER.debug("Not warming unrecognized key {}", cacheKey);
+        }
+    }
 
-            try {
-                // render content
-                rendererOutput = thymeleafRenderer.render(incomingRequest.getTemplate(), model);
-            } catch (Exception e) {
-                LOGGER.error("Rendering error for {}", incomingRequest, e);
+    /**
+     * Render the page once for all readers, with user-specific content left to UserSections.
+     */
+    private CachedContent renderSharedPage(WeblogPageRequest incomingRequest) {
+        incomingRequest.setSharedRendering(true);
+        try {
+            CachedContent rendererOutput = renderPage(incomingRequest);
+            if (rendererOutput != null) {
+                rendererOutput.setAnonymousOnly(incomingRequest.isUserStateRequested());
             }
+            return rendererOutput;
+        } finally {
+            incomingRequest.setSharedRendering(false);
         }
+    }
 
-        if (rendererOutput != null) {
-            if (commentForm == null && rendererOutput.getRole().isIncrementsHitCount()) {
-                weblogManager.incrementHitCount(incomingRequest.getWeblog());
-            }
+    /**
+     * Render the page for the request, returning null if it could not be rendered.
+     */
+    private CachedContent renderPage(WeblogPageRequest incomingRequest) {
+        // use built-in template if not yet earlier determined
+        if (incomingRequest.getTemplate() == null) {
+            incomingRequest.setTemplate(
+                    themeManager.getWeblogTheme(incomingRequest.getWeblog()).getTemplateByRole(Role.WEBLOG));
+        }
 
-            if (newContent && cacheKey != null) {
-                LOGGER.debug("PUT {}", cacheKey);
-                weblogPageCache.put(cacheKey, rendererOutput);
-            }
+        if (incomingRequest.getTemplate() == null) {
+            LOGGER.warn("For weblog {}, no WEBLOG template defined", incomingRequest.getWeblog());
+            return null;
+        }
 
-            return ResponseEntity.ok()
-                    .contentType(MediaType.valueOf(rendererOutput.getRole().getContentType()))
-                    .contentLength(rendererOutput.getContent().length)
-                    .lastModified(objectLastChanged.toEpochMilli())
-                    // no-cache: browser may cache but must validate with server each time before using (check for 304 response)
-                    .cacheControl(CacheControl.noCache())
-                    .body(new ByteArrayResource(rendererOutput.getContent()));
-        } else {
-            LOGGER.error("Unable to rendering anything for {}, returning 404", incomingRequest);
-            return ResponseEntity.notFound().build();
+        // populate the rendering model
+        Map<String, Object> initData = new HashMap<>();
+        initData.put("parsedRequest", incomingRequest);
+
+        Map<String, Object> model = getModelMap("pageModelSet", initData);
+        model.put("model", incomingRequest);
+
+        try {
+            return thymeleafRenderer.render(incomingRequest.getTemplate(), model);
+        } catch (Exception e) {
+            LOGGER.error("Rendering error for {}", incomingRequest, e);
+            return null;
         }
     }
 
@@ -372,7 +466,10 @@ public class PageController extends AbstractController {
                 key.append("/tag/").append(tag);
             }
 
-            if (request.getPageNum() > 0) {
+            if (request.getCursor() != null) {
+                key.append("/").append(request.getCursor().getParamName()).append("=")
+                        .append(request.getCursor().getToken());
+            } else if (request.getPageNum() > 0) {
                 key.append("/page=").append(request.getPageNum());
             }
 
@@ -381,11 +478,7 @@ public class PageController extends AbstractController {
             }
         }
 
-        // add login state
-        if (request.getAuthenticatedUser() != null) {
-            key.append("/user=").append(request.getAuthenticatedUser());
-        }
-
+        // no login state, as cached pages are shared by all readers (see UserSections)
         return key.toString();
     }
 
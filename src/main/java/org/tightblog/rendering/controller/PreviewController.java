@@ -37,6 +37,7 @@ import org.tightblog.domain.Weblog;
 import org.tightblog.domain.WeblogEntry;
 import org.tightblog.rendering.requests.WeblogPageRequest;
 import org.tightblog.rendering.service.ThymeleafRenderer;
+import org.tightblog.rendering.service.UserSections;
 import org.tightblog.rendering.cache.CachedContent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -125,7 +126,8 @@ public class PreviewController extends AbstractController {
         Map<String, Object> model = getModelMap("pageModelSet", initData);
         model.put("model", incomingRequest);
 
-        CachedContent rendererOutput = thymeleafRenderer.render(incomingRequest.getTemplate(), model);
+        CachedContent rendererOutput = UserSections.forReader(
+                thymeleafRenderer.render(incomingRequest.getTemplate(), model), UserSections.readerOf(incomingRequest));
         return ResponseEntity.ok()
                 .contentType(MediaType.valueOf(rendererOutput.getRole().getContentType()))
                 .contentLength(rendererOutput.getContent().length)
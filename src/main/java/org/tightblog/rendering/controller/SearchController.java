@@ -21,7 +21,6 @@
 package org.tightblog.rendering.controller;
 
 import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.Resource;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -35,6 +34,7 @@ import org.tightblog.service.ThemeManager;
 import org.tightblog.domain.Template;
 import org.tightblog.domain.Weblog;
 import org.tightblog.rendering.service.ThymeleafRenderer;
+import org.tightblog.rendering.service.UserSections;
 import org.tightblog.rendering.cache.CachedContent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,6 +43,7 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import org.tightblog.dao.WeblogDao;
 
+import javax.servlet.http.HttpServletRequest;
 import java.security.Principal;
 import java.util.HashMap;
 import java.util.Map;
@@ -78,7 +79,7 @@ public class SearchController extends AbstractController {
                                               @RequestParam(value = "q") String query,
                                               @RequestParam(value = "cat", required = false) String category,
                                               @RequestParam(value = "page", required = false) Integer pageNum,
-                                              Principal principal) {
+                                              Principal principal, HttpServletRequest request) {
         WeblogSearchRequest searchRequest = new WeblogSearchRequest(weblogHandle, principal, searchResultsModel);
 
         Weblog weblog = weblogDao.findByHandleAndVisibleTrue(searchRequest.getWeblogHandle());
@@ -120,10 +121,13 @@ public class SearchController extends AbstractController {
 
         // render content
         try {
-            CachedContent rendererOutput = thymeleafRenderer.render(searchRequest.getTemplate(), model);
-            return ResponseEntity.ok().contentType(MediaType.valueOf(rendererOutput.getRole().getContentType()))
-                    .contentLength(rendererOutput.getContent().length)
-                    .body(new ByteArrayResource(rendererOutput.getContent()));
+            CachedContent rendererOutput = UserSections.forReader(
+                    thymeleafRenderer.render(searchRequest.getTemplate(), model), UserSections.readerOf(searchRequest));
+            if (matchesETag(request, rendererOutput)) {
+                return notModified(rendererOutput, request);
+            }
+            return withContent(ResponseEntity.ok()
+                    .contentType(MediaType.valueOf(rendererOutput.getRole().getContentType())), rendererOutput, request);
         } catch (Exception e) {
             LOGGER.error("Error during rendering of template {}", searchRequest.getTemplate().getId(), e);
             return ResponseEntity.notFound().build();
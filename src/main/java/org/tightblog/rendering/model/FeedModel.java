@@ -27,7 +27,7 @@ import org.springframework.stereotype.Component;
 import org.tightblog.config.DynamicProperties;
 import org.tightblog.service.URLService;
 import org.tightblog.service.WeblogEntryManager;
-import org.tightblog.domain.Weblog;
+import org.tightblog.domain.WeblogEntry;
 import org.tightblog.rendering.service.WeblogEntryListGenerator;
 
 /**
@@ -64,10 +64,14 @@ public class FeedModel {
     }
 
     /**
-     * Transform blog text based on Edit Format and HTML policy
+     * Entry text transformed based on Edit Format and HTML policy
      */
-    public String render(Weblog.EditFormat format, String str) {
-        return weblogEntryManager.processBlogText(format, str);
+    public String getTransformedText(WeblogEntry entry) {
+        return weblogEntryManager.getTransformedText(entry);
+    }
+
+    public String getTransformedSummary(WeblogEntry entry) {
+        return weblogEntryManager.getTransformedSummary(entry);
     }
 
     public String getSystemVersion() {
@@ -29,6 +29,7 @@ import org.tightblog.service.WeblogManager;
 import org.tightblog.service.ThemeManager;
 import org.tightblog.domain.Weblog;
 import org.tightblog.domain.WeblogEntryTagAggregate;
+import org.tightblog.rendering.cache.WeblogWidgetCache;
 import org.tightblog.rendering.service.CalendarGenerator;
 import org.tightblog.rendering.service.WeblogEntryListGenerator;
 
@@ -46,6 +47,7 @@ public class PageModel {
     protected ThemeManager themeManager;
     private final WeblogEntryListGenerator weblogEntryListGenerator;
     private final CalendarGenerator calendarGenerator;
+    private final WeblogWidgetCache weblogWidgetCache;
     private final int maxEntriesPerPage;
 
     @Autowired
@@ -56,6 +58,7 @@ public class PageModel {
             ThemeManager themeManager,
             WeblogEntryListGenerator weblogEntryListGenerator,
             CalendarGenerator calendarGenerator,
+            WeblogWidgetCache weblogWidgetCache,
             @Value("${site.pages.maxEntries:30}") int maxEntriesPerPage) {
 
         this.userManager = userManager;
@@ -64,6 +67,7 @@ public class PageModel {
         this.themeManager = themeManager;
         this.weblogEntryListGenerator = weblogEntryListGenerator;
         this.calendarGenerator = calendarGenerator;
+        this.weblogWidgetCache = weblogWidgetCache;
         this.maxEntriesPerPage = maxEntriesPerPage;
     }
 
@@ -87,6 +91,10 @@ public class PageModel {
         return calendarGenerator;
     }
 
+    public WeblogWidgetCache getWeblogWidgetCache() {
+        return weblogWidgetCache;
+    }
+
     public int getMaxEntriesPerPage() {
         return maxEntriesPerPage;
     }
@@ -105,6 +113,7 @@ public class PageModel {
     }
 
     public List<WeblogEntryTagAggregate> getPopularTags(Weblog weblog, int length) {
-        return weblogManager.getPopularTags(weblog, 0, length);
+        return weblogWidgetCache.get(WeblogWidgetCache.Widget.POPULAR_TAGS, weblog, String.valueOf(length),
+                () -> weblogManager.getPopularTags(weblog, 0, length));
     }
 }
@@ -23,6 +23,7 @@ package org.tightblog.rendering.model;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import org.tightblog.rendering.cache.WeblogWidgetCache;
 import org.tightblog.rendering.service.CalendarGenerator;
 import org.tightblog.rendering.service.WeblogEntryListGenerator;
 import org.tightblog.service.ThemeManager;
@@ -51,12 +52,13 @@ public class SearchResultsModel extends PageModel {
             ThemeManager themeManager,
             WeblogEntryListGenerator weblogEntryListGenerator,
             CalendarGenerator calendarGenerator,
+            WeblogWidgetCache weblogWidgetCache,
             @Value("${site.pages.maxEntries:30}") int maxEntriesPerPage,
             WeblogEntryDao weblogEntryDao,
             LuceneIndexer luceneIndexer) {
 
         super(userManager, weblogManager, weblogEntryManager, themeManager, weblogEntryListGenerator,
-                calendarGenerator, maxEntriesPerPage);
+                calendarGenerator, weblogWidgetCache, maxEntriesPerPage);
 
         this.weblogEntryDao = weblogEntryDao;
         this.luceneIndexer = luceneIndexer;
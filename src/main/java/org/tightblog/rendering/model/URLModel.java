@@ -25,6 +25,7 @@ import org.springframework.beans.factory.config.ConfigurableBeanFactory;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
+import org.tightblog.domain.RecentWeblogEntry;
 import org.tightblog.domain.Weblog;
 import org.tightblog.service.URLService;
 import org.tightblog.config.DynamicProperties;
@@ -103,6 +104,10 @@ public class URLModel implements Model {
         return urlService.getWeblogEntryURL(entry);
     }
 
+    public String getURL(RecentWeblogEntry entry) {
+        return urlService.getWeblogEntryURL(weblog, entry.getAnchor());
+    }
+
     public String getNewEntryURL() {
         return urlService.getNewEntryURL(weblog.getId());
     }
@@ -118,6 +123,10 @@ public class URLModel implements Model {
         return urlService.getCommentURL(entry, timeStamp);
     }
 
+    public String getCommentURL(RecentWeblogEntry entry, String timeStamp) {
+        return getURL(entry) + "#comment-" + timeStamp;
+    }
+
     public String getWeblogEntryPostCommentURL(WeblogEntry entry) {
         return urlService.getWeblogEntryPostCommentURL(entry);
     }
@@ -58,16 +58,16 @@ public final class WeblogFeedRequest extends WeblogRequest {
 
     public WeblogEntryListGenerator.WeblogEntryListData getWeblogEntriesPager() {
         return feedModel.getWeblogEntryListGenerator().getChronoPager(weblog,
-                null, categoryName, tag, pageNum, feedModel.getNumEntriesPerPage(),
+                null, categoryName, tag, pageNum, null, feedModel.getNumEntriesPerPage(),
                 false);
     }
 
     public String getTransformedText(WeblogEntry entry) {
-        return feedModel.render(entry.getEditFormat(), entry.getText());
+        return feedModel.getTransformedText(entry);
     }
 
     public String getTransformedSummary(WeblogEntry entry) {
-        return feedModel.render(entry.getEditFormat(), entry.getSummary());
+        return feedModel.getTransformedSummary(entry);
     }
 
     /**
@@ -22,20 +22,27 @@ package org.tightblog.rendering.requests;
 
 import org.tightblog.domain.CalendarData;
 import org.tightblog.domain.CommentSearchCriteria;
+import org.tightblog.domain.EntryCursor;
 import org.tightblog.domain.Template;
-import org.tightblog.domain.Weblog;
 import org.tightblog.domain.WeblogEntry;
 import org.tightblog.domain.WeblogEntryComment;
 import org.tightblog.domain.WeblogEntrySearchCriteria;
+import org.tightblog.domain.RecentComment;
+import org.tightblog.domain.RecentWeblogEntry;
 import org.tightblog.domain.WeblogEntryTagAggregate;
+import org.tightblog.domain.User;
 import org.tightblog.domain.WeblogRole;
+import org.tightblog.rendering.cache.WeblogWidgetCache;
+import org.tightblog.rendering.service.ThemeTemplateResolver;
 import org.tightblog.rendering.service.WeblogEntryListGenerator;
 import org.tightblog.rendering.model.PageModel;
 
 import javax.servlet.http.HttpServletRequest;
 import java.security.Principal;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
@@ -54,7 +61,10 @@ public class WeblogPageRequest extends WeblogRequest {
     protected String category;
     private String weblogDate;
     private String tag;
-    private HttpServletRequest request;
+    // position of the entries wanted, in place of a page number
+    private EntryCursor cursor;
+    // copied from the servlet request, as rendering may continue after it completes
+    private Map<String, String> requestParameters = Map.of();
     private String queryString;
     private boolean preview;
 
@@ -68,6 +78,11 @@ public class WeblogPageRequest extends WeblogRequest {
     private WeblogEntryComment commentForm;
     protected WeblogEntryListGenerator.WeblogEntryListData pager;
 
+    // rendering for all readers, see UserSections; user state is hidden from templates during
+    // it, with any attempt to read it noted as the result is then valid for anonymous readers only
+    private boolean sharedRendering;
+    private boolean userStateRequested;
+
     public WeblogPageRequest(String weblogHandle, Principal principal, PageModel pageModel) {
         super(principal);
         setWeblogHandle(weblogHandle);
@@ -118,6 +133,14 @@ public class WeblogPageRequest extends WeblogRequest {
         this.category = weblogCategory;
     }
 
+    public EntryCursor getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(EntryCursor cursor) {
+        this.cursor = cursor;
+    }
+
     public String getWeblogDate() {
         return weblogDate;
     }
@@ -152,11 +175,17 @@ public class WeblogPageRequest extends WeblogRequest {
 
     /* Supports custom parameters often needed by custom external pages */
     public String getRequestParameter(String paramName) {
-        return request.getParameter(paramName);
+        return requestParameters.get(paramName);
     }
 
     public void setRequest(HttpServletRequest request) {
-        this.request = request;
+        Map<String, String> parameters = new HashMap<>();
+        request.getParameterMap().forEach((name, values) -> {
+            if (values != null && values.length > 0) {
+                parameters.put(name, values[0]);
+            }
+        });
+        this.requestParameters = parameters;
     }
 
     public String getQueryString() {
@@ -190,15 +219,11 @@ public class WeblogPageRequest extends WeblogRequest {
     }
 
     public String getTransformedText(WeblogEntry entry) {
-        return render(entry.getEditFormat(), entry.getText());
+        return pageModel.getWeblogEntryManager().getTransformedText(entry);
     }
 
     public String getTransformedSummary(WeblogEntry entry) {
-        return render(entry.getEditFormat(), entry.getSummary());
-    }
-
-    private String render(Weblog.EditFormat format, String str) {
-        return pageModel.getWeblogEntryManager().processBlogText(format, str);
+        return pageModel.getWeblogEntryManager().getTransformedSummary(entry);
     }
 
     public CalendarData getCalendarData(boolean includeBlogEntryData) {
@@ -214,8 +239,34 @@ public class WeblogPageRequest extends WeblogRequest {
     }
 
     private boolean checkUserRights(WeblogRole role) {
-        return !preview && getAuthenticatedUser() != null
-                && pageModel.getUserManager().checkWeblogRole(getAuthenticatedUser(), weblog, role);
+        return isUserStateAvailable() && !preview && super.getAuthenticatedUser() != null
+                && pageModel.getUserManager().checkWeblogRole(super.getAuthenticatedUser(), weblog, role);
+    }
+
+    @Override
+    public String getAuthenticatedUser() {
+        return isUserStateAvailable() ? super.getAuthenticatedUser() : null;
+    }
+
+    @Override
+    public User getBlogger() {
+        return isUserStateAvailable() ? super.getBlogger() : null;
+    }
+
+    private boolean isUserStateAvailable() {
+        if (sharedRendering) {
+            userStateRequested = true;
+            return false;
+        }
+        return true;
+    }
+
+    public void setSharedRendering(boolean sharedRendering) {
+        this.sharedRendering = sharedRendering;
+    }
+
+    public boolean isUserStateRequested() {
+        return userStateRequested;
     }
 
     /**
@@ -225,11 +276,11 @@ public class WeblogPageRequest extends WeblogRequest {
      * @param length Max entries to return (1-100)
      * @return List of weblog entry objects.
      */
-    public List<WeblogEntry> getRecentWeblogEntries(String catName, int length) {
+    public List<RecentWeblogEntry> getRecentWeblogEntries(String catName, int length) {
         if (length > MAX_ENTRIES) {
             length = MAX_ENTRIES;
         }
-        List<WeblogEntry> recentEntries = new ArrayList<>();
+        List<RecentWeblogEntry> recentEntries = new ArrayList<>();
         if (length < 1) {
             return recentEntries;
         }
@@ -239,7 +290,9 @@ public class WeblogPageRequest extends WeblogRequest {
         wesc.setStatus(WeblogEntry.PubStatus.PUBLISHED);
         wesc.setMaxResults(length);
         wesc.setCalculatePermalinks(true);
-        recentEntries = pageModel.getWeblogEntryManager().getWeblogEntries(wesc);
+        recentEntries = pageModel.getWeblogWidgetCache().get(WeblogWidgetCache.Widget.RECENT_ENTRIES, weblog,
+                catName + "/" + length, () -> pageModel.getWeblogEntryManager().getWeblogEntries(wesc).stream()
+                        .map(RecentWeblogEntry::of).toList());
         return recentEntries;
     }
 
@@ -249,11 +302,11 @@ public class WeblogPageRequest extends WeblogRequest {
      * @param length Max entries to return (1-100)
      * @return List of comment objects.
      */
-    public List<WeblogEntryComment> getRecentComments(int length) {
+    public List<RecentComment> getRecentComments(int length) {
         if (length > MAX_ENTRIES) {
             length = MAX_ENTRIES;
         }
-        List<WeblogEntryComment> recentComments = new ArrayList<>();
+        List<RecentComment> recentComments = new ArrayList<>();
         if (length < 1) {
             return recentComments;
         }
@@ -261,7 +314,9 @@ public class WeblogPageRequest extends WeblogRequest {
         csc.setWeblog(weblog);
         csc.setStatus(WeblogEntryComment.ApprovalStatus.APPROVED);
         csc.setMaxResults(length);
-        recentComments = pageModel.getWeblogEntryManager().getComments(csc);
+        recentComments = pageModel.getWeblogWidgetCache().get(WeblogWidgetCache.Widget.RECENT_COMMENTS, weblog,
+                String.valueOf(length), () -> pageModel.getWeblogEntryManager().getComments(csc).stream()
+                        .map(RecentComment::of).toList());
         return recentComments;
     }
 
@@ -295,7 +350,7 @@ public class WeblogPageRequest extends WeblogRequest {
 
     public String getTemplateIdByName(String name) {
         Template tmpl = pageModel.getThemeManager().getWeblogTheme(weblog).getTemplateByName(name);
-        return tmpl != null ? tmpl.getId() : null;
+        return tmpl != null ? ThemeTemplateResolver.resourceNameOf(tmpl) : null;
     }
 
     public WeblogEntryListGenerator.WeblogEntryListData getWeblogEntriesPager() {
@@ -306,7 +361,7 @@ public class WeblogPageRequest extends WeblogRequest {
                         preview);
             } else {
                 pager = pageModel.getWeblogEntryListGenerator().getChronoPager(weblog, weblogDate, category,
-                        tag, pageNum, Math.min(pageModel.getMaxEntriesPerPage(), weblog.getEntriesPerPage()),
+                        tag, pageNum, cursor, Math.min(pageModel.getMaxEntriesPerPage(), weblog.getEntriesPerPage()),
                         false);
             }
         }
@@ -119,37 +119,38 @@ public class WeblogSearchRequest extends WeblogPageRequest {
 
             if (searchPhrase != null) {
 
-                // setup the search
-                SearchTask searchTask = new SearchTask(searchModel.getLuceneIndexer());
-                searchTask.setTerm(searchPhrase);
-
-                if (!searchAllBlogs) {
-                    searchTask.setWeblogHandle(getWeblogHandle());
-                }
-
-                if (StringUtils.isNotEmpty(category)) {
-                    searchTask.setCategory(category);
-                }
-
-                // execute search
-                searchModel.getLuceneIndexer().executeIndexOperationNow(searchTask);
-
-                // -1 indicates a parsing/IO error
-                if (searchTask.getResultsCount() >= 0) {
-                    TopFieldDocs docs = searchTask.getResults();
-                    ScoreDoc[] hitsArr = docs.scoreDocs;
-                    this.resultCount = searchTask.getResultsCount();
-
-                    // Convert hits into WeblogEntry instances.  Results are mapped by Day -> Set of entries
-                    // to eliminate any duplicates and then converted into Day -> List map used by pagers
-                    entriesByDateMap = convertHitsToEntries(hitsArr, searchTask).entrySet().stream()
-                            .collect(Collectors.toMap(Map.Entry::getKey, e -> new ArrayList<>(e.getValue()),
-                                    (v1, v2) -> {
-                                        throw new RuntimeException(String.format("Duplicate key for values %s and %s",
-                                                v1, v2));
-                                    },
-                                    () -> new TreeMap<LocalDate, List<WeblogEntry>>(Comparator.reverseOrder()))
-                            );
+                // setup the search, its searcher held until the results are read
+                try (SearchTask searchTask = new SearchTask(searchModel.getLuceneIndexer())) {
+                    searchTask.setTerm(searchPhrase);
+
+                    if (!searchAllBlogs) {
+                        searchTask.setWeblogHandle(getWeblogHandle());
+                    }
+
+                    if (StringUtils.isNotEmpty(category)) {
+                        searchTask.setCategory(category);
+                    }
+
+                    // execute search
+                    searchModel.getLuceneIndexer().executeIndexOperationNow(searchTask);
+
+                    // -1 indicates a parsing/IO error
+                    if (searchTask.getResultsCount() >= 0) {
+                        TopFieldDocs docs = searchTask.getResults();
+                        ScoreDoc[] hitsArr = docs.scoreDocs;
+                        this.resultCount = searchTask.getResultsCount();
+
+                        // Convert hits into WeblogEntry instances.  Results are mapped by Day -> Set of entries
+                        // to eliminate any duplicates and then converted into Day -> List map used by pagers
+                        entriesByDateMap = convertHitsToEntries(hitsArr, searchTask).entrySet().stream()
+                                .collect(Collectors.toMap(Map.Entry::getKey, e -> new ArrayList<>(e.getValue()),
+                                        (v1, v2) -> {
+                                            throw new RuntimeException(String.format("Duplicate key for values %s and %s",
+                                                    v1, v2));
+                                        },
+                                        () -> new TreeMap<LocalDate, List<WeblogEntry>>(Comparator.reverseOrder()))
+                                );
+                    }
                 }
             }
             pager = searchModel.getWeblogEntryListGenerator().getSearchPager(weblog, searchPhrase,
@@ -26,17 +26,15 @@ import org.springframework.stereotype.Component;
 import org.tightblog.service.URLService;
 import org.tightblog.service.WeblogEntryManager;
 import org.tightblog.domain.CalendarData;
-import org.tightblog.domain.WeblogEntry;
-import org.tightblog.domain.WeblogEntry.PubStatus;
-import org.tightblog.domain.WeblogEntrySearchCriteria;
+import org.tightblog.domain.CalendarMonthIndex;
+import org.tightblog.domain.Weblog;
+import org.tightblog.rendering.cache.WeblogWidgetCache;
 import org.tightblog.rendering.requests.WeblogPageRequest;
 import org.tightblog.util.Utilities;
 
 import java.time.DayOfWeek;
 import java.time.LocalDate;
-import java.time.LocalDateTime;
 import java.time.YearMonth;
-import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.TemporalAdjusters;
 import java.time.temporal.WeekFields;
@@ -55,27 +53,26 @@ public class CalendarGenerator {
     protected WeblogEntryManager weblogEntryManager;
     protected URLService urlService;
     private MessageSource messages;
+    private WeblogWidgetCache weblogWidgetCache;
 
     @Autowired
-    CalendarGenerator(WeblogEntryManager weblogEntryManager, URLService urlService, MessageSource messages) {
+    CalendarGenerator(WeblogEntryManager weblogEntryManager, URLService urlService, MessageSource messages,
+                      WeblogWidgetCache weblogWidgetCache) {
         this.weblogEntryManager = weblogEntryManager;
         this.urlService = urlService;
         this.messages = messages;
+        this.weblogWidgetCache = weblogWidgetCache;
     }
 
     public CalendarData getCalendarData(WeblogPageRequest pageRequest, boolean includeBlogEntryData) {
         // retrieve the entries for this month
         LocalDate dayInMonth = Utilities.parseURLDate(pageRequest.getWeblogDate());
-        LocalDateTime startTime = dayInMonth.withDayOfMonth(1).atStartOfDay();
-        LocalDateTime endTime = dayInMonth.withDayOfMonth(dayInMonth.lengthOfMonth()).atStartOfDay().plusDays(1).minusNanos(1);
-
-        WeblogEntrySearchCriteria wesc = new WeblogEntrySearchCriteria();
-        wesc.setWeblog(pageRequest.getWeblog());
-        wesc.setStartDate(startTime.atZone(ZoneId.systemDefault()).toInstant());
-        wesc.setEndDate(endTime.atZone(ZoneId.systemDefault()).toInstant());
-        wesc.setCategoryName(pageRequest.getCategory());
-        wesc.setStatus(PubStatus.PUBLISHED);
-        Map<LocalDate, List<WeblogEntry>> dateToEntryMap = weblogEntryManager.getDateToWeblogEntryMap(wesc);
+        YearMonth monthToDisplay = YearMonth.from(dayInMonth);
+        Weblog weblog = pageRequest.getWeblog();
+        String category = pageRequest.getCategory();
+        CalendarMonthIndex index = weblogWidgetCache.get(WeblogWidgetCache.Widget.CALENDAR, weblog,
+                category == null ? "" : category, () -> weblogEntryManager.getCalendarMonthIndex(weblog, category));
+        Map<LocalDate, List<CalendarMonthIndex.EntrySummary>> dateToEntryMap = index.getDays(monthToDisplay);
 
         // Allows for different formatting for today's date
         LocalDate todaysDate = LocalDate.now(pageRequest.getWeblog().getZoneId());
@@ -92,13 +89,8 @@ public class CalendarGenerator {
         data.setDayOfWeekNames(buildDayNames(locale));
 
         // determine if we should have next and prev month links, and if so, the months for them to point to
-        WeblogEntry temp = weblogEntryManager.findNearestWeblogEntry(pageRequest.getWeblog(),
-                pageRequest.getCategory(), startTime.minusNanos(1), false);
-        data.setPrevMonthLink(computeMonthUrl(pageRequest, firstDayOfMonthOfWeblogEntry(temp)));
-
-        temp = weblogEntryManager.findNearestWeblogEntry(pageRequest.getWeblog(), pageRequest.getCategory(),
-                endTime.plusNanos(1), true);
-        data.setNextMonthLink(computeMonthUrl(pageRequest, firstDayOfMonthOfWeblogEntry(temp)));
+        data.setPrevMonthLink(computeMonthUrl(pageRequest, firstDayOf(index.getPreviousMonth(monthToDisplay))));
+        data.setNextMonthLink(computeMonthUrl(pageRequest, firstDayOf(index.getNextMonth(monthToDisplay))));
 
         data.setHomeLink(urlService.getWeblogCollectionURL(pageRequest.getWeblog(), pageRequest.getCategory(),
                 null, null, -1));
@@ -110,7 +102,6 @@ public class CalendarGenerator {
         // desired month but the few days before and/or after it to fill a 6 week grid.
         // start with the first day of the week containing the first day of the month
         LocalDate dayPointer = dayInMonth.withDayOfMonth(1).with(TemporalAdjusters.previousOrSame(firstDayOfWeek));
-        YearMonth monthToDisplay = YearMonth.from(dayInMonth);
 
         for (int w = 0; w < 6; w++) {
             CalendarData.Week weekIter = new CalendarData.Week();
@@ -134,7 +125,7 @@ public class CalendarGenerator {
                                 pageRequest.getCategory(), dateString, null, -1);
                         dayIter.setLink(link);
                         if (includeBlogEntryData) {
-                            dayIter.setEntries(getCalendarEntries(dayPointer, dateToEntryMap));
+                            dayIter.setEntries(getCalendarEntries(weblog, dayPointer, dateToEntryMap));
                         }
                     }
                 }
@@ -178,16 +169,17 @@ public class CalendarGenerator {
         return result;
     }
 
-    List<CalendarData.BlogEntry> getCalendarEntries(LocalDate day, Map<LocalDate, List<WeblogEntry>> dateToEntryMap) {
+    List<CalendarData.BlogEntry> getCalendarEntries(Weblog weblog, LocalDate day,
+                                                    Map<LocalDate, List<CalendarMonthIndex.EntrySummary>> dateToEntryMap) {
         List<CalendarData.BlogEntry> calendarEntries = new ArrayList<>();
 
-        List<WeblogEntry> entries = dateToEntryMap.get(day);
+        List<CalendarMonthIndex.EntrySummary> entries = dateToEntryMap.get(day);
         if (entries != null) {
-            for (WeblogEntry entry : entries) {
+            for (CalendarMonthIndex.EntrySummary entry : entries) {
                 CalendarData.BlogEntry newEntry = new CalendarData.BlogEntry();
-                newEntry.setLink(urlService.getWeblogEntryURL(entry));
+                newEntry.setLink(urlService.getWeblogEntryURL(weblog, entry.anchor()));
 
-                String title = entry.getTitle().trim();
+                String title = entry.title().trim();
                 if (title.length() > 43) {
                     title = title.substring(0, 40) + "...";
                 }
@@ -215,7 +207,7 @@ public class CalendarGenerator {
         return dayNames;
     }
 
-    static LocalDate firstDayOfMonthOfWeblogEntry(WeblogEntry entry) {
-        return (entry == null) ? null : entry.getPubTime().atZone(ZoneId.systemDefault()).toLocalDate().withDayOfMonth(1);
+    static LocalDate firstDayOf(YearMonth month) {
+        return (month == null) ? null : month.atDay(1);
     }
 }
@@ -0,0 +1,57 @@
+/*
+   Copyright 2026 the original author or authors.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.tightblog.rendering.service;
+
+import org.thymeleaf.dialect.AbstractProcessorDialect;
+import org.thymeleaf.processor.IProcessor;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.tightblog.rendering.cache.EntryFragmentCache;
+
+import java.util.Set;
+
+/**
+ * Thymeleaf dialect letting templates opt in to caching the rendering of individual entries:
+ * <pre>
+ *     &lt;div th:each="entry : ..." tb:entry-fragment="${entry}" tb:fragment-variant="${model.permalink}"&gt;
+ * </pre>
+ * The element's body is rendered once per entry (and variant) and reused wherever the entry
+ * appears.  The body may only depend on the entry and the variant, so not on, e.g., comment
+ * counts, the page being viewed or the reader (other than through user sections, see
+ * {@link UserSections}), which are to be kept outside of the element.
+ */
+public class EntryFragmentDialect extends AbstractProcessorDialect {
+
+    public static final String PREFIX = "tb";
+
+    // after th:each, th:if and th:with, so variables they define can be used
+    private static final int PRECEDENCE = 650;
+
+    private final EntryFragmentCache fragmentCache;
+
+    public EntryFragmentDialect(EntryFragmentCache fragmentCache) {
+        super("TightBlog", PREFIX, PRECEDENCE);
+        this.fragmentCache = fragmentCache;
+    }
+
+    @Override
+    public Set<IProcessor> getProcessors(String dialectPrefix) {
+        return Set.of(
+                new EntryFragmentProcessor(TemplateMode.HTML, dialectPrefix, fragmentCache, PRECEDENCE),
+                new EntryFragmentProcessor(TemplateMode.XML, dialectPrefix, fragmentCache, PRECEDENCE),
+                new EntryFragmentProcessor.VariantProcessor(TemplateMode.HTML, dialectPrefix, PRECEDENCE + 1),
+                new EntryFragmentProcessor.VariantProcessor(TemplateMode.XML, dialectPrefix, PRECEDENCE + 1));
+    }
+}
@@ -0,0 +1,103 @@
+/*
+   Copyright 2026 the original author or authors.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.tightblog.rendering.service;
+
+import org.thymeleaf.context.ITemplateContext;
+import org.thymeleaf.engine.AttributeName;
+import org.thymeleaf.model.IModel;
+import org.thymeleaf.model.IModelFactory;
+import org.thymeleaf.model.IProcessableElementTag;
+import org.thymeleaf.processor.element.AbstractAttributeModelProcessor;
+import org.thymeleaf.processor.element.AbstractAttributeTagProcessor;
+import org.thymeleaf.processor.element.IElementModelStructureHandler;
+import org.thymeleaf.processor.element.IElementTagStructureHandler;
+import org.thymeleaf.standard.expression.StandardExpressions;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.tightblog.domain.WeblogEntry;
+import org.tightblog.rendering.cache.EntryFragmentCache;
+
+/**
+ * Processes <code>tb:entry-fragment</code>, see {@link EntryFragmentDialect}.  A cached body
+ * replaces the element's body unprocessed, otherwise the body is processed as usual between
+ * marker comments for the renderer to capture it from the output, given the renderer provided
+ * the {@link EntryFragmentCache.Marks} of the rendering.
+ */
+class EntryFragmentProcessor extends AbstractAttributeModelProcessor {
+
+    static final String ATTRIBUTE = "entry-fragment";
+    static final String VARIANT_ATTRIBUTE = "fragment-variant";
+
+    private final EntryFragmentCache fragmentCache;
+
+    EntryFragmentProcessor(TemplateMode templateMode, String dialectPrefix, EntryFragmentCache fragmentCache,
+                           int precedence) {
+        super(templateMode, dialectPrefix, null, false, ATTRIBUTE, true, precedence, true);
+        this.fragmentCache = fragmentCache;
+    }
+
+    @Override
+    protected void doProcess(ITemplateContext context, IModel model, AttributeName attributeName,
+                             String attributeValue, IElementModelStructureHandler structureHandler) {
+        // standalone elements have no body to cache
+        if (!fragmentCache.isEnabled() || model.size() < 2) {
+            return;
+        }
+        if (!(evaluate(context, attributeValue) instanceof WeblogEntry entry)) {
+            return;
+        }
+        IProcessableElementTag tag = (IProcessableElementTag) model.get(0);
+        String variantExpression = tag.getAttributeValue(getDialectPrefix(), VARIANT_ATTRIBUTE);
+        Object variant = variantExpression == null ? null : evaluate(context, variantExpression);
+        String key = fragmentCache.keyOf(entry, context.getTemplateData().getTemplate(),
+                tag.getLine() + ":" + tag.getCol(), variant);
+        if (key == null) {
+            return;
+        }
+
+        IModelFactory modelFactory = context.getModelFactory();
+        String cached = fragmentCache.get(key);
+        if (cached != null) {
+            for (int i = model.size() - 2; i > 0; i--) {
+                model.remove(i);
+            }
+            model.insert(1, modelFactory.createText(cached));
+        } else if (context.getVariable(EntryFragmentCache.MARKS_VARIABLE) instanceof EntryFragmentCache.Marks marks) {
+            model.insert(model.size() - 1, modelFactory.createComment(marks.endMarker(key)));
+            model.insert(1, modelFactory.createComment(marks.startMarker(key)));
+        }
+    }
+
+    private static Object evaluate(ITemplateContext context, String expression) {
+        return StandardExpressions.getExpressionParser(context.getConfiguration())
+                .parseExpression(context, expression).execute(context);
+    }
+
+    /**
+     * Drops <code>tb:fragment-variant</code> from the output, having been read by the
+     * entry fragment processor.
+     */
+    static class VariantProcessor extends AbstractAttributeTagProcessor {
+
+        VariantProcessor(TemplateMode templateMode, String dialectPrefix, int precedence) {
+            super(templateMode, dialectPrefix, null, false, VARIANT_ATTRIBUTE, true, precedence, true);
+        }
+
+        @Override
+        protected void doProcess(ITemplateContext context, IProcessableElementTag tag, AttributeName attributeName,
+                                 String attributeValue, IElementTagStructureHandler structureHandler) {
+        }
+    }
+}
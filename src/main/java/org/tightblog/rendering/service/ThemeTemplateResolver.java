@@ -27,15 +27,22 @@ import org.thymeleaf.templateresource.StringTemplateResource;
 import org.tightblog.domain.SharedTheme;
 import org.tightblog.service.ThemeManager;
 import org.tightblog.domain.Template;
+import org.tightblog.domain.WeblogTemplate;
 import org.tightblog.dao.WeblogTemplateDao;
 
 import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 @Component
 public class ThemeTemplateResolver extends AbstractConfigurableTemplateResolver {
 
     private static Logger logger = LoggerFactory.getLogger(ThemeTemplateResolver.class);
 
+    // name of a database-stored template, see resourceNameOf()
+    private static final Pattern WEBLOG_TEMPLATE_NAME = Pattern.compile("^[^/]+/(.{36})@\\d+$");
+
     private ThemeManager themeManager;
     private WeblogTemplateDao weblogTemplateDao;
 
@@ -46,8 +53,25 @@ public class ThemeTemplateResolver extends AbstractConfigurableTemplateResolver
         setTemplateMode(TemplateMode.HTML);
         setOrder(1);
         setCheckExistence(true);
-        // Have changes to blog templates to propagate immediately: https://stackoverflow.com/a/28530365
+        // Parsed templates are cached only under names that change whenever the template does,
+        // i.e. those of shared themes (fixed while running) and of versioned database templates,
+        // so that changes to blog templates propagate immediately: https://stackoverflow.com/a/28530365
         setCacheable(false);
+        setCacheablePatterns(Set.of("*:*", "*@*"));
+    }
+
+    /**
+     * Name by which to have the template engine resolve the template.  For database-stored
+     * templates this is "weblog id/template id@last modified millis", allowing their parsed
+     * form to be cached until edited, and the cached forms for a weblog to be found for eviction.
+     */
+    public static String resourceNameOf(Template template) {
+        if (template instanceof WeblogTemplate weblogTemplate && weblogTemplate.getWeblog() != null
+                && weblogTemplate.getLastModified() != null) {
+            return weblogTemplate.getWeblog().getId() + "/" + weblogTemplate.getId() + "@"
+                    + weblogTemplate.getLastModified().toEpochMilli();
+        }
+        return template.getId();
     }
 
     @Override
@@ -74,6 +98,11 @@ public class ThemeTemplateResolver extends AbstractConfigurableTemplateResolver
             if (theme != null) {
                 template = theme.getTemplateByName(sharedThemeParts[1]);
             }
+        } else if (resourceId.contains("@")) {
+            Matcher matcher = WEBLOG_TEMPLATE_NAME.matcher(resourceId);
+            if (matcher.matches()) {
+                template = weblogTemplateDao.findById(matcher.group(1)).orElse(null);
+            }
         } else if (resourceId.length() == 36) {
             // Additional templates (not part of theme) added by blogger are indexed by 36 char UUIDs
             // in DB; 36 requirement blocks most DB calls for static resources in Thymeleaf folder, e.g.,
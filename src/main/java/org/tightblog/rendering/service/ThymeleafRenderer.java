@@ -17,13 +17,17 @@ package org.tightblog.rendering.service;
 
 import org.attoparser.ParseException;
 import org.springframework.expression.spel.SpelEvaluationException;
+import org.thymeleaf.cache.ICache;
+import org.thymeleaf.cache.TemplateCacheKey;
 import org.thymeleaf.context.Context;
 import org.thymeleaf.context.IContext;
 import org.thymeleaf.exceptions.TemplateInputException;
 import org.thymeleaf.exceptions.TemplateProcessingException;
+import org.thymeleaf.engine.TemplateModel;
 import org.thymeleaf.spring5.SpringTemplateEngine;
 import org.tightblog.domain.Template;
 import org.tightblog.rendering.cache.CachedContent;
+import org.tightblog.rendering.cache.EntryFragmentCache;
 import org.tightblog.util.Utilities;
 
 import java.io.ByteArrayOutputStream;
@@ -32,6 +36,7 @@ import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.Writer;
+import java.util.ArrayList;
 import java.util.Map;
 
 public class ThymeleafRenderer {
@@ -42,15 +47,27 @@ public class ThymeleafRenderer {
         this.templateEngine = templateEngine;
     }
 
+    private EntryFragmentCache fragmentCache;
+
+    /**
+     * @param fragmentCache cache to store entry fragments rendered by the template engine's
+     *                      EntryFragmentDialect in
+     */
+    public void setFragmentCache(EntryFragmentCache fragmentCache) {
+        this.fragmentCache = fragmentCache;
+    }
+
     public CachedContent render(Template template, Map<String, Object> model) throws IOException {
         CachedContent rendererOutput = new CachedContent(template.getRole());
+        EntryFragmentCache.Marks fragmentMarks = new EntryFragmentCache.Marks();
 
         try (ByteArrayOutputStream outStream = new ByteArrayOutputStream(Utilities.TWENTYFOUR_KB_IN_BYTES);
              Writer writer = new PrintWriter(new OutputStreamWriter(outStream, "UTF-8"))) {
             try {
                 Context ctx = new Context();
                 ctx.setVariables(model);
-                runTemplateEngine(template.getId(), ctx, writer);
+                ctx.setVariable(EntryFragmentCache.MARKS_VARIABLE, fragmentMarks);
+                runTemplateEngine(ThemeTemplateResolver.resourceNameOf(template), ctx, writer);
             } catch (TemplateInputException e) {
                 // Provide end-user friendly error messages for at least two common errors:
                 // unknown method call and unknown property name
@@ -76,11 +93,29 @@ public class ThymeleafRenderer {
                 }
             }
             writer.flush();
-            rendererOutput.setContent(outStream.toByteArray());
+            byte[] output = outStream.toByteArray();
+            rendererOutput.setContent(fragmentCache == null ? output :
+                    fragmentCache.captureFragments(output, fragmentMarks));
         }
         return rendererOutput;
     }
 
+    /**
+     * Drop the parsed forms of a weblog's database-stored templates from the template engine's cache.
+     */
+    public void evictWeblogTemplates(String weblogId) {
+        ICache<TemplateCacheKey, TemplateModel> templateCache = templateEngine.getCacheManager() == null ? null
+                : templateEngine.getCacheManager().getTemplateCache();
+        if (templateCache != null) {
+            String prefix = weblogId + "/";
+            for (TemplateCacheKey key : new ArrayList<>(templateCache.keySet())) {
+                if (key.getTemplate().startsWith(prefix)) {
+                    templateCache.clearKey(key);
+                }
+            }
+        }
+    }
+
     /*
      * templateEngine.process(...) is a final method and hence can't normally be mocked by testing frameworks
      * factoring out here to allow for spying/mocking.
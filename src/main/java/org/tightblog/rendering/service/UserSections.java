@@ -0,0 +1,167 @@
+/*
+   Copyright 2026 the original author or authors.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.tightblog.rendering.service;
+
+import org.tightblog.rendering.cache.CachedContent;
+import org.tightblog.rendering.requests.WeblogPageRequest;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Tailors rendered pages to the reader.  Templates mark content meant for only some readers
+ * with HTML comments, e.g. <code>&lt;!--tb-user:publisher--&gt;...&lt;!--/tb-user--&gt;</code>,
+ * allowing one rendering of a page to be cached for and shared by all readers, with the
+ * sections the reader is not to see (and the markers themselves) removed when served.
+ * Sections are "anonymous", "user" (logged in), "publisher" and "owner" and may be nested.
+ */
+public final class UserSections {
+
+    private static final byte[] START = "<!--tb-user:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] START_CLOSE = "-->".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] END = "<!--/tb-user-->".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * What a reader of a weblog may see.
+     */
+    public record Reader(boolean loggedIn, boolean publisher, boolean owner) {
+
+        public static final Reader ANONYMOUS = new Reader(false, false, false);
+
+        boolean canSee(String section) {
+            return switch (section) {
+                case "anonymous" -> !loggedIn;
+                case "user" -> loggedIn;
+                case "publisher" -> publisher;
+                case "owner" -> owner;
+                default -> false;
+            };
+        }
+
+        String viewName() {
+            return owner ? "owner" : publisher ? "publisher" : loggedIn ? "user" : "anonymous";
+        }
+    }
+
+    private static final List<Reader> ALL_READERS = List.of(Reader.ANONYMOUS, new Reader(true, false, false),
+            new Reader(true, true, false), new Reader(true, true, true));
+
+    private UserSections() {
+    }
+
+    /**
+     * Determine the reader of a page request.  Must be called outside of any shared
+     * rendering of the request, as user state is unavailable during it.
+     */
+    public static Reader readerOf(WeblogPageRequest request) {
+        if (!request.isLoggedIn()) {
+            return Reader.ANONYMOUS;
+        }
+        return new Reader(true, request.isUserBlogPublisher(), request.isUserBlogOwner());
+    }
+
+    /**
+     * Get the content as the reader is to see it.  The result is kept with the content so
+     * other readers with the same rights get the same object (and its compressed form and
+     * digest) without repeating the work.
+     */
+    public static CachedContent forReader(CachedContent content, Reader reader) {
+        if (indexOf(content.getContent(), START, 0) < 0) {
+            return content;
+        }
+        return content.getView(reader.viewName(), c -> {
+            CachedContent view = new CachedContent(c.getRole());
+            view.setContent(filter(c.getContent(), reader));
+            return view;
+        });
+    }
+
+    /**
+     * Create the views of the content for each kind of reader, with their compressed forms
+     * and digests, so a cache holding the content can account for them when it is stored.
+     */
+    public static void prepareViews(CachedContent content) {
+        for (Reader reader : ALL_READERS) {
+            CachedContent view = forReader(content, reader);
+            if (view == content) {
+                // no user sections
+                return;
+            }
+            view.getGzippedContent();
+            view.getDigest();
+        }
+    }
+
+    static byte[] filter(byte[] content, Reader reader) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(content.length);
+        // depth of sections being skipped, including those nested in a skipped section
+        int skipDepth = 0;
+        int pos = 0;
+        while (pos < content.length) {
+            int start = indexOf(content, START, pos);
+            int end = indexOf(content, END, pos);
+            if (start < 0 && end < 0) {
+                if (skipDepth == 0) {
+                    out.write(content, pos, content.length - pos);
+                }
+                break;
+            }
+            if (start >= 0 && (end < 0 || start < end)) {
+                int nameStart = start + START.length;
+                int nameEnd = indexOf(content, START_CLOSE, nameStart);
+                if (nameEnd < 0) {
+                    // unterminated marker, leave remainder as is
+                    if (skipDepth == 0) {
+                        out.write(content, pos, content.length - pos);
+                    }
+                    break;
+                }
+                if (skipDepth == 0) {
+                    out.write(content, pos, start - pos);
+                    String section = new String(content, nameStart, nameEnd - nameStart, StandardCharsets.US_ASCII);
+                    if (!reader.canSee(section.trim())) {
+                        skipDepth = 1;
+                    }
+                } else {
+                    skipDepth++;
+                }
+                pos = nameEnd + START_CLOSE.length;
+            } else {
+                if (skipDepth == 0) {
+                    out.write(content, pos, end - pos);
+                } else {
+                    skipDepth--;
+                }
+                pos = end + END.length;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static int indexOf(byte[] data, byte[] target, int from) {
+        outer:
+        for (int i = from; i <= data.length - target.length; i++) {
+            for (int j = 0; j < target.length; j++) {
+                if (data[i + j] != target[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}
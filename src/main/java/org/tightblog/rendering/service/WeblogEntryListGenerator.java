@@ -18,8 +18,10 @@ package org.tightblog.rendering.service;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.MessageSource;
 import org.springframework.stereotype.Component;
+import org.tightblog.service.EntryNavigationIndex;
 import org.tightblog.service.URLService;
 import org.tightblog.service.WeblogEntryManager;
+import org.tightblog.domain.EntryCursor;
 import org.tightblog.domain.Weblog;
 import org.tightblog.domain.WeblogEntry;
 import org.tightblog.domain.WeblogEntrySearchCriteria;
@@ -43,13 +45,15 @@ public class WeblogEntryListGenerator {
     private WeblogEntryManager weblogEntryManager;
     private URLService urlService;
     private MessageSource messages;
+    private EntryNavigationIndex entryNavigationIndex;
 
     @Autowired
     WeblogEntryListGenerator(WeblogEntryManager weblogEntryManager, URLService urlService,
-                                    MessageSource messages) {
+                                    MessageSource messages, EntryNavigationIndex entryNavigationIndex) {
         this.weblogEntryManager = weblogEntryManager;
         this.urlService = urlService;
         this.messages = messages;
+        this.entryNavigationIndex = entryNavigationIndex;
     }
 
     public WeblogEntryListData getSearchPager(Weblog weblog, String searchPhrase, String category, int page,
@@ -89,18 +93,18 @@ public class WeblogEntryListGenerator {
                         Collections.singletonList(currEntry));
 
                 // make sure that entry is published and not to future
-                WeblogEntry nextEntry = weblogEntryManager.getNextPublishedEntry(currEntry);
-                if (nextEntry != null && nextEntry.getPubTime().isBefore(Instant.now())) {
-                    data.nextLink = urlService.getWeblogEntryURL(nextEntry);
-                    data.nextLabel = messages.getMessage("weblogEntriesPager.single.next", new Object[]{nextEntry.getTitle()},
+                EntryNavigationIndex.Neighbor nextEntry = entryNavigationIndex.getNext(currEntry);
+                if (nextEntry != null && nextEntry.pubTime().isBefore(Instant.now())) {
+                    data.nextLink = urlService.getWeblogEntryURL(weblog, nextEntry.anchor());
+                    data.nextLabel = messages.getMessage("weblogEntriesPager.single.next", new Object[]{nextEntry.title()},
                             weblog.getLocaleInstance());
                 }
 
                 // make sure that entry is published and not to future
-                WeblogEntry prevEntry = weblogEntryManager.getPreviousPublishedEntry(currEntry);
-                if (prevEntry != null && prevEntry.getPubTime().isBefore(Instant.now())) {
-                    data.prevLink = urlService.getWeblogEntryURL(prevEntry);
-                    data.prevLabel = messages.getMessage("weblogEntriesPager.single.prev", new Object[]{prevEntry.getTitle()},
+                EntryNavigationIndex.Neighbor prevEntry = entryNavigationIndex.getPrevious(currEntry);
+                if (prevEntry != null && prevEntry.pubTime().isBefore(Instant.now())) {
+                    data.prevLink = urlService.getWeblogEntryURL(weblog, prevEntry.anchor());
+                    data.prevLabel = messages.getMessage("weblogEntriesPager.single.prev", new Object[]{prevEntry.title()},
                             weblog.getLocaleInstance());
                 }
             }
@@ -109,12 +113,21 @@ public class WeblogEntryListGenerator {
         return data;
     }
 
+    /**
+     * Get a page of entries in reverse chronological order, along with links to the pages of
+     * newer and older entries.  Pages are located by cursors (see EntryCursor) and those links
+     * carry them, page numbers remaining supported for URLs given out before.
+     * @param pageNum page number, used only if no cursor is given; first page is 0, higher page
+     *                number means more in the past.
+     * @param cursor  position the page is to start at, null for none
+     */
     public WeblogEntryListData getChronoPager(Weblog weblog, String dateString, String catName, String tag,
-                                              int pageNum, int maxEntries, boolean siteWideSearch) {
+                                              int pageNum, EntryCursor cursor, int maxEntries,
+                                              boolean siteWideSearch) {
 
         WeblogEntryListData data = new WeblogEntryListData();
-        // first page is 0, higher page number means more in the past.
-        int page = Math.max(pageNum, 0);
+        int page = cursor == null ? Math.max(pageNum, 0) : 0;
+        boolean newer = cursor != null && cursor.newer();
 
         LocalDateTime startTime = null;
         LocalDateTime endTime = null;
@@ -150,22 +163,46 @@ public class WeblogEntryListGenerator {
         wesc.setCategoryName(catName);
         wesc.setTag(tag);
         wesc.setStatus(WeblogEntry.PubStatus.PUBLISHED);
-        wesc.setOffset(maxEntries * page);
+        wesc.setFetchProfile(WeblogEntrySearchCriteria.FetchProfile.LIST_RENDER);
+        if (cursor != null) {
+            // seek by publish time and id (see we_combo2_idx), rather than reading and skipping earlier pages
+            wesc.setCursor(cursor);
+            if (newer) {
+                // nearest newer entries come first in ascending order
+                wesc.setSortOrder(WeblogEntrySearchCriteria.SortOrder.ASCENDING);
+            }
+        } else {
+            wesc.setOffset(maxEntries * page);
+        }
         wesc.setMaxResults(maxEntries + 1);
         Map<LocalDate, List<WeblogEntry>> mmap = weblogEntryManager.getDateToWeblogEntryMap(wesc);
 
-        boolean moreResults = false;
+        int total = 0;
+        for (List<WeblogEntry> dayEntries : mmap.values()) {
+            if (newer) {
+                Collections.reverse(dayEntries);
+            }
+            total += dayEntries.size();
+        }
+        boolean moreResults = total > maxEntries;
+
+        // when newer entries are fetched any extra one is the newest, otherwise the oldest
+        int skip = newer ? Math.max(total - maxEntries, 0) : 0;
         int count = 0;
+        WeblogEntry newestShown = null;
+        WeblogEntry oldestShown = null;
         for (Map.Entry<LocalDate, List<WeblogEntry>> entry : mmap.entrySet()) {
             // now we need to go through each entry in a timePeriod
             List<WeblogEntry> entrySubset = new ArrayList<>();
-            List<WeblogEntry> dayEntries = entry.getValue();
-            for (int i = 0; i < dayEntries.size(); i++) {
-                if (count++ < maxEntries) {
-                    entrySubset.add(i, dayEntries.get(i));
-                } else {
-                    moreResults = true;
+            for (WeblogEntry dayEntry : entry.getValue()) {
+                if (count >= skip && count < skip + maxEntries) {
+                    entrySubset.add(dayEntry);
+                    if (newestShown == null) {
+                        newestShown = dayEntry;
+                    }
+                    oldestShown = dayEntry;
                 }
+                count++;
             }
 
             // done with that timePeriod, put it in the map
@@ -174,15 +211,20 @@ public class WeblogEntryListGenerator {
             }
         }
 
-        if (page > 0) {
-            data.nextLink = urlService.getWeblogCollectionURL(weblog, catName, dateString, tag,
-                    page - 1);
-            data.nextLabel = messages.getMessage("weblogEntriesPager.newer", null, weblog.getLocaleInstance());
+        // link to newer entries unless on the first page
+        if (newer ? moreResults : cursor != null || page > 0) {
+            data.nextLink = newestShown != null
+                    ? urlService.getWeblogCollectionURL(weblog, catName, dateString, tag, EntryCursor.after(newestShown))
+                    : page > 0 ? urlService.getWeblogCollectionURL(weblog, catName, dateString, tag, page - 1) : null;
+            if (data.nextLink != null) {
+                data.nextLabel = messages.getMessage("weblogEntriesPager.newer", null, weblog.getLocaleInstance());
+            }
         }
 
-        if (moreResults) {
+        // link to older entries, always present before a page of newer ones
+        if (oldestShown != null && (newer || moreResults)) {
             data.prevLink = urlService.getWeblogCollectionURL(weblog, catName, dateString, tag,
-                    page + 1);
+                    EntryCursor.before(oldestShown));
             data.prevLabel = messages.getMessage("weblogEntriesPager.prior", null, weblog.getLocaleInstance());
         }
 
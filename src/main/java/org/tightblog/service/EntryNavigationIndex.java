@@ -0,0 +1,289 @@
+/*
+   Copyright 2026 the original author or authors.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.tightblog.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.tightblog.domain.WeblogEntry;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Per-weblog index of published entries in order of publication, providing the entries
+ * preceding and following a given one (as linked to from permalink pages) without querying
+ * the database.  A weblog's index is loaded on first use with a single query and then kept
+ * current from the changes published as its entries are saved or removed (including scheduled
+ * ones being published).
+ * <p>
+ * Each index is held in parallel arrays, ordered by publish time and then id, so that even
+ * weblogs of many thousands of entries take little space and are searched by binary search.
+ * Indexes are immutable, changes replacing a weblog's index with an updated copy, so reads
+ * need no locking.
+ */
+@Component
+public class EntryNavigationIndex {
+
+    /**
+     * An entry next to another in publication order.
+     */
+    public record Neighbor(String anchor, String title, Instant pubTime) { }
+
+    // weblog's index, null until loaded; synchronized on to load or change it
+    private static final class Holder {
+        private volatile Entries entries;
+    }
+
+    private final Cache<String, Holder> indexes;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    EntryNavigationIndex(@Value("${entryNavigationIndex.maxWeblogs:500}") int maxWeblogs) {
+        indexes = Caffeine.newBuilder().maximumSize(maxWeblogs).build();
+    }
+
+    /**
+     * Get the published entry following the given one, null if none.
+     */
+    public Neighbor getNext(WeblogEntry current) {
+        return getNeighbor(current, true);
+    }
+
+    /**
+     * Get the published entry preceding the given one, null if none.
+     */
+    public Neighbor getPrevious(WeblogEntry current) {
+        return getNeighbor(current, false);
+    }
+
+    private Neighbor getNeighbor(WeblogEntry current, boolean next) {
+        if (current == null || current.getPubTime() == null || current.getWeblog() == null) {
+            return null;
+        }
+        Entries entries = getEntries(current.getWeblog().getHandle());
+        // unsaved entries (e.g., previews of new ones) ordered ahead of others published at the same time
+        int pos = entries.search(current.getPubTime(), current.getId() == null ? "" : current.getId());
+        if (pos < 0 && current.getId() != null) {
+            // publish time held at finer precision than the database's, e.g. as saved in this JVM
+            int byId = entries.indexOf(current.getId());
+            pos = byId >= 0 ? byId : pos;
+        }
+        int neighbor;
+        if (pos >= 0) {
+            neighbor = next ? pos + 1 : pos - 1;
+        } else {
+            // entry not published itself, e.g., a draft being previewed
+            int insertion = -pos - 1;
+            neighbor = next ? insertion : insertion - 1;
+        }
+        return entries.get(neighbor);
+    }
+
+    private Entries getEntries(String weblogHandle) {
+        Holder holder = indexes.get(weblogHandle, h -> new Holder());
+        Entries entries = holder.entries;
+        if (entries == null) {
+            synchronized (holder) {
+                entries = holder.entries;
+                if (entries == null) {
+                    entries = load(weblogHandle);
+                    holder.entries = entries;
+                }
+            }
+        }
+        return entries;
+    }
+
+    // once committed, so a concurrent load sees the change or is followed by it
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onWeblogEntryChanged(WeblogEntryChangedEvent event) {
+        Holder holder = indexes.getIfPresent(event.weblogHandle());
+        if (holder == null) {
+            return;
+        }
+        synchronized (holder) {
+            if (holder.entries == null) {
+                return;
+            }
+            Entries entries = holder.entries.without(event.entryId());
+            if (event.published()) {
+                // at the precision stored, for ordering the same as when loaded
+                entries = entries.with(event.pubTime().truncatedTo(ChronoUnit.MILLIS), event.entryId(),
+                        event.anchor(), event.title());
+            }
+            holder.entries = entries;
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onWeblogChanged(WeblogChangedEvent event) {
+        if (event.removed()) {
+            indexes.invalidate(event.weblogHandle());
+        }
+    }
+
+    private Entries load(String weblogHandle) {
+        TypedQuery<Object[]> query = entityManager.createQuery(
+                "SELECT e.pubTime, e.id, e.anchor, e.title FROM WeblogEntry e " +
+                        "WHERE e.weblog.handle = ?1 AND e.status = ?2 AND e.pubTime IS NOT NULL", Object[].class);
+        query.setParameter(1, weblogHandle);
+        query.setParameter(2, WeblogEntry.PubStatus.PUBLISHED);
+        List<Object[]> rows = new ArrayList<>(query.getResultList());
+        // sorted here rather than by the database, whose collation of ids may differ from Java's
+        rows.sort(Comparator.comparing((Object[] row) -> (Instant) row[0]).thenComparing(row -> (String) row[1]));
+        return Entries.of(rows);
+    }
+
+    /**
+     * Published entries of a weblog, ordered by publish time and then id.
+     */
+    static final class Entries {
+
+        private final long[] seconds;
+        private final int[] nanos;
+        private final String[] ids;
+        private final String[] anchors;
+        private final String[] titles;
+
+        private Entries(long[] seconds, int[] nanos, String[] ids, String[] anchors, String[] titles) {
+            this.seconds = seconds;
+            this.nanos = nanos;
+            this.ids = ids;
+            this.anchors = anchors;
+            this.titles = titles;
+        }
+
+        /**
+         * @param rows publish time, id, anchor and title of each entry, in order
+         */
+        static Entries of(List<Object[]> rows) {
+            int size = rows.size();
+            Entries entries = new Entries(new long[size], new int[size], new String[size], new String[size],
+                    new String[size]);
+            for (int i = 0; i < size; i++) {
+                Object[] row = rows.get(i);
+                entries.set(i, (Instant) row[0], (String) row[1], (String) row[2], (String) row[3]);
+            }
+            return entries;
+        }
+
+        int size() {
+            return ids.length;
+        }
+
+        Neighbor get(int pos) {
+            if (pos < 0 || pos >= ids.length) {
+                return null;
+            }
+            return new Neighbor(anchors[pos], titles[pos], Instant.ofEpochSecond(seconds[pos], nanos[pos]));
+        }
+
+        /**
+         * Position of an entry, or (-(insertion point) - 1) if not held, as by Arrays.binarySearch().
+         */
+        int search(Instant pubTime, String id) {
+            int low = 0;
+            int high = ids.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int cmp = compare(mid, pubTime.getEpochSecond(), pubTime.getNano(), id);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+
+        /**
+         * Copy of these entries with the given one added.
+         */
+        Entries with(Instant pubTime, String id, String anchor, String title) {
+            int pos = search(pubTime, id);
+            Entries copy;
+            if (pos >= 0) {
+                copy = new Entries(seconds.clone(), nanos.clone(), ids.clone(), anchors.clone(), titles.clone());
+            } else {
+                pos = -pos - 1;
+                copy = resized(pos, pos, ids.length + 1);
+            }
+            copy.set(pos, pubTime, id, anchor, title);
+            return copy;
+        }
+
+        /**
+         * Copy of these entries without the given one, or these entries if not held.
+         */
+        Entries without(String id) {
+            int pos = indexOf(id);
+            return pos < 0 ? this : resized(pos, pos + 1, ids.length - 1);
+        }
+
+        /**
+         * Position of an entry found by id alone, or -1 if not held.
+         */
+        int indexOf(String id) {
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i].equals(id)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        // copy having the elements before pos, then those from tail on at the end
+        private Entries resized(int pos, int tail, int size) {
+            int tailLength = ids.length - tail;
+            Entries copy = new Entries(new long[size], new int[size], new String[size], new String[size],
+                    new String[size]);
+            for (Object[] arrays : new Object[][] {{seconds, copy.seconds}, {nanos, copy.nanos}, {ids, copy.ids},
+                    {anchors, copy.anchors}, {titles, copy.titles}}) {
+                System.arraycopy(arrays[0], 0, arrays[1], 0, pos);
+                System.arraycopy(arrays[0], tail, arrays[1], size - tailLength, tailLength);
+            }
+            return copy;
+        }
+
+        private void set(int pos, Instant pubTime, String id, String anchor, String title) {
+            seconds[pos] = pubTime.getEpochSecond();
+            nanos[pos] = pubTime.getNano();
+            ids[pos] = id;
+            anchors[pos] = anchor;
+            titles[pos] = title;
+        }
+
+        private int compare(int pos, long otherSeconds, int otherNanos, String otherId) {
+            int cmp = Long.compare(seconds[pos], otherSeconds);
+            if (cmp == 0) {
+                cmp = Integer.compare(nanos[pos], otherNanos);
+            }
+            return cmp == 0 ? ids[pos].compareTo(otherId) : cmp;
+        }
+    }
+}
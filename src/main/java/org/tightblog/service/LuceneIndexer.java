@@ -23,9 +23,10 @@ package org.tightblog.service;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.miscellaneous.LimitTokenCountAnalyzer;
 import org.apache.lucene.index.DirectoryReader;
-import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -34,7 +35,11 @@ import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
 import org.tightblog.service.indexer.AbstractTask;
 import org.tightblog.service.indexer.IndexEntryTask;
+import org.tightblog.service.indexer.IndexUpdateQueue;
 import org.tightblog.service.indexer.IndexWeblogTask;
+import org.tightblog.service.indexer.RebuildIndexTask;
+import org.tightblog.service.indexer.RecoverIndexTask;
+import org.tightblog.service.indexer.SearchResultCache;
 import org.tightblog.domain.Weblog;
 import org.tightblog.domain.WeblogEntry;
 import org.slf4j.Logger;
@@ -44,23 +49,45 @@ import org.tightblog.dao.WeblogEntryDao;
 import javax.annotation.PreDestroy;
 import java.io.File;
 import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.OptionalLong;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BooleanSupplier;
 
 /**
  * Lucene indexer for blog articles, to supply blog search functionality.  Can be disabled with the
  * searchEnabled property if no search functionality desired or if blogs instead rely on 3rd party
  * search tools for this functionality.
+ * <p>
+ * A single IndexWriter, open for the life of the application, is shared by all indexing tasks,
+ * with changes committed periodically and at shutdown.  Searches use searchers from a
+ * SearcherManager refreshed from the writer (near-real-time) at a configurable interval, so
+ * they neither wait on indexing nor on commits, seeing changes within the refresh interval.
+ * <p>
+ * Index updates are applied in the background from an IndexUpdateQueue, in which pending
+ * updates of the same entry or weblog are combined.  Rebuilds of the whole index run on a thread
+ * of their own, the queue applying updates meanwhile, each superseding what the rebuild writes
+ * of the entries it covers.
+ * <p>
+ * Each commit records a high-water mark, the time before which all entry changes are in the
+ * index.  At startup only entries changed since the last committed mark are reindexed, as after
+ * an unclean shutdown loses uncommitted changes, the existing index remaining searchable
+ * meanwhile; the index is rebuilt only if new, unreadable or lacking a mark.
  */
 @Component
 public class LuceneIndexer {
 
     private static Logger log = LoggerFactory.getLogger(LuceneIndexer.class);
 
-    private DirectoryReader reader;
+    // commit user data key of the index's high-water mark, see recordIndexedThrough()
+    private static final String INDEXED_THROUGH = "tightblog.indexedThrough";
+    private static final Duration INDEXING_DELAY_MARGIN = Duration.ofMinutes(5);
+
     private WeblogEntryManager weblogEntryManager;
     private WeblogEntryDao weblogEntryDao;
 
@@ -70,12 +97,35 @@ public class LuceneIndexer {
     @Value("${search.analyzer.maxTokenCount:1000}")
     private int maxTokenCount;
 
-    private ExecutorService serviceScheduler;
+    @Value("${search.refreshIntervalMillis:1000}")
+    private long refreshIntervalMillis;
+
+    @Value("${search.commitIntervalSeconds:60}")
+    private long commitIntervalSeconds;
+
+    @Value("${search.rebuild.pageSize:500}")
+    private int rebuildPageSize;
+
+    @Value("${search.rebuild.threads:#{T(java.lang.Runtime).getRuntime().availableProcessors()}}")
+    private int rebuildThreads;
+
+    private IndexUpdateQueue updateQueue;
+    // runs rebuilds of the whole index, one at a time
+    private ExecutorService rebuildExecutor;
+    // refreshes searchers and commits changes
+    private ScheduledExecutorService maintenanceScheduler;
     private boolean searchEnabled;
     private boolean indexComments;
     private File indexConsistencyMarker;
     private String indexDir;
-    private ReadWriteLock rwl = new ReentrantReadWriteLock();
+    private IndexWriter indexWriter;
+    private SearcherManager searcherManager;
+    private SearchResultCache searchResultCache;
+    // last rebuild of the whole index requested, null if none
+    private volatile RebuildIndexTask rebuildTask;
+    // whether the rebuild or recovery bringing the index up to date at startup has completed,
+    // until which the index's high-water mark is left as it was
+    private volatile BooleanSupplier catchUp = () -> true;
 
     /**
      * Creates a new Lucene index manager. Just one manager should be created per instance of Tightblog.
@@ -85,7 +135,10 @@ public class LuceneIndexer {
             @Lazy WeblogEntryManager weblogEntryManager, @Lazy WeblogEntryDao weblogEntryDao,
             @Value("${search.include.comments:true}") boolean indexComments,
             @Value("${search.enabled:false}") boolean searchEnabled,
-            @Value("${search.index.dir:#{null}}") String indexDir) {
+            @Value("${search.index.dir:#{null}}") String indexDir,
+            @Value("${search.queue.capacity:10000}") int queueCapacity,
+            @Value("${search.queue.batchSize:100}") int queueBatchSize,
+            @Value("${search.resultCache.maxEntries:500}") int resultCacheMaxEntries) {
 
         this.weblogEntryManager = weblogEntryManager;
         this.weblogEntryDao = weblogEntryDao;
@@ -104,7 +157,14 @@ public class LuceneIndexer {
         if (searchEnabled) {
             log.info("Include comment text as part of blog search? {}", indexComments);
 
-            serviceScheduler = Executors.newCachedThreadPool();
+            updateQueue = new IndexUpdateQueue(queueCapacity, queueBatchSize);
+            updateQueue.start("lucene-index-updates");
+            rebuildExecutor = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "lucene-index-rebuild");
+                thread.setDaemon(true);
+                return thread;
+            });
+            searchResultCache = new SearchResultCache(resultCacheMaxEntries);
 
             if (indexDir == null) {
                 throw new IllegalStateException("Check tightblog properties file -- If search.enabled = true, " +
@@ -127,53 +187,71 @@ public class LuceneIndexer {
     /**
      * Initialize the Lucene indexer.
      */
-    public void initialize() {
+    public synchronized void initialize() {
 
-        // only initialize the index if search is enabled
-        if (searchEnabled) {
+        // only initialize the index if search is enabled (and not already initialized)
+        if (searchEnabled && indexWriter == null) {
             boolean indexNeedsCreating = false;
 
             try {
                 // existing indexConsistencyMarker means this.shutdown() wasn't called at last app shutdown
-                if (indexConsistencyMarker.exists()) {
-                    log.info("Index was not closed properly with last shutdown; will be rebuilt");
-                    indexNeedsCreating = true;
+                boolean closedProperly = !indexConsistencyMarker.exists();
+
+                // see if index directory exists, if not create
+                File testIndexDir = new File(indexDir);
+                if (!testIndexDir.exists()) {
+                    if (testIndexDir.mkdirs()) {
+                        indexNeedsCreating = true;
+                        log.info("Index folder path {} created", testIndexDir.getAbsolutePath());
+                    } else {
+                        throw new IOException("Folder path " + testIndexDir.getAbsolutePath() + " could not be " +
+                                "created (file permission rights?)");
+                    }
                 } else {
-                    // see if index directory exists, if not create
-                    File testIndexDir = new File(indexDir);
-                    if (!testIndexDir.exists()) {
-                        if (testIndexDir.mkdirs()) {
-                            indexNeedsCreating = true;
-                            log.info("Index folder path {} created", testIndexDir.getAbsolutePath());
-                        } else {
-                            throw new IOException("Folder path " + testIndexDir.getAbsolutePath() + " could not be " +
-                                    "created (file permission rights?)");
-                        }
+                    // OK, index directory exists, see if Lucene index exists within it
+                    if (!DirectoryReader.indexExists(getIndexDirectory())) {
+                        log.info("Lucene index not detected, will create");
+                        indexNeedsCreating = true;
                     } else {
-                        // OK, index directory exists, see if Lucene index exists within it
-                        if (!DirectoryReader.indexExists(getIndexDirectory())) {
-                            log.info("Lucene index not detected, will create");
-                            indexNeedsCreating = true;
-                        } else {
-                            log.info("Lucene search index already available and ready for use.");
-                        }
+                        log.info("Lucene search index already available and ready for use.");
                     }
                 }
 
-                if (indexNeedsCreating) {
-                    log.info("Generating Lucene index in the background...");
-                    // deletes index consistency marker if it exists
-                    createIndex(getFSDirectory(true));
-
-                    // create index consistency marker for next app shutdown
-                    if (!indexConsistencyMarker.createNewFile()) {
-                        throw new IOException("Could not create index consistency marker " +
-                                indexConsistencyMarker.getAbsolutePath() + " (file permission rights?)");
+                Directory directory = getFSDirectory(indexNeedsCreating);
+                if (directory == null) {
+                    throw new IOException("Index directory " + indexDir + " not accessible");
+                }
+                try {
+                    openWriter(directory, indexNeedsCreating);
+                } catch (IOException e) {
+                    if (indexNeedsCreating) {
+                        throw e;
                     }
-                    rebuildWeblogIndex();
+                    log.error("Index could not be opened; will be rebuilt", e);
+                    directory.close();
+                    indexNeedsCreating = true;
+                    openWriter(getFSDirectory(true), true);
                 }
 
-                reader = DirectoryReader.open(getIndexDirectory());
+                // create index consistency marker for next app shutdown
+                if (!indexConsistencyMarker.exists() && !indexConsistencyMarker.createNewFile()) {
+                    log.warn("Index consistency marker {} could not be created", indexConsistencyMarker.getAbsolutePath());
+                }
+
+                Instant indexedThrough = indexNeedsCreating ? null : getCommittedIndexedThrough();
+                if (indexedThrough == null) {
+                    log.info("Generating Lucene index in the background...");
+                    catchUp = () -> false;
+                    rebuildWeblogIndex();
+                } else {
+                    if (!closedProperly) {
+                        log.info("Index was not closed properly with last shutdown; entries changed since {} " +
+                                "will be reindexed", indexedThrough);
+                    }
+                    RecoverIndexTask recovery = new RecoverIndexTask(this, weblogEntryManager, weblogEntryDao, indexedThrough);
+                    catchUp = recovery::isCompleted;
+                    scheduleIndexOperation("recover", recovery);
+                }
 
             } catch (IOException e) {
                 log.error("Could not create index, searching will be deactivated.", e);
@@ -183,11 +261,66 @@ public class LuceneIndexer {
 
     }
 
+    private void openWriter(Directory directory, boolean create) throws IOException {
+        Analyzer analyzer = getAnalyzer();
+        if (analyzer == null) {
+            throw new IOException("No analyzer available");
+        }
+        IndexWriterConfig config = new IndexWriterConfig(new LimitTokenCountAnalyzer(analyzer, maxTokenCount));
+        config.setOpenMode(create ? IndexWriterConfig.OpenMode.CREATE : IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+        indexWriter = new IndexWriter(directory, config);
+        // so the index exists on disk from the start
+        indexWriter.commit();
+        searcherManager = new SearcherManager(indexWriter, null);
+        // results cached by searches of the previous searcher no longer wanted
+        searcherManager.addListener(searchResultCache);
+
+        maintenanceScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "lucene-index-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        maintenanceScheduler.scheduleWithFixedDelay(this::refreshSearcher, refreshIntervalMillis,
+                refreshIntervalMillis, TimeUnit.MILLISECONDS);
+        maintenanceScheduler.scheduleWithFixedDelay(this::commit, commitIntervalSeconds,
+                commitIntervalSeconds, TimeUnit.SECONDS);
+    }
+
     /**
-     * Update all weblog indexes
+     * Update all weblog indexes, cancelling any such update still in progress, which the new
+     * one follows once stopped.
      */
     public void rebuildWeblogIndex() {
-        scheduleIndexOperation(new IndexWeblogTask(this, weblogEntryManager, null, false));
+        if (searchEnabled) {
+            cancelRebuild();
+            RebuildIndexTask task = new RebuildIndexTask(this, weblogEntryManager, weblogEntryDao, rebuildPageSize,
+                    Math.max(rebuildThreads, 1));
+            rebuildTask = task;
+            if (!catchUp.getAsBoolean()) {
+                // brings the index up to date in place of the rebuild or recovery under way
+                catchUp = task::isCompleted;
+            }
+            log.debug("Queueing rebuild of all weblog indexes");
+            rebuildExecutor.execute(task);
+        }
+    }
+
+    /**
+     * Progress of the last update of all weblog indexes, null if there has been none.
+     */
+    public RebuildIndexTask.Progress getRebuildProgress() {
+        RebuildIndexTask task = rebuildTask;
+        return task == null ? null : task.getProgress();
+    }
+
+    /**
+     * Stop any update of all weblog indexes in progress once done with its current page of entries.
+     */
+    public void cancelRebuild() {
+        RebuildIndexTask task = rebuildTask;
+        if (task != null) {
+            task.cancel();
+        }
     }
 
     /**
@@ -196,7 +329,14 @@ public class LuceneIndexer {
      * @param remove If true, remove the weblog from the index.  If false, adds/updates weblog.
      */
     public void updateIndex(Weblog weblog, boolean remove) {
-        scheduleIndexOperation(new IndexWeblogTask(this, weblogEntryManager, weblog, remove));
+        IndexWeblogTask task = new IndexWeblogTask(this, weblogEntryManager, weblog, remove);
+        scheduleIndexOperation("weblog:" + weblog.getHandle(), () -> {
+            RebuildIndexTask rebuild = rebuildTask;
+            if (rebuild != null) {
+                rebuild.supersedeWeblog(weblog.getHandle(), () -> updateIndex(weblog, remove));
+            }
+            task.run();
+        });
     }
 
     /**
@@ -205,14 +345,112 @@ public class LuceneIndexer {
      * @param remove If true, remove the weblog entry from the index.  If false, adds/updates weblog entry.
      */
     public void updateIndex(WeblogEntry entry, boolean remove) {
-        scheduleIndexOperation(new IndexEntryTask(weblogEntryDao, this, entry, remove));
+        IndexEntryTask task = new IndexEntryTask(weblogEntryDao, weblogEntryManager, this, entry, remove);
+        scheduleIndexOperation("entry:" + entry.getId(), () -> {
+            RebuildIndexTask rebuild = rebuildTask;
+            if (rebuild != null) {
+                rebuild.supersedeEntry(entry.getId(), () -> updateIndex(entry, remove));
+            }
+            task.run();
+        });
+    }
+
+    /**
+     * Writer shared by all indexing tasks, null if search is not enabled or initialized.
+     * Not to be closed or committed by its users.
+     */
+    public IndexWriter getIndexWriter() {
+        return indexWriter;
+    }
+
+    /**
+     * Acquire a searcher of the index as of its last refresh, to be given back with
+     * releaseSearcher() once done with.
+     * @return searcher, or null if search is not enabled or initialized
+     */
+    public IndexSearcher acquireSearcher() {
+        if (searcherManager == null) {
+            return null;
+        }
+        try {
+            return searcherManager.acquire();
+        } catch (IOException e) {
+            log.error("Could not acquire index searcher", e);
+            return null;
+        }
+    }
+
+    /**
+     * Cache of the results of searches, keyed by the version of the index searched.
+     */
+    public SearchResultCache getSearchResultCache() {
+        return searchResultCache;
+    }
+
+    public void releaseSearcher(IndexSearcher searcher) {
+        if (searcherManager != null && searcher != null) {
+            try {
+                searcherManager.release(searcher);
+            } catch (IOException e) {
+                log.warn("Could not release index searcher", e);
+            }
+        }
     }
 
     /**
-     * Retrieve common ReadWriteLock for indexing and searching
+     * Make changes written so far visible to searches, rather than waiting for the next
+     * scheduled refresh.
      */
-    public ReadWriteLock getReadWriteLock() {
-        return rwl;
+    public void refreshSearcher() {
+        if (searcherManager != null) {
+            try {
+                searcherManager.maybeRefreshBlocking();
+            } catch (IOException | RuntimeException e) {
+                log.error("Could not refresh index searcher", e);
+            }
+        }
+    }
+
+    private void commit() {
+        try {
+            if (indexWriter != null && indexWriter.hasUncommittedChanges()) {
+                recordIndexedThrough();
+                indexWriter.commit();
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("Could not commit index changes", e);
+        }
+    }
+
+    /**
+     * Store with the next commit the index's high-water mark, the time before which all changes
+     * to entries are reflected in the index, from which to bring it up to date at next startup.
+     */
+    private void recordIndexedThrough() {
+        if (!catchUp.getAsBoolean()) {
+            return;
+        }
+        Instant through = Instant.now();
+        OptionalLong oldestUnapplied = updateQueue.getOldestUnappliedNanos();
+        if (oldestUnapplied.isPresent()) {
+            through = through.minusNanos(System.nanoTime() - oldestUnapplied.getAsLong());
+        }
+        // entries are queued for indexing only once saved, some time after their update time is set
+        through = through.minus(INDEXING_DELAY_MARGIN);
+        indexWriter.setLiveCommitData(Map.of(INDEXED_THROUGH, Long.toString(through.toEpochMilli())).entrySet());
+    }
+
+    private Instant getCommittedIndexedThrough() {
+        for (Map.Entry<String, String> data : indexWriter.getLiveCommitData()) {
+            if (INDEXED_THROUGH.equals(data.getKey())) {
+                try {
+                    return Instant.ofEpochMilli(Long.parseLong(data.getValue()));
+                } catch (NumberFormatException e) {
+                    log.warn("Invalid index high-water mark {}", data.getValue());
+                }
+            }
+        }
+        return null;
     }
 
     /**
@@ -246,21 +484,6 @@ public class LuceneIndexer {
         }
     }
 
-    /**
-     * Retrieve Lucene Directory reader to perform searches
-     */
-    public synchronized IndexReader getDirectoryReader() {
-        try {
-            DirectoryReader newReader = DirectoryReader.openIfChanged(reader);
-            if (newReader != null) {
-                closeReader();
-                reader = newReader;
-            }
-        } catch (IOException ignored) {
-        }
-        return reader;
-    }
-
     /**
      * Get the directory that is used by the lucene index. This method will
      * return null if there is no index at the directory location.
@@ -271,19 +494,18 @@ public class LuceneIndexer {
         return getFSDirectory(false);
     }
 
-    private void scheduleIndexOperation(final AbstractTask op) {
-        if (this.searchEnabled) {
-            log.debug("Starting scheduled {}", op.getClass().getName());
-            serviceScheduler.submit(op);
-        }
+    /**
+     * State of the queue of index updates not yet applied, all zero if search is not enabled.
+     */
+    public IndexUpdateQueue.Stats getUpdateQueueStats() {
+        return updateQueue == null ? new IndexUpdateQueue.Stats(0, 0, 0, 0, 0) : updateQueue.getStats();
     }
 
-    private synchronized void closeReader() {
-        try {
-            if (reader != null) {
-                reader.close();
-            }
-        } catch (IOException ignored) {
+    // replaces any update of the same key not yet applied, waiting while the queue is full
+    private void scheduleIndexOperation(String key, final Runnable op) {
+        if (this.searchEnabled) {
+            log.debug("Queueing index update of {}", key);
+            updateQueue.put(key, op);
         }
     }
 
@@ -310,40 +532,38 @@ public class LuceneIndexer {
 
     }
 
-    private void createIndex(Directory dir) {
-        int maxTokens = 100;
-
-        try (Analyzer analyzer = getAnalyzer()) {
-            if (analyzer != null) {
-                IndexWriterConfig config = new IndexWriterConfig(new LimitTokenCountAnalyzer(analyzer, maxTokens));
-
-                // constructor alone makes directory available for indexing
-                //CHECKSTYLE.OFF: EmptyBlock
-                try (IndexWriter ignored = new IndexWriter(dir, config)) {
-                //CHECKSTYLE.ON: EmptyBlock
-                } catch (IOException e) {
-                    log.error("Error creating index", e);
-                }
-            }
-        }
-    }
-
     @PreDestroy
     public void shutdown() {
         if (searchEnabled) {
-            // trigger an immediate shutdown of any backgrounded tasks
-            serviceScheduler.shutdownNow();
+            // finish the updates being applied, dropping any others
+            cancelRebuild();
+            // not interrupted, as interrupting Lucene's file I/O closes the index's files
+            rebuildExecutor.shutdown();
             try {
-                serviceScheduler.awaitTermination(20, TimeUnit.SECONDS);
+                rebuildExecutor.awaitTermination(20, TimeUnit.SECONDS);
             } catch (InterruptedException e) {
-                log.debug("Exception: ", e);
+                Thread.currentThread().interrupt();
+            }
+            updateQueue.stop(TimeUnit.SECONDS.toMillis(20));
+
+            if (indexWriter != null) {
+                maintenanceScheduler.shutdownNow();
+                try {
+                    searcherManager.close();
+                    // commits any changes not yet committed
+                    recordIndexedThrough();
+                    indexWriter.close();
+                    indexWriter.getDirectory().close();
+                } catch (IOException e) {
+                    log.error("Could not close index, will be rebuilt at next startup", e);
+                    return;
+                }
             }
 
             if (!indexConsistencyMarker.delete()) {
                 log.warn("Expected index consistency marker {} not present or otherwise could not be deleted",
                         indexConsistencyMarker.getAbsolutePath());
             }
-            closeReader();
         }
     }
 }
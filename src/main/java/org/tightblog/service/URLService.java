@@ -24,6 +24,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.stereotype.Component;
 import org.tightblog.config.DynamicProperties;
+import org.tightblog.domain.EntryCursor;
 import org.tightblog.domain.Weblog;
 import org.tightblog.domain.WeblogEntry;
 import org.tightblog.util.Utilities;
@@ -225,7 +226,14 @@ public class URLService {
      * Get url for a single weblog entry on a given weblog.
      */
     public String getWeblogEntryURL(WeblogEntry entry) {
-        String url = getWeblogRootURL(entry.getWeblog()) + "entry/" + Utilities.encode(entry.getAnchor());
+        return getWeblogEntryURL(entry.getWeblog(), entry.getAnchor());
+    }
+
+    /**
+     * Get url for a single weblog entry given its anchor.
+     */
+    public String getWeblogEntryURL(Weblog weblog, String anchor) {
+        String url = getWeblogRootURL(weblog) + "entry/" + Utilities.encode(anchor);
         Map<String, String> params = new HashMap<>();
         return url + Utilities.getQueryString(params);
     }
@@ -234,9 +242,29 @@ public class URLService {
      * Get url for a collection of entries on a given weblog.
      */
     public String getWeblogCollectionURL(Weblog weblog, String category, String dateString, String tag, int pageNum) {
+        Map<String, String> params = new HashMap<>();
+        if (pageNum > 0) {
+            params.put("page", Integer.toString(pageNum));
+        }
+        return getWeblogCollectionURL(weblog, category, dateString, tag, params);
+    }
 
-        String pathinfo = getWeblogRootURL(weblog);
+    /**
+     * Get url for a collection of entries on a given weblog, starting after the given position.
+     */
+    public String getWeblogCollectionURL(Weblog weblog, String category, String dateString, String tag,
+                                         EntryCursor cursor) {
         Map<String, String> params = new HashMap<>();
+        if (cursor != null) {
+            params.put(cursor.getParamName(), cursor.getToken());
+        }
+        return getWeblogCollectionURL(weblog, category, dateString, tag, params);
+    }
+
+    private String getWeblogCollectionURL(Weblog weblog, String category, String dateString, String tag,
+                                          Map<String, String> params) {
+
+        String pathinfo = getWeblogRootURL(weblog);
 
         if (category != null && dateString == null) {
             pathinfo += "category/" + Utilities.encode(category);
@@ -256,10 +284,6 @@ public class URLService {
             }
         }
 
-        if (pageNum > 0) {
-            params.put("page", Integer.toString(pageNum));
-        }
-
         return pathinfo + Utilities.getQueryString(params);
     }
 
@@ -0,0 +1,24 @@
+/*
+   Copyright 2026 the original author or authors.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.tightblog.service;
+
+/**
+ * Published when a weblog has had an externally viewable change or has been removed,
+ * so content previously rendered for it is no longer valid.  Unless entryDisplayChanged,
+ * the change leaves how each of its entries display as is (e.g., a new comment, or an
+ * edited entry, whose own update time tells), so renderings of single entries remain valid.
+ */
+public record WeblogChangedEvent(String weblogHandle, boolean removed, boolean entryDisplayChanged) { }
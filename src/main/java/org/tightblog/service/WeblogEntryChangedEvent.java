@@ -0,0 +1,38 @@
+/*
+   Copyright 2026 the original author or authors.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.tightblog.service;
+
+import org.tightblog.domain.WeblogEntry;
+
+import java.time.Instant;
+
+/**
+ * Published when a weblog entry has been saved or removed, for data derived from a weblog's
+ * entries (e.g., recent entry lists, calendars) to be refreshed.  Carries the entry's state
+ * as saved, for such data to be updated without querying for it.
+ *
+ * @param published whether the entry is now published (false if removed)
+ */
+public record WeblogEntryChangedEvent(String weblogHandle, String entryId, Instant pubTime, String anchor,
+                                      String title, String categoryName, boolean published, boolean removed) {
+
+    static WeblogEntryChangedEvent of(WeblogEntry entry, boolean removed) {
+        return new WeblogEntryChangedEvent(entry.getWeblog().getHandle(), entry.getId(), entry.getPubTime(),
+                entry.getAnchor(), entry.getTitle(),
+                entry.getCategory() == null ? null : entry.getCategory().getName(),
+                !removed && entry.isPublished() && entry.getPubTime() != null, removed);
+    }
+}
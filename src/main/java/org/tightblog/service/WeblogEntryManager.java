@@ -24,11 +24,19 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.jsoup.safety.Safelist;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 import org.tightblog.domain.AtomEnclosure;
+import org.tightblog.domain.CalendarMonthIndex;
 import org.tightblog.domain.CommentSearchCriteria;
 import org.tightblog.domain.Weblog;
 import org.tightblog.domain.WeblogCategory;
@@ -39,10 +47,13 @@ import org.tightblog.domain.WebloggerProperties;
 import org.tightblog.dao.WeblogEntryCommentDao;
 import org.tightblog.dao.WeblogEntryDao;
 import org.tightblog.dao.WebloggerPropertiesDao;
+import org.tightblog.util.HTMLSanitizer;
 import org.tightblog.util.Utilities;
 import org.commonmark.renderer.html.HtmlRenderer;
 import org.commonmark.node.Node;
 import org.commonmark.parser.Parser;
+import org.eclipse.persistence.annotations.BatchFetchType;
+import org.eclipse.persistence.config.QueryHints;
 import org.jsoup.Jsoup;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -61,10 +72,15 @@ import java.time.ZoneId;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.StringTokenizer;
 import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 /**
@@ -75,12 +91,27 @@ public class WeblogEntryManager {
 
     private static final Logger LOG = LoggerFactory.getLogger(WeblogEntryManager.class);
 
+    // increase whenever processBlogText() output changes, so stored renderings are redone
+    private static final int TEXT_PROCESSING_VERSION = 1;
+
+    private static final int RENDERING_UPDATE_BATCH_SIZE = 100;
+
+    // both thread-safe and reusable
+    private static final Parser COMMONMARK_PARSER = Parser.builder().build();
+    private static final HtmlRenderer COMMONMARK_RENDERER = HtmlRenderer.builder().build();
+
     private final WeblogManager weblogManager;
     private final WeblogEntryDao weblogEntryDao;
     private final WeblogEntryCommentDao weblogEntryCommentDao;
     private final WebloggerPropertiesDao webloggerPropertiesDao;
     private final URLService urlService;
     private final LuceneIndexer luceneIndexer;
+    private final Executor taskExecutor;
+    private final ApplicationEventPublisher eventPublisher;
+    private final CacheManager cacheManager;
+    private final AtomicBoolean renderingUpdateRunning = new AtomicBoolean();
+    // evictions of approved comment counts, for telling counts loaded before one
+    private final AtomicLong approvedCommentCountEvictions = new AtomicLong();
 
     @PersistenceContext
     private EntityManager entityManager;
@@ -89,8 +120,13 @@ public class WeblogEntryManager {
     public WeblogEntryManager(WeblogManager weblogManager, WeblogEntryDao weblogEntryDao,
                               WeblogEntryCommentDao weblogEntryCommentDao,
                               URLService urlService, @Lazy LuceneIndexer luceneIndexer,
-                              WebloggerPropertiesDao webloggerPropertiesDao) {
+                              WebloggerPropertiesDao webloggerPropertiesDao,
+                              @Qualifier("blogTaskScheduler") Executor taskExecutor,
+                              ApplicationEventPublisher eventPublisher, CacheManager cacheManager) {
         this.luceneIndexer = luceneIndexer;
+        this.cacheManager = cacheManager;
+        this.taskExecutor = taskExecutor;
+        this.eventPublisher = eventPublisher;
         this.weblogManager = weblogManager;
         this.weblogEntryDao = weblogEntryDao;
         this.weblogEntryCommentDao = weblogEntryCommentDao;
@@ -110,8 +146,10 @@ public class WeblogEntryManager {
         weblogEntryCommentDao.saveAndFlush(comment);
         weblogEntryCommentDao.evictWeblogCommentCounts(comment.getWeblog());
         if (refreshWeblog) {
-            weblogEntryCommentDao.evictWeblogEntryCommentCounts(comment.getWeblogEntry());
-            weblogManager.saveWeblog(comment.getWeblog(), true);
+            evictApprovedCommentCount(comment.getWeblogEntry());
+            weblogEntryDao.updateCommentUpdateTime(comment.getWeblogEntry().getId(), Instant.now());
+            eventPublisher.publishEvent(new WeblogCommentsChangedEvent(comment.getWeblog().getHandle()));
+            weblogManager.saveWeblog(comment.getWeblog(), true, false);
         }
     }
 
@@ -121,10 +159,14 @@ public class WeblogEntryManager {
     public void removeComment(WeblogEntryComment comment) {
         weblogEntryCommentDao.deleteById(comment.getId());
         boolean externallyViewable = WeblogEntryComment.ApprovalStatus.APPROVED.equals(comment.getStatus());
-        weblogManager.saveWeblog(comment.getWeblogEntry().getWeblog(), externallyViewable);
+        if (externallyViewable) {
+            eventPublisher.publishEvent(new WeblogCommentsChangedEvent(comment.getWeblogEntry().getWeblog().getHandle()));
+        }
+        weblogManager.saveWeblog(comment.getWeblogEntry().getWeblog(), externallyViewable, false);
         weblogEntryCommentDao.evictWeblogCommentCounts(comment.getWeblog());
         if (externallyViewable) {
-            weblogEntryCommentDao.evictWeblogEntryCommentCounts(comment.getWeblogEntry());
+            evictApprovedCommentCount(comment.getWeblogEntry());
+            weblogEntryDao.updateCommentUpdateTime(comment.getWeblogEntry().getId(), Instant.now());
         }
     }
 
@@ -202,18 +244,25 @@ public class WeblogEntryManager {
             entry.setStatus(WeblogEntry.PubStatus.SCHEDULED);
         }
 
-        // Store value object (creates new or updates existing)
-        Instant now = Instant.now();
-        entry.setUpdateTime(now);
+        // Store value object (creates new or updates existing), with times at the millisecond
+        // precision of the database so the entry as cached compares equal to it as stored
+        entry.setUpdateTime(Instant.now().truncatedTo(ChronoUnit.MILLIS));
+        if (entry.getPubTime() != null) {
+            entry.setPubTime(entry.getPubTime().truncatedTo(ChronoUnit.MILLIS));
+        }
+        storeRendering(entry, webloggerPropertiesDao.findOrNull().getBlogHtmlPolicy());
 
         weblogEntryDao.save(entry);
-        weblogManager.saveWeblog(entry.getWeblog(), true);
+        // ahead of the weblog change, whose page re-rendering should see the entry's new state
+        eventPublisher.publishEvent(WeblogEntryChangedEvent.of(entry, false));
+        weblogManager.saveWeblog(entry.getWeblog(), true, false);
     }
 
     public void removeWeblogEntry(WeblogEntry entry) {
         weblogEntryCommentDao.deleteByWeblogEntry(entry);
         weblogEntryDao.delete(entry);
-        weblogManager.saveWeblog(entry.getWeblog(), true);
+        eventPublisher.publishEvent(WeblogEntryChangedEvent.of(entry, true));
+        weblogManager.saveWeblog(entry.getWeblog(), true, false);
     }
 
     /**
@@ -251,74 +300,6 @@ public class WeblogEntryManager {
         return nearestEntry;
     }
 
-    /**
-     * Get the WeblogEntry following, chronologically, the current entry.
-     *
-     * @param current The "current" WeblogEntry
-     */
-    public WeblogEntry getNextPublishedEntry(WeblogEntry current) {
-        WeblogEntry entry = null;
-        List<WeblogEntry> entryList = getNextPrevEntries(current, true);
-        if (entryList != null && entryList.size() > 0) {
-            entry = entryList.get(0);
-        }
-        return entry;
-    }
-
-    /**
-     * Get the WeblogEntry prior to, chronologically, the current entry.
-     *
-     * @param current The "current" WeblogEntry
-     */
-    public WeblogEntry getPreviousPublishedEntry(WeblogEntry current) {
-        WeblogEntry entry = null;
-        List<WeblogEntry> entryList = getNextPrevEntries(current, false);
-        if (entryList != null && entryList.size() > 0) {
-            entry = entryList.get(0);
-        }
-        return entry;
-    }
-
-    private List<WeblogEntry> getNextPrevEntries(WeblogEntry current, boolean next) {
-
-        if (current == null || current.getPubTime() == null) {
-            return Collections.emptyList();
-        }
-
-        TypedQuery<WeblogEntry> query;
-
-        List<Object> params = new ArrayList<>();
-        int size = 0;
-        String queryString = "SELECT e FROM WeblogEntry e WHERE ";
-        StringBuilder whereClause = new StringBuilder();
-
-        params.add(size++, current.getWeblog());
-        whereClause.append("e.weblog = ?").append(size);
-
-        params.add(size++, current.getId());
-        whereClause.append(" AND e.id <> ?").append(size);
-
-        params.add(size++, WeblogEntry.PubStatus.PUBLISHED);
-        whereClause.append(" AND e.status = ?").append(size);
-
-        params.add(size++, current.getPubTime());
-        if (next) {
-            whereClause.append(" AND e.pubTime >= ?").append(size);
-            whereClause.append(" ORDER BY e.pubTime ASC, e.id ASC");
-        } else {
-            whereClause.append(" AND e.pubTime <= ?").append(size);
-            whereClause.append(" ORDER BY e.pubTime DESC, e.id DESC");
-        }
-
-        query = entityManager.createQuery(queryString + whereClause.toString(), WeblogEntry.class);
-        for (int i = 0; i < params.size(); i++) {
-            query.setParameter(i + 1, params.get(i));
-        }
-        query.setMaxResults(1);
-
-        return query.getResultList();
-    }
-
     private QueryData createEntryQueryString(WeblogEntrySearchCriteria criteria) {
         QueryData qd = new QueryData();
         int size = 0;
@@ -365,6 +346,16 @@ public class WeblogEntryManager {
             qd.queryString += " AND e.category.name = ?" + size;
         }
 
+        if (criteria.getCursor() != null) {
+            // seek past the cursor's entry, ordered by publish time and then id
+            String op = criteria.getCursor().newer() ? " > " : " < ";
+            qd.params.add(size++, criteria.getCursor().pubTime());
+            int pubTimeParam = size;
+            qd.params.add(size++, criteria.getCursor().entryId());
+            qd.queryString += " AND (e.pubTime" + op + "?" + pubTimeParam +
+                    " OR (e.pubTime = ?" + pubTimeParam + " AND e.id" + op + "?" + size + "))";
+        }
+
         if (criteria.getStatus() != null) {
             qd.params.add(size++, criteria.getStatus());
             qd.queryString += " AND e.status = ?" + size;
@@ -401,6 +392,7 @@ public class WeblogEntryManager {
         for (int i = 0; i < qd.params.size(); i++) {
             query.setParameter(i + 1, qd.params.get(i));
         }
+        applyFetchProfile(query, criteria.getFetchProfile());
 
         if (criteria.getOffset() != 0) {
             query.setFirstResult(criteria.getOffset());
@@ -411,6 +403,10 @@ public class WeblogEntryManager {
 
         List<WeblogEntry> results = query.getResultList();
 
+        if (criteria.getFetchProfile() == WeblogEntrySearchCriteria.FetchProfile.SEARCH_INDEX) {
+            loadApprovedComments(results);
+        }
+
         if (criteria.isCalculatePermalinks()) {
             results = results.stream()
                     .peek(we -> we.setPermalink(urlService.getWeblogEntryURL(we)))
@@ -420,6 +416,40 @@ public class WeblogEntryManager {
         return results;
     }
 
+    private static void applyFetchProfile(TypedQuery<WeblogEntry> query, WeblogEntrySearchCriteria.FetchProfile profile) {
+        if (profile == null || profile == WeblogEntrySearchCriteria.FetchProfile.NONE) {
+            return;
+        }
+        if (profile != WeblogEntrySearchCriteria.FetchProfile.ADMIN_LIST) {
+            query.setHint(QueryHints.JOIN_FETCH, "e.weblog");
+        }
+        // single-valued, so joined without affecting the paging of results
+        query.setHint(QueryHints.JOIN_FETCH, "e.creator");
+        query.setHint(QueryHints.JOIN_FETCH, "e.category");
+        // collections instead read with one further query for the ids of all entries returned,
+        // tags not being indexed (comments, not mapped, are read by loadApprovedComments())
+        if (profile != WeblogEntrySearchCriteria.FetchProfile.SEARCH_INDEX) {
+            query.setHint(QueryHints.BATCH_TYPE, BatchFetchType.IN);
+            query.setHint(QueryHints.BATCH, "e.tagSet");
+        }
+    }
+
+    /**
+     * Give entries their approved comments, read with a single query for all of them rather than
+     * one query per entry as each entry's comments are read (see WeblogEntry.getComments()).
+     */
+    public void loadApprovedComments(List<WeblogEntry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        Map<String, List<WeblogEntryComment>> byEntry = new HashMap<>();
+        entries.forEach(entry -> byEntry.put(entry.getId(), new ArrayList<>()));
+        for (WeblogEntryComment comment : weblogEntryCommentDao.findApprovedByWeblogEntryIds(byEntry.keySet())) {
+            byEntry.get(comment.getWeblogEntry().getId()).add(comment);
+        }
+        entries.forEach(entry -> entry.setComments(byEntry.get(entry.getId())));
+    }
+
     public WeblogEntry getWeblogEntryByAnchor(Weblog weblog, String anchor) {
         WeblogEntry entry = weblogEntryDao.findByWeblogAndAnchor(weblog, anchor);
         if (entry != null) {
@@ -554,9 +584,77 @@ public class WeblogEntryManager {
             List<WeblogEntry> dayEntries = map.computeIfAbsent(tmp, k -> new ArrayList<>());
             dayEntries.add(entry);
         }
+        loadApprovedCommentCounts(entries);
         return map;
     }
 
+    /**
+     * Cache the approved comment counts of entries about to be displayed, for those not yet
+     * cached getting them with a single query rather than one query per entry as each count
+     * is displayed (see WeblogEntryCommentDao.countByWeblogEntryAndStatusApproved()).  Counts
+     * already cached are left as is, remaining subject to the same evictions, and none are cached
+     * if a count was evicted while querying.
+     */
+    void loadApprovedCommentCounts(List<WeblogEntry> entries) {
+        if (!(cacheManager.getCache(WeblogEntryCommentDao.APPROVED_COMMENT_COUNTS) instanceof CaffeineCache counts)) {
+            return;
+        }
+        List<String> uncounted = entries.stream()
+                .map(WeblogEntry::getId)
+                .filter(id -> id != null && counts.get(id) == null)
+                .distinct()
+                .collect(Collectors.toList());
+        if (uncounted.isEmpty()) {
+            return;
+        }
+        long evictionsBefore = approvedCommentCountEvictions.get();
+        Map<String, Integer> loaded = new HashMap<>();
+        uncounted.forEach(id -> loaded.put(id, 0));
+        for (Object[] row : weblogEntryCommentDao.countApprovedGroupedByWeblogEntry(uncounted)) {
+            loaded.put((String) row[0], ((Number) row[1]).intValue());
+        }
+        // not replacing counts cached meanwhile, which may be newer, nor caching any if a count
+        // was evicted meanwhile, perhaps after being queried; atomic with a count's eviction,
+        // which follows the increment of the evictions
+        loaded.forEach((id, count) -> counts.getNativeCache().asMap().compute(id, (k, held) ->
+                held != null ? held : approvedCommentCountEvictions.get() == evictionsBefore ? count : null));
+    }
+
+    private void evictApprovedCommentCount(WeblogEntry entry) {
+        approvedCommentCountEvictions.incrementAndGet();
+        weblogEntryCommentDao.evictWeblogEntryCommentCounts(entry);
+    }
+
+    /**
+     * Get the calendar index of a weblog's published entries, built from a single query
+     * fetching only the entries' publish times, ids, anchors and titles.
+     *
+     * @param categoryName category the entries are to belong to, null or empty for all
+     */
+    public CalendarMonthIndex getCalendarMonthIndex(Weblog weblog, String categoryName) {
+        String queryString = "SELECT e.pubTime, e.id, e.anchor, e.title FROM WeblogEntry e " +
+                "WHERE e.weblog = ?1 AND e.status = ?2";
+        if (!StringUtils.isEmpty(categoryName)) {
+            queryString += " AND e.category.name = ?3";
+        }
+        queryString += " ORDER BY e.pubTime ASC, e.id ASC";
+
+        TypedQuery<Object[]> query = entityManager.createQuery(queryString, Object[].class);
+        query.setParameter(1, weblog);
+        query.setParameter(2, WeblogEntry.PubStatus.PUBLISHED);
+        if (!StringUtils.isEmpty(categoryName)) {
+            query.setParameter(3, categoryName);
+        }
+
+        CalendarMonthIndex.Builder builder = new CalendarMonthIndex.Builder();
+        for (Object[] row : query.getResultList()) {
+            if (row[0] != null) {
+                builder.add((Instant) row[0], (String) row[1], (String) row[2], (String) row[3]);
+            }
+        }
+        return builder.build();
+    }
+
     /**
      * Generic comments query method.
      *
@@ -636,21 +734,19 @@ public class WeblogEntryManager {
      *
      * @param format Weblog.EditFormat indicating input format of string
      * @param str   String to which to apply processing.
+     * @param blogHtmlPolicy HTML policy to filter the result by
      * @return the transformed text
      */
-    public String processBlogText(Weblog.EditFormat format, String str) {
+    private String processBlogText(Weblog.EditFormat format, String str, HTMLSanitizer.Level blogHtmlPolicy) {
         String ret = str;
 
         if (Weblog.EditFormat.COMMONMARK.equals(format) && ret != null) {
-            Parser parser = Parser.builder().build();
-            Node document = parser.parse(ret);
-            HtmlRenderer renderer = HtmlRenderer.builder().build();
-            ret = renderer.render(document);
+            Node document = COMMONMARK_PARSER.parse(ret);
+            ret = COMMONMARK_RENDERER.render(document);
         }
 
         if (ret != null) {
-            WebloggerProperties props = webloggerPropertiesDao.findOrNull();
-            Safelist safelist = props.getBlogHtmlPolicy().getSafelist();
+            Safelist safelist = blogHtmlPolicy.getSafelist();
 
             if (safelist != null) {
                 ret = Jsoup.clean(ret, safelist);
@@ -660,6 +756,101 @@ public class WeblogEntryManager {
         return ret;
     }
 
+    /**
+     * Get the entry's text as displayed, using that stored with the entry if it is
+     * up to date, otherwise processing it anew.
+     */
+    public String getTransformedText(WeblogEntry entry) {
+        HTMLSanitizer.Level blogHtmlPolicy = webloggerPropertiesDao.findOrNull().getBlogHtmlPolicy();
+        return renderingStampOf(blogHtmlPolicy).equals(entry.getRenderingStamp()) ? entry.getRenderedText()
+                : processBlogText(entry.getEditFormat(), entry.getText(), blogHtmlPolicy);
+    }
+
+    /**
+     * Get the entry's summary as displayed, see getTransformedText().
+     */
+    public String getTransformedSummary(WeblogEntry entry) {
+        HTMLSanitizer.Level blogHtmlPolicy = webloggerPropertiesDao.findOrNull().getBlogHtmlPolicy();
+        return renderingStampOf(blogHtmlPolicy).equals(entry.getRenderingStamp()) ? entry.getRenderedSummary()
+                : processBlogText(entry.getEditFormat(), entry.getSummary(), blogHtmlPolicy);
+    }
+
+    private void storeRendering(WeblogEntry entry, HTMLSanitizer.Level blogHtmlPolicy) {
+        entry.setRenderedText(processBlogText(entry.getEditFormat(), entry.getText(), blogHtmlPolicy));
+        entry.setRenderedSummary(processBlogText(entry.getEditFormat(), entry.getSummary(), blogHtmlPolicy));
+        entry.setRenderingStamp(renderingStampOf(blogHtmlPolicy));
+    }
+
+    private static String renderingStampOf(HTMLSanitizer.Level blogHtmlPolicy) {
+        return blogHtmlPolicy.name() + ":" + TEXT_PROCESSING_VERSION;
+    }
+
+    /**
+     * Have entries whose stored renderings predate the blog HTML policy in force (or the
+     * current text processing) rendered again, in the background.  Until then such
+     * entries are processed on each display.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void updateStoredRenderingsInBackground() {
+        try {
+            taskExecutor.execute(this::updateStoredRenderings);
+        } catch (RejectedExecutionException e) {
+            LOG.warn("Unable to schedule update of stored entry renderings", e);
+        }
+    }
+
+    void updateStoredRenderings() {
+        if (!renderingUpdateRunning.compareAndSet(false, true)) {
+            // running update switches to any newer policy itself
+            return;
+        }
+        try {
+            WebloggerProperties props = webloggerPropertiesDao.findOrNull();
+            if (props == null) {
+                // tables not yet created
+                return;
+            }
+            HTMLSanitizer.Level blogHtmlPolicy = props.getBlogHtmlPolicy();
+            int updated = 0;
+            boolean more;
+            do {
+                String stamp = renderingStampOf(blogHtmlPolicy);
+                // updated entries drop out of the query, so always the first page
+                List<WeblogEntry> batch = weblogEntryDao.findByRenderingStampIsNullOrRenderingStampNot(stamp,
+                        PageRequest.of(0, RENDERING_UPDATE_BATCH_SIZE));
+                int batchUpdated = 0;
+                for (WeblogEntry entry : batch) {
+                    // update times are saved at the database's precision, so match unless edited meanwhile
+                    int rows = weblogEntryDao.updateRendering(entry.getId(), entry.getUpdateTime(),
+                            processBlogText(entry.getEditFormat(), entry.getText(), blogHtmlPolicy),
+                            processBlogText(entry.getEditFormat(), entry.getSummary(), blogHtmlPolicy), stamp);
+                    if (rows == 0) {
+                        LOG.debug("Stored rendering of entry {} not updated, entry changed since updated at {}",
+                                entry.getId(), entry.getUpdateTime());
+                    }
+                    batchUpdated += rows;
+                }
+                updated += batchUpdated;
+                // entries skipped as being edited meanwhile would otherwise be fetched again forever
+                more = batch.size() == RENDERING_UPDATE_BATCH_SIZE && batchUpdated > 0;
+
+                HTMLSanitizer.Level currentPolicy = webloggerPropertiesDao.findOrNull().getBlogHtmlPolicy();
+                if (currentPolicy != blogHtmlPolicy) {
+                    blogHtmlPolicy = currentPolicy;
+                    more = true;
+                }
+            } while (more);
+            if (updated > 0) {
+                LOG.info("Updated stored renderings of {} entries for blog HTML policy {}", updated, blogHtmlPolicy);
+            }
+        } catch (RuntimeException e) {
+            // e.g., database not yet set up on initial install
+            LOG.warn("Unable to update stored entry renderings: {}", e.getMessage());
+        } finally {
+            renderingUpdateRunning.set(false);
+        }
+    }
+
     /**
      * Create an Atom enclosure element for the resource (usually podcast or other
      * multimedia) at the specified URL.
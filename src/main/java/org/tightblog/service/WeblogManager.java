@@ -24,6 +24,8 @@ import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 import org.springframework.util.ObjectUtils;
@@ -48,19 +50,21 @@ import org.tightblog.dao.WeblogDao;
 import org.tightblog.dao.WeblogTemplateDao;
 import org.tightblog.dao.WebloggerPropertiesDao;
 
+import javax.persistence.Cache;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.persistence.TypedQuery;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
  /**
   * Weblog, category and tag management
@@ -81,6 +85,8 @@ public class WeblogManager {
     private final WeblogDao weblogDao;
     private final UserManager userManager;
     private final DynamicProperties dp;
+    private final JdbcTemplate jdbcTemplate;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Autowired
     private MediaManager mediaManager;
@@ -98,8 +104,10 @@ public class WeblogManager {
     private Set<String> newBlogCategories;
 
     // Map of each weblog and its extra hit count that has had additional accesses since the
-    // last scheduled updateHitCounters() call.
-    private Map<String, Long> hitsTally = Collections.synchronizedMap(new HashMap<>());
+    // last scheduled updateHitCounters() call.  Counters are kept (not removed) between calls
+    // and drained with LongAdder.sumThenReset(), so hits arriving during a drain are carried
+    // over to the next call instead of being lost.
+    private final Map<String, LongAdder> hitsTally = new ConcurrentHashMap<>();
 
     public record WeblogCategoryData(String id, String name, LocalDate firstEntry, LocalDate lastEntry, int numEntries) { }
 
@@ -113,7 +121,9 @@ public class WeblogManager {
                          WebloggerPropertiesDao webloggerPropertiesDao,
                          WeblogDao weblogDao,
                          UserManager userManager,
-                         DynamicProperties dp) {
+                         DynamicProperties dp,
+                         JdbcTemplate jdbcTemplate,
+                         ApplicationEventPublisher eventPublisher) {
         this.weblogEntryDao = weblogEntryDao;
         this.weblogEntryCommentDao = weblogEntryCommentDao;
         this.weblogCategoryDao = weblogCategoryDao;
@@ -124,9 +134,19 @@ public class WeblogManager {
         this.weblogDao = weblogDao;
         this.userManager = userManager;
         this.dp = dp;
+        this.jdbcTemplate = jdbcTemplate;
+        this.eventPublisher = eventPublisher;
     }
 
     public void saveWeblog(Weblog weblog, boolean externallyViewableChange) {
+        saveWeblog(weblog, externallyViewableChange, true);
+    }
+
+    /**
+     * @param entryDisplayChange false if the change doesn't affect how the weblog's entries
+     *                           individually display, see WeblogChangedEvent
+     */
+    public void saveWeblog(Weblog weblog, boolean externallyViewableChange, boolean entryDisplayChange) {
         if (externallyViewableChange) {
             weblog.setLastModified(Instant.now());
         }
@@ -134,6 +154,7 @@ public class WeblogManager {
         if (externallyViewableChange) {
             dp.updateLastSitewideChange();
             weblogDao.evictWeblog(weblog.getHandle());
+            eventPublisher.publishEvent(new WeblogChangedEvent(weblog.getHandle(), false, entryDisplayChange));
         }
     }
 
@@ -161,6 +182,7 @@ public class WeblogManager {
         weblogDao.delete(weblog);
         dp.updateLastSitewideChange();
         weblogDao.evictWeblog(weblog.getHandle());
+        eventPublisher.publishEvent(new WeblogChangedEvent(weblog.getHandle(), true, true));
     }
 
     /**
@@ -249,37 +271,39 @@ public class WeblogManager {
      */
     public void incrementHitCount(Weblog weblog) {
         if (weblog != null) {
-            Long count = hitsTally.getOrDefault(weblog.getId(), 0L);
-            hitsTally.put(weblog.getId(), count + 1);
+            hitsTally.computeIfAbsent(weblog.getId(), id -> new LongAdder()).increment();
         }
     }
 
     /**
      * Job to write out the hit count queue to the database, updating
-     * individual blog's hit counters
+     * individual blog's hit counters.  Hit counts are written directly
+     * in a single JDBC batch without going through saveWeblog(), as they
+     * are not a change to the weblog's content and must not expire its
+     * rendered pages and feeds.
      */
     @Scheduled(cron = "${cron.update.hit.counters}")
     public void updateHitCounters() {
-        if (hitsTally.size() > 0) {
-            // Make a reference to the current queue
-            Map<String, Long> hitsTallyCopy = hitsTally;
-
-            // reset queue for next execution
-            hitsTally = Collections.synchronizedMap(new HashMap<>());
-
-            // iterate over the tallied hits and store them in the db
-            long totalHitsProcessed = 0;
-            Weblog weblog;
-            for (Map.Entry<String, Long> entry : hitsTallyCopy.entrySet()) {
-                weblog = weblogDao.findById(entry.getKey()).orElse(null);
-                if (weblog != null) {
-                    weblog.setHitsToday(weblog.getHitsToday() + entry.getValue().intValue());
-                    saveWeblog(weblog, true);
-                    totalHitsProcessed += entry.getValue();
-                    LOG.info("Updated blog hits, {} total extra hits from {} blogs", totalHitsProcessed, hitsTallyCopy.size());
-                }
+        List<Object[]> batchArgs = new ArrayList<>();
+        long totalHitsProcessed = 0;
+
+        for (Map.Entry<String, LongAdder> entry : hitsTally.entrySet()) {
+            long hits = entry.getValue().sumThenReset();
+            if (hits > 0) {
+                batchArgs.add(new Object[] {(int) hits, entry.getKey()});
+                totalHitsProcessed += hits;
             }
         }
+
+        if (batchArgs.size() > 0) {
+            jdbcTemplate.batchUpdate("UPDATE weblog SET hitstoday = hitstoday + ? WHERE id = ?", batchArgs);
+
+            // updated outside of JPA, so remove the now stale weblogs from EclipseLink's shared cache
+            Cache sharedCache = entityManager.getEntityManagerFactory().getCache();
+            batchArgs.forEach(args -> sharedCache.evict(Weblog.class, args[1]));
+
+            LOG.info("Updated blog hits, {} total extra hits from {} blogs", totalHitsProcessed, batchArgs.size());
+        }
     }
 
     /**
@@ -499,6 +523,7 @@ public class WeblogManager {
         weblogTemplateDao.evictWeblogTemplates(weblog);
         weblogTemplateDao.evictWeblogTemplateByName(weblog, templateName);
         weblogTemplateDao.evictWeblogTemplateByRole(weblog, role);
+        eventPublisher.publishEvent(new WeblogTemplatesChangedEvent(weblog.getId()));
     }
 
      @Scheduled(cron = "${cron.reset.hit.counts}")
@@ -20,15 +20,12 @@
  */
 package org.tightblog.service.indexer;
 
-import org.apache.lucene.analysis.Analyzer;
-import org.apache.lucene.analysis.miscellaneous.LimitTokenCountAnalyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.SortedDocValuesField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
 import org.apache.lucene.index.IndexWriter;
-import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.util.BytesRef;
 import org.tightblog.service.LuceneIndexer;
 import org.tightblog.domain.WeblogCategory;
@@ -37,7 +34,6 @@ import org.tightblog.domain.WeblogEntryComment;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.IOException;
 import java.util.List;
 
 /**
@@ -51,33 +47,24 @@ public abstract class AbstractIndexTask extends AbstractTask {
         super(mgr);
     }
 
+    @Override
     public void run() {
         try {
-            manager.getReadWriteLock().writeLock().lock();
             LOG.debug("Starting index task");
             doRun();
             LOG.debug("Index task complete");
         } catch (Exception e) {
-            LOG.error("Error acquiring write lock on index", e);
-        } finally {
-            manager.getReadWriteLock().writeLock().unlock();
+            LOG.error("Error running index task", e);
         }
     }
 
-    IndexWriter beginWriting() {
-        IndexWriter writer = null;
-
-        Analyzer analyzer = manager.getAnalyzer();
-        if (analyzer != null) {
-            try {
-                LimitTokenCountAnalyzer ltcAnalyzer = new LimitTokenCountAnalyzer(analyzer, manager.getMaxTokenCount());
-                IndexWriterConfig config = new IndexWriterConfig(ltcAnalyzer);
-                writer = new IndexWriter(manager.getIndexDirectory(), config);
-            } catch (IOException e) {
-                LOG.error("ERROR creating writer", e);
-            }
-        }
-        return writer;
+    /**
+     * Get the writer shared by all index tasks, null if unavailable.  Changes become visible
+     * to searches on the next refresh of the index's searchers and are committed periodically,
+     * so tasks neither close the writer nor commit.
+     */
+    IndexWriter getWriter() {
+        return manager.getIndexWriter();
     }
 
     Document getDocument(WeblogEntry data) {
@@ -40,6 +40,8 @@ public final class FieldConstants {
     public static final String COMMENT_NAME = "name";
     public static final String CONSTANT = "constant";
     public static final String WEBLOG_HANDLE = "handle";
+    // marks the documents added by a rebuild of the index, see RebuildIndexTask
+    public static final String REBUILD_ID = "rebuild";
     // CONSTANT_V used to retrieve all documents; must be lowercase
     public static final String CONSTANT_V = "v";
 }
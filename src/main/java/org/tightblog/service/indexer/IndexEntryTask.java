@@ -23,12 +23,14 @@ package org.tightblog.service.indexer;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.Term;
 import org.tightblog.service.LuceneIndexer;
+import org.tightblog.service.WeblogEntryManager;
 import org.tightblog.domain.WeblogEntry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.tightblog.dao.WeblogEntryDao;
 
 import java.io.IOException;
+import java.util.List;
 
 /**
  * Task for updating indexing information for a weblog entry.
@@ -38,6 +40,7 @@ public class IndexEntryTask extends AbstractIndexTask {
     private static Logger log = LoggerFactory.getLogger(IndexEntryTask.class);
     private WeblogEntry weblogEntry;
     private WeblogEntryDao weblogEntryDao;
+    private WeblogEntryManager weblogEntryManager;
     private boolean deleteOnly;
 
     /**
@@ -45,33 +48,40 @@ public class IndexEntryTask extends AbstractIndexTask {
      * @param weblogEntry entry to index
      * @param deleteOnly If true just remove the weblog entry from the index.
      */
-    public IndexEntryTask(WeblogEntryDao weblogEntryDao, LuceneIndexer indexer,
+    public IndexEntryTask(WeblogEntryDao weblogEntryDao, WeblogEntryManager wem, LuceneIndexer indexer,
                           WeblogEntry weblogEntry, boolean deleteOnly) {
         super(indexer);
         this.weblogEntryDao = weblogEntryDao;
+        this.weblogEntryManager = wem;
         this.weblogEntry = weblogEntry;
         this.deleteOnly = deleteOnly;
     }
 
     public void doRun() {
-        try (IndexWriter writer = beginWriting()) {
-            if (writer != null) {
-                // Delete Doc
+        IndexWriter writer = getWriter();
+        if (writer != null) {
+            try {
                 Term term = new Term(FieldConstants.ID, weblogEntry.getId());
-                writer.deleteDocuments(term);
 
                 if (!deleteOnly) {
                     // since this task is normally run on a separate thread we must treat
                     // the weblog object passed in as a detached JPA entity object with
                     // potentially obsolete data, so requery for the object now
                     this.weblogEntry = weblogEntryDao.findByIdOrNull(this.weblogEntry.getId());
-                    if (weblogEntry != null) {
-                        writer.addDocument(getDocument(weblogEntry));
+                    if (weblogEntry != null && manager.isIndexComments()) {
+                        weblogEntryManager.loadApprovedComments(List.of(weblogEntry));
                     }
                 }
+
+                if (!deleteOnly && weblogEntry != null) {
+                    // replaces any existing doc, atomically as seen by searches
+                    writer.updateDocument(term, getDocument(weblogEntry));
+                } else {
+                    writer.deleteDocuments(term);
+                }
+            } catch (IOException e) {
+                log.error("Problems adding/deleting doc to index", e);
             }
-        } catch (IOException e) {
-            log.error("Problems adding/deleting doc to index", e);
         }
     }
 }
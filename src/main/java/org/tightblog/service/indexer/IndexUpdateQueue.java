@@ -0,0 +1,251 @@
+/*
+   Copyright 2026 the original author or authors.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.tightblog.service.indexer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded queue of index updates, applied in order of queueing by a single consumer thread
+ * taking them in batches.  Updates are keyed by what they change (e.g., an entry's id), a
+ * pending update being replaced in place by any later one of the same key: the later task
+ * rereads whatever it indexes when run, so the last update wins and a removal supersedes
+ * pending additions.  Entries saved repeatedly in quick succession are thus indexed once.
+ * <p>
+ * Queueing an update of a new key while the queue is full waits for the consumer to make
+ * room, so a burst of changes slows those making them rather than piling up without limit.
+ */
+public class IndexUpdateQueue {
+
+    private static Logger log = LoggerFactory.getLogger(IndexUpdateQueue.class);
+
+    public record Stats(int pending, long oldestPendingMillis, long lastLagMillis, long applied, long coalesced) { }
+
+    record Pending(Runnable task, long queuedNanos) { }
+
+    private final Map<String, Pending> pending = new LinkedHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final int capacity;
+    private final int batchSize;
+
+    private final AtomicLong applied = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    // time from queueing to applying of the last update applied
+    private volatile long lastLagMillis;
+    private volatile boolean stopped;
+    private Thread consumer;
+    // queue times of the oldest updates of the batch being applied and of those dropped on stopping
+    private Long applyingSince;
+    private Long droppedSince;
+
+    /**
+     * @param capacity  maximum number of pending updates
+     * @param batchSize maximum number of updates taken by the consumer at a time
+     */
+    public IndexUpdateQueue(int capacity, int batchSize) {
+        if (capacity < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("Capacity and batch size must be positive");
+        }
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Start the consumer thread.
+     */
+    public synchronized void start(String threadName) {
+        if (consumer == null) {
+            consumer = new Thread(this::consume, threadName);
+            consumer.setDaemon(true);
+            consumer.start();
+        }
+    }
+
+    /**
+     * Queue an update, replacing any pending one of the same key, waiting while the queue is
+     * full.  Ignored once the queue is stopped.
+     */
+    public void put(String key, Runnable task) {
+        lock.lock();
+        try {
+            Pending previous = pending.get(key);
+            if (previous != null) {
+                coalesced.incrementAndGet();
+            } else {
+                while (pending.size() >= capacity && !stopped) {
+                    notFull.await();
+                }
+            }
+            if (stopped) {
+                log.debug("Index update queue stopped, dropping update of {}", key);
+                return;
+            }
+            // a replaced update keeps its place, lag being measured from when the change was first queued
+            pending.put(key, new Pending(task, previous == null ? System.nanoTime() : previous.queuedNanos()));
+            notEmpty.signal();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted waiting to queue index update of {}, dropping it", key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Take up to batchSize of the oldest pending updates, waiting for some if none.
+     * @return updates in order of queueing, empty once stopped
+     */
+    List<Pending> takeBatch() throws InterruptedException {
+        lock.lock();
+        try {
+            while (pending.isEmpty() && !stopped) {
+                notEmpty.await();
+            }
+            List<Pending> batch = new ArrayList<>(Math.min(batchSize, pending.size()));
+            if (!stopped) {
+                Iterator<Pending> it = pending.values().iterator();
+                while (it.hasNext() && batch.size() < batchSize) {
+                    batch.add(it.next());
+                    it.remove();
+                }
+                if (!batch.isEmpty()) {
+                    applyingSince = batch.get(0).queuedNanos();
+                }
+                notFull.signalAll();
+            }
+            return batch;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void apply(List<Pending> batch) {
+        for (Pending update : batch) {
+            try {
+                update.task().run();
+            } catch (RuntimeException e) {
+                log.error("Index update failed", e);
+            }
+            applied.incrementAndGet();
+            lastLagMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - update.queuedNanos());
+        }
+        lock.lock();
+        try {
+            applyingSince = null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void consume() {
+        try {
+            while (!stopped) {
+                apply(takeBatch());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stop the consumer once done with its current batch, dropping updates still pending.
+     * @param timeoutMillis maximum time to wait for the current batch to finish
+     */
+    public void stop(long timeoutMillis) {
+        Thread thread;
+        lock.lock();
+        try {
+            stopped = true;
+            if (!pending.isEmpty()) {
+                log.info("Dropping {} pending index updates", pending.size());
+                droppedSince = pending.values().iterator().next().queuedNanos();
+                pending.clear();
+            }
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        synchronized (this) {
+            thread = consumer;
+        }
+        if (thread != null) {
+            // not interrupted, as interrupting Lucene's file I/O closes the index's files
+            try {
+                thread.join(timeoutMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Time, as given by System.nanoTime(), at which the oldest update not yet applied was
+     * queued, counting those being applied and any dropped on stopping; empty if none.
+     */
+    public OptionalLong getOldestUnappliedNanos() {
+        lock.lock();
+        try {
+            Long oldest = pending.isEmpty() ? null : pending.values().iterator().next().queuedNanos();
+            for (Long since : new Long[] {applyingSince, droppedSince}) {
+                if (since != null && (oldest == null || since - oldest < 0)) {
+                    oldest = since;
+                }
+            }
+            return oldest == null ? OptionalLong.empty() : OptionalLong.of(oldest);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getPendingCount() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Stats getStats() {
+        int pendingCount;
+        long oldestPendingMillis = 0;
+        lock.lock();
+        try {
+            pendingCount = pending.size();
+            if (pendingCount > 0) {
+                long queuedNanos = pending.values().iterator().next().queuedNanos();
+                oldestPendingMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - queuedNanos);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return new Stats(pendingCount, oldestPendingMillis, lastLagMillis, applied.get(), coalesced.get());
+    }
+}
@@ -21,6 +21,7 @@
 package org.tightblog.service.indexer;
 
 import org.apache.commons.lang3.time.DateUtils;
+import org.apache.lucene.document.Document;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.Term;
 import org.tightblog.service.WeblogEntryManager;
@@ -33,6 +34,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -47,8 +49,8 @@ public class IndexWeblogTask extends AbstractIndexTask {
 
     /**
      * Create a new task to update an index for a weblog
-     * @param weblog The weblog to rebuild the index for, or null for all weblogs.
-     * @param deleteOnly Remove the weblog(s) from the index.
+     * @param weblog The weblog to rebuild the index for, see RebuildIndexTask for all weblogs.
+     * @param deleteOnly Remove the weblog from the index.
      */
     public IndexWeblogTask(LuceneIndexer mgr, WeblogEntryManager wem,
                            Weblog weblog, boolean deleteOnly) {
@@ -59,58 +61,42 @@ public class IndexWeblogTask extends AbstractIndexTask {
     }
 
     public void doRun() {
-        if (weblog == null && deleteOnly) {
-            log.error("Weblog must be provided for delete task, skipping indexing");
-            return;
-        }
-
         Instant start = Instant.now();
 
-        if (weblog == null) {
-            log.info("Starting reindex of all weblogs...");
-        }
-
-        try (IndexWriter writer = beginWriting()) {
-            if (writer != null) {
-
-                // Delete all entries from given weblog(s)
-                if (weblog != null) {
-                    Term tWebsite = getTerm(FieldConstants.WEBLOG_HANDLE, weblog.getHandle());
-
-                    if (tWebsite != null) {
-                        writer.deleteDocuments(tWebsite);
-                    }
-                } else {
-                    Term all = getTerm(FieldConstants.CONSTANT, FieldConstants.CONSTANT_V);
-                    writer.deleteDocuments(all);
-                }
-
+        IndexWriter writer = getWriter();
+        if (writer != null) {
+            try {
+                List<Document> docs = new ArrayList<>();
                 if (!deleteOnly) {
-                    // Add entries from weblog(s)
+                    // Add entries from weblog
                     WeblogEntrySearchCriteria wesc = new WeblogEntrySearchCriteria();
                     wesc.setWeblog(weblog);
                     wesc.setStatus(PubStatus.PUBLISHED);
+                    wesc.setFetchProfile(WeblogEntrySearchCriteria.FetchProfile.SEARCH_INDEX);
                     List<WeblogEntry> entries = weblogEntryManager.getWeblogEntries(wesc);
 
                     log.debug("Entries to index: {}", entries.size());
 
                     for (WeblogEntry entry : entries) {
-                        writer.addDocument(getDocument(entry));
+                        docs.add(getDocument(entry));
                         log.debug("Indexed entry {0}: {1}", entry.getPubTime(), entry.getAnchor());
                     }
                 }
+
+                // Replace all entries from given weblog
+                Term tWebsite = getTerm(FieldConstants.WEBLOG_HANDLE, weblog.getHandle());
+
+                if (tWebsite != null) {
+                    // atomically as seen by searches, which never find the weblog partly indexed
+                    writer.updateDocuments(tWebsite, docs);
+                }
+            } catch (Exception e) {
+                log.error("ERROR adding/deleting doc to index", e);
             }
-        } catch (Exception e) {
-            log.error("ERROR adding/deleting doc to index", e);
         }
 
         Instant end = Instant.now();
         double length = (end.toEpochMilli() - start.toEpochMilli()) / (double) DateUtils.MILLIS_PER_SECOND;
-
-        if (weblog == null) {
-            log.info("Indexed all weblogs in {} secs", length);
-        } else {
-            log.info("Indexed weblog '{}' in {} secs", weblog.getHandle(), length);
-        }
+        log.info("Indexed weblog '{}' in {} secs", weblog.getHandle(), length);
     }
 }
@@ -0,0 +1,257 @@
+/*
+   Copyright 2026 the original author or authors.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.tightblog.service.indexer;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.util.BytesRef;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tightblog.dao.WeblogEntryDao;
+import org.tightblog.domain.EntryCursor;
+import org.tightblog.domain.WeblogEntry;
+import org.tightblog.domain.WeblogEntrySearchCriteria;
+import org.tightblog.service.LuceneIndexer;
+import org.tightblog.service.WeblogEntryManager;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Task reindexing the published entries of all weblogs.  Entries are read a page at a time,
+ * seeking by publish time and id, with the next page read while the documents of the last are
+ * built and added by a pool of workers, so no more than two pages are held at once however
+ * many entries there are.
+ * <p>
+ * Documents replace those of the same entries, so the index remains searchable throughout;
+ * those of entries no longer published are deleted once all entries have been indexed.  The
+ * task can be cancelled, stopping after the page being indexed, leaving the index with the
+ * entries indexed so far updated and the others as they were.
+ * <p>
+ * Updates applied by the index update queue meanwhile supersede the rebuild: the entries they
+ * cover are skipped and their documents kept, and once the rebuild is done they are queued
+ * again, rewriting any document the rebuild wrote of an entry read before it changed.
+ */
+public class RebuildIndexTask extends AbstractIndexTask {
+
+    private static Logger log = LoggerFactory.getLogger(RebuildIndexTask.class);
+
+    public record Progress(boolean running, boolean cancelled, long indexed, long total,
+                           double entriesPerSecond, long etaSeconds) { }
+
+    private final WeblogEntryManager weblogEntryManager;
+    private final WeblogEntryDao weblogEntryDao;
+    private final int pageSize;
+    private final int parallelism;
+    // marks the documents added by this rebuild, to find those of entries no longer published
+    private final String rebuildId = Long.toString(Instant.now().toEpochMilli());
+
+    // updates applied by the queue during the rebuild, by entry id and weblog handle, to queue again once done
+    private final Map<String, Runnable> supersededEntries = new ConcurrentHashMap<>();
+    private final Map<String, Runnable> supersededWeblogs = new ConcurrentHashMap<>();
+    // set once no more updates are to be superseded, guarded by this
+    private boolean finished;
+
+    private final AtomicLong indexed = new AtomicLong();
+    private volatile long total;
+    private volatile long startNanos;
+    private volatile long endNanos;
+    private volatile boolean cancelled;
+    private volatile boolean completed;
+
+    /**
+     * @param pageSize    number of entries read at a time
+     * @param parallelism number of workers building and adding documents
+     */
+    public RebuildIndexTask(LuceneIndexer mgr, WeblogEntryManager wem, WeblogEntryDao weblogEntryDao,
+                            int pageSize, int parallelism) {
+        super(mgr);
+        this.weblogEntryManager = wem;
+        this.weblogEntryDao = weblogEntryDao;
+        this.pageSize = pageSize;
+        this.parallelism = parallelism;
+    }
+
+    public void doRun() {
+        IndexWriter writer = getWriter();
+        if (writer == null) {
+            return;
+        }
+
+        startNanos = System.nanoTime();
+        total = weblogEntryDao.countByStatus(WeblogEntry.PubStatus.PUBLISHED);
+        log.info("Starting reindex of all weblogs, {} entries...", total);
+
+        ForkJoinPool workers = new ForkJoinPool(parallelism);
+        try {
+            List<WeblogEntry> page = getPage(null);
+            while (!page.isEmpty() && !cancelled) {
+                List<WeblogEntry> current = page;
+                Future<?> adding = workers.submit(() -> current.parallelStream()
+                        .forEach(entry -> addDocument(writer, entry)));
+                page = current.size() < pageSize ? List.of() :
+                        getPage(EntryCursor.before(current.get(current.size() - 1)));
+                adding.get();
+            }
+
+            if (cancelled) {
+                log.info("Reindex of all weblogs cancelled after {} of {} entries", indexed.get(), total);
+            } else {
+                deleteStaleDocuments(writer);
+                log.info("Indexed all weblogs, {} entries in {} secs", indexed.get(),
+                        TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startNanos));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Reindex of all weblogs interrupted");
+        } catch (ExecutionException | IOException e) {
+            log.error("ERROR reindexing all weblogs", e);
+        } finally {
+            workers.shutdown();
+            synchronized (this) {
+                finished = true;
+            }
+            requeueSuperseded();
+            endNanos = System.nanoTime();
+        }
+    }
+
+    // deletes documents neither added by this rebuild nor by updates superseding it, under the
+    // lock so updates applied after the deletion are no longer superseded
+    private synchronized void deleteStaleDocuments(IndexWriter writer) throws IOException {
+        BooleanQuery.Builder stale = new BooleanQuery.Builder()
+                .add(new MatchAllDocsQuery(), BooleanClause.Occur.MUST)
+                .add(new TermQuery(new Term(FieldConstants.REBUILD_ID, rebuildId)), BooleanClause.Occur.MUST_NOT);
+        if (!supersededEntries.isEmpty()) {
+            stale.add(new TermInSetQuery(FieldConstants.ID, toTerms(supersededEntries.keySet())),
+                    BooleanClause.Occur.MUST_NOT);
+        }
+        if (!supersededWeblogs.isEmpty()) {
+            stale.add(new TermInSetQuery(FieldConstants.WEBLOG_HANDLE, toTerms(supersededWeblogs.keySet())),
+                    BooleanClause.Occur.MUST_NOT);
+        }
+        writer.deleteDocuments(stale.build());
+        finished = true;
+        completed = true;
+    }
+
+    private static List<BytesRef> toTerms(Collection<String> values) {
+        return values.stream().map(BytesRef::new).toList();
+    }
+
+    private void requeueSuperseded() {
+        if (!supersededEntries.isEmpty() || !supersededWeblogs.isEmpty()) {
+            log.debug("Requeueing {} index updates applied during reindex of all weblogs",
+                    supersededEntries.size() + supersededWeblogs.size());
+            supersededEntries.values().forEach(Runnable::run);
+            supersededWeblogs.values().forEach(Runnable::run);
+        }
+    }
+
+    private List<WeblogEntry> getPage(EntryCursor cursor) {
+        WeblogEntrySearchCriteria wesc = new WeblogEntrySearchCriteria();
+        wesc.setStatus(WeblogEntry.PubStatus.PUBLISHED);
+        wesc.setCursor(cursor);
+        wesc.setMaxResults(pageSize);
+        // what getDocument() reads of each entry
+        wesc.setFetchProfile(WeblogEntrySearchCriteria.FetchProfile.SEARCH_INDEX);
+        return weblogEntryManager.getWeblogEntries(wesc);
+    }
+
+    private void addDocument(IndexWriter writer, WeblogEntry entry) {
+        if (supersededEntries.containsKey(entry.getId())
+                || supersededWeblogs.containsKey(entry.getWeblog().getHandle())) {
+            // already indexed by the queue, as it is now
+            indexed.incrementAndGet();
+            return;
+        }
+        Document doc = getDocument(entry);
+        doc.add(new StringField(FieldConstants.REBUILD_ID, rebuildId, Field.Store.NO));
+        try {
+            writer.updateDocument(new Term(FieldConstants.ID, entry.getId()), doc);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        indexed.incrementAndGet();
+    }
+
+    /**
+     * Note an update of an entry about to be applied by the index update queue, to which the
+     * rebuild leaves the entry's document, queueing the update again once done.
+     * @param requeue queues the update again
+     */
+    public synchronized void supersedeEntry(String entryId, Runnable requeue) {
+        if (!finished) {
+            supersededEntries.put(entryId, requeue);
+        }
+    }
+
+    /**
+     * As supersedeEntry(), for an update of all the entries of a weblog.
+     */
+    public synchronized void supersedeWeblog(String handle, Runnable requeue) {
+        if (!finished) {
+            supersededWeblogs.put(handle, requeue);
+        }
+    }
+
+    /**
+     * Stop once done with the page being indexed.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Whether all entries have been indexed, the task having run without being cancelled.
+     */
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    public Progress getProgress() {
+        long started = startNanos;
+        if (started == 0) {
+            // not yet started, as when following a rebuild still stopping
+            return new Progress(true, cancelled, 0, 0, 0, -1);
+        }
+        long ended = endNanos;
+        boolean running = ended == 0;
+        long count = indexed.get();
+        long elapsedNanos = (running ? System.nanoTime() : ended) - started;
+        double perSecond = elapsedNanos > 0 ? count * 1e9 / elapsedNanos : 0;
+        long eta = !running ? 0 : perSecond > 0 ? (long) (Math.max(total - count, 0) / perSecond) : -1;
+        return new Progress(running, cancelled, count, total, perSecond, eta);
+    }
+}
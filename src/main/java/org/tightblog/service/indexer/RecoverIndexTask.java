@@ -0,0 +1,155 @@
+/*
+   Copyright 2026 the original author or authors.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.tightblog.service.indexer;
+
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.util.Bits;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tightblog.dao.WeblogEntryDao;
+import org.tightblog.domain.WeblogEntry;
+import org.tightblog.service.LuceneIndexer;
+import org.tightblog.service.WeblogEntryManager;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Task bringing an index up to date with changes to entries made since it was last known
+ * current, as when changes were lost to an unclean shutdown.  Entries updated since then, or
+ * whose approved comments changed since, are reindexed, or removed from the index if no longer
+ * published, and the index is checked for entries since deleted.  The index stays searchable
+ * throughout, only a fraction of entries typically needing reindexing.
+ */
+public class RecoverIndexTask extends AbstractIndexTask {
+
+    private static Logger log = LoggerFactory.getLogger(RecoverIndexTask.class);
+
+    // number of entries read or checked for at a time
+    private static final int CHUNK_SIZE = 500;
+
+    private final WeblogEntryManager weblogEntryManager;
+    private final WeblogEntryDao weblogEntryDao;
+    private final Instant since;
+    private volatile boolean completed;
+
+    /**
+     * @param since time from which entry changes may be missing from the index
+     */
+    public RecoverIndexTask(LuceneIndexer mgr, WeblogEntryManager wem, WeblogEntryDao weblogEntryDao,
+                            Instant since) {
+        super(mgr);
+        this.weblogEntryManager = wem;
+        this.weblogEntryDao = weblogEntryDao;
+        this.since = since;
+    }
+
+    public void doRun() {
+        IndexWriter writer = getWriter();
+        if (writer == null) {
+            return;
+        }
+        try {
+            int updated = reindexChangedEntries(writer);
+            int removed = removeUnpublishedEntries(writer);
+            completed = true;
+            log.info("Search index brought up to date from {}: {} entries reindexed, {} removed", since, updated,
+                    removed);
+        } catch (IOException e) {
+            log.error("ERROR bringing search index up to date, will be retried at next startup", e);
+        }
+    }
+
+    private int reindexChangedEntries(IndexWriter writer) throws IOException {
+        List<String> ids = weblogEntryDao.findIdsUpdatedSince(since);
+        int count = 0;
+        for (int i = 0; i < ids.size(); i += CHUNK_SIZE) {
+            List<String> chunk = ids.subList(i, Math.min(i + CHUNK_SIZE, ids.size()));
+            List<WeblogEntry> entries = weblogEntryDao.findAllById(chunk);
+            if (manager.isIndexComments()) {
+                weblogEntryManager.loadApprovedComments(entries);
+            }
+            for (WeblogEntry entry : entries) {
+                Term term = new Term(FieldConstants.ID, entry.getId());
+                if (WeblogEntry.PubStatus.PUBLISHED.equals(entry.getStatus())) {
+                    writer.updateDocument(term, getDocument(entry));
+                    count++;
+                } else {
+                    writer.deleteDocuments(term);
+                }
+            }
+        }
+        return count;
+    }
+
+    // removes documents of entries deleted or unpublished since
+    private int removeUnpublishedEntries(IndexWriter writer) throws IOException {
+        manager.refreshSearcher();
+        IndexSearcher searcher = manager.acquireSearcher();
+        if (searcher == null) {
+            throw new IOException("No index searcher available");
+        }
+        int count = 0;
+        try {
+            List<String> ids = new ArrayList<>(CHUNK_SIZE);
+            Set<String> idField = Set.of(FieldConstants.ID);
+            for (LeafReaderContext context : searcher.getIndexReader().leaves()) {
+                LeafReader reader = context.reader();
+                Bits liveDocs = reader.getLiveDocs();
+                for (int doc = 0; doc < reader.maxDoc(); doc++) {
+                    if (liveDocs == null || liveDocs.get(doc)) {
+                        ids.add(reader.document(doc, idField).get(FieldConstants.ID));
+                        if (ids.size() == CHUNK_SIZE) {
+                            count += removeUnpublished(writer, ids);
+                            ids.clear();
+                        }
+                    }
+                }
+            }
+            count += removeUnpublished(writer, ids);
+        } finally {
+            manager.releaseSearcher(searcher);
+        }
+        return count;
+    }
+
+    private int removeUnpublished(IndexWriter writer, List<String> ids) throws IOException {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        Set<String> unpublished = new HashSet<>(ids);
+        unpublished.removeAll(weblogEntryDao.findIdsByIdInAndStatus(ids, WeblogEntry.PubStatus.PUBLISHED));
+        for (String id : unpublished) {
+            writer.deleteDocuments(new Term(FieldConstants.ID, id));
+        }
+        return unpublished.size();
+    }
+
+    /**
+     * Whether the index has been brought up to date.
+     */
+    public boolean isCompleted() {
+        return completed;
+    }
+}
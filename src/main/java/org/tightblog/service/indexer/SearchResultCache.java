@@ -0,0 +1,110 @@
+/*
+   Copyright 2026 the original author or authors.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.tightblog.service.indexer;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.search.TopFieldDocs;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of search results (the sorted ids and scores of matching documents) by weblog,
+ * category and query, so paging through results or repeated searches for popular terms
+ * needn't run the query again.  Document ids are only valid for the index reader searched,
+ * so keys include the reader's version, and all results are evicted whenever searchers are
+ * refreshed to a new version.
+ */
+public class SearchResultCache implements ReferenceManager.RefreshListener {
+
+    private static Logger log = LoggerFactory.getLogger(SearchResultCache.class);
+
+    record Key(long readerVersion, String weblogHandle, String category, String query) { }
+
+    private final Cache<Key, TopFieldDocs> results;
+
+    /**
+     * @param maxEntries maximum number of results held, zero or less to disable the cache
+     */
+    public SearchResultCache(int maxEntries) {
+        if (maxEntries > 0) {
+            results = Caffeine.newBuilder()
+                    .maximumSize(maxEntries)
+                    .recordStats()
+                    .build();
+        } else {
+            results = null;
+            log.warn("Search result cache has been DISABLED");
+        }
+    }
+
+    /**
+     * Key for the results of a search, null if they're not to be cached.
+     * @param weblogHandle weblog searched, null for all
+     * @param category     category searched, null for all
+     */
+    Key keyOf(IndexSearcher searcher, String weblogHandle, String category, String query) {
+        if (results == null || query == null || !(searcher.getIndexReader() instanceof DirectoryReader reader)) {
+            return null;
+        }
+        // as queries differing only in spacing parse the same, and categories are indexed in lower case
+        return new Key(reader.getVersion(), weblogHandle, category == null ? null : category.toLowerCase(),
+                query.trim().replaceAll("\\s+", " "));
+    }
+
+    TopFieldDocs get(Key key) {
+        return key == null ? null : results.getIfPresent(key);
+    }
+
+    void put(Key key, TopFieldDocs docs) {
+        if (key != null && docs != null) {
+            results.put(key, docs);
+        }
+    }
+
+    public void invalidateAll() {
+        if (results != null) {
+            results.invalidateAll();
+        }
+    }
+
+    @Override
+    public void beforeRefresh() {
+        // results remain valid until the new searcher is in use
+    }
+
+    @Override
+    public void afterRefresh(boolean didRefresh) {
+        if (didRefresh) {
+            invalidateAll();
+        }
+    }
+
+    public long getHitCount() {
+        return results == null ? 0 : results.stats().hitCount();
+    }
+
+    public long getMissCount() {
+        return results == null ? 0 : results.stats().missCount();
+    }
+
+    public long getEstimatedSize() {
+        return results == null ? 0 : results.estimatedSize();
+    }
+}
@@ -21,7 +21,6 @@
 package org.tightblog.service.indexer;
 
 import org.apache.lucene.analysis.Analyzer;
-import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.queryparser.classic.MultiFieldQueryParser;
 import org.apache.lucene.queryparser.classic.ParseException;
@@ -40,9 +39,10 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 
 /**
- * Task for searching the index to retrieve blog entries.
+ * Task for searching the index to retrieve blog entries.  The searcher used is held until the
+ * task is closed, for reading the documents of the results.
  */
-public class SearchTask extends AbstractTask {
+public class SearchTask extends AbstractTask implements AutoCloseable {
 
     private static final Logger LOG = LoggerFactory.getLogger(SearchTask.class);
 
@@ -55,6 +55,8 @@ public class SearchTask extends AbstractTask {
             FieldConstants.PUBLISHED, SortField.Type.STRING, true));
 
     private IndexSearcher searcher;
+    // whether the searcher was acquired from the indexer, and so needs releasing
+    private boolean searcherAcquired;
     private TopFieldDocs searchResults;
 
     private String term;
@@ -65,31 +67,28 @@ public class SearchTask extends AbstractTask {
         super(mgr);
     }
 
-    @Override
-    public void run() {
-        try {
-            manager.getReadWriteLock().readLock().lock();
-            doRun();
-        } catch (Exception e) {
-            LOG.info("Error acquiring read lock on index", e);
-        } finally {
-            manager.getReadWriteLock().readLock().unlock();
-        }
-    }
-
     @Override
     public void doRun() {
         final int docLimit = 500;
         searchResults = null;
-        searcher = null;
+        close();
+
+        searcher = manager.acquireSearcher();
+        if (searcher == null) {
+            return;
+        }
+        searcherAcquired = true;
+
+        // results of the same search of the same searcher, as when paging through them
+        SearchResultCache resultCache = manager.getSearchResultCache();
+        SearchResultCache.Key cacheKey = resultCache.keyOf(searcher, weblogHandle, category, term);
+        searchResults = resultCache.get(cacheKey);
+        if (searchResults != null) {
+            return;
+        }
 
         try (Analyzer analyzer = manager.getAnalyzer()) {
             if (analyzer != null) {
-                IndexReader reader = manager.getDirectoryReader();
-                if (searcher == null) {
-                    searcher = new IndexSearcher(reader);
-                }
-
                 MultiFieldQueryParser multiParser = new MultiFieldQueryParser(SEARCH_FIELDS, analyzer);
 
                 // Make it an AND by default. Comment this out for an or (default)
@@ -116,12 +115,25 @@ public class SearchTask extends AbstractTask {
                 }
 
                 searchResults = searcher.search(query, docLimit, SORTER);
+                resultCache.put(cacheKey, searchResults);
             }
         } catch (IOException | ParseException e) {
             LOG.error("Error searching index", e);
         }
     }
 
+    /**
+     * Release the searcher used, after which the results' documents can no longer be read.
+     */
+    @Override
+    public void close() {
+        if (searcherAcquired) {
+            manager.releaseSearcher(searcher);
+            searcherAcquired = false;
+        }
+        searcher = null;
+    }
+
     public IndexSearcher getSearcher() {
         return searcher;
     }
@@ -0,0 +1,13 @@
+
+-- Below script upgrades a TightBlog database from version 200 to 201 for database apachederby
+
+-- stored renderings of entry text and summary, filled in as entries are saved
+-- or by the re-rendering job run after startup and on blog HTML policy changes
+alter table weblog_entry add column rendered_text clob(102400);
+alter table weblog_entry add column rendered_summary clob(102400);
+alter table weblog_entry add column rendering_stamp varchar(48);
+
+-- last change to an entry's approved comments, for bringing the search index up to date
+alter table weblog_entry add column comment_updatetime timestamp;
+
+update weblogger_properties set database_version = 201 where id = '1';
@@ -123,7 +123,11 @@ create table weblog_entry (
     search_description varchar(255),
     enclosure_url   varchar(255),
     enclosure_type  varchar(48),
-    enclosure_length integer
+    enclosure_length integer,
+    rendered_text   text,
+    rendered_summary text,
+    rendering_stamp varchar(48),
+    comment_updatetime datetime(3)
 );
 
 alter table weblog_entry add constraint we_weblogid_fk
@@ -205,7 +209,7 @@ alter table weblogger_properties add constraint wp_weblogid_fk
     foreign key (main_blog_id) references weblog( id ) ;
 
 -- initial row, relying on per-column defaults.
-insert into weblogger_properties(id, database_version) values ('1', 200);
+insert into weblogger_properties(id, database_version) values ('1', 201);
 
 create table media_directory (
     id               varchar(48) not null primary key,
@@ -17,6 +17,9 @@ package org.tightblog;
 
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
+import org.mockito.stubbing.Answer;
+import org.tightblog.rendering.cache.CachedContent;
+import org.tightblog.rendering.cache.LazyExpiringCache;
 import org.tightblog.rendering.requests.WeblogPageRequest;
 import org.tightblog.rendering.requests.WeblogSearchRequest;
 import org.tightblog.rendering.service.ThymeleafRenderer;
@@ -29,8 +32,11 @@ import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.Locale;
 import java.util.Map;
+import java.util.function.Supplier;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -73,6 +79,23 @@ public class TestUtils {
         return (WeblogSearchRequest) results.get("model");
     }
 
+    // Have a mock cache's getOrRender() check its (mocked) get(), rendering and calling put() on a miss.
+    public static void delegateGetOrRenderToGetAndPut(LazyExpiringCache mockCache) {
+        Answer<CachedContent> getOrRender = invocation -> {
+            String key = invocation.getArgument(0);
+            CachedContent content = mockCache.get(key, invocation.getArgument(1));
+            if (content == null) {
+                content = invocation.<Supplier<CachedContent>>getArgument(2).get();
+                if (content != null) {
+                    mockCache.put(key, content);
+                }
+            }
+            return content;
+        };
+        when(mockCache.getOrRender(anyString(), any(), any())).thenAnswer(getOrRender);
+        when(mockCache.getOrRender(anyString(), any(), any(), anyBoolean())).thenAnswer(getOrRender);
+    }
+
     // Spring REST parses servlet path directly, so not necessary to place in HttpServletRequest object.
     public static HttpServletRequest createMockServletRequest() {
         return createBaseMockServletRequest(null);
@@ -0,0 +1,139 @@
+/*
+   Copyright 2026 the original author or authors.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.tightblog.rendering.cache;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.tightblog.dao.WeblogDao;
+import org.tightblog.domain.Template;
+import org.tightblog.domain.Weblog;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class CacheWarmerTest {
+
+    private LazyExpiringCache pageCache;
+    private LazyExpiringCache feedCache;
+    private WeblogDao mockWeblogDao;
+    private List<Runnable> scheduledTasks;
+    private List<String> warmedKeys;
+
+    @BeforeEach
+    public void initialize() {
+        warmedKeys = new ArrayList<>();
+        pageCache = new LazyExpiringCache("pageCache", 50, 1);
+        pageCache.init();
+        pageCache.setKeyWarmer(key -> {
+            warmedKeys.add("page:" + key);
+            pageCache.getOrRender(key, Instant.now(), () -> new CachedContent(Template.Role.WEBLOG));
+        });
+        feedCache = new LazyExpiringCache("feedCache", 50, 1);
+        feedCache.init();
+        feedCache.setKeyWarmer(key -> warmedKeys.add("feed:" + key));
+        mockWeblogDao = mock(WeblogDao.class);
+        scheduledTasks = new ArrayList<>();
+    }
+
+    private CacheWarmer createWarmer(boolean enabled, int keysPerWeblog, int maxConcurrent) {
+        return new CacheWarmer(pageCache, feedCache, mockWeblogDao, scheduledTasks::add,
+                enabled, keysPerWeblog, maxConcurrent, 20);
+    }
+
+    private void request(String key, int times) {
+        for (int i = 0; i < times; i++) {
+            pageCache.getOrRender(key, Instant.now(), () -> new CachedContent(Template.Role.WEBLOG));
+        }
+    }
+
+    @Test
+    public void testMostRequestedKeysWarmed() {
+        request("blog/entry/a", 5);
+        request("blog/entry/b", 9);
+        request("blog/entry/c", 1);
+        request("blog/tag/d", 3);
+        Set<String> formerKeys = pageCache.invalidateWeblog("blog");
+        assertEquals(4, formerKeys.size());
+
+        CacheWarmer warmer = createWarmer(true, 3, 1);
+        warmer.warmWeblog(pageCache, "blog", formerKeys);
+
+        // one worker for the limit of one, warming in order of popularity with home page always included
+        assertEquals(1, scheduledTasks.size());
+        assertEquals(3, warmer.getQueueSize());
+        scheduledTasks.get(0).run();
+        assertEquals(List.of("page:blog", "page:blog/entry/b", "page:blog/entry/a"), warmedKeys);
+        assertEquals(0, warmer.getQueueSize());
+        assertEquals(3, warmer.getKeysWarmed());
+
+        // warming isn't counted as requests
+        assertEquals(9, pageCache.getRequestFrequency("blog/entry/b"));
+    }
+
+    @Test
+    public void testHomePageAlwaysWarmed() {
+        CacheWarmer warmer = createWarmer(true, 3, 2);
+        warmer.warmWeblog(feedCache, "blog", Set.of());
+        scheduledTasks.forEach(Runnable::run);
+        assertEquals(List.of("feed:blog"), warmedKeys);
+    }
+
+    @Test
+    public void testConcurrencyLimited() {
+        CacheWarmer warmer = createWarmer(true, 10, 2);
+        for (int i = 0; i < 5; i++) {
+            warmer.warmWeblog(pageCache, "blog" + i, Set.of());
+        }
+        assertEquals(2, scheduledTasks.size());
+        scheduledTasks.forEach(Runnable::run);
+        assertEquals(5, warmedKeys.size());
+    }
+
+    @Test
+    public void testDisabledWarmerDoesNothing() {
+        CacheWarmer warmer = createWarmer(false, 10, 2);
+        warmer.warmWeblog(pageCache, "blog", Set.of());
+        warmer.warmPopularWeblogs();
+        assertTrue(scheduledTasks.isEmpty());
+
+        // can be enabled at runtime
+        warmer.setEnabled(true);
+        warmer.warmWeblog(pageCache, "blog", Set.of());
+        assertEquals(1, scheduledTasks.size());
+    }
+
+    @Test
+    public void testPopularWeblogsWarmedOnStartup() {
+        Weblog weblog = new Weblog();
+        weblog.setHandle("popular");
+        when(mockWeblogDao.findByVisibleTrueAndHitsTodayGreaterThanOrderByHitsTodayDesc(eq(0), any()))
+                .thenReturn(List.of(weblog));
+
+        CacheWarmer warmer = createWarmer(true, 10, 1);
+        warmer.warmPopularWeblogs();
+        scheduledTasks.forEach(Runnable::run);
+        assertEquals(List.of("page:popular", "feed:popular"), warmedKeys);
+    }
+}
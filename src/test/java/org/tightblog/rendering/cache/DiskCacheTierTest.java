@@ -0,0 +1,199 @@
+/*
+   Copyright 2026 the original author or authors.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.tightblog.rendering.cache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.tightblog.domain.Template;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DiskCacheTierTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static final String BUILD = "4.0.0-1";
+
+    private final Instant cachedTime = Instant.now().minusSeconds(60);
+
+    @Test
+    public void testContentSurvivesReopening() throws Exception {
+        DiskCacheTier tier = new DiskCacheTier(tempDir, 10 * 1024 * 1024, BUILD);
+        tier.open().join();
+        tier.put("blog/entry/abc", content(Template.Role.PERMALINK, 500, (byte) 1), cachedTime);
+        tier.put("blog", content(Template.Role.WEBLOG, 300, (byte) 2), cachedTime);
+        // later version of a key replaces earlier
+        tier.put("blog", content(Template.Role.WEBLOG, 200, (byte) 3), cachedTime.plusSeconds(1));
+        assertEquals(700, tier.getLiveBytes());
+        tier.close();
+
+        DiskCacheTier reopened = new DiskCacheTier(tempDir, 10 * 1024 * 1024, BUILD);
+        reopened.open().join();
+        assertTrue(reopened.isLoaded());
+        assertEquals(700, reopened.getLiveBytes());
+
+        LazyExpiringCacheEntry entry = reopened.get("blog/entry/abc");
+        assertNotNull(entry);
+        assertEquals(Template.Role.PERMALINK, entry.getValue().getRole());
+        assertArrayEquals(content(Template.Role.PERMALINK, 500, (byte) 1).getContent(), entry.getValue().getContent());
+        assertEquals(cachedTime.toEpochMilli(), entry.getTimeCached().toEpochMilli());
+
+        entry = reopened.get("blog");
+        assertEquals(200, entry.getValue().getContent().length);
+        // stored time still checked against the object's last change
+        assertNull(entry.getValueIfFresh(Instant.now()));
+        assertNotNull(entry.getValueIfFresh(cachedTime));
+
+        reopened.invalidate("blog");
+        assertNull(reopened.get("blog"));
+        reopened.close();
+    }
+
+    @Test
+    public void testIncompleteRecordIgnored() throws Exception {
+        DiskCacheTier tier = new DiskCacheTier(tempDir, 10 * 1024 * 1024, BUILD);
+        tier.open().join();
+        tier.put("blog", content(Template.Role.WEBLOG, 300, (byte) 2), cachedTime);
+        tier.put("blog/tag/abc", content(Template.Role.WEBLOG, 300, (byte) 3), cachedTime);
+        tier.close();
+
+        // simulate crash during the second write
+        Path segment = Files.list(tempDir).filter(p -> p.toString().endsWith(".seg"))
+                .filter(p -> p.toFile().length() > 0).findFirst().orElseThrow();
+        byte[] bytes = Files.readAllBytes(segment);
+        Files.write(segment, Arrays.copyOf(bytes, bytes.length - 100), StandardOpenOption.TRUNCATE_EXISTING);
+
+        DiskCacheTier reopened = new DiskCacheTier(tempDir, 10 * 1024 * 1024, BUILD);
+        reopened.open().join();
+        assertNotNull(reopened.get("blog"));
+        assertNull(reopened.get("blog/tag/abc"));
+        reopened.close();
+    }
+
+    @Test
+    public void testCompactionKeepsWithinBudget() throws Exception {
+        long budget = 4 * 1024 * 1024;
+        DiskCacheTier tier = new DiskCacheTier(tempDir, budget, BUILD);
+        tier.open().join();
+
+        // same few keys rewritten repeatedly, leaving mostly superseded records
+        for (int i = 0; i < 100; i++) {
+            tier.put("blog" + (i % 4), content(Template.Role.WEBLOG, 100 * 1024, (byte) i), cachedTime);
+        }
+        // compaction runs in the background
+        long deadline = System.currentTimeMillis() + 10000;
+        while (tier.getBytesOnDisk() > budget && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(tier.getBytesOnDisk() <= budget);
+        assertEquals(4 * 100 * 1024, tier.getLiveBytes());
+
+        // current records copied forward during compaction
+        for (int i = 96; i < 100; i++) {
+            LazyExpiringCacheEntry entry = tier.get("blog" + (i % 4));
+            assertNotNull(entry);
+            assertEquals((byte) i, entry.getValue().getContent()[0]);
+        }
+        tier.close();
+    }
+
+    @Test
+    public void testSegmentsFromOtherBuildsDiscarded() throws Exception {
+        DiskCacheTier tier = new DiskCacheTier(tempDir, 10 * 1024 * 1024, BUILD);
+        tier.open().join();
+        tier.put("blog", content(Template.Role.WEBLOG, 300, (byte) 2), cachedTime);
+        tier.close();
+
+        DiskCacheTier sameBuild = new DiskCacheTier(tempDir, 10 * 1024 * 1024, BUILD);
+        sameBuild.open().join();
+        assertNotNull(sameBuild.get("blog"));
+        sameBuild.close();
+
+        DiskCacheTier upgraded = new DiskCacheTier(tempDir, 10 * 1024 * 1024, "4.0.0-2");
+        upgraded.open().join();
+        assertNull(upgraded.get("blog"));
+        assertEquals(0, upgraded.getBytesOnDisk());
+        upgraded.close();
+    }
+
+    @Test
+    public void testInvalidateAll() throws Exception {
+        DiskCacheTier tier = new DiskCacheTier(tempDir, 10 * 1024 * 1024, BUILD);
+        tier.open().join();
+        tier.put("blog", content(Template.Role.WEBLOG, 300, (byte) 2), cachedTime);
+        tier.invalidateAll();
+        assertNull(tier.get("blog"));
+        assertEquals(0, tier.getBytesOnDisk());
+        tier.close();
+
+        DiskCacheTier reopened = new DiskCacheTier(tempDir, 10 * 1024 * 1024, BUILD);
+        reopened.open().join();
+        assertNull(reopened.get("blog"));
+        reopened.close();
+    }
+
+    @Test
+    public void testInterruptedReaderLeavesTierUsable() throws Exception {
+        DiskCacheTier tier = new DiskCacheTier(tempDir, 10 * 1024 * 1024, BUILD);
+        tier.open().join();
+        tier.put("blog", content(Template.Role.WEBLOG, 300, (byte) 2), cachedTime);
+
+        // interrupted read closes the segment's channel
+        Thread.currentThread().interrupt();
+        try {
+            assertNull(tier.get("blog"));
+        } finally {
+            Thread.interrupted();
+        }
+
+        // content neither lost nor unreadable by later requests
+        assertNotNull(tier.get("blog"));
+        tier.put("blog/entry/abc", content(Template.Role.PERMALINK, 500, (byte) 1), cachedTime);
+        assertNotNull(tier.get("blog/entry/abc"));
+        assertEquals(800, tier.getLiveBytes());
+        tier.close();
+    }
+
+    @Test
+    public void testStrayFilesIgnored() throws Exception {
+        Files.write(tempDir.resolve("notes.seg"), new byte[] {1, 2, 3});
+        DiskCacheTier tier = new DiskCacheTier(tempDir, 10 * 1024 * 1024, BUILD);
+        tier.open().join();
+        tier.put("blog", content(Template.Role.WEBLOG, 300, (byte) 2), cachedTime);
+        assertNotNull(tier.get("blog"));
+        tier.close();
+        assertTrue(Files.exists(tempDir.resolve("notes.seg")));
+    }
+
+    private static CachedContent content(Template.Role role, int size, byte fill) {
+        CachedContent content = new CachedContent(role);
+        byte[] bytes = new byte[size];
+        Arrays.fill(bytes, fill);
+        content.setContent(bytes);
+        return content;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+   Copyright 2026 the original author or authors.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.tightblog.rendering.cache;
+
+import org.junit.jupiter.api.Test;
+import org.tightblog.domain.Weblog;
+import org.tightblog.domain.WeblogEntry;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class EntryFragmentCacheTest {
+
+    private final EntryFragmentCache cache = new EntryFragmentCache(10, 1);
+    private final EntryFragmentCache.Marks marks = new EntryFragmentCache.Marks();
+
+    @Test
+    public void testKeys() {
+        WeblogEntry entry = entry("my-blog");
+        String key = cache.keyOf(entry, "gaurav:day", "3:9", true);
+        assertFalse(key.contains("-"));
+        assertEquals(key, cache.keyOf(entry, "gaurav:day", "3:9", true));
+        assertNotEquals(key, cache.keyOf(entry, "gaurav:day", "3:9", false));
+        assertNotEquals(key, cache.keyOf(entry, "gaurav:day", "12:5", true));
+
+        entry.setUpdateTime(entry.getUpdateTime().plusSeconds(1));
+        assertNotEquals(key, cache.keyOf(entry, "gaurav:day", "3:9", true));
+
+        // unsaved entries not cached
+        entry.setId(null);
+        assertNull(cache.keyOf(entry, "gaurav:day", "3:9", true));
+    }
+
+    @Test
+    public void testCaptureFragments() {
+        String key1 = cache.keyOf(entry("blog1"), "day", "1:1", null);
+        String key2 = cache.keyOf(entry("blog2"), "day", "1:1", null);
+        String output = "<div>" + marked(marks, key1, "<p>one</p>") + marked(marks, key2, "<p>two</p>") + "</div>";
+
+        assertEquals("<div><p>one</p><p>two</p></div>", capture(output));
+        assertEquals("<p>one</p>", cache.get(key1));
+        assertEquals("<p>two</p>", cache.get(key2));
+
+        cache.invalidateWeblog("blog1");
+        assertNull(cache.get(key1));
+        assertEquals("<p>two</p>", cache.get(key2));
+
+        // fragments without an end marker (e.g., failed rendering) not cached
+        cache.invalidateAll();
+        assertEquals("<p>one</p>", capture("<!--" + marks.startMarker(key1) + "-->" + "<p>one</p>"));
+        assertNull(cache.get(key1));
+
+        // output without fragments returned as is
+        byte[] plain = "<p>Hello</p>".getBytes(StandardCharsets.UTF_8);
+        assertSame(plain, cache.captureFragments(plain, new EntryFragmentCache.Marks()));
+    }
+
+    @Test
+    public void testForgedMarkersIgnored() {
+        String key1 = cache.keyOf(entry("blog1"), "day", "1:1", null);
+        String key2 = cache.keyOf(entry("blog2"), "day", "1:1", null);
+        // entry text output unescaped, ahead of the other entry's fragment, with markers
+        // for its key as made in another rendering, and as made before tokens were added
+        String forged = marked(new EntryFragmentCache.Marks(), key2, "<p>evil</p>") +
+                "<!--tb-fragment:" + key2 + "--><p>evil</p><!--/tb-fragment:" + key2 + "-->";
+        String output = marked(marks, key1, "<p>one " + forged + "</p>") + marked(marks, key2, "<p>two</p>");
+
+        assertEquals("<p>one " + forged + "</p><p>two</p>", capture(output));
+        assertEquals("<p>one " + forged + "</p>", cache.get(key1));
+        assertEquals("<p>two</p>", cache.get(key2));
+    }
+
+    private String capture(String output) {
+        return new String(cache.captureFragments(output.getBytes(StandardCharsets.UTF_8), marks),
+                StandardCharsets.UTF_8);
+    }
+
+    private static String marked(EntryFragmentCache.Marks marks, String key, String fragment) {
+        return "<!--" + marks.startMarker(key) + "-->" + fragment + "<!--" + marks.endMarker(key) + "-->";
+    }
+
+    private static WeblogEntry entry(String weblogHandle) {
+        Weblog weblog = new Weblog();
+        weblog.setHandle(weblogHandle);
+        WeblogEntry entry = new WeblogEntry();
+        entry.setId(weblogHandle + "-entry");
+        entry.setWeblog(weblog);
+        entry.setUpdateTime(Instant.parse("2026-01-02T03:04:05Z"));
+        entry.setRenderingStamp("NONE:1");
+        return entry;
+    }
+}
@@ -17,13 +17,27 @@ package org.tightblog.rendering.cache;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.tightblog.domain.Template;
 
+import java.nio.file.Path;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class LazyExpiringCacheTest {
 
@@ -83,6 +97,320 @@ public class LazyExpiringCacheTest {
         assertNull(cache.get("uncached", twentySecondsAgo));
     }
 
+    @Test
+    public void testCacheBoundedByBytes() {
+        cache = new LazyExpiringCache("testCache", 1, 100, 3600);
+        cache.init();
+        assertEquals(100, cache.getMaxBytes());
+
+        CachedContent page = new CachedContent(Template.Role.WEBLOG);
+        page.setContent(new byte[40]);
+        CachedContent css = new CachedContent(Template.Role.STYLESHEET);
+        css.setContent(new byte[10]);
+        cache.put("page", page);
+        cache.put("css", css);
+
+        // maxEntries not a limit when bytes given
+        assertEquals(page, cache.get("page", twentySecondsAgo));
+        assertEquals(css, cache.get("css", twentySecondsAgo));
+        // weighed with the gzipped copy made on caching
+        assertEquals(page.getHeapBytes() + css.getHeapBytes(), cache.getWeightedSize());
+        assertTrue(page.getHeapBytes() > 40);
+        assertEquals(Map.of(Template.Role.WEBLOG, page.getHeapBytes(), Template.Role.STYLESHEET, css.getHeapBytes()),
+                cache.getBytesByRole());
+
+        // exceeding the byte budget forces evictions
+        for (int i = 0; i < 3; i++) {
+            CachedContent another = new CachedContent(Template.Role.WEBLOG);
+            another.setContent(new byte[40]);
+            cache.put("another" + i, another);
+        }
+        assertTrue(cache.getWeightedSize() <= 100);
+        assertTrue(cache.getEvictionCount() > 0);
+    }
+
+    @Test
+    public void testPreparedViewsWeighed() {
+        cache = new LazyExpiringCache("testCache", 1, 10000, 3600);
+        cache.setViewPreparer(content -> content.getView("shorter", c -> {
+            CachedContent view = new CachedContent(c.getRole());
+            view.setContent(new byte[30]);
+            return view;
+        }));
+        cache.init();
+
+        CachedContent page = new CachedContent(Template.Role.WEBLOG);
+        page.setContent(new byte[40]);
+        cache.put("page", page);
+        assertTrue(page.getHeapBytes() >= 70);
+        assertEquals(page.getHeapBytes(), cache.getWeightedSize());
+    }
+
+    @Test
+    public void testConcurrentMissesShareOneRendering() throws Exception {
+        CountDownLatch renderStarted = new CountDownLatch(1);
+        CountDownLatch finishRender = new CountDownLatch(1);
+        AtomicInteger renderCount = new AtomicInteger();
+        CachedContent rendered = new CachedContent(Template.Role.WEBLOG);
+        rendered.setContent(new byte[10]);
+
+        Supplier<CachedContent> slowRenderer = () -> {
+            renderCount.incrementAndGet();
+            renderStarted.countDown();
+            try {
+                finishRender.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return rendered;
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(5);
+        try {
+            List<Future<CachedContent>> results = new ArrayList<>();
+            results.add(executor.submit(() -> cache.getOrRender("abc", twentySecondsAgo, slowRenderer)));
+            assertTrue(renderStarted.await(10, TimeUnit.SECONDS));
+            for (int i = 0; i < 4; i++) {
+                results.add(executor.submit(() -> cache.getOrRender("abc", twentySecondsAgo, slowRenderer)));
+            }
+
+            // wait for the later requests to queue up behind the first
+            long deadline = System.currentTimeMillis() + 10000;
+            while (cache.getCoalescedRequests() < 4 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            finishRender.countDown();
+
+            for (Future<CachedContent> result : results) {
+                assertEquals(rendered, result.get(10, TimeUnit.SECONDS));
+            }
+            assertEquals(1, renderCount.get());
+            assertEquals(4, cache.getCoalescedRequests());
+            assertEquals(rendered, cache.get("abc", twentySecondsAgo));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRenderingNotSharedIfStartedBeforeChange() throws Exception {
+        CountDownLatch renderStarted = new CountDownLatch(1);
+        CountDownLatch finishRender = new CountDownLatch(1);
+        CachedContent outdated = new CachedContent(Template.Role.WEBLOG);
+        outdated.setContent(new byte[10]);
+        CachedContent current = new CachedContent(Template.Role.WEBLOG);
+        current.setContent(new byte[20]);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<CachedContent> first = executor.submit(() -> cache.getOrRender("abc", twentySecondsAgo, () -> {
+                renderStarted.countDown();
+                try {
+                    finishRender.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return outdated;
+            }));
+            assertTrue(renderStarted.await(10, TimeUnit.SECONDS));
+
+            // object changed after the first rendering began, so must render anew
+            assertEquals(current, cache.getOrRender("abc", twentySecondsLater, () -> current));
+            assertEquals(0, cache.getCoalescedRequests());
+
+            finishRender.countDown();
+            assertEquals(outdated, first.get(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testStaleContentServedWhileRevalidating() throws InterruptedException {
+        List<Runnable> backgroundTasks = new ArrayList<>();
+        cache.setStaleWhileRevalidateSeconds(60);
+        cache.setRevalidationExecutor(backgroundTasks::add);
+
+        CachedContent outdated = new CachedContent(Template.Role.WEBLOG);
+        outdated.setContent(new byte[10]);
+        CachedContent current = new CachedContent(Template.Role.WEBLOG);
+        current.setContent(new byte[20]);
+        cache.put("abc", outdated);
+        cache.put("def", outdated);
+
+        Thread.sleep(5);
+        Instant justChanged = Instant.now();
+        Thread.sleep(5);
+
+        // requests not allowing stale content wait on the render
+        assertEquals(current, cache.getOrRender("def", justChanged, () -> current, false));
+        assertEquals(0, cache.getStaleRequestsServed());
+
+        // within the window the outdated content is returned, with a single background refresh
+        assertEquals(outdated, cache.getOrRender("abc", justChanged, () -> current, true));
+        assertEquals(outdated, cache.getOrRender("abc", justChanged, () -> current, true));
+        assertEquals(2, cache.getStaleRequestsServed());
+        assertEquals(1, backgroundTasks.size());
+
+        backgroundTasks.get(0).run();
+        assertEquals(current, cache.getOrRender("abc", justChanged, () -> null, true));
+        assertEquals(2, cache.getStaleRequestsServed());
+
+        // when disabled requests wait for the render
+        cache.setStaleWhileRevalidateSeconds(0);
+        cache.put("ghi", outdated);
+        Thread.sleep(5);
+        assertEquals(current, cache.getOrRender("ghi", Instant.now(), () -> current, true));
+        assertEquals(2, cache.getStaleRequestsServed());
+        assertEquals(1, backgroundTasks.size());
+    }
+
+    @Test
+    public void testRejectedRevalidationRendersOnCallingThread() throws InterruptedException {
+        cache.setStaleWhileRevalidateSeconds(60);
+        cache.setRevalidationExecutor(task -> {
+            throw new RejectedExecutionException();
+        });
+
+        CachedContent outdated = new CachedContent(Template.Role.WEBLOG);
+        outdated.setContent(new byte[10]);
+        CachedContent current = new CachedContent(Template.Role.WEBLOG);
+        current.setContent(new byte[20]);
+        cache.put("abc", outdated);
+
+        Thread.sleep(5);
+        Instant justChanged = Instant.now();
+        Thread.sleep(5);
+
+        assertEquals(current, cache.getOrRender("abc", justChanged, () -> current, true));
+        assertEquals(0, cache.getStaleRequestsServed());
+        assertEquals(current, cache.get("abc", justChanged));
+    }
+
+    @Test
+    public void testRenderingSharedWithoutLastChangedTime() throws Exception {
+        CountDownLatch renderStarted = new CountDownLatch(1);
+        CountDownLatch finishRender = new CountDownLatch(1);
+        CachedContent rendered = new CachedContent(Template.Role.WEBLOG);
+        rendered.setContent(new byte[10]);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<CachedContent> first = executor.submit(() -> cache.getOrRender("abc", null, () -> {
+                renderStarted.countDown();
+                try {
+                    finishRender.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return rendered;
+            }));
+            assertTrue(renderStarted.await(10, TimeUnit.SECONDS));
+            finishRender.countDown();
+            assertEquals(rendered, cache.getOrRender("abc", null, () -> null));
+            assertEquals(rendered, first.get(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testNullRenderingNotCached() {
+        assertNull(cache.getOrRender("abc", twentySecondsAgo, () -> null));
+        assertNull(cache.get("abc", twentySecondsAgo));
+
+        cache.setMaxEntries(0);
+        cache.init();
+        CachedContent testContent = new CachedContent(Template.Role.ATOMFEED);
+        assertEquals(testContent, cache.getOrRender("abc", twentySecondsAgo, () -> testContent));
+    }
+
+    @Test
+    public void testInvalidateWeblog() {
+        CachedContent testContent = new CachedContent(Template.Role.WEBLOG);
+        cache.put("blog1", testContent);
+        cache.put("blog1/entry/abc", testContent);
+        cache.put("blog10", testContent);
+        cache.put("blog2/tag/xyz", testContent);
+
+        cache.invalidateWeblog("blog1");
+        assertNull(cache.get("blog1", null));
+        assertNull(cache.get("blog1/entry/abc", null));
+        assertEquals(testContent, cache.get("blog10", null));
+        assertEquals(testContent, cache.get("blog2/tag/xyz", null));
+        assertEquals(2, cache.getEstimatedSize());
+
+        // content kept for serving while revalidating
+        cache.setStaleWhileRevalidateSeconds(60);
+        cache.invalidateWeblog("blog2");
+        assertEquals(testContent, cache.get("blog2/tag/xyz", null));
+
+        // no-op if caching disabled
+        cache.setMaxEntries(0);
+        cache.init();
+        cache.invalidateWeblog("blog2");
+    }
+
+    @Test
+    public void testContentRestoredFromDiskTier(@TempDir Path tempDir) throws InterruptedException {
+        cache.setDiskTier(new DiskCacheTier(tempDir, 1024 * 1024, "test"));
+        cache.init();
+        CachedContent testContent = new CachedContent(Template.Role.WEBLOG);
+        testContent.setContent(new byte[100]);
+        cache.put("abc", testContent);
+        cache.shutdown();
+
+        // as after a restart
+        LazyExpiringCache restarted = new LazyExpiringCache("testCache", 10, 3600);
+        DiskCacheTier diskTier = new DiskCacheTier(tempDir, 1024 * 1024, "test");
+        restarted.setDiskTier(diskTier);
+        restarted.init();
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!diskTier.isLoaded() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        CachedContent restored = restarted.get("abc", twentySecondsAgo);
+        assertEquals(100, restored.getContent().length);
+        assertEquals(1, restarted.getDiskHitCount());
+        // now held in memory
+        assertEquals(restored, restarted.get("abc", twentySecondsAgo));
+        assertEquals(1, restarted.getDiskHitCount());
+
+        // outdated content on disk not used
+        assertNull(restarted.get("xyz", twentySecondsAgo));
+        restarted.invalidateAll();
+        restarted.put("xyz", testContent);
+        restarted.invalidateWeblog("xyz");
+        assertNull(restarted.get("xyz", twentySecondsAgo));
+        assertEquals(1, restarted.getDiskHitCount());
+        restarted.shutdown();
+    }
+
+    @Test
+    public void testExpiredContentOnDiskNotUsed(@TempDir Path tempDir) throws InterruptedException {
+        DiskCacheTier diskTier = new DiskCacheTier(tempDir, 1024 * 1024, "test");
+        cache = new LazyExpiringCache("testCache", 10, 2);
+        cache.setDiskTier(diskTier);
+        cache.init();
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!diskTier.isLoaded() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        CachedContent testContent = new CachedContent(Template.Role.WEBLOG);
+        testContent.setContent(new byte[100]);
+        // as if stored before a restart three hours ago
+        diskTier.put("old", testContent, Instant.now().minusSeconds(3 * 3600));
+        diskTier.put("recent", testContent, Instant.now().minusSeconds(3600));
+
+        assertNull(cache.get("old", null));
+        assertNull(diskTier.get("old"));
+        assertEquals(100, cache.get("recent", null).getContent().length);
+        assertEquals(1, cache.getDiskHitCount());
+        cache.shutdown();
+    }
+
     @Test
     public void testIncomingRequestStats() {
         assertEquals(0, cache.getIncomingRequests());
@@ -0,0 +1,189 @@
+/*
+   Copyright 2026 the original author or authors.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.tightblog.rendering.cache;
+
+import org.junit.jupiter.api.Test;
+import org.tightblog.domain.CalendarMonthIndex;
+import org.tightblog.domain.Weblog;
+import org.tightblog.rendering.cache.WeblogWidgetCache.Widget;
+import org.tightblog.service.WeblogEntryChangedEvent;
+
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class WeblogWidgetCacheTest {
+
+    private final WeblogWidgetCache cache = new WeblogWidgetCache(100, 1);
+    private final AtomicInteger loads = new AtomicInteger();
+    private final AtomicInteger calendarLoads = new AtomicInteger();
+
+    private static final Instant PUB_TIME = Instant.parse("2024-03-15T12:00:00Z");
+
+    @Test
+    public void testHitsAndMisses() {
+        Weblog weblog = weblog("blog1");
+        assertEquals("data", get(Widget.RECENT_ENTRIES, weblog, "5"));
+        assertEquals("data", get(Widget.RECENT_ENTRIES, weblog, "5"));
+        get(Widget.RECENT_ENTRIES, weblog, "10");
+        get(Widget.RECENT_ENTRIES, weblog("blog2"), "5");
+        assertEquals(3, loads.get());
+
+        WeblogWidgetCache.WidgetStats stats = cache.getStats().stream()
+                .filter(s -> s.widget() == Widget.RECENT_ENTRIES).findFirst().orElseThrow();
+        assertEquals(1, stats.hits());
+        assertEquals(3, stats.misses());
+        assertEquals(3, cache.getEstimatedSize());
+
+        // disabled cache always loads
+        WeblogWidgetCache disabled = new WeblogWidgetCache(0, 1);
+        disabled.get(Widget.POPULAR_TAGS, weblog, "", loads::incrementAndGet);
+        disabled.get(Widget.POPULAR_TAGS, weblog, "", loads::incrementAndGet);
+        assertEquals(5, loads.get());
+    }
+
+    @Test
+    public void testInvalidation() {
+        Weblog weblog = weblog("blog1");
+        getCalendar(weblog, "");
+        getCalendar(weblog, "cat");
+        get(Widget.RECENT_COMMENTS, weblog, "5");
+        get(Widget.RECENT_ENTRIES, weblog, "5");
+        get(Widget.RECENT_ENTRIES, weblog("blog2"), "5");
+        assertEquals(5, cache.getEstimatedSize());
+
+        // publishing evicts recent entries and comments (showing entry titles), calendars kept
+        cache.updateForEntry(event("e1", "cat", true, false));
+        assertEquals(3, cache.getEstimatedSize());
+        assertEquals(3, loads.get());
+
+        get(Widget.RECENT_COMMENTS, weblog, "5");
+        get(Widget.RECENT_ENTRIES, weblog, "5");
+        cache.invalidateComments("blog1");
+        get(Widget.RECENT_COMMENTS, weblog, "5");
+        get(Widget.RECENT_ENTRIES, weblog, "5");
+        assertEquals(6, loads.get());
+
+        cache.invalidateWeblog("blog1");
+        assertEquals(1, cache.getEstimatedSize());
+        cache.invalidateAll();
+        assertEquals(0, cache.getEstimatedSize());
+    }
+
+    @Test
+    public void testLoadOverlappingChangeNotCached() {
+        Weblog weblog = weblog("blog1");
+        // comments change while the recent comments are being loaded, perhaps after they were read
+        String loaded = cache.get(Widget.RECENT_COMMENTS, weblog, "5", () -> {
+            loads.incrementAndGet();
+            cache.invalidateComments("blog1");
+            return "stale";
+        });
+        assertEquals("stale", loaded);
+        assertEquals("data", get(Widget.RECENT_COMMENTS, weblog, "5"));
+        assertEquals(2, loads.get());
+
+        // as for any change to the weblog
+        cache.get(Widget.POPULAR_TAGS, weblog, "", () -> {
+            cache.invalidateWeblog("blog1");
+            return "stale";
+        });
+        assertEquals("data", get(Widget.POPULAR_TAGS, weblog, ""));
+        assertEquals(3, loads.get());
+
+        // other widgets' changes don't keep data from being cached
+        cache.get(Widget.RECENT_ENTRIES, weblog, "5", () -> {
+            cache.invalidateComments("blog1");
+            return "data";
+        });
+        get(Widget.RECENT_ENTRIES, weblog, "5");
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    public void testCalendarUpdatedForEntryChanges() {
+        Weblog weblog = weblog("blog1");
+        YearMonth month = YearMonth.from(PUB_TIME.atZone(ZoneId.systemDefault()));
+        getCalendar(weblog, "");
+        getCalendar(weblog, "cat");
+        get(Widget.RECENT_ENTRIES, weblog, "5");
+
+        cache.updateForEntry(event("e1", "cat", true, false));
+        cache.updateForEntry(event("e2", "other", true, false));
+        assertEquals(2, days(getCalendar(weblog, ""), month));
+        assertEquals(1, days(getCalendar(weblog, "cat"), month));
+
+        // saving a never published draft changes nothing
+        get(Widget.RECENT_ENTRIES, weblog, "5");
+        int loadsBefore = loads.get();
+        cache.updateForEntry(event("e3", "cat", false, false));
+        get(Widget.RECENT_ENTRIES, weblog, "5");
+        assertEquals(loadsBefore, loads.get());
+
+        // unpublishing and removing take entries out
+        cache.updateForEntry(event("e1", "cat", false, false));
+        assertEquals(0, days(getCalendar(weblog, "cat"), month));
+        get(Widget.RECENT_ENTRIES, weblog, "5");
+        assertEquals(loadsBefore + 1, loads.get());
+        cache.updateForEntry(event("e2", "other", true, true));
+        assertEquals(0, days(getCalendar(weblog, ""), month));
+        // indexes never reloaded
+        assertEquals(2, calendarLoads.get());
+
+        // an index loaded before an entry change, so without it, isn't kept
+        cache.invalidateWeblog("blog1");
+        CalendarMonthIndex loaded = cache.get(Widget.CALENDAR, weblog, "", () -> {
+            cache.updateForEntry(event("e4", "cat", true, false));
+            return CalendarMonthIndex.EMPTY;
+        });
+        assertEquals(0, days(loaded, month));
+        getCalendar(weblog, "");
+        assertEquals(3, calendarLoads.get());
+    }
+
+    private CalendarMonthIndex getCalendar(Weblog weblog, String category) {
+        return cache.get(Widget.CALENDAR, weblog, category, () -> {
+            calendarLoads.incrementAndGet();
+            return CalendarMonthIndex.EMPTY;
+        });
+    }
+
+    private static int days(CalendarMonthIndex index, YearMonth month) {
+        return index.getDays(month).values().stream().mapToInt(List::size).sum();
+    }
+
+    private static WeblogEntryChangedEvent event(String id, String category, boolean published, boolean removed) {
+        return new WeblogEntryChangedEvent("blog1", id, PUB_TIME, id + "-anchor", id + " title", category,
+                published && !removed, removed);
+    }
+
+    private String get(Widget widget, Weblog weblog, String params) {
+        return cache.get(widget, weblog, params, () -> {
+            loads.incrementAndGet();
+            return "data";
+        });
+    }
+
+    private static Weblog weblog(String handle) {
+        Weblog weblog = new Weblog();
+        weblog.setHandle(handle);
+        return weblog;
+    }
+}
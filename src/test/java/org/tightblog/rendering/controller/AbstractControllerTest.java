@@ -32,6 +32,8 @@ import java.util.Map;
 import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -81,4 +83,25 @@ public class AbstractControllerTest {
         assertEquals(-1, val);
     }
 
+    @Test
+    public void testAcceptsGzip() {
+        HttpServletRequest mockRequest = mock(HttpServletRequest.class);
+        assertFalse(AbstractController.acceptsGzip(mockRequest));
+
+        when(mockRequest.getHeader("Accept-Encoding")).thenReturn("gzip, deflate, br");
+        assertTrue(AbstractController.acceptsGzip(mockRequest));
+
+        when(mockRequest.getHeader("Accept-Encoding")).thenReturn("br;q=1.0, GZIP;q=0.5");
+        assertTrue(AbstractController.acceptsGzip(mockRequest));
+
+        when(mockRequest.getHeader("Accept-Encoding")).thenReturn("*");
+        assertTrue(AbstractController.acceptsGzip(mockRequest));
+
+        when(mockRequest.getHeader("Accept-Encoding")).thenReturn("*, gzip;q=0");
+        assertFalse(AbstractController.acceptsGzip(mockRequest));
+
+        when(mockRequest.getHeader("Accept-Encoding")).thenReturn("identity, br");
+        assertFalse(AbstractController.acceptsGzip(mockRequest));
+    }
+
 }
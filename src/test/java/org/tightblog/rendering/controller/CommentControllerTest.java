@@ -318,6 +318,8 @@ public class CommentControllerTest {
         WeblogPageRequest wpr = new WeblogPageRequest("myblog", mockPrincipal, mock(PageModel.class));
         WeblogEntry entry = new WeblogEntry();
         User blogger = new User();
+        blogger.setScreenName("Sam");
+        blogger.setEmailAddress("sam@yopmail.com");
         wpr.setWeblogEntry(entry);
         wpr.setBlogger(blogger);
 
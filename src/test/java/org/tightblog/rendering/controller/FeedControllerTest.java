@@ -39,15 +39,19 @@ import org.tightblog.dao.WeblogDao;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.zip.GZIPInputStream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
@@ -77,6 +81,7 @@ public class FeedControllerTest {
         when(mockThemeManager.getSharedTheme(any())).thenReturn(sharedTheme);
 
         mockCache = mock(LazyExpiringCache.class);
+        TestUtils.delegateGetOrRenderToGetAndPut(mockCache);
         mockThymeleafRenderer = mock(ThymeleafRenderer.class);
         DynamicProperties dp = new DynamicProperties();
 
@@ -144,6 +149,75 @@ public class FeedControllerTest {
         verify(mockCache, never()).incrementRequestsHandledBy304();
     }
 
+    @Test
+    public void testUnchangedFeedMatchingETagReturns304() {
+        // weblog changed more recently than browser's copy
+        weblog.setLastModified(Instant.now());
+
+        CachedContent cachedContent = new CachedContent(Template.Role.ATOMFEED);
+        cachedContent.setContent("<feed>unchanged</feed>".getBytes(StandardCharsets.UTF_8));
+        when(mockCache.get(any(), any())).thenReturn(cachedContent);
+
+        ResponseEntity<Resource> result = feedProcessor.getFeed(TestUtils.BLOG_HANDLE, null, null,
+                null, null, mockRequest);
+        assertEquals(HttpStatus.OK, result.getStatusCode());
+        String eTag = result.getHeaders().getETag();
+        assertEquals("\"" + cachedContent.getDigest() + "\"", eTag);
+
+        // but feed itself is the same, so no need to resend
+        when(mockRequest.getHeader("If-None-Match")).thenReturn(eTag);
+        result = feedProcessor.getFeed(TestUtils.BLOG_HANDLE, null, null,
+                null, null, mockRequest);
+        assertEquals(HttpStatus.NOT_MODIFIED, result.getStatusCode());
+        assertEquals(eTag, result.getHeaders().getETag());
+        verify(mockCache).incrementRequestsHandledBy304();
+
+        // different content has a different tag
+        CachedContent changedContent = new CachedContent(Template.Role.ATOMFEED);
+        changedContent.setContent("<feed>changed</feed>".getBytes(StandardCharsets.UTF_8));
+        when(mockCache.get(any(), any())).thenReturn(changedContent);
+        result = feedProcessor.getFeed(TestUtils.BLOG_HANDLE, null, null,
+                null, null, mockRequest);
+        assertEquals(HttpStatus.OK, result.getStatusCode());
+        assertNotEquals(eTag, result.getHeaders().getETag());
+    }
+
+    @Test
+    public void testGzippedFeedReturned() throws IOException {
+        weblog.setLastModified(Instant.now().minus(2, ChronoUnit.DAYS));
+
+        String feed = "<feed>" + "<entry>same old entry</entry>".repeat(50) + "</feed>";
+        CachedContent cachedContent = new CachedContent(Template.Role.ATOMFEED);
+        cachedContent.setContent(feed.getBytes(StandardCharsets.UTF_8));
+        when(mockCache.get(any(), any())).thenReturn(cachedContent);
+
+        // no Accept-Encoding, so uncompressed
+        ResponseEntity<Resource> result = feedProcessor.getFeed(TestUtils.BLOG_HANDLE, null, null,
+                null, null, mockRequest);
+        assertNull(result.getHeaders().getFirst("Content-Encoding"));
+        assertEquals(feed.length(), result.getHeaders().getContentLength());
+        assertEquals("Accept-Encoding", result.getHeaders().getFirst("Vary"));
+
+        when(mockRequest.getHeader("Accept-Encoding")).thenReturn("gzip, deflate");
+        result = feedProcessor.getFeed(TestUtils.BLOG_HANDLE, null, null,
+                null, null, mockRequest);
+        assertEquals("gzip", result.getHeaders().getFirst("Content-Encoding"));
+        assertEquals("Accept-Encoding", result.getHeaders().getFirst("Vary"));
+        assertNotNull(result.getBody());
+        assertEquals(cachedContent.getGzippedContent().length, result.getHeaders().getContentLength());
+        try (GZIPInputStream gis = new GZIPInputStream(
+                new ByteArrayInputStream(result.getBody().getInputStream().readAllBytes()))) {
+            assertEquals(feed, new String(gis.readAllBytes(), StandardCharsets.UTF_8));
+        }
+
+        // content too short to benefit from compression sent as-is
+        cachedContent.setContent("short".getBytes(StandardCharsets.UTF_8));
+        result = feedProcessor.getFeed(TestUtils.BLOG_HANDLE, null, null,
+                null, null, mockRequest);
+        assertNull(result.getHeaders().getFirst("Content-Encoding"));
+        assertEquals(5, result.getHeaders().getContentLength());
+    }
+
     @Test
     public void testRenderedFeedReturned() throws IOException {
         Instant threeDaysAgo = Instant.now().minus(3, ChronoUnit.DAYS);
@@ -55,6 +55,8 @@ import org.tightblog.dao.WeblogDao;
 import org.tightblog.service.indexer.FieldConstants;
 import org.tightblog.service.indexer.SearchTask;
 
+import javax.servlet.http.HttpServletRequest;
+
 import java.io.IOException;
 import java.security.Principal;
 import java.time.Instant;
@@ -85,6 +87,7 @@ public class SearchControllerTest {
     private ThymeleafRenderer mockRenderer;
     private ApplicationContext mockApplicationContext;
     private Principal mockPrincipal;
+    private HttpServletRequest mockRequest;
     private LuceneIndexer mockLuceneIndexer;
     private WeblogEntryListGenerator mockWELG;
     private SearchTask mockSearchTask;
@@ -101,6 +104,7 @@ public class SearchControllerTest {
     @BeforeEach
     public void initializeMocks() throws IOException {
         mockPrincipal = mock(Principal.class);
+        mockRequest = TestUtils.createMockServletRequest();
 
         mockWD = mock(WeblogDao.class);
         weblog = new Weblog();
@@ -148,7 +152,7 @@ public class SearchControllerTest {
     @Test
     public void testWeblogEntryListGeneratorCalledWithCorrectParameters() throws IOException {
         controller.getSearchResults("myblog", "stamps", "collectibles",
-                4, mockPrincipal);
+                4, mockPrincipal, mockRequest);
 
         WeblogSearchRequest wsr = TestUtils.extractWeblogSearchRequestFromMockRenderer(mockRenderer);
 
@@ -173,7 +177,7 @@ public class SearchControllerTest {
     public void test404OnMissingWeblog() {
         when(mockWD.findByHandleAndVisibleTrue("myblog")).thenReturn(null);
         ResponseEntity<Resource> result = controller.getSearchResults("myblog", "foo", null,
-                0, mockPrincipal);
+                0, mockPrincipal, mockRequest);
         assertEquals(HttpStatus.NOT_FOUND, result.getStatusCode());
     }
 
@@ -185,7 +189,7 @@ public class SearchControllerTest {
         when(mockWeblogTheme.getTemplateByRole(Template.Role.SEARCH_RESULTS)).thenReturn(null);
 
         ResponseEntity<Resource> result = controller.getSearchResults("myblog", null, "foo", 0,
-                mockPrincipal);
+                mockPrincipal, mockRequest);
 
         // verify weblog retrieved, NOT FOUND returned due to no matching template
         verify(mockThemeManager).getWeblogTheme(weblog);
@@ -197,7 +201,7 @@ public class SearchControllerTest {
 
         Mockito.clearInvocations(mockThemeManager, mockWeblogTheme);
         result = controller.getSearchResults("myblog", null, "foo", 0,
-                mockPrincipal);
+                mockPrincipal, mockRequest);
         verify(mockWeblogTheme).getTemplateByRole(Template.Role.WEBLOG);
         assertEquals(MediaType.TEXT_HTML, result.getHeaders().getContentType());
 
@@ -212,7 +216,7 @@ public class SearchControllerTest {
 
         Mockito.clearInvocations(mockThemeManager, mockWeblogTheme, mockRenderer);
         result = controller.getSearchResults("myblog", null, "foo", 0,
-                mockPrincipal);
+                mockPrincipal, mockRequest);
         // search results template should now be retrieved, backup weblog template call not occurring
         verify(mockWeblogTheme, never()).getTemplateByRole(Template.Role.WEBLOG);
 
@@ -228,14 +232,14 @@ public class SearchControllerTest {
         // test 404 if exception during rendering
         doThrow(new IllegalArgumentException("Expected exception during testing")).when(mockRenderer).render(any(), any());
         result = controller.getSearchResults("myblog", null, "foo", 0,
-                mockPrincipal);
+                mockPrincipal, mockRequest);
         assertEquals(HttpStatus.NOT_FOUND, result.getStatusCode());
     }
 
     @Test
     public void testConvertHitsToEntries() throws IOException {
         controller.getSearchResults("myblog", "collectibles",
-                "stamps", 4, mockPrincipal);
+                "stamps", 4, mockPrincipal, mockRequest);
 
         WeblogSearchRequest wsr = TestUtils.extractWeblogSearchRequestFromMockRenderer(mockRenderer);
 
@@ -309,7 +313,7 @@ public class SearchControllerTest {
     @Test
     public void testEntriesByDateMapPopulatedWhenResultsReturned() throws IOException {
         controller.getSearchResults("myblog", "stamps",
-                "collectibles", 4, mockPrincipal);
+                "collectibles", 4, mockPrincipal, mockRequest);
 
         WeblogSearchRequest wsr = TestUtils.extractWeblogSearchRequestFromMockRenderer(mockRenderer);
 
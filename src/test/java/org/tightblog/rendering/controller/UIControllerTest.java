@@ -24,6 +24,7 @@ import org.mockito.MockitoAnnotations;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.ApplicationContext;
+import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.Resource;
 import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
@@ -34,8 +35,10 @@ import org.tightblog.domain.Template;
 import org.tightblog.rendering.service.WeblogEntryListGenerator;
 import org.tightblog.rendering.model.URLModel;
 import org.tightblog.dao.UserDao;
+import org.tightblog.service.UserManager;
 import org.tightblog.service.WeblogEntryManager;
 import org.tightblog.service.WeblogManager;
+import org.tightblog.domain.EntryCursor;
 import org.tightblog.domain.SharedTemplate;
 import org.tightblog.domain.SharedTheme;
 import org.tightblog.service.ThemeManager;
@@ -43,6 +46,7 @@ import org.tightblog.domain.Template.Role;
 import org.tightblog.domain.Weblog;
 import org.tightblog.domain.WeblogEntry;
 import org.tightblog.domain.WeblogEntryComment;
+import org.tightblog.domain.WeblogRole;
 import org.tightblog.domain.WeblogTemplate;
 import org.tightblog.domain.WeblogTheme;
 import org.tightblog.rendering.cache.CachedContent;
@@ -52,6 +56,7 @@ import org.tightblog.rendering.model.PageModel;
 import org.tightblog.rendering.requests.WeblogPageRequest;
 import org.tightblog.rendering.service.ThymeleafRenderer;
 import org.tightblog.dao.WeblogDao;
+import org.tightblog.util.Utilities;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -101,6 +106,7 @@ public class UIControllerTest {
     private WeblogDao mockWD;
     private ThymeleafRenderer mockRenderer;
     private ThemeManager mockThemeManager;
+    private PageModel mockPageModel;
     private ApplicationContext mockApplicationContext;
 
     @Captor
@@ -119,6 +125,7 @@ public class UIControllerTest {
         when(mockWD.findByHandleAndVisibleTrue(TEST_BLOG_HANDLE)).thenReturn(weblog);
 
         mockCache = mock(LazyExpiringCache.class);
+        TestUtils.delegateGetOrRenderToGetAndPut(mockCache);
         mockWM = mock(WeblogManager.class);
         mockWEM = mock(WeblogEntryManager.class);
         mockRenderer = mock(ThymeleafRenderer.class);
@@ -133,7 +140,7 @@ public class UIControllerTest {
         mockWeblogTheme = mock(WeblogTheme.class);
         when(mockThemeManager.getWeblogTheme(weblog)).thenReturn(mockWeblogTheme);
 
-        PageModel mockPageModel = mock(PageModel.class);
+        mockPageModel = mock(PageModel.class);
         mockWELG = mock(WeblogEntryListGenerator.class);
         when(mockPageModel.getWeblogEntryListGenerator()).thenReturn(mockWELG);
 
@@ -198,6 +205,24 @@ public class UIControllerTest {
         verify(mockCache, never()).incrementRequestsHandledBy304();
     }
 
+    @Test
+    public void testUnchangedPageMatchingETagReturns304() {
+        // weblog modified since the browser's copy, but page content unaffected
+        weblog.setLastModified(Instant.now());
+
+        CachedContent cachedContent = new CachedContent(Role.WEBLOG);
+        cachedContent.setContent(TEST_GENERATED_PAGE.getBytes(StandardCharsets.UTF_8));
+        when(mockCache.get(any(), any())).thenReturn(cachedContent);
+        when(mockRequest.getHeader("If-None-Match")).thenReturn("\"" + cachedContent.getDigest() + "\"");
+
+        ResponseEntity<Resource> result = controller.getHomePage(TEST_BLOG_HANDLE, 0, mockRequest,
+                mockPrincipal);
+        assertEquals(HttpStatus.NOT_MODIFIED, result.getStatusCode());
+        assertEquals("\"" + cachedContent.getDigest() + "\"", result.getHeaders().getETag());
+        verify(mockCache).incrementRequestsHandledBy304();
+        verify(mockWM, never()).incrementHitCount(weblog);
+    }
+
     @Test
     public void testNonExistentTemplateRequestReturns404() {
         when(mockWeblogTheme.getTemplateByRole(Role.WEBLOG)).thenReturn(null);
@@ -255,7 +280,7 @@ public class UIControllerTest {
         // test chrono pager called
         wpr.getWeblogEntriesPager();
         verify(mockWELG).getChronoPager(weblog, null, null,
-                null, 0, 0, false);
+                null, 0, null, 0, false);
     }
 
     @Test
@@ -352,7 +377,7 @@ public class UIControllerTest {
         // test chrono pager called
         wpr.getWeblogEntriesPager();
         verify(mockWELG).getChronoPager(weblog, null, categoryName,
-                tagName, 0, 0, false);
+                tagName, 0, null, 0, false);
 
         // test without tag
         Mockito.clearInvocations(mockRenderer, mockWELG);
@@ -383,7 +408,7 @@ public class UIControllerTest {
         // test chrono pager called
         wpr.getWeblogEntriesPager();
         verify(mockWELG).getChronoPager(weblog, null, null,
-                tagName, 0, 0, false);
+                tagName, 0, null, 0, false);
     }
 
     @Test
@@ -406,7 +431,7 @@ public class UIControllerTest {
         // test chrono pager called
         wpr.getWeblogEntriesPager();
         verify(mockWELG).getChronoPager(weblog, monthDate, null,
-                null, 0, 0, false);
+                null, 0, null, 0, false);
     }
 
     @Test
@@ -489,6 +514,78 @@ public class UIControllerTest {
         verify(mockWM, never()).incrementHitCount(weblog);
     }
 
+    @Test
+    public void testWarmKey() throws IOException {
+        controller.warmKey(TEST_BLOG_HANDLE + "/cat/" + Utilities.encode("my cat") + "/page=2");
+        verify(mockCache).getOrRender(eq(TEST_BLOG_HANDLE + "/cat/my+cat/page=2"), any(), any());
+        WeblogPageRequest wpr = TestUtils.extractWeblogPageRequestFromMockRenderer(mockRenderer);
+        assertEquals("my cat", wpr.getCategory());
+        assertEquals(2, wpr.getPageNum());
+        assertTrue(wpr.isNoIndex());
+
+        Mockito.clearInvocations(mockCache, mockRenderer);
+        controller.warmKey(TEST_BLOG_HANDLE + "/tag/stamps/before=1546300800_0_abc-123");
+        verify(mockCache).getOrRender(eq(TEST_BLOG_HANDLE + "/tag/stamps/before=1546300800_0_abc-123"), any(), any());
+        wpr = TestUtils.extractWeblogPageRequestFromMockRenderer(mockRenderer);
+        assertEquals(new EntryCursor(Instant.ofEpochSecond(1546300800), "abc-123", false), wpr.getCursor());
+        assertTrue(wpr.isNoIndex());
+
+        // keys of logged-in users and custom pages not warmed
+        Mockito.clearInvocations(mockCache, mockRenderer);
+        controller.warmKey(TEST_BLOG_HANDLE + "/user=bob");
+        controller.warmKey(TEST_BLOG_HANDLE + "/page/mypage");
+        verify(mockCache, never()).getOrRender(any(), any(), any());
+        verify(mockRenderer, never()).render(any(), any());
+    }
+
+    @Test
+    public void testLoggedInReadersShareCachedPage() throws IOException {
+        CachedContent shell = loginAsPublisherWithPage();
+        when(mockRenderer.render(any(), any())).thenReturn(shell);
+
+        ResponseEntity<Resource> result = controller.getHomePage(TEST_BLOG_HANDLE, 0, mockRequest, mockPrincipal);
+        verify(mockCache).put(TEST_BLOG_HANDLE, shell);
+        assertEquals("<p>Hi</p><a>Edit</a>", contentOf(result));
+
+        // user state hidden from the shared rendering
+        WeblogPageRequest wpr = TestUtils.extractWeblogPageRequestFromMockRenderer(mockRenderer);
+        assertFalse(wpr.isUserStateRequested());
+    }
+
+    @Test
+    public void testPageReadingUserStateCachedPerUser() throws IOException {
+        CachedContent shell = loginAsPublisherWithPage();
+        // as would a template checking model.isUserBlogPublisher()
+        when(mockRenderer.render(any(), any())).thenAnswer(invocation -> {
+            Map<String, Object> model = invocation.getArgument(1);
+            ((WeblogPageRequest) model.get("model")).isUserBlogPublisher();
+            CachedContent content = new CachedContent(Role.WEBLOG);
+            content.setContent(shell.getContent());
+            return content;
+        });
+
+        ResponseEntity<Resource> result = controller.getHomePage(TEST_BLOG_HANDLE, 0, mockRequest, mockPrincipal);
+        verify(mockCache).put(eq(TEST_BLOG_HANDLE), any());
+        verify(mockCache).put(eq(TEST_BLOG_HANDLE + "/user=bob"), any());
+        assertEquals("<p>Hi</p><a>Edit</a>", contentOf(result));
+    }
+
+    private CachedContent loginAsPublisherWithPage() {
+        UserManager mockUM = mock(UserManager.class);
+        when(mockPageModel.getUserManager()).thenReturn(mockUM);
+        when(mockUM.checkWeblogRole("bob", weblog, WeblogRole.POST)).thenReturn(true);
+        when(mockPrincipal.getName()).thenReturn("bob");
+
+        CachedContent shell = new CachedContent(Role.WEBLOG);
+        shell.setContent(("<p>Hi</p><!--tb-user:publisher--><a>Edit</a><!--/tb-user-->" +
+                "<!--tb-user:anonymous--><a>Login</a><!--/tb-user-->").getBytes(StandardCharsets.UTF_8));
+        return shell;
+    }
+
+    private static String contentOf(ResponseEntity<Resource> result) {
+        return new String(((ByteArrayResource) result.getBody()).getByteArray(), StandardCharsets.UTF_8);
+    }
+
     @Test
     public void testCommentFormsSkipCache() {
         WeblogEntryComment wec = new WeblogEntryComment();
@@ -506,8 +603,9 @@ public class UIControllerTest {
         when(wpr.getWeblogEntryAnchor()).thenReturn("neatoentry");
         when(wpr.getAuthenticatedUser()).thenReturn("bob");
 
+        // logged-in readers share cached pages with everyone else
         String test1 = controller.generateKey(wpr);
-        assertEquals("bobsblog/entry/neatoentry/user=bob", test1);
+        assertEquals("bobsblog/entry/neatoentry", test1);
 
         when(wpr.getAuthenticatedUser()).thenReturn(null);
         when(wpr.getWeblogEntryAnchor()).thenReturn(null);
@@ -525,6 +623,12 @@ public class UIControllerTest {
         test1 = controller.generateKey(wpr);
         assertEquals("bobsblog/page/mytemplate/date/20171006/cat/finance/tag/" +
                 "taxes/page=5/query=a=foo&b=123", test1);
+
+        // cursor in place of page number
+        when(wpr.getCursor()).thenReturn(new EntryCursor(Instant.ofEpochSecond(1546300800, 5), "abc", true));
+        test1 = controller.generateKey(wpr);
+        assertEquals("bobsblog/page/mytemplate/date/20171006/cat/finance/tag/" +
+                "taxes/after=1546300800_5_abc/query=a=foo&b=123", test1);
     }
 
     @Test
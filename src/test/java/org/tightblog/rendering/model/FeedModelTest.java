@@ -19,7 +19,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.tightblog.service.URLService;
 import org.tightblog.service.WeblogEntryManager;
-import org.tightblog.domain.Weblog;
+import org.tightblog.domain.WeblogEntry;
 import org.tightblog.rendering.service.WeblogEntryListGenerator;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -53,8 +53,10 @@ public class FeedModelTest {
 
     @Test
     public void testPassThroughMethods() {
-        when(mockWeblogEntryManager.processBlogText(Weblog.EditFormat.COMMONMARK, "testText"))
-                .thenReturn("processedTestText");
-        assertEquals("processedTestText", feedModel.render(Weblog.EditFormat.COMMONMARK, "testText"));
+        WeblogEntry entry = new WeblogEntry();
+        when(mockWeblogEntryManager.getTransformedText(entry)).thenReturn("processedTestText");
+        assertEquals("processedTestText", feedModel.getTransformedText(entry));
+        when(mockWeblogEntryManager.getTransformedSummary(entry)).thenReturn("processedSummary");
+        assertEquals("processedSummary", feedModel.getTransformedSummary(entry));
     }
 }
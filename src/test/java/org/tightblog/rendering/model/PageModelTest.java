@@ -19,6 +19,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.tightblog.domain.Weblog;
 import org.tightblog.domain.WeblogEntryTagAggregate;
+import org.tightblog.rendering.cache.WeblogWidgetCache;
 import org.tightblog.rendering.service.CalendarGenerator;
 import org.tightblog.service.ThemeManager;
 import org.tightblog.service.UserManager;
@@ -53,7 +54,7 @@ public class PageModelTest {
         mockCalendarGenerator = mock(CalendarGenerator.class);
         pageModel = new PageModel(
                 mockUserManager, mockWeblogManager, mockWeblogEntryManager,
-                mockThemeManager, mockWELG, mockCalendarGenerator,
+                mockThemeManager, mockWELG, mockCalendarGenerator, new WeblogWidgetCache(0, 1),
                 30
         );
     }
@@ -17,6 +17,7 @@ package org.tightblog.rendering.model;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.tightblog.rendering.cache.WeblogWidgetCache;
 import org.tightblog.rendering.service.CalendarGenerator;
 import org.tightblog.service.ThemeManager;
 import org.tightblog.service.UserManager;
@@ -53,7 +54,7 @@ public class SearchResultsModelTest {
 
         searchResultsModel = new SearchResultsModel(
                 mockUserManager, mockWeblogManager, mockWeblogEntryManager,
-                mockThemeManager, mockWELG, mockCalendarGenerator,
+                mockThemeManager, mockWELG, mockCalendarGenerator, new WeblogWidgetCache(0, 1),
                 25, mockWeblogEntryDao, mockLuceneIndexer);
     }
 
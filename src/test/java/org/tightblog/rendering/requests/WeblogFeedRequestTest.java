@@ -77,7 +77,7 @@ public class WeblogFeedRequestTest {
 
         WeblogEntryListData data = new WeblogEntryListData();
         when(mockWeblogEntryListGenerator.getChronoPager(weblog, null, "mycategory",
-                null, 6, 25, false))
+                null, 6, null, 25, false))
                 .thenReturn(data);
         assertEquals(data, feedRequest.getWeblogEntriesPager());
     }
@@ -94,7 +94,7 @@ public class WeblogFeedRequestTest {
 
         WeblogEntryListData data = new WeblogEntryListData();
         when(mockWeblogEntryListGenerator.getChronoPager(weblog, null, null,
-                "mytag", 0, 25, false))
+                "mytag", 0, null, 25, false))
                 .thenReturn(data);
         assertEquals(data, feedRequest.getWeblogEntriesPager());
     }
@@ -130,17 +130,11 @@ public class WeblogFeedRequestTest {
         test = feedRequest.getSystemVersion();
         assertEquals("1.1", test);
 
-        when(mockFeedModel.render(Weblog.EditFormat.COMMONMARK, "mainText"))
-                .thenReturn("transformedMainText");
-        when(mockFeedModel.render(Weblog.EditFormat.HTML, "summary"))
-                .thenReturn("transformedSummary");
+        when(mockFeedModel.getTransformedText(testEntry)).thenReturn("transformedMainText");
+        when(mockFeedModel.getTransformedSummary(testEntry)).thenReturn("transformedSummary");
 
-        testEntry.setEditFormat(Weblog.EditFormat.COMMONMARK);
-        testEntry.setText("mainText");
         test = feedRequest.getTransformedText(testEntry);
         assertEquals("transformedMainText", test);
-        testEntry.setEditFormat(Weblog.EditFormat.HTML);
-        testEntry.setSummary("summary");
         test = feedRequest.getTransformedSummary(testEntry);
         assertEquals("transformedSummary", test);
     }
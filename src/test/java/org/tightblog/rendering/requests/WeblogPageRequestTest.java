@@ -21,6 +21,8 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.tightblog.TestUtils;
 import org.tightblog.domain.CommentSearchCriteria;
+import org.tightblog.domain.RecentComment;
+import org.tightblog.domain.RecentWeblogEntry;
 import org.tightblog.domain.SharedTemplate;
 import org.tightblog.domain.Weblog;
 import org.tightblog.domain.WeblogEntry;
@@ -28,6 +30,7 @@ import org.tightblog.domain.WeblogEntryComment;
 import org.tightblog.domain.WeblogEntrySearchCriteria;
 import org.tightblog.domain.WeblogRole;
 import org.tightblog.domain.WeblogTheme;
+import org.tightblog.rendering.cache.WeblogWidgetCache;
 import org.tightblog.rendering.service.CalendarGenerator;
 import org.tightblog.rendering.service.WeblogEntryListGenerator;
 import org.tightblog.rendering.model.PageModel;
@@ -38,7 +41,9 @@ import org.tightblog.service.WeblogManager;
 
 import javax.servlet.http.HttpServletRequest;
 import java.security.Principal;
+import java.time.Instant;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
@@ -71,7 +76,20 @@ public class WeblogPageRequestTest {
         mockTM = mock(ThemeManager.class);
         mockWELG = mock(WeblogEntryListGenerator.class);
         CalendarGenerator mockCG = mock(CalendarGenerator.class);
-        pageModel = new PageModel(mockUM, mockWM, mockWEM, mockTM, mockWELG, mockCG, 20);
+        pageModel = new PageModel(mockUM, mockWM, mockWEM, mockTM, mockWELG, mockCG, new WeblogWidgetCache(0, 1), 20);
+    }
+
+    @Test
+    public void testRequestParametersOutliveServletRequest() {
+        WeblogPageRequest wpr = new WeblogPageRequest("myblog", null, pageModel);
+        assertNull(wpr.getRequestParameter("q"));
+
+        when(mockRequest.getParameterMap()).thenReturn(Map.of("q", new String[] {"first", "second"}));
+        wpr.setRequest(mockRequest);
+        // as when the servlet request is recycled after completing
+        when(mockRequest.getParameterMap()).thenReturn(Map.of());
+        when(mockRequest.getParameter("q")).thenReturn(null);
+        assertEquals("first", wpr.getRequestParameter("q"));
     }
 
     @Test
@@ -134,7 +152,7 @@ public class WeblogPageRequestTest {
     public void testGetRecentWeblogEntries() {
         WeblogPageRequest wpr = new WeblogPageRequest("myblog", null, pageModel);
 
-        List<WeblogEntry> weblogEntryList = wpr.getRecentWeblogEntries(null, -5);
+        List<RecentWeblogEntry> weblogEntryList = wpr.getRecentWeblogEntries(null, -5);
         assertEquals(0, weblogEntryList.size());
 
         // testWeblogEntrySearchCriteria object correctly populated
@@ -161,7 +179,7 @@ public class WeblogPageRequestTest {
         WeblogPageRequest wpr = new WeblogPageRequest("myblog", null, pageModel);
 
         // test length < 1 returns empty set
-        List<WeblogEntryComment> commentList = wpr.getRecentComments(-5);
+        List<RecentComment> commentList = wpr.getRecentComments(-5);
         assertEquals(0, commentList.size());
 
         // test CommentSearchCriteria object correctly populated
@@ -179,6 +197,21 @@ public class WeblogPageRequestTest {
         verify(mockWEM).getComments(cscCaptor.capture());
         csc = cscCaptor.getValue();
         assertEquals(WeblogPageRequest.MAX_ENTRIES, csc.getMaxResults());
+
+        // comments returned as copies of their displayed fields
+        WeblogEntry entry = new WeblogEntry();
+        entry.setAnchor("my-entry");
+        entry.setTitle("My Entry");
+        WeblogEntryComment comment = new WeblogEntryComment();
+        comment.setName("Bob");
+        comment.setPostTime(Instant.ofEpochMilli(1234));
+        comment.setWeblogEntry(entry);
+        when(mockWEM.getComments(any())).thenReturn(List.of(comment));
+        RecentComment recent = wpr.getRecentComments(10).get(0);
+        assertEquals("Bob", recent.getName());
+        assertEquals("1234", recent.getTimestamp());
+        assertEquals("My Entry", recent.getWeblogEntry().getTitle());
+        assertEquals("my-entry", recent.getWeblogEntry().getAnchor());
     }
 
     @Test
@@ -190,7 +223,7 @@ public class WeblogPageRequestTest {
         wpr.setWeblog(weblog);
 
         wpr.getWeblogEntriesPager();
-        verify(mockWELG).getChronoPager(any(), any(), any(), any(), eq(0), eq(12), eq(false));
+        verify(mockWELG).getChronoPager(any(), any(), any(), any(), eq(0), any(), eq(12), eq(false));
         verify(mockWELG, never()).getPermalinkPager(any(), any(), any());
     }
 
@@ -18,24 +18,22 @@ package org.tightblog.rendering.service;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.context.support.ResourceBundleMessageSource;
+import org.tightblog.domain.CalendarMonthIndex;
+import org.tightblog.rendering.cache.WeblogWidgetCache;
 import org.tightblog.rendering.model.PageModel;
 import org.tightblog.service.URLService;
 import org.tightblog.service.WeblogEntryManager;
 import org.tightblog.domain.CalendarData;
 import org.tightblog.domain.Weblog;
-import org.tightblog.domain.WeblogEntry;
 import org.tightblog.rendering.requests.WeblogPageRequest;
 import org.tightblog.util.Utilities;
 
 import java.time.Instant;
 import java.time.LocalDate;
-import java.time.ZoneOffset;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashMap;
+import java.time.YearMonth;
+import java.time.ZoneId;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -50,7 +48,8 @@ public class CalendarGeneratorTest {
 
     private CalendarGenerator calendarGenerator;
     private URLService mockUrlService;
-    private Map<LocalDate, List<WeblogEntry>> dateToWeblogEntryMap;
+    private WeblogEntryManager mockWeblogEntryManager;
+    private Weblog weblog;
 
     @BeforeEach
     public void initialize() {
@@ -58,36 +57,39 @@ public class CalendarGeneratorTest {
         mockUrlService = mock(URLService.class);
         ResourceBundleMessageSource messages = new ResourceBundleMessageSource();
         messages.setBasename("messages/messages");
-        WeblogEntryManager mockWeblogEntryManager = mock(WeblogEntryManager.class);
-        calendarGenerator = new CalendarGenerator(mockWeblogEntryManager, mockUrlService, messages);
-        dateToWeblogEntryMap = new HashMap<>();
-        when(mockWeblogEntryManager.getDateToWeblogEntryMap(any())).thenReturn(dateToWeblogEntryMap);
+        mockWeblogEntryManager = mock(WeblogEntryManager.class);
+        calendarGenerator = new CalendarGenerator(mockWeblogEntryManager, mockUrlService, messages,
+                new WeblogWidgetCache(0, 1));
+        weblog = new Weblog();
+        weblog.setHandle("testblog");
+        when(mockWeblogEntryManager.getCalendarMonthIndex(any(), any())).thenReturn(CalendarMonthIndex.EMPTY);
     }
 
-    private void initializeDateToWeblogEntryMap() {
-        WeblogEntry weblogEntry1a = new WeblogEntry();
-        weblogEntry1a.setTitle("A short title");
-        when(mockUrlService.getWeblogEntryURL(weblogEntry1a)).thenReturn("my url 1a");
-        WeblogEntry weblogEntry1b = new WeblogEntry();
-        weblogEntry1b.setTitle("A very long title to ensure it is longer than 43 characters");
-        when(mockUrlService.getWeblogEntryURL(weblogEntry1b)).thenReturn("my url 1b");
-        WeblogEntry weblogEntry2 = new WeblogEntry();
-        weblogEntry2.setTitle("Blog entry on different day");
-        when(mockUrlService.getWeblogEntryURL(weblogEntry2)).thenReturn("my url 2");
+    private CalendarMonthIndex initializeCalendarMonthIndex() {
+        when(mockUrlService.getWeblogEntryURL(weblog, "entry1a")).thenReturn("my url 1a");
+        when(mockUrlService.getWeblogEntryURL(weblog, "entry1b")).thenReturn("my url 1b");
+        when(mockUrlService.getWeblogEntryURL(weblog, "entry2")).thenReturn("my url 2");
 
         LocalDate localDate1 = LocalDate.of(1858, 10, 14);
         LocalDate localDate2 = LocalDate.of(1858, 11, 21);
 
-        dateToWeblogEntryMap.put(localDate1, Arrays.asList(weblogEntry1a, weblogEntry1b));
-        dateToWeblogEntryMap.put(localDate2, Collections.singletonList(weblogEntry2));
+        CalendarMonthIndex index = new CalendarMonthIndex.Builder()
+                .add(pubTime(localDate1, 9), "id1a", "entry1a", "A short title")
+                .add(pubTime(localDate1, 15), "id1b", "entry1b", "A very long title to ensure it is longer than 43 characters")
+                .add(pubTime(localDate2, 12), "id2", "entry2", "Blog entry on different day")
+                .build();
+        when(mockWeblogEntryManager.getCalendarMonthIndex(weblog, "stamps")).thenReturn(index);
+        return index;
+    }
+
+    private static Instant pubTime(LocalDate day, int hour) {
+        return day.atTime(hour, 0).atZone(ZoneId.systemDefault()).toInstant();
     }
 
     @Test
     public void testGetCalendarData() {
-        initializeDateToWeblogEntryMap();
-        Weblog weblog = new Weblog();
+        initializeCalendarMonthIndex();
         weblog.setLocale("en-US");
-        weblog.setHandle("testblog");
         WeblogPageRequest wpr = new WeblogPageRequest(weblog.getHandle(), null, mock(PageModel.class));
         wpr.setWeblogDate("18581014");
         wpr.setWeblog(weblog);
@@ -95,6 +97,8 @@ public class CalendarGeneratorTest {
 
         when(mockUrlService.getWeblogCollectionURL(weblog, "stamps", "18581014",
                 null, -1)).thenReturn("WeblogCollectionURL");
+        when(mockUrlService.getWeblogCollectionURL(weblog, "stamps", "185811",
+                null, -1)).thenReturn("NextMonthURL");
 
         CalendarData data = calendarGenerator.getCalendarData(wpr, false);
         assertEquals("October 1858", data.getCalendarTitle());
@@ -108,6 +112,8 @@ public class CalendarGeneratorTest {
         assertEquals("31", data.getWeek(5).getDay(0).getDayNum());
         assertNull(data.getWeek(5).getDay(1).getDayNum());
         assertNull(data.getWeek(5).getDay(0).getEntries());
+        assertNull(data.getPrevMonthLink());
+        assertEquals("NextMonthURL", data.getNextMonthLink());
 
         data = calendarGenerator.getCalendarData(wpr, true);
         assertEquals(2, data.getWeek(2).getDay(4).getEntries().size());
@@ -120,10 +126,8 @@ public class CalendarGeneratorTest {
 
     @Test
     public void testTodayMarkedInCalendar() {
-        initializeDateToWeblogEntryMap();
-        Weblog weblog = new Weblog();
+        initializeCalendarMonthIndex();
         weblog.setLocale("EN_US");
-        weblog.setHandle("testblog");
         WeblogPageRequest wpr = new WeblogPageRequest(weblog.getHandle(), null, mock(PageModel.class));
         wpr.setWeblog(weblog);
         wpr.setCategory("stamps");
@@ -159,8 +163,6 @@ public class CalendarGeneratorTest {
 
     @Test
     public void testComputeMonthUrl() {
-        Weblog weblog = new Weblog();
-        weblog.setHandle("testblog");
         WeblogPageRequest wpr = new WeblogPageRequest(weblog.getHandle(), null, mock(PageModel.class));
         wpr.setWeblog(weblog);
         wpr.setCategory("stamps");
@@ -184,12 +186,13 @@ public class CalendarGeneratorTest {
 
     @Test
     public void testGetCalendarEntries() {
-        initializeDateToWeblogEntryMap();
+        CalendarMonthIndex index = initializeCalendarMonthIndex();
         LocalDate localDate1 = LocalDate.of(1858, 10, 14);
         LocalDate localDate2 = LocalDate.of(1858, 11, 21);
         LocalDate localDate3 = LocalDate.of(1858, 10, 24);
 
-        List<CalendarData.BlogEntry> test1 = calendarGenerator.getCalendarEntries(localDate1, dateToWeblogEntryMap);
+        List<CalendarData.BlogEntry> test1 = calendarGenerator.getCalendarEntries(weblog, localDate1,
+                index.getDays(YearMonth.from(localDate1)));
         assertEquals(2, test1.size());
         assertEquals("my url 1a", test1.get(0).getLink());
         assertEquals("my url 1b", test1.get(1).getLink());
@@ -197,12 +200,14 @@ public class CalendarGeneratorTest {
         assertEquals("A very long title to ensure it is longer than 40 characters".substring(0, 40) + "...",
                 test1.get(1).getTitle());
 
-        List<CalendarData.BlogEntry> test2 = calendarGenerator.getCalendarEntries(localDate2, dateToWeblogEntryMap);
+        List<CalendarData.BlogEntry> test2 = calendarGenerator.getCalendarEntries(weblog, localDate2,
+                index.getDays(YearMonth.from(localDate2)));
         assertEquals(1, test2.size());
         assertEquals("my url 2", test2.get(0).getLink());
         assertEquals("Blog entry on different day", test2.get(0).getTitle());
 
-        List<CalendarData.BlogEntry> test3 = calendarGenerator.getCalendarEntries(localDate3, dateToWeblogEntryMap);
+        List<CalendarData.BlogEntry> test3 = calendarGenerator.getCalendarEntries(weblog, localDate3,
+                index.getDays(YearMonth.from(localDate3)));
         assertEquals(0, test3.size());
     }
 
@@ -218,14 +223,23 @@ public class CalendarGeneratorTest {
     }
 
     @Test
-    public void testFirstDayOfMonthOfWeblogEntry() {
-        assertNull(CalendarGenerator.firstDayOfMonthOfWeblogEntry(null));
-
-        WeblogEntry entry = new WeblogEntry();
-        Instant pubTime = LocalDate.of(1858, 10, 14).atStartOfDay().toInstant(ZoneOffset.UTC);
-        entry.setPubTime(pubTime);
+    public void testMonthNavigation() {
+        CalendarMonthIndex index = initializeCalendarMonthIndex();
+        YearMonth october = YearMonth.of(1858, 10);
+        YearMonth november = YearMonth.of(1858, 11);
+        assertNull(index.getPreviousMonth(october));
+        assertEquals(november, index.getNextMonth(october));
+        assertEquals(october, index.getPreviousMonth(november));
+        assertNull(index.getNextMonth(november));
+        // months without entries skip to those having them
+        assertEquals(november, index.getNextMonth(YearMonth.of(1858, 1)));
+        assertEquals(november, index.getPreviousMonth(YearMonth.of(1900, 1)));
+        assertTrue(index.getDays(YearMonth.of(1858, 12)).isEmpty());
+    }
 
-        LocalDate date = CalendarGenerator.firstDayOfMonthOfWeblogEntry(entry);
-        assertEquals(LocalDate.of(1858, 10, 1), date);
+    @Test
+    public void testFirstDayOf() {
+        assertNull(CalendarGenerator.firstDayOf(null));
+        assertEquals(LocalDate.of(1858, 10, 1), CalendarGenerator.firstDayOf(YearMonth.of(1858, 10)));
     }
 }
@@ -0,0 +1,113 @@
+/*
+   Copyright 2026 the original author or authors.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.tightblog.rendering.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.spring5.SpringTemplateEngine;
+import org.thymeleaf.templateresolver.StringTemplateResolver;
+import org.tightblog.domain.Weblog;
+import org.tightblog.domain.WeblogEntry;
+import org.tightblog.rendering.cache.EntryFragmentCache;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class EntryFragmentDialectTest {
+
+    private static final String TEMPLATE =
+            "<div th:each=\"entry : ${entries}\" th:id=\"${entry.anchor}\">" +
+            "<th:block tb:entry-fragment=\"${entry}\" tb:fragment-variant=\"${permalink}\">" +
+            "<h2 th:text=\"${entry.title}\">x</h2><p th:if=\"${permalink}\">full</p>" +
+            "</th:block><span th:text=\"${comments}\">0</span></div>";
+
+    private EntryFragmentCache fragmentCache;
+    private SpringTemplateEngine templateEngine;
+    private WeblogEntry entry;
+
+    @BeforeEach
+    public void initialize() {
+        fragmentCache = new EntryFragmentCache(10, 1);
+        templateEngine = new SpringTemplateEngine();
+        templateEngine.setTemplateResolver(new StringTemplateResolver());
+        templateEngine.addDialect(new EntryFragmentDialect(fragmentCache));
+
+        Weblog weblog = new Weblog();
+        weblog.setHandle("myblog");
+        entry = new WeblogEntry();
+        entry.setId("entryid");
+        entry.setWeblog(weblog);
+        entry.setAnchor("first");
+        entry.setTitle("First Title");
+        entry.setUpdateTime(Instant.now());
+    }
+
+    @Test
+    public void testFragmentRenderedOnceAndReused() {
+        String expected = "<div id=\"first\"><h2>First Title</h2><span>1</span></div>";
+        assertEquals(expected, render(false, 1));
+        assertEquals(1, fragmentCache.getEstimatedSize());
+
+        // cached rendering used, rest of page rendered anew
+        entry.setTitle("Title changed without update time");
+        assertEquals("<div id=\"first\"><h2>First Title</h2><span>2</span></div>", render(false, 2));
+
+        // variants cached separately
+        assertEquals("<div id=\"first\"><h2>Title changed without update time</h2><p>full</p><span>2</span></div>",
+                render(true, 2));
+
+        // updated entry rendered again
+        entry.setTitle("Updated Title");
+        entry.setUpdateTime(entry.getUpdateTime().plusSeconds(1));
+        assertEquals("<div id=\"first\"><h2>Updated Title</h2><span>2</span></div>", render(false, 2));
+    }
+
+    @Test
+    public void testMarkersInEntryTextNotCaptured() {
+        String template = "<div th:each=\"entry : ${entries}\">" +
+                "<th:block tb:entry-fragment=\"${entry}\"><p th:utext=\"${entry.text}\">x</p></th:block></div>";
+        WeblogEntry other = new WeblogEntry();
+        other.setId("otherid");
+        other.setWeblog(entry.getWeblog());
+        other.setUpdateTime(entry.getUpdateTime());
+        String otherKey = fragmentCache.keyOf(other, template, "1:24", null);
+        entry.setText("<!--tb-fragment:" + otherKey + "-->evil<!--/tb-fragment:" + otherKey + "-->");
+
+        assertEquals("<div><p>" + entry.getText() + "</p></div>", render(template, false, 0));
+        assertEquals(1, fragmentCache.getEstimatedSize());
+        assertNull(fragmentCache.get(otherKey));
+    }
+
+    private String render(boolean permalink, int comments) {
+        return render(TEMPLATE, permalink, comments);
+    }
+
+    private String render(String template, boolean permalink, int comments) {
+        EntryFragmentCache.Marks marks = new EntryFragmentCache.Marks();
+        Context ctx = new Context();
+        ctx.setVariable("entries", List.of(entry));
+        ctx.setVariable("permalink", permalink);
+        ctx.setVariable("comments", comments);
+        ctx.setVariable(EntryFragmentCache.MARKS_VARIABLE, marks);
+        byte[] output = templateEngine.process(template, ctx).getBytes(StandardCharsets.UTF_8);
+        return new String(fragmentCache.captureFragments(output, marks), StandardCharsets.UTF_8);
+    }
+}
@@ -22,9 +22,11 @@ import org.tightblog.service.ThemeManager;
 import org.tightblog.domain.SharedTemplate;
 import org.tightblog.domain.SharedTheme;
 import org.tightblog.domain.Template;
+import org.tightblog.domain.Weblog;
 import org.tightblog.domain.WeblogTemplate;
 import org.tightblog.dao.WeblogTemplateDao;
 
+import java.time.Instant;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -90,4 +92,27 @@ public class ThemeTemplateResolverTest {
                 null, newUUID, null, null, null);
         assertEquals("weblog template contents", resource.getDescription());
     }
+
+    @Test
+    public void testReturnWeblogTemplateByVersionedName() {
+        Weblog weblog = new Weblog();
+        WeblogTemplate weblogTemplate = new WeblogTemplate();
+        String newUUID = UUID.randomUUID().toString();
+        weblogTemplate.setId(newUUID);
+        weblogTemplate.setWeblog(weblog);
+        weblogTemplate.setLastModified(Instant.ofEpochMilli(1234567890L));
+        weblogTemplate.setTemplate("weblog template contents");
+        when(mockWeblogTemplateDao.findById(newUUID)).thenReturn(Optional.of(weblogTemplate));
+
+        // name changes with each edit, so its parsed form can be cached
+        String resourceName = ThemeTemplateResolver.resourceNameOf(weblogTemplate);
+        assertEquals(weblog.getId() + "/" + newUUID + "@1234567890", resourceName);
+        StringTemplateResource resource = (StringTemplateResource) themeTemplateResolver.computeTemplateResource(null,
+                null, resourceName, null, null, null);
+        assertEquals("weblog template contents", resource.getDescription());
+
+        // shared theme templates named by their ids
+        SharedTemplate sharedTemplate = new SharedTemplate("themeId:templateId", Template.Role.WEBLOG);
+        assertEquals("themeId:templateId", ThemeTemplateResolver.resourceNameOf(sharedTemplate));
+    }
 }
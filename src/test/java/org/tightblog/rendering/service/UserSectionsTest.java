@@ -0,0 +1,83 @@
+/*
+   Copyright 2026 the original author or authors.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.tightblog.rendering.service;
+
+import org.junit.jupiter.api.Test;
+import org.tightblog.domain.Template;
+import org.tightblog.rendering.cache.CachedContent;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class UserSectionsTest {
+
+    private static final String PAGE = "<ul><li>Home</li>" +
+            "<!--tb-user:publisher--><li>New</li><!--tb-user:owner--><li>Settings</li><!--/tb-user--><!--/tb-user-->" +
+            "<!--tb-user:user--><li>Logout</li><!--/tb-user-->" +
+            "<!--tb-user:anonymous--><li>Login</li><!--/tb-user--></ul>";
+
+    @Test
+    public void testSectionsFilteredByReader() {
+        assertEquals("<ul><li>Home</li><li>Login</li></ul>", filter(UserSections.Reader.ANONYMOUS));
+        assertEquals("<ul><li>Home</li><li>Logout</li></ul>",
+                filter(new UserSections.Reader(true, false, false)));
+        assertEquals("<ul><li>Home</li><li>New</li><li>Logout</li></ul>",
+                filter(new UserSections.Reader(true, true, false)));
+        assertEquals("<ul><li>Home</li><li>New</li><li>Settings</li><li>Logout</li></ul>",
+                filter(new UserSections.Reader(true, true, true)));
+    }
+
+    @Test
+    public void testViewsSharedAmongLikeReaders() {
+        CachedContent shell = content(PAGE);
+        CachedContent view = UserSections.forReader(shell, new UserSections.Reader(true, false, false));
+        assertSame(view, UserSections.forReader(shell, new UserSections.Reader(true, false, false)));
+        assertNotEquals(view.getDigest(), UserSections.forReader(shell, UserSections.Reader.ANONYMOUS).getDigest());
+
+        // content without sections served as is
+        CachedContent plain = content("<p>Hello</p>");
+        assertSame(plain, UserSections.forReader(plain, UserSections.Reader.ANONYMOUS));
+    }
+
+    @Test
+    public void testViewsPreparedForAllReaders() {
+        CachedContent shell = content(PAGE);
+        long unprepared = shell.getHeapBytes();
+        UserSections.prepareViews(shell);
+        assertTrue(shell.getHeapBytes() > unprepared);
+        long prepared = shell.getHeapBytes();
+        UserSections.forReader(shell, new UserSections.Reader(true, true, true));
+        assertEquals(prepared, shell.getHeapBytes());
+
+        CachedContent plain = content("<p>Hello</p>");
+        UserSections.prepareViews(plain);
+        assertEquals(plain.getContent().length, plain.getHeapBytes());
+    }
+
+    private static String filter(UserSections.Reader reader) {
+        return new String(UserSections.filter(PAGE.getBytes(StandardCharsets.UTF_8), reader), StandardCharsets.UTF_8);
+    }
+
+    private static CachedContent content(String html) {
+        CachedContent content = new CachedContent(Template.Role.WEBLOG);
+        content.setContent(html.getBytes(StandardCharsets.UTF_8));
+        return content;
+    }
+}
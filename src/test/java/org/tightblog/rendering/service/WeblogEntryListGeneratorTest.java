@@ -24,8 +24,10 @@ import org.mockito.Mockito;
 import org.springframework.context.support.ResourceBundleMessageSource;
 import org.tightblog.WebloggerTest;
 import org.tightblog.rendering.requests.WeblogSearchRequest;
+import org.tightblog.service.EntryNavigationIndex;
 import org.tightblog.service.URLService;
 import org.tightblog.service.WeblogEntryManager;
+import org.tightblog.domain.EntryCursor;
 import org.tightblog.domain.Weblog;
 import org.tightblog.domain.WeblogEntry;
 import org.tightblog.domain.WeblogEntry.PubStatus;
@@ -38,16 +40,19 @@ import java.time.ZoneId;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -58,6 +63,7 @@ public class WeblogEntryListGeneratorTest {
     private WeblogEntryListGenerator generator;
     private Weblog weblog;
     private WeblogEntryManager mockWEM;
+    private EntryNavigationIndex mockENI;
     private final URLService mockUrlService = mock(URLService.class);
     private final Instant twoDaysAgo = Instant.now().minus(2, ChronoUnit.DAYS);
     private final Instant threeDaysAgo = twoDaysAgo.minus(1, ChronoUnit.DAYS);
@@ -76,7 +82,8 @@ public class WeblogEntryListGeneratorTest {
         weblog = new Weblog();
         weblog.setLocale(Locale.ENGLISH.getLanguage());
         mockWEM = mock(WeblogEntryManager.class);
-        generator = new WeblogEntryListGenerator(mockWEM, mockUrlService, messages);
+        mockENI = mock(EntryNavigationIndex.class);
+        generator = new WeblogEntryListGenerator(mockWEM, mockUrlService, messages, mockENI);
     }
 
     @Test
@@ -122,15 +129,14 @@ public class WeblogEntryListGeneratorTest {
         // Showing SCHEDULED entries allowed with canShowUnpublishedEntries = false
         WeblogEntry entryToShow = WebloggerTest.genWeblogEntry(weblog, "day1story1", twoDaysAgo);
         entryToShow.setStatus(PubStatus.SCHEDULED);
-        WeblogEntry weNext = WebloggerTest.genWeblogEntry(weblog, "nextStory", oneDayAgo);
-        weNext.setTitle("My Next Story");
-        WeblogEntry wePrev = WebloggerTest.genWeblogEntry(weblog, "prevStory", threeDaysAgo);
-        wePrev.setTitle("My Prev Story");
+        EntryNavigationIndex.Neighbor weNext = new EntryNavigationIndex.Neighbor("nextStory", "My Next Story", oneDayAgo);
+        EntryNavigationIndex.Neighbor wePrev = new EntryNavigationIndex.Neighbor("prevStory", "My Prev Story",
+                threeDaysAgo);
         when(mockWEM.getWeblogEntryByAnchor(weblog, "day1story1")).thenReturn(entryToShow);
-        when(mockWEM.getNextPublishedEntry(entryToShow)).thenReturn(weNext);
-        when(mockWEM.getPreviousPublishedEntry(entryToShow)).thenReturn(wePrev);
-        when(mockUrlService.getWeblogEntryURL(weNext)).thenReturn("nextUrl");
-        when(mockUrlService.getWeblogEntryURL(wePrev)).thenReturn("prevUrl");
+        when(mockENI.getNext(entryToShow)).thenReturn(weNext);
+        when(mockENI.getPrevious(entryToShow)).thenReturn(wePrev);
+        when(mockUrlService.getWeblogEntryURL(weblog, "nextStory")).thenReturn("nextUrl");
+        when(mockUrlService.getWeblogEntryURL(weblog, "prevStory")).thenReturn("prevUrl");
 
         WeblogEntryListData data = generator.getPermalinkPager(weblog, "day1story1", true);
         assertEquals(1, data.getEntries().size());
@@ -175,8 +181,10 @@ public class WeblogEntryListGeneratorTest {
 
         // Test next, prev link info empty if entries in the future
         Instant oneHourLater = Instant.now().plus(1, ChronoUnit.HOURS);
-        weNext.setPubTime(oneHourLater);
-        wePrev.setPubTime(oneHourLater);
+        when(mockENI.getNext(entryToShow)).thenReturn(new EntryNavigationIndex.Neighbor("nextStory", "My Next Story",
+                oneHourLater));
+        when(mockENI.getPrevious(entryToShow)).thenReturn(new EntryNavigationIndex.Neighbor("prevStory", "My Prev Story",
+                oneHourLater));
         data = generator.getPermalinkPager(weblog, "day1story1", false);
         assertNotNull(data.getEntries());
         assertNull(data.getNextLabel());
@@ -185,14 +193,14 @@ public class WeblogEntryListGeneratorTest {
         assertNull(data.getPrevLink());
 
         // Test next link info empty if no next link
-        when(mockWEM.getNextPublishedEntry(entryToShow)).thenReturn(null);
+        when(mockENI.getNext(entryToShow)).thenReturn(null);
         data = generator.getPermalinkPager(weblog, "day1story1", false);
         assertNotNull(data.getEntries());
         assertNull(data.getNextLabel());
         assertNull(data.getNextLink());
 
         // Test prev link info empty if no prev link
-        when(mockWEM.getPreviousPublishedEntry(entryToShow)).thenReturn(null);
+        when(mockENI.getPrevious(entryToShow)).thenReturn(null);
         data = generator.getPermalinkPager(weblog, "day1story1", false);
         assertNotNull(data.getEntries());
         assertNull(data.getPrevLabel());
@@ -219,13 +227,10 @@ public class WeblogEntryListGeneratorTest {
         Map<LocalDate, List<WeblogEntry>> entryMap = createSampleEntriesMap();
 
         when(mockWEM.getDateToWeblogEntryMap(any())).thenReturn(entryMap);
-        when(mockUrlService.getWeblogCollectionURL(weblog, catName, dateString,
-                tag, pageNum - 1)).thenReturn("nextUrl");
-        when(mockUrlService.getWeblogCollectionURL(weblog, catName, dateString,
-                tag, pageNum + 1)).thenReturn("prevUrl");
+        mockCollectionURLs(catName, dateString, tag);
 
         WeblogEntryListData data = generator.getChronoPager(weblog, dateString,
-                catName, tag, pageNum, maxEntries, false);
+                catName, tag, pageNum, null, maxEntries, false);
 
         Map<LocalDate, List<WeblogEntry>> results = data.getEntries();
         assertEquals(2, results.size());
@@ -234,9 +239,10 @@ public class WeblogEntryListGeneratorTest {
         assertEquals("day1story1", results.get(nowLD).get(0).getAnchor());
         assertEquals("day1story2", results.get(nowLD).get(1).getAnchor());
         assertEquals("day2story1", results.get(yesterdayLD).get(0).getAnchor());
-        assertEquals("prevUrl", data.getPrevLink());
+        // links to other pages by the entries bordering them
+        assertEquals("before=day2story1", data.getPrevLink());
         assertNotNull(data.getPrevLabel());
-        assertEquals("nextUrl", data.getNextLink());
+        assertEquals("after=day1story1", data.getNextLink());
         assertNotNull(data.getNextLabel());
 
         // test wesc correctly populated
@@ -255,15 +261,22 @@ public class WeblogEntryListGeneratorTest {
         assertEquals(pageNum * maxEntries, wesc.getOffset());
         assertEquals(WeblogEntry.PubStatus.PUBLISHED, wesc.getStatus());
         assertEquals(maxEntries + 1, wesc.getMaxResults());
+        assertNull(wesc.getCursor());
+        assertEquals(WeblogEntrySearchCriteria.FetchProfile.LIST_RENDER, wesc.getFetchProfile());
 
         // test maxEntries honored
         data = generator.getChronoPager(weblog, dateString,
-                catName, tag, pageNum, 1, false);
+                catName, tag, pageNum, null, 1, false);
         assertEquals(1, data.getEntries().size());
 
+        // beyond the last page, newer entries linked to by page number
+        when(mockUrlService.getWeblogCollectionURL(weblog, catName, dateString, tag, pageNum - 1))
+                .thenReturn("nextUrl");
         data = generator.getChronoPager(weblog, dateString,
-                catName, tag, pageNum, 0, false);
+                catName, tag, pageNum, null, 0, false);
         assertEquals(0, data.getEntries().size());
+        assertEquals("nextUrl", data.getNextLink());
+        assertNull(data.getPrevLink());
 
         // another wesc test:
         // if sitewide, no weblog
@@ -274,7 +287,7 @@ public class WeblogEntryListGeneratorTest {
         dateString = null;
         pageNum = 0;
         maxEntries = 10;
-        data = generator.getChronoPager(weblog, dateString, catName, tag, pageNum, maxEntries, true);
+        data = generator.getChronoPager(weblog, dateString, catName, tag, pageNum, null, maxEntries, true);
         verify(mockWEM).getDateToWeblogEntryMap(captor.capture());
         wesc = captor.getValue();
         assertNull(wesc.getWeblog());
@@ -288,7 +301,7 @@ public class WeblogEntryListGeneratorTest {
         // check month format (YYYYMM) correctly processed in search criteria
         Mockito.clearInvocations(mockWEM);
         dateString = "201805";
-        generator.getChronoPager(weblog, dateString, catName, tag, pageNum, maxEntries, true);
+        generator.getChronoPager(weblog, dateString, catName, tag, pageNum, null, maxEntries, true);
         verify(mockWEM).getDateToWeblogEntryMap(captor.capture());
         wesc = captor.getValue();
         assertEquals(LocalDate.of(2018, 5, 1).atStartOfDay()
@@ -300,18 +313,109 @@ public class WeblogEntryListGeneratorTest {
         // check invalid length of date format (YYYYMMD) ignored in search criteria
         Mockito.clearInvocations(mockWEM);
         dateString = "2018051";
-        generator.getChronoPager(weblog, dateString, catName, tag, pageNum, maxEntries, true);
+        generator.getChronoPager(weblog, dateString, catName, tag, pageNum, null, maxEntries, true);
         verify(mockWEM).getDateToWeblogEntryMap(captor.capture());
         wesc = captor.getValue();
         assertNull(wesc.getStartDate());
         assertNull(wesc.getEndDate());
     }
 
+    @Test
+    public void getChronoPagerWithCursor() {
+        // older entries, in descending order as queried
+        EntryCursor cursor = new EntryCursor(oneDayAgo, "e", false);
+        when(mockWEM.getDateToWeblogEntryMap(any())).thenReturn(createSampleEntriesMap());
+        mockCollectionURLs(null, null, null);
+
+        WeblogEntryListData data = generator.getChronoPager(weblog, null, null, null, 5, cursor, 3, false);
+        assertEquals(List.of("day1story1", "day1story2", "day2story1"), anchorsOf(data));
+        assertEquals("before=day2story1", data.getPrevLink());
+        assertEquals("after=day1story1", data.getNextLink());
+
+        ArgumentCaptor<WeblogEntrySearchCriteria> captor = ArgumentCaptor.forClass(WeblogEntrySearchCriteria.class);
+        verify(mockWEM).getDateToWeblogEntryMap(captor.capture());
+        WeblogEntrySearchCriteria wesc = captor.getValue();
+        assertEquals(cursor, wesc.getCursor());
+        // page number ignored given a cursor
+        assertEquals(0, wesc.getOffset());
+        assertEquals(4, wesc.getMaxResults());
+        assertEquals(WeblogEntrySearchCriteria.SortOrder.DESCENDING, wesc.getSortOrder());
+
+        // newer entries, in ascending order as queried, those nearest the cursor shown
+        Mockito.clearInvocations(mockWEM);
+        cursor = new EntryCursor(threeDaysAgo.minus(1, ChronoUnit.DAYS), "z", true);
+        when(mockWEM.getDateToWeblogEntryMap(any())).thenReturn(reversed(createSampleEntriesMap()));
+        data = generator.getChronoPager(weblog, null, null, null, 0, cursor, 3, false);
+        assertEquals(List.of("day1story2", "day2story1", "day2story2"), anchorsOf(data));
+        assertEquals("before=day2story2", data.getPrevLink());
+        assertEquals("after=day1story2", data.getNextLink());
+        verify(mockWEM).getDateToWeblogEntryMap(captor.capture());
+        wesc = captor.getValue();
+        assertEquals(cursor, wesc.getCursor());
+        assertEquals(WeblogEntrySearchCriteria.SortOrder.ASCENDING, wesc.getSortOrder());
+
+        // reaching the newest entries, so no newer link
+        when(mockWEM.getDateToWeblogEntryMap(any())).thenReturn(reversed(createSampleEntriesMap()));
+        data = generator.getChronoPager(weblog, null, null, null, 0, cursor, 10, false);
+        assertEquals(List.of("day1story1", "day1story2", "day2story1", "day2story2"), anchorsOf(data));
+        assertEquals("before=day2story2", data.getPrevLink());
+        assertNull(data.getNextLink());
+        assertNull(data.getNextLabel());
+    }
+
+    @Test
+    public void testEntryCursorTokens() {
+        WeblogEntry entry = WebloggerTest.genWeblogEntry(weblog, "anchor", Instant.ofEpochSecond(1546300800, 123));
+        entry.setId("2b8a2c1e-5f3d-4e7a-9c0b-1d2e3f4a5b6c");
+
+        // publish time held finer than the database's millisecond precision
+        EntryCursor cursor = EntryCursor.before(entry);
+        assertEquals("1546300800_0_2b8a2c1e-5f3d-4e7a-9c0b-1d2e3f4a5b6c", cursor.getToken());
+        assertEquals("before", cursor.getParamName());
+        assertEquals(cursor, EntryCursor.parse(cursor.getToken(), false));
+        assertEquals(EntryCursor.after(entry), EntryCursor.parse(cursor.getToken(), true));
+        assertEquals("after", EntryCursor.after(entry).getParamName());
+
+        assertNull(EntryCursor.parse(null, false));
+        assertNull(EntryCursor.parse("", false));
+        assertNull(EntryCursor.parse("1546300800_123", false));
+        assertNull(EntryCursor.parse("1546300800_1234567890_abc", false));
+        assertNull(EntryCursor.parse("1546300800_123_abc'--", false));
+    }
+
+    // cursor URLs given as the parameter name and the anchor of the entry at the cursor
+    private void mockCollectionURLs(String catName, String dateString, String tag) {
+        Map<String, String> anchors = new HashMap<>();
+        createSampleEntriesMap().values().forEach(l -> l.forEach(e -> anchors.put(e.getId(), e.getAnchor())));
+        when(mockUrlService.getWeblogCollectionURL(eq(weblog), eq(catName), eq(dateString), eq(tag),
+                any(EntryCursor.class))).thenAnswer(invocation -> {
+                    EntryCursor cursor = invocation.getArgument(4);
+                    return cursor.getParamName() + "=" + anchors.get(cursor.entryId());
+                });
+    }
+
+    private static List<String> anchorsOf(WeblogEntryListData data) {
+        return data.getEntriesAsList().stream().map(WeblogEntry::getAnchor).collect(Collectors.toList());
+    }
+
+    // days' entries in ascending order, as fetched after a cursor
+    private static Map<LocalDate, List<WeblogEntry>> reversed(Map<LocalDate, List<WeblogEntry>> entryMap) {
+        entryMap.values().forEach(Collections::reverse);
+        return entryMap;
+    }
+
+    /**
+     * Entries in descending order of publish time and id, as queried for by default.
+     */
     private Map<LocalDate, List<WeblogEntry>> createSampleEntriesMap() {
         WeblogEntry we1 = WebloggerTest.genWeblogEntry(weblog, "day1story1", twoDaysAgo);
         WeblogEntry we2 = WebloggerTest.genWeblogEntry(weblog, "day1story2", twoDaysAgo);
         WeblogEntry we3 = WebloggerTest.genWeblogEntry(weblog, "day2story1", threeDaysAgo);
         WeblogEntry we4 = WebloggerTest.genWeblogEntry(weblog, "day2story2", threeDaysAgo);
+        we1.setId("d");
+        we2.setId("c");
+        we3.setId("b");
+        we4.setId("a");
         List<WeblogEntry> listNow = new ArrayList<>();
         listNow.add(we1);
         listNow.add(we2);
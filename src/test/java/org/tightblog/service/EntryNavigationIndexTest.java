@@ -0,0 +1,85 @@
+/*
+   Copyright 2026 the original author or authors.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.tightblog.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class EntryNavigationIndexTest {
+
+    private static final Instant T1 = Instant.parse("2020-01-01T10:00:00Z");
+    private static final Instant T2 = Instant.parse("2020-01-02T10:00:00.5Z");
+    private static final Instant T3 = Instant.parse("2020-01-03T10:00:00Z");
+
+    @Test
+    public void testSearch() {
+        EntryNavigationIndex.Entries entries = EntryNavigationIndex.Entries.of(List.of(
+                new Object[] {T1, "a", "first", "First"},
+                new Object[] {T2, "b", "second", "Second"},
+                new Object[] {T2, "c", "third", "Third"}));
+        assertEquals(3, entries.size());
+        assertEquals(1, entries.search(T2, "b"));
+        assertEquals(2, entries.search(T2, "c"));
+        // ties on publish time broken by id
+        assertEquals(-2, entries.search(T2, "0"));
+        assertEquals(-4, entries.search(T3, "d"));
+        assertEquals("second", entries.get(1).anchor());
+        assertEquals(T2, entries.get(1).pubTime());
+        assertNull(entries.get(3));
+        assertNull(entries.get(-1));
+
+        // held publish time at the database's millisecond precision, searched for at finer precision
+        Instant finer = T2.plusNanos(1000);
+        assertEquals(-4, entries.search(finer, "b"));
+        assertEquals(1, entries.indexOf("b"));
+        assertEquals(-1, entries.indexOf("d"));
+    }
+
+    @Test
+    public void testChanges() {
+        EntryNavigationIndex.Entries entries = EntryNavigationIndex.Entries.of(List.of(
+                new Object[] {T1, "a", "first", "First"},
+                new Object[] {T3, "c", "third", "Third"}));
+
+        EntryNavigationIndex.Entries added = entries.with(T2, "b", "second", "Second");
+        assertEquals(2, entries.size());
+        assertEquals(3, added.size());
+        assertEquals("first", added.get(0).anchor());
+        assertEquals("second", added.get(1).anchor());
+        assertEquals("third", added.get(2).anchor());
+
+        // re-adding replaces
+        EntryNavigationIndex.Entries retitled = added.with(T2, "b", "second", "Second, revised");
+        assertEquals(3, retitled.size());
+        assertEquals("Second, revised", retitled.get(1).title());
+
+        // moved to the front by removing, then adding with its new publish time
+        EntryNavigationIndex.Entries moved = added.without("c").with(T1.minusSeconds(1), "c", "third", "Third");
+        assertEquals("third", moved.get(0).anchor());
+        assertEquals("second", moved.get(2).anchor());
+
+        EntryNavigationIndex.Entries removed = added.without("a");
+        assertEquals(2, removed.size());
+        assertEquals("second", removed.get(0).anchor());
+        assertSame(removed, removed.without("a"));
+    }
+}
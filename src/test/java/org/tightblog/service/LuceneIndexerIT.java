@@ -22,11 +22,13 @@ package org.tightblog.service;
 
 import java.time.Instant;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import org.apache.commons.lang3.time.DateUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.tightblog.WebloggerTest;
 import org.tightblog.service.indexer.IndexEntryTask;
+import org.tightblog.service.indexer.RebuildIndexTask;
+import org.tightblog.service.indexer.RecoverIndexTask;
 import org.tightblog.service.indexer.SearchTask;
 import org.tightblog.domain.User;
 import org.tightblog.domain.WeblogEntry;
@@ -38,6 +40,10 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * Test Search Manager business layer operations.
@@ -91,7 +97,7 @@ public class LuceneIndexerIT extends WebloggerTest {
         wd1 = weblogEntryDao.findByIdOrNull(wd1.getId());
 
         luceneIndexer.executeIndexOperationNow(
-                new IndexEntryTask(weblogEntryDao, luceneIndexer, wd1, false));
+                new IndexEntryTask(weblogEntryDao, weblogEntryManager, luceneIndexer, wd1, false));
 
         WeblogEntry wd2 = new WeblogEntry();
         wd2.setTitle("A Piece of the Action");
@@ -113,9 +119,10 @@ public class LuceneIndexerIT extends WebloggerTest {
         wd2 = weblogEntryDao.findByIdOrNull(wd2.getId());
 
         luceneIndexer.executeIndexOperationNow(
-            new IndexEntryTask(weblogEntryDao, luceneIndexer, wd2, false));
+            new IndexEntryTask(weblogEntryDao, weblogEntryManager, luceneIndexer, wd2, false));
 
-        Thread.sleep(DateUtils.MILLIS_PER_SECOND);
+        // rather than waiting for the scheduled refresh
+        luceneIndexer.refreshSearcher();
 
         SearchTask search = new SearchTask(luceneIndexer);
         search.setTerm("Enterprise");
@@ -128,14 +135,189 @@ public class LuceneIndexerIT extends WebloggerTest {
         assertEquals(1, search2.getResultsCount());
 
         // Clean up
-        IndexEntryTask t1 = new IndexEntryTask(weblogEntryDao, luceneIndexer, wd1, true);
+        IndexEntryTask t1 = new IndexEntryTask(weblogEntryDao, weblogEntryManager, luceneIndexer, wd1, true);
         luceneIndexer.executeIndexOperationNow(t1);
-        IndexEntryTask t2 = new IndexEntryTask(weblogEntryDao, luceneIndexer, wd2, true);
+        IndexEntryTask t2 = new IndexEntryTask(weblogEntryDao, weblogEntryManager, luceneIndexer, wd2, true);
         luceneIndexer.executeIndexOperationNow(t2);
+        luceneIndexer.refreshSearcher();
 
         SearchTask search3 = new SearchTask(luceneIndexer);
         search3.setTerm("Enterprise");
         luceneIndexer.executeIndexOperationNow(search3);
         assertEquals(0, search3.getResultsCount());
-    }    
+    }
+
+    @Test
+    public void testRebuild() throws Exception {
+        WeblogEntry wd1 = saveEntry("rebuild1", "Enterprise Incident", PubStatus.PUBLISHED);
+        WeblogEntry wd2 = saveEntry("rebuild2", "Return to Tomorrow", PubStatus.PUBLISHED);
+        WeblogEntry wd3 = saveEntry("rebuild3", "Patterns of Force", PubStatus.PUBLISHED);
+        // indexed, then unpublished without updating the index
+        WeblogEntry wd4 = saveEntry("rebuild4", "By Any Other Name", PubStatus.PUBLISHED);
+        luceneIndexer.executeIndexOperationNow(new IndexEntryTask(weblogEntryDao, weblogEntryManager, luceneIndexer, wd4, false));
+        wd4.setStatus(PubStatus.DRAFT);
+        weblogEntryManager.saveWeblogEntry(wd4);
+
+        // pages smaller than the number of entries
+        RebuildIndexTask rebuild = new RebuildIndexTask(luceneIndexer, weblogEntryManager, weblogEntryDao, 2, 2);
+        luceneIndexer.executeIndexOperationNow(rebuild);
+        luceneIndexer.refreshSearcher();
+
+        RebuildIndexTask.Progress progress = rebuild.getProgress();
+        assertFalse(progress.running());
+        assertEquals(3, progress.indexed());
+        assertEquals(3, progress.total());
+
+        SearchTask search = new SearchTask(luceneIndexer);
+        search.setTerm("Starfleet");
+        luceneIndexer.executeIndexOperationNow(search);
+        assertEquals(3, search.getResultsCount());
+
+        for (WeblogEntry entry : List.of(wd1, wd2, wd3)) {
+            luceneIndexer.executeIndexOperationNow(
+                    new IndexEntryTask(weblogEntryDao, weblogEntryManager, luceneIndexer, entry, true));
+        }
+        luceneIndexer.refreshSearcher();
+    }
+
+    @Test
+    public void testRebuildSupersededByUpdates() throws Exception {
+        WeblogEntry wd1 = saveEntry("supersede1", "Mirror Mirror", PubStatus.PUBLISHED);
+        WeblogEntry wd2 = saveEntry("supersede2", "Amok Time", PubStatus.PUBLISHED);
+
+        // entry indexed by the queue while rebuilding, its title changed since without reindexing
+        RebuildIndexTask rebuild = new RebuildIndexTask(luceneIndexer, weblogEntryManager, weblogEntryDao, 2, 2);
+        AtomicInteger requeued = new AtomicInteger();
+        rebuild.supersedeEntry(wd1.getId(), requeued::incrementAndGet);
+        luceneIndexer.executeIndexOperationNow(new IndexEntryTask(weblogEntryDao, weblogEntryManager, luceneIndexer, wd1, false));
+        wd1.setTitle("Journey to Babel");
+        weblogEntryManager.saveWeblogEntry(wd1);
+
+        luceneIndexer.executeIndexOperationNow(rebuild);
+        luceneIndexer.refreshSearcher();
+        assertEquals(2, rebuild.getProgress().indexed());
+        assertEquals(1, requeued.get());
+
+        // document left as the queue wrote it, not deleted as one the rebuild didn't add
+        SearchTask search = new SearchTask(luceneIndexer);
+        search.setTerm("Mirror");
+        luceneIndexer.executeIndexOperationNow(search);
+        assertEquals(1, search.getResultsCount());
+
+        SearchTask search2 = new SearchTask(luceneIndexer);
+        search2.setTerm("Amok");
+        luceneIndexer.executeIndexOperationNow(search2);
+        assertEquals(1, search2.getResultsCount());
+
+        // updates once the rebuild is done no longer supersede it
+        rebuild.supersedeEntry(wd2.getId(), requeued::incrementAndGet);
+        assertEquals(1, requeued.get());
+
+        for (WeblogEntry entry : List.of(wd1, wd2)) {
+            luceneIndexer.executeIndexOperationNow(
+                    new IndexEntryTask(weblogEntryDao, weblogEntryManager, luceneIndexer, entry, true));
+        }
+        luceneIndexer.refreshSearcher();
+        search.close();
+        search2.close();
+    }
+
+    @Test
+    public void testRecover() throws Exception {
+        // indexed before the index's high-water mark
+        WeblogEntry wd1 = saveEntry("recover1", "Mirror, Mirror", PubStatus.PUBLISHED);
+        WeblogEntry wd2 = saveEntry("recover2", "The Doomsday Machine", PubStatus.PUBLISHED);
+        WeblogEntry wd3 = saveEntry("recover3", "Errand of Mercy", PubStatus.PUBLISHED);
+        for (WeblogEntry entry : List.of(wd1, wd2, wd3)) {
+            luceneIndexer.executeIndexOperationNow(
+                    new IndexEntryTask(weblogEntryDao, weblogEntryManager, luceneIndexer, entry, false));
+        }
+        Instant indexedThrough = Instant.now();
+
+        // changes since, as if lost to an unclean shutdown, including a comment on an entry not itself changed
+        WeblogEntry wd4 = saveEntry("recover4", "The Tholian Web", PubStatus.PUBLISHED);
+        setupComment("Trouble with Tribbles", wd1);
+        wd2.setStatus(PubStatus.DRAFT);
+        weblogEntryManager.saveWeblogEntry(wd2);
+        weblogEntryManager.removeWeblogEntry(wd3);
+
+        RecoverIndexTask recovery = new RecoverIndexTask(luceneIndexer, weblogEntryManager, weblogEntryDao, indexedThrough);
+        luceneIndexer.executeIndexOperationNow(recovery);
+        luceneIndexer.refreshSearcher();
+        assertTrue(recovery.isCompleted());
+
+        SearchTask search = new SearchTask(luceneIndexer);
+        search.setTerm("Starfleet");
+        luceneIndexer.executeIndexOperationNow(search);
+        assertEquals(2, search.getResultsCount());
+
+        SearchTask search2 = new SearchTask(luceneIndexer);
+        search2.setTerm("Tholian");
+        luceneIndexer.executeIndexOperationNow(search2);
+        assertEquals(1, search2.getResultsCount());
+
+        SearchTask search3 = new SearchTask(luceneIndexer);
+        search3.setTerm("Tribbles");
+        luceneIndexer.executeIndexOperationNow(search3);
+        assertEquals(1, search3.getResultsCount());
+
+        for (WeblogEntry entry : List.of(wd1, wd4)) {
+            luceneIndexer.executeIndexOperationNow(
+                    new IndexEntryTask(weblogEntryDao, weblogEntryManager, luceneIndexer, entry, true));
+        }
+        luceneIndexer.refreshSearcher();
+    }
+
+    @Test
+    public void testSearchResultCache() throws Exception {
+        WeblogEntry wd1 = saveEntry("cached1", "Amok Time", PubStatus.PUBLISHED);
+        luceneIndexer.executeIndexOperationNow(new IndexEntryTask(weblogEntryDao, weblogEntryManager, luceneIndexer, wd1, false));
+        luceneIndexer.refreshSearcher();
+
+        SearchTask search = new SearchTask(luceneIndexer);
+        search.setTerm("Starfleet");
+        luceneIndexer.executeIndexOperationNow(search);
+        assertEquals(1, search.getResultsCount());
+
+        // same search, differently spaced, of the same index
+        SearchTask search2 = new SearchTask(luceneIndexer);
+        search2.setTerm("  Starfleet ");
+        luceneIndexer.executeIndexOperationNow(search2);
+        assertSame(search.getResults(), search2.getResults());
+
+        // index changed
+        WeblogEntry wd2 = saveEntry("cached2", "Journey to Babel", PubStatus.PUBLISHED);
+        luceneIndexer.executeIndexOperationNow(new IndexEntryTask(weblogEntryDao, weblogEntryManager, luceneIndexer, wd2, false));
+        luceneIndexer.refreshSearcher();
+
+        SearchTask search3 = new SearchTask(luceneIndexer);
+        search3.setTerm("Starfleet");
+        luceneIndexer.executeIndexOperationNow(search3);
+        assertNotSame(search.getResults(), search3.getResults());
+        assertEquals(2, search3.getResultsCount());
+
+        for (WeblogEntry entry : List.of(wd1, wd2)) {
+            luceneIndexer.executeIndexOperationNow(
+                    new IndexEntryTask(weblogEntryDao, weblogEntryManager, luceneIndexer, entry, true));
+        }
+        luceneIndexer.refreshSearcher();
+        search.close();
+        search2.close();
+        search3.close();
+    }
+
+    private WeblogEntry saveEntry(String anchor, String title, PubStatus status) {
+        WeblogEntry entry = new WeblogEntry();
+        entry.setTitle(title);
+        entry.setText("The Enterprise receives orders from Starfleet.");
+        entry.setAnchor(anchor);
+        entry.setCreator(testUser);
+        entry.setStatus(status);
+        entry.setUpdateTime(Instant.now());
+        entry.setPubTime(Instant.now());
+        entry.setWeblog(testWeblog);
+        entry.setCategory(weblogCategoryDao.findByWeblogAndName(testWeblog, "General"));
+        weblogEntryManager.saveWeblogEntry(entry);
+        return weblogEntryDao.findByIdOrNull(entry.getId());
+    }
 }
@@ -20,11 +20,15 @@
  */
 package org.tightblog.service;
 
+import javax.persistence.EntityManagerFactory;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.time.Instant;
 import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
@@ -33,9 +37,14 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import org.tightblog.WebloggerTest;
+import org.tightblog.dao.WeblogEntryCommentDao;
+import org.tightblog.domain.CalendarMonthIndex;
+import org.tightblog.domain.EntryCursor;
 import org.tightblog.domain.WeblogEntryComment;
 import org.tightblog.domain.User;
 import org.tightblog.domain.WeblogCategory;
@@ -46,13 +55,21 @@ import org.tightblog.domain.WeblogEntryTag;
 import org.tightblog.domain.Weblog;
 import org.tightblog.domain.WeblogEntryTagAggregate;
 import org.tightblog.util.Utilities;
+import org.eclipse.persistence.jpa.JpaEntityManagerFactory;
+import org.eclipse.persistence.sessions.SessionEvent;
+import org.eclipse.persistence.sessions.SessionEventAdapter;
+import org.eclipse.persistence.sessions.SessionEventManager;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertNull;
@@ -65,6 +82,15 @@ import static org.junit.jupiter.api.Assertions.fail;
 public class WeblogEntryManagerIT extends WebloggerTest {
 
     private static final Logger LOG = LoggerFactory.getLogger(WeblogEntryManagerIT.class);
+
+    @Autowired
+    private EntryNavigationIndex entryNavigationIndex;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
     
     User testUser;
     Weblog testWeblog;
@@ -238,15 +264,15 @@ public class WeblogEntryManagerIT extends WebloggerTest {
         assertEquals(1, entries.size());
         assertEquals(entry2, entries.get(0));
 
-        // get next entry
-        entry = weblogEntryManager.getNextPublishedEntry(entry4);
-        assertNotNull(entry);
-        assertEquals(entry5, entry);
-        
-        // get previous entry
-        entry = weblogEntryManager.getPreviousPublishedEntry(entry5);
-        assertNotNull(entry);
-        assertEquals(entry4, entry);
+        // get next and previous entries, kept current as entries change
+        assertEquals(entry5.getAnchor(), entryNavigationIndex.getNext(entry4).anchor());
+        assertEquals(entry4.getAnchor(), entryNavigationIndex.getPrevious(entry5).anchor());
+        entry4.setStatus(PubStatus.DRAFT);
+        weblogEntryManager.saveWeblogEntry(entry4);
+        assertNull(entryNavigationIndex.getPrevious(entry5));
+        entry4.setStatus(PubStatus.PUBLISHED);
+        weblogEntryManager.saveWeblogEntry(entry4);
+        assertEquals(entry4.getAnchor(), entryNavigationIndex.getPrevious(entry5).anchor());
         
         // get object map
         WeblogEntrySearchCriteria wesc8 = new WeblogEntrySearchCriteria();
@@ -255,11 +281,46 @@ public class WeblogEntryManagerIT extends WebloggerTest {
         assertNotNull(entryMap);
         assertTrue(entryMap.keySet().size() > 1);
 
+        // calendar index holds the published entries only
+        CalendarMonthIndex calendarIndex = weblogEntryManager.getCalendarMonthIndex(testWeblog, "General");
+        LocalDate entry4Day = entry4.getPubTime().atZone(ZoneId.systemDefault()).toLocalDate();
+        String entry4Anchor = entry4.getAnchor();
+        assertTrue(calendarIndex.getDays(YearMonth.from(entry4Day)).get(entry4Day).stream()
+                .anyMatch(e -> e.anchor().equals(entry4Anchor)));
+        LocalDate entry3Day = entry3.getPubTime().atZone(ZoneId.systemDefault()).toLocalDate();
+        assertNull(calendarIndex.getDays(YearMonth.from(entry3Day)).get(entry3Day));
+
         weblogEntryManager.removeWeblogEntry(entry1);
         weblogEntryManager.removeWeblogEntry(entry2);
         weblogEntryManager.removeWeblogEntry(entry3);
     }
 
+    @Test
+    public void testCursorPagingAcrossEntriesSavedHere() {
+        // publish times finer than the database's, as given by Instant.now() on most platforms
+        Instant base = Instant.parse("2020-01-01T10:00:00.123456Z");
+        List<String> anchors = List.of("older", "middle", "newer");
+        for (int i = 0; i < anchors.size(); i++) {
+            WeblogEntry entry = setupWeblogEntry(anchors.get(i), testWeblog, testUser);
+            entry.setPubTime(base.plusSeconds(i));
+            weblogEntryManager.saveWeblogEntry(entry);
+        }
+
+        // paging one entry at a time over the entries as cached from saving them
+        WeblogEntrySearchCriteria wesc = new WeblogEntrySearchCriteria();
+        wesc.setWeblog(testWeblog);
+        wesc.setMaxResults(1);
+        List<String> paged = new ArrayList<>();
+        List<WeblogEntry> page = weblogEntryManager.getWeblogEntries(wesc);
+        while (!page.isEmpty()) {
+            paged.add(page.get(0).getAnchor());
+            assertTrue(paged.size() <= anchors.size(), "entries repeated: " + paged);
+            wesc.setCursor(EntryCursor.before(page.get(0)));
+            page = weblogEntryManager.getWeblogEntries(wesc);
+        }
+        assertEquals(List.of("newer", "middle", "older"), paged);
+    }
+
     @Test
     public void testCreateAnchor() {
         WeblogEntry entry1 = setupWeblogEntry("entry1", testWeblog, testUser);
@@ -699,6 +760,34 @@ public class WeblogEntryManagerIT extends WebloggerTest {
         assertNull(entry);
     }
 
+    @Test
+    public void testStoredRendering() {
+        WeblogEntry entry = setupWeblogEntry("renderedEntry", testWeblog, testUser);
+        entry.setEditFormat(Weblog.EditFormat.COMMONMARK);
+        entry.setText("some *emphasized* text");
+        weblogEntryManager.saveWeblogEntry(entry);
+
+        try {
+            entry = weblogEntryDao.findByIdOrNull(entry.getId());
+            assertNotNull(entry.getRenderingStamp());
+            assertEquals("<p>some <em>emphasized</em> text</p>\n", entry.getRenderedText());
+            assertEquals(entry.getRenderedText(), weblogEntryManager.getTransformedText(entry));
+
+            // renderings from other policies not used, and updated by the background job
+            // (the update time as saved in this JVM matching that stored)
+            assertEquals(1, weblogEntryDao.updateRendering(entry.getId(), entry.getUpdateTime(), "stale", null,
+                    "OLD:0"));
+            entry = weblogEntryDao.findByIdOrNull(entry.getId());
+            assertEquals("<p>some <em>emphasized</em> text</p>\n", weblogEntryManager.getTransformedText(entry));
+            weblogEntryManager.updateStoredRenderings();
+            entry = weblogEntryDao.findByIdOrNull(entry.getId());
+            assertEquals("<p>some <em>emphasized</em> text</p>\n", entry.getRenderedText());
+            assertNotEquals("OLD:0", entry.getRenderingStamp());
+        } finally {
+            weblogEntryManager.removeWeblogEntry(entry);
+        }
+    }
+
     @Test
     public void testWeblogStats() {
         long existingUserCount = userDao.count() - 1;
@@ -732,6 +821,15 @@ public class WeblogEntryManagerIT extends WebloggerTest {
             assertEquals(2L, weblogEntryDao.countByWeblog(blog1));
             assertEquals(3, weblogEntryDao.countByWeblog(blog2));
             assertEquals(5, weblogEntryDao.count());
+            // counts of listed entries cached together
+            WeblogEntrySearchCriteria wesc = new WeblogEntrySearchCriteria();
+            wesc.setWeblog(blog2);
+            weblogEntryManager.getDateToWeblogEntryMap(wesc);
+            Cache counts = cacheManager.getCache(WeblogEntryCommentDao.APPROVED_COMMENT_COUNTS);
+            assertEquals(3, counts.get(entry3.getId(), Integer.class));
+            assertEquals(0, counts.get(entry4.getId(), Integer.class));
+            assertNull(counts.get(entry1.getId()));
+
             assertEquals(2, weblogEntryCommentDao.countByWeblogEntryAndStatusApproved(entry1));
             assertEquals(3, weblogEntryCommentDao.countByWeblogEntryAndStatusApproved(entry3));
             assertEquals(4L, weblogDao.count());
@@ -757,6 +855,88 @@ public class WeblogEntryManagerIT extends WebloggerTest {
         }
     }
 
+    @Test
+    public void testListRenderFetchProfile() {
+        List<WeblogEntry> entries = new ArrayList<>();
+        try {
+            for (int i = 0; i < 30; i++) {
+                WeblogEntry entry = setupWeblogEntry("fetchentry" + i, testWeblog, testUser);
+                addTag(entry, "fetchtag" + i);
+                weblogEntryManager.saveWeblogEntry(entry);
+                entries.add(entry);
+            }
+
+            // related objects of all entries read together, so statements don't grow with the page size
+            assertEquals(countStatements(5, WeblogEntrySearchCriteria.FetchProfile.LIST_RENDER, this::readForRendering),
+                    countStatements(30, WeblogEntrySearchCriteria.FetchProfile.LIST_RENDER, this::readForRendering));
+        } finally {
+            entries.forEach(weblogEntryManager::removeWeblogEntry);
+        }
+    }
+
+    @Test
+    public void testSearchIndexFetchProfile() {
+        List<WeblogEntry> entries = new ArrayList<>();
+        try {
+            for (int i = 0; i < 30; i++) {
+                WeblogEntry entry = setupWeblogEntry("indexentry" + i, testWeblog, testUser);
+                setupComment("first comment", entry);
+                setupComment("second comment", entry);
+                entries.add(entry);
+            }
+
+            // comments of all entries read together, so statements don't grow with the page size
+            assertEquals(countStatements(5, WeblogEntrySearchCriteria.FetchProfile.SEARCH_INDEX, this::readForIndexing),
+                    countStatements(30, WeblogEntrySearchCriteria.FetchProfile.SEARCH_INDEX, this::readForIndexing));
+        } finally {
+            entries.forEach(weblogEntryManager::removeWeblogEntry);
+        }
+    }
+
+    private void readForRendering(WeblogEntry entry) {
+        assertEquals(testWeblog.getHandle(), entry.getWeblog().getHandle());
+        assertEquals(testUser.getUserName(), entry.getCreator().getUserName());
+        assertNotNull(entry.getCategory().getName());
+        assertEquals(1, entry.getTags().size());
+    }
+
+    private void readForIndexing(WeblogEntry entry) {
+        assertEquals(testWeblog.getHandle(), entry.getWeblog().getHandle());
+        assertEquals(testUser.getUserName(), entry.getCreator().getUserName());
+        assertNotNull(entry.getCategory().getName());
+        assertEquals(Set.of("first comment", "second comment"),
+                entry.getComments().stream().map(WeblogEntryComment::getContent).collect(Collectors.toSet()));
+    }
+
+    // statements run to read a page of entries and what is read of each
+    private int countStatements(int pageSize, WeblogEntrySearchCriteria.FetchProfile profile,
+                                Consumer<WeblogEntry> reads) {
+        entityManagerFactory.getCache().evictAll();
+        AtomicInteger statements = new AtomicInteger();
+        SessionEventAdapter listener = new SessionEventAdapter() {
+            @Override
+            public void preExecuteCall(SessionEvent event) {
+                statements.incrementAndGet();
+            }
+        };
+        SessionEventManager eventManager = entityManagerFactory.unwrap(JpaEntityManagerFactory.class)
+                .getServerSession().getEventManager();
+        eventManager.addListener(listener);
+        try {
+            WeblogEntrySearchCriteria wesc = new WeblogEntrySearchCriteria();
+            wesc.setWeblog(testWeblog);
+            wesc.setStatus(PubStatus.PUBLISHED);
+            wesc.setMaxResults(pageSize);
+            wesc.setFetchProfile(profile);
+            List<WeblogEntry> page = weblogEntryManager.getWeblogEntries(wesc);
+            assertEquals(pageSize, page.size());
+            page.forEach(reads);
+        } finally {
+            eventManager.removeListener(listener);
+        }
+        return statements.get();
+    }
+
     private void addTag(WeblogEntry entry, String name) {
         Locale localeObject = entry.getWeblog().getLocaleInstance();
         name = Utilities.normalizeTag(name, localeObject);
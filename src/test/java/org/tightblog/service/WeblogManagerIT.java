@@ -24,16 +24,24 @@ import java.time.Instant;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.tightblog.WebloggerTest;
+import org.tightblog.domain.Template;
 import org.tightblog.domain.User;
 import org.tightblog.domain.UserWeblogRole;
 import org.tightblog.domain.Weblog;
 import org.tightblog.domain.WeblogBookmark;
 import org.tightblog.domain.WeblogRole;
+import org.tightblog.rendering.cache.CachedContent;
+import org.tightblog.rendering.cache.LazyExpiringCache;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
@@ -45,6 +53,16 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
  * Test Weblog related business operations.
  */
 public class WeblogManagerIT extends WebloggerTest {
+
+    private static final int RENDER_THREADS = 64;
+    private static final int HITS_PER_THREAD = 20000;
+
+    @Autowired
+    private LazyExpiringCache weblogPageCache;
+
+    @Autowired
+    private LazyExpiringCache weblogFeedCache;
+
     private User testUser;
     private Weblog testWeblog;
 
@@ -211,6 +229,96 @@ public class WeblogManagerIT extends WebloggerTest {
         assertEquals(15, aWeblog.getHitsToday());
     }
 
+    @Test
+    public void testConcurrentHitCountIncrements() throws InterruptedException {
+        Weblog aWeblog = weblogDao.findByIdOrNull(testWeblog.getId());
+
+        runConcurrently(() -> weblogManager.incrementHitCount(aWeblog));
+        weblogManager.updateHitCounters();
+
+        // no increments lost
+        Weblog updated = weblogDao.findByIdOrNull(testWeblog.getId());
+        assertEquals(RENDER_THREADS * HITS_PER_THREAD, updated.getHitsToday());
+
+        // nothing left over for the next flush
+        weblogManager.updateHitCounters();
+        assertEquals(RENDER_THREADS * HITS_PER_THREAD, weblogDao.findByIdOrNull(testWeblog.getId()).getHitsToday());
+    }
+
+    private static void runConcurrently(Runnable hit) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(RENDER_THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(RENDER_THREADS);
+        for (int i = 0; i < RENDER_THREADS; i++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                    for (int j = 0; j < HITS_PER_THREAD; j++) {
+                        hit.run();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        start.countDown();
+        assertTrue(done.await(1, TimeUnit.MINUTES));
+        executor.shutdown();
+    }
+
+    @Test
+    public void testHitCountFlushKeepsCachedContentFresh() {
+        Weblog aWeblog = weblogDao.findByIdOrNull(testWeblog.getId());
+        Instant lastModified = aWeblog.getLastModified();
+
+        CachedContent page = new CachedContent(Template.Role.WEBLOG);
+        CachedContent feed = new CachedContent(Template.Role.ATOMFEED);
+        weblogPageCache.put(aWeblog.getHandle(), page);
+        weblogFeedCache.put(aWeblog.getHandle(), feed);
+
+        for (int i = 0; i < 3; i++) {
+            weblogManager.incrementHitCount(aWeblog);
+        }
+        weblogManager.updateHitCounters();
+
+        // hits stored but weblog not treated as changed
+        aWeblog = weblogDao.findByIdOrNull(testWeblog.getId());
+        assertEquals(3, aWeblog.getHitsToday());
+        assertEquals(lastModified.toEpochMilli(), aWeblog.getLastModified().toEpochMilli());
+
+        // so earlier rendered pages and feeds remain usable
+        assertEquals(page, weblogPageCache.get(aWeblog.getHandle(), aWeblog.getLastModified()));
+        assertEquals(feed, weblogFeedCache.get(aWeblog.getHandle(), aWeblog.getLastModified()));
+    }
+
+    @Test
+    public void testSaveWeblogEvictsOnlyItsCachedContent() {
+        Weblog aWeblog = weblogDao.findByIdOrNull(testWeblog.getId());
+        Weblog otherWeblog = setupWeblog("evict-test", testUser);
+
+        try {
+            CachedContent page = new CachedContent(Template.Role.WEBLOG);
+            weblogPageCache.put(aWeblog.getHandle(), page);
+            weblogPageCache.put(aWeblog.getHandle() + "/entry/abc", page);
+            weblogFeedCache.put(aWeblog.getHandle(), page);
+            weblogPageCache.put(otherWeblog.getHandle(), page);
+            long sizeBefore = weblogPageCache.getEstimatedSize();
+
+            weblogManager.saveWeblog(aWeblog, true);
+
+            // evicted, not just outdated
+            assertEquals(sizeBefore - 2, weblogPageCache.getEstimatedSize());
+            assertNull(weblogPageCache.get(aWeblog.getHandle() + "/entry/abc", null));
+            assertNull(weblogFeedCache.get(aWeblog.getHandle(), null));
+            assertEquals(page, weblogPageCache.get(otherWeblog.getHandle(), null));
+        } finally {
+            weblogManager.removeWeblog(otherWeblog);
+        }
+        assertNull(weblogPageCache.get(otherWeblog.getHandle(), null));
+    }
+
     @Test
     public void testResetHitCounts() {
         Weblog blog1 = setupWeblog("hit-cnt-test1", testUser);
@@ -0,0 +1,109 @@
+/*
+   Copyright 2026 the original author or authors.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.tightblog.service.indexer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class IndexUpdateQueueTest {
+
+    @Test
+    public void testLastUpdateWins() throws InterruptedException {
+        List<String> applied = new ArrayList<>();
+        IndexUpdateQueue queue = new IndexUpdateQueue(10, 10);
+        queue.put("entry:a", () -> applied.add("add a"));
+        queue.put("entry:b", () -> applied.add("add b"));
+        queue.put("entry:a", () -> applied.add("remove a"));
+        assertEquals(2, queue.getPendingCount());
+
+        queue.apply(queue.takeBatch());
+        // replaced update kept its place
+        assertEquals(List.of("remove a", "add b"), applied);
+
+        IndexUpdateQueue.Stats stats = queue.getStats();
+        assertEquals(0, stats.pending());
+        assertEquals(2, stats.applied());
+        assertEquals(1, stats.coalesced());
+    }
+
+    @Test
+    public void testBatches() throws InterruptedException {
+        List<String> applied = new ArrayList<>();
+        IndexUpdateQueue queue = new IndexUpdateQueue(10, 2);
+        for (String id : List.of("a", "b", "c")) {
+            queue.put("entry:" + id, () -> applied.add(id));
+        }
+        queue.apply(queue.takeBatch());
+        assertEquals(List.of("a", "b"), applied);
+        assertEquals(1, queue.getPendingCount());
+        queue.apply(queue.takeBatch());
+        assertEquals(List.of("a", "b", "c"), applied);
+    }
+
+    @Test
+    public void testFullQueueWaitsForConsumer() throws InterruptedException {
+        CountDownLatch appliedAll = new CountDownLatch(3);
+        IndexUpdateQueue queue = new IndexUpdateQueue(1, 1);
+        queue.put("entry:a", appliedAll::countDown);
+        // coalesced updates don't wait
+        queue.put("entry:a", appliedAll::countDown);
+        assertEquals(1, queue.getPendingCount());
+
+        Thread producer = new Thread(() -> {
+            queue.put("entry:b", appliedAll::countDown);
+            queue.put("entry:c", appliedAll::countDown);
+        });
+        producer.start();
+        producer.join(200);
+        assertTrue(producer.isAlive());
+
+        queue.start("test-index-updates");
+        assertTrue(appliedAll.await(5, TimeUnit.SECONDS));
+        producer.join(5000);
+        queue.stop(5000);
+        assertEquals(3, queue.getStats().applied());
+    }
+
+    @Test
+    public void testOldestUnapplied() throws InterruptedException {
+        IndexUpdateQueue queue = new IndexUpdateQueue(10, 1);
+        assertFalse(queue.getOldestUnappliedNanos().isPresent());
+        long before = System.nanoTime();
+        queue.put("entry:a", () -> { });
+        queue.put("entry:b", () -> { });
+        long oldest = queue.getOldestUnappliedNanos().getAsLong();
+        assertTrue(oldest - before >= 0);
+
+        // counting the update taken until applied
+        List<IndexUpdateQueue.Pending> batch = queue.takeBatch();
+        assertEquals(oldest, queue.getOldestUnappliedNanos().getAsLong());
+        queue.apply(batch);
+        assertTrue(queue.getOldestUnappliedNanos().getAsLong() - oldest >= 0);
+
+        // and those dropped on stopping
+        queue.stop(0);
+        assertEquals(0, queue.getPendingCount());
+        assertTrue(queue.getOldestUnappliedNanos().isPresent());
+    }
+}